@@ -0,0 +1,51 @@
+package com.soeguet.benchmarks;
+
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ The client messages the benchmarks send, one per subclass, built the way the client writes them.
+ */
+final class BenchmarkMessages {
+
+    // constructors -- start
+    private BenchmarkMessages() {
+
+    }
+    // constructors -- end
+
+    /**
+     @param subclass
+     "text", "link" or "image"
+     @param pictureSize
+     the size of the picture of an image message in bytes, 0 for an image message without picture
+
+     @return the JSON message
+     */
+    static String of(final String subclass, final int pictureSize) {
+
+        return switch (subclass) {
+
+            case "text" -> """
+                           {"subclass":"text","messageType":0,"sender":"alice","time":"12:00",\
+                           "message":"did anyone look at the deployment from yesterday? the queue is growing again"}""";
+            case "link" -> """
+                           {"subclass":"link","messageType":0,"sender":"alice","time":"12:00",\
+                           "link":"https://example.com/releases/v1.0.4","comment":"release notes for today"}""";
+            case "image" -> "{\"subclass\":\"image\",\"messageType\":0,\"sender\":\"alice\",\"time\":\"12:00\","
+                            + "\"description\":\"the dashboard right now\"" + picture(pictureSize) + "}";
+            default -> throw new IllegalArgumentException("unknown subclass " + subclass);
+        };
+    }
+
+    private static String picture(final int pictureSize) {
+
+        if (pictureSize == 0) {return "";}
+
+        //random bytes do not compress, like the bytes of a real photo
+        final byte[] picture = new byte[pictureSize];
+        new Random(42).nextBytes(picture);
+
+        return ",\"picture\":\"" + Base64.getEncoder().encodeToString(picture) + "\"";
+    }
+}
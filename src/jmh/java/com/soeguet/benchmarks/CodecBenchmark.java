@@ -0,0 +1,83 @@
+package com.soeguet.benchmarks;
+
+import com.soeguet.codec.EncodedFrame;
+import com.soeguet.codec.MessageCodec;
+import com.soeguet.codec.WireFormat;
+import com.soeguet.model.jackson.BaseModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Reading and writing every {@link BaseModel} subclass: parsing a client message, writing the stored form and
+ encoding the broadcast frames with and without the picture.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    // variables -- start
+    @Param({"text", "link", "image"})
+    String subclass;
+
+    @Param({"65536"})
+    int pictureSize;
+
+    private MessageCodec messageCodec;
+    private String message;
+    private BaseModel model;
+    // variables -- end
+
+    @Setup
+    public void setup() {
+
+        messageCodec = new MessageCodec();
+        message = BenchmarkMessages.of(subclass, pictureSize);
+        model = messageCodec.decode(message);
+    }
+
+    @Benchmark
+    public BaseModel decode() {
+
+        return messageCodec.decode(message);
+    }
+
+    @Benchmark
+    public String encodeForStorage() {
+
+        return messageCodec.encodeForStorage(model);
+    }
+
+    @Benchmark
+    public EncodedFrame encodeFrameWithPicture() {
+
+        return messageCodec.encodeFrame(model, true);
+    }
+
+    @Benchmark
+    public EncodedFrame encodeFrameWithoutPicture() {
+
+        return messageCodec.encodeFrame(model, false);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeCborFrameWithPicture() {
+
+        return messageCodec.encodeFrame(model, true).payload(WireFormat.CBOR);
+    }
+}
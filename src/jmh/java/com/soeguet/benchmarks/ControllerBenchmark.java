@@ -0,0 +1,71 @@
+package com.soeguet.benchmarks;
+
+import com.soeguet.controller.MessagesController;
+import com.soeguet.database.memory.InMemoryDatabaseConnection;
+import com.soeguet.model.dtos.HistorySnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ The controller on top of the in-memory storage, so the numbers are the cost of the controller and not of a
+ database: handling a new client message and handing a joining client the history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ControllerBenchmark {
+
+    // variables -- start
+    @Param({"text", "link"})
+    String subclass;
+
+    private MessagesController messagesController;
+    private String message;
+    // variables -- end
+
+    /**
+     A fresh controller with a full history per iteration, the storage would otherwise grow for as long as the
+     benchmark runs.
+     */
+    @Setup(Level.Iteration)
+    public void setup() {
+
+        message = BenchmarkMessages.of(subclass, 0);
+
+        final InMemoryDatabaseConnection databaseConnection = new InMemoryDatabaseConnection();
+
+        for (int i = 0; i < 100; i++) {
+
+            databaseConnection.saveToDatabase(message);
+        }
+
+        messagesController = new MessagesController(databaseConnection);
+    }
+
+    @Benchmark
+    public String onMessageFromClient() {
+
+        return messagesController.onMessageFromClient(message);
+    }
+
+    @Benchmark
+    public HistorySnapshot retrieveLast100Messages() {
+
+        return messagesController.retrieveLast100Messages();
+    }
+}
@@ -0,0 +1,115 @@
+package com.soeguet.benchmarks;
+
+import com.soeguet.database.DatabaseConnection;
+import com.soeguet.model.dtos.DatabaseResult;
+import com.soeguet.model.dtos.SearchResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ The statements of {@link DatabaseConnection} against an in-memory H2 database in PostgreSQL mode, through the
+ same migrations and connection pool the server uses. The numbers leave out the network and the disk, they show
+ what the statements and the mapping of their results cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark {
+
+    // variables -- start
+    private static final int MESSAGES = 10_000;
+
+    private DatabaseConnection databaseConnection;
+    private String message;
+    // variables -- end
+
+    @Setup
+    public void setup() {
+
+        final String databaseUrl = "jdbc:h2:mem:benchmark" + System.nanoTime() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+
+        databaseConnection = new DatabaseConnection(new Properties()) {
+
+            @Override
+            public void setDatabaseSettings() {
+
+            }
+
+            @Override
+            public String getDbPath() {
+
+                return databaseUrl;
+            }
+
+            @Override
+            public Properties getProperties() {
+
+                final Properties properties = new Properties();
+                properties.setProperty("user", "sa");
+                properties.setProperty("password", "");
+
+                return properties;
+            }
+        };
+
+        databaseConnection.initDatabase();
+        message = BenchmarkMessages.of("text", 0);
+
+        for (int i = 0; i < MESSAGES; i++) {
+
+            databaseConnection.saveToDatabase(message);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+
+        databaseConnection.close();
+    }
+
+    @Benchmark
+    public long saveMessage() {
+
+        return databaseConnection.saveMessageWithoutPictureToDatabase(message);
+    }
+
+    @Benchmark
+    public boolean saveReaction() {
+
+        return databaseConnection.saveReactionToDatabase(MESSAGES / 2, "bob", "thumbsup");
+    }
+
+    @Benchmark
+    public DatabaseResult getLastMessage() {
+
+        return databaseConnection.getLastFromDatabase();
+    }
+
+    @Benchmark
+    public List<DatabaseResult> getHistoryPage() {
+
+        return databaseConnection.getPageFromDatabase(MESSAGES / 2, 50, false);
+    }
+
+    @Benchmark
+    public List<SearchResult> search() {
+
+        return databaseConnection.searchInDatabase("deployment", 20, 0);
+    }
+}
@@ -0,0 +1,263 @@
+package com.soeguet.benchmarks.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ One simulated chat client. Every message it sends carries the {@link System#nanoTime()} of sending as its "time",
+ every client receiving the broadcast records how long it took. Server and clients share one process, so the clocks
+ agree.
+ */
+final class LoadClient extends WebSocketClient {
+
+    // variables -- start
+    private static final String TIME_KEY = "\"time\":\"";
+    private static final String TYPING_KEY = "\"typing\":[";
+    private static final String STOPPED_KEY = "\"stopped\":[";
+    private static final long ANNOUNCED = -1;
+    private static final long STOPPING = -2;
+
+    private final String name;
+    private final LoadStatistics statistics;
+    private volatile CountDownLatch joined = new CountDownLatch(1);
+    private volatile long connectStarted;
+    private volatile boolean historyReceived;
+
+    //when this client started typing, 0 if it is not typing, ANNOUNCED or STOPPING
+    private volatile long typingStarted;
+    private volatile long stoppingSince;
+    // variables -- end
+
+    /**
+     The latency histograms and counters shared by all clients of a run.
+     */
+    record LoadStatistics(ConcurrentHistogram messageLatency, ConcurrentHistogram pictureLatency,
+                          ConcurrentHistogram typingLatency, ConcurrentHistogram joinLatency, AtomicLong deliveries,
+                          AtomicLong sent) {
+
+        LoadStatistics() {
+
+            this(histogram(), histogram(), histogram(), histogram(), new AtomicLong(), new AtomicLong());
+        }
+
+        /**
+         Forgets the warmup. The joins are kept, the initial joins of all clients at once are the worst case of joining.
+         */
+        void reset() {
+
+            messageLatency.reset();
+            pictureLatency.reset();
+            typingLatency.reset();
+            deliveries.set(0);
+            sent.set(0);
+        }
+
+        private static ConcurrentHistogram histogram() {
+
+            //nanoseconds up to a minute with three significant digits
+            return new ConcurrentHistogram(60_000_000_000L, 3);
+        }
+    }
+
+    // constructors -- start
+    LoadClient(final URI serverUri, final String name, final LoadStatistics statistics) {
+
+        super(serverUri);
+        this.name = name;
+        this.statistics = statistics;
+        setConnectionLostTimeout(0);
+    }
+    // constructors -- end
+
+    // overrides -- start
+    @Override
+    public void onOpen(final ServerHandshake serverHandshake) {
+
+    }
+
+    @Override
+    public void onMessage(final String message) {
+
+        final long received = System.nanoTime();
+
+        if (!historyReceived) {
+
+            //the history arrives before the startup marker, it carries old timestamps
+            if ("__startup__end__".equals(message)) {
+
+                historyReceived = true;
+                statistics.joinLatency().recordValue(received - connectStarted);
+                joined.countDown();
+            }
+
+            return;
+        }
+
+        final long sent = readLong(message, TIME_KEY);
+
+        if (sent < 0) {return;}
+
+        statistics.deliveries().incrementAndGet();
+
+        if (message.startsWith("{\"subclass\":\"image\"")) {
+
+            statistics.pictureLatency().recordValue(Math.max(0, received - sent));
+
+        } else {
+
+            statistics.messageLatency().recordValue(Math.max(0, received - sent));
+        }
+    }
+
+    @Override
+    public void onMessage(final ByteBuffer bytes) {
+
+        final long received = System.nanoTime();
+        final String event = StandardCharsets.UTF_8.decode(bytes).toString();
+
+        statistics.deliveries().incrementAndGet();
+
+        //the latency is the time until the server announced that this client started typing
+        final long started = typingStarted;
+
+        if (started > 0 && listContains(event, TYPING_KEY)) {
+
+            typingStarted = ANNOUNCED;
+            statistics.typingLatency().recordValue(Math.max(0, received - started));
+
+        } else if (started < 0 && listContains(event, STOPPED_KEY)) {
+
+            typingStarted = 0;
+        }
+    }
+
+    @Override
+    public void onClose(final int code, final String reason, final boolean remote) {
+
+    }
+
+    @Override
+    public void onError(final Exception e) {
+
+    }
+    // overrides -- end
+
+    /**
+     Connects for the first time.
+
+     @return the latch released once the history is received
+     */
+    CountDownLatch start() {
+
+        connectStarted = System.nanoTime();
+        connect();
+
+        return joined;
+    }
+
+    /**
+     Closes the connection and connects again, like a client that lost its network. Blocks until connected.
+     */
+    void rejoin() throws InterruptedException {
+
+        historyReceived = false;
+        joined = new CountDownLatch(1);
+        connectStarted = System.nanoTime();
+        reconnectBlocking();
+    }
+
+    boolean isJoined() {
+
+        return historyReceived && isOpen();
+    }
+
+    void sendText(final String text) {
+
+        send(message("text", "\"message\":\"" + text + "\""));
+    }
+
+    void sendLink(final String link) {
+
+        send(message("link", "\"link\":\"" + link + "\",\"comment\":\"have a look\""));
+    }
+
+    void sendPicture(final String base64Picture) {
+
+        send(message("image", "\"description\":\"screenshot\",\"picture\":\"" + base64Picture + "\""));
+    }
+
+    /**
+     Sends a typing indicator, the way the client does it. The server announces the start of typing with its next
+     typing event, later indicators only keep it typing. Sending a message or the typing timeout stop it again.
+     */
+    void sendTyping() {
+
+        final long now = System.nanoTime();
+
+        //a stop the server never announced, because the client typed again within the same interval
+        if (typingStarted == STOPPING && now - stoppingSince > 1_000_000_000L) {typingStarted = 0;}
+
+        if (typingStarted == 0) {typingStarted = now;}
+
+        send(("{\"type\":\"typing\",\"sender\":\"" + name + "\"}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String message(final String subclass, final String fields) {
+
+        statistics.sent().incrementAndGet();
+
+        //a message stops typing, no typing is measured until the server announced that
+        if (typingStarted != 0) {
+
+            stoppingSince = System.nanoTime();
+            typingStarted = STOPPING;
+        }
+
+        return "{\"subclass\":\"" + subclass + "\",\"messageType\":0,\"sender\":\"" + name + "\"," + TIME_KEY
+               + System.nanoTime() + "\"," + fields + "}";
+    }
+
+    /**
+     Tells whether the name of this client is in the list following a key, without parsing the whole frame.
+     */
+    private boolean listContains(final String event, final String key) {
+
+        final int start = event.indexOf(key);
+
+        if (start < 0) {return false;}
+
+        final int end = event.indexOf(']', start);
+        final int found = event.indexOf("\"" + name + "\"", start);
+
+        return found >= 0 && found < end;
+    }
+
+    /**
+     Reads a number following a key without parsing the whole frame, the clients share the CPU with the server.
+
+     @return the number, or -1 if the key is missing
+     */
+    private static long readLong(final String frame, final String key) {
+
+        final int start = frame.indexOf(key);
+
+        if (start < 0) {return -1;}
+
+        long value = 0;
+        int index = start + key.length();
+
+        while (index < frame.length() && Character.isDigit(frame.charAt(index))) {
+
+            value = value * 10 + frame.charAt(index++) - '0';
+        }
+
+        return index == start + key.length() ? -1 : value;
+    }
+}
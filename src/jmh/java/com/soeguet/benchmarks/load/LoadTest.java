@@ -0,0 +1,358 @@
+package com.soeguet.benchmarks.load;
+
+import com.soeguet.controller.MessagesController;
+import com.soeguet.database.EmbeddedDatabaseConnection;
+import com.soeguet.database.interfaces.DatabaseConnectionController;
+import com.soeguet.database.log.SegmentedLogDatabaseConnection;
+import com.soeguet.database.memory.InMemoryDatabaseConnection;
+import com.soeguet.nogui.NoGuiServer;
+import org.HdrHistogram.Histogram;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ Load test of the whole server: starts a {@link NoGuiServer} on loopback and lets simulated clients chat with it.
+
+ <p>
+ For every client count a fresh server is started, the clients join, and messages are sent at a fixed total rate by
+ random clients: text, links, pictures and typing indicators in a configurable mix, now and then a client drops its
+ connection and joins again. Every client records how long each broadcast took from sending to receiving. After a
+ warmup the run is measured for a while and one line per client count is printed, so the lines together are the
+ scaling curve of the server.
+ </p>
+ <p>
+ Arguments in the {@code key=value} form of the server, every other key is passed on to the server:
+ </p>
+ <ul>
+ <li>{@code clients}: the client counts to run, comma separated. Default: {@code 10,100,1000}</li>
+ <li>{@code rate}: messages per second sent by all clients together. Default: {@code 50}</li>
+ <li>{@code duration}: measured seconds per client count. Default: {@code 30}</li>
+ <li>{@code warmup}: seconds before measuring. Default: {@code 5}</li>
+ <li>{@code mix}: shares of text, link, picture and typing. Default: {@code text:70,link:10,picture:5,typing:15}</li>
+ <li>{@code reconnect}: share of actions a client reconnects instead. Default: {@code 0.005}</li>
+ <li>{@code pictureBytes}: approximate size of the pictures. Default: {@code 65536}</li>
+ <li>{@code storage}: {@code memory}, {@code h2} or {@code log}, the files go into a temporary directory. Default: {@code memory}</li>
+ </ul>
+ */
+public final class LoadTest {
+
+    // variables -- start
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private final Map<String, String> arguments;
+    private final String base64Picture;
+    private final int[] mix;
+    // variables -- end
+
+    // constructors -- start
+    private LoadTest(final Map<String, String> arguments) {
+
+        this.arguments = arguments;
+        this.base64Picture = Base64.getEncoder().encodeToString(createPicture(Integer.parseInt(argument("pictureBytes", "65536"))));
+        this.mix = parseMix(argument("mix", "text:70,link:10,picture:5,typing:15"));
+    }
+    // constructors -- end
+
+    public static void main(final String[] args) throws Exception {
+
+        //the server logs every connect and disconnect, that would measure the console
+        Logger.getLogger("").setLevel(Level.WARNING);
+        Arrays.stream(Logger.getLogger("").getHandlers()).forEach(handler -> handler.setLevel(Level.WARNING));
+
+        final Map<String, String> arguments = new HashMap<>();
+
+        for (String arg : args) {
+
+            final String[] keyValue = arg.split("=", 2);
+
+            if (keyValue.length != 2) {throw new IllegalArgumentException("expected key=value but got " + arg);}
+
+            arguments.put(keyValue[0], keyValue[1]);
+        }
+
+        final LoadTest loadTest = new LoadTest(arguments);
+
+        System.out.printf("%8s %10s %12s | %-29s | %-29s | %-29s | %-19s | %8s %8s%n", "clients", "messages/s", "deliveries/s",
+                          "message p50/p99/p999/max ms", "picture p50/p99/p999/max ms", "typing p50/p99/p999/max ms",
+                          "join p50/p99/max ms", "heap MB", "dropped");
+
+        for (String clients : loadTest.argument("clients", "10,100,1000").split(",")) {
+
+            System.out.println(loadTest.run(Integer.parseInt(clients.trim())));
+        }
+
+        System.exit(0);
+    }
+
+    /**
+     Runs one client count against a fresh server.
+
+     @param clientCount
+     the number of simulated clients
+
+     @return the line of the result table
+     */
+    private String run(final int clientCount) throws Exception {
+
+        final Path storageDirectory = Files.createTempDirectory("teamsocket-load");
+        final DatabaseConnectionController databaseConnection = createStorage(storageDirectory);
+        databaseConnection.initDatabase();
+
+        final Properties properties = new Properties();
+        arguments.forEach(properties::setProperty);
+        properties.setProperty("ip", "127.0.0.1");
+        properties.setProperty("port", "0");
+
+        final NoGuiServer server = new NoGuiServer(new MessagesController(databaseConnection), properties);
+        server.setReuseAddr(true);
+        server.start();
+
+        final URI serverUri = new URI("ws://127.0.0.1:" + awaitPort(server));
+        final LoadClient.LoadStatistics statistics = new LoadClient.LoadStatistics();
+        final List<LoadClient> clients = connectClients(serverUri, clientCount, statistics);
+
+        final ScheduledExecutorService driver = Executors.newSingleThreadScheduledExecutor();
+        final ExecutorService reconnector = Executors.newFixedThreadPool(4);
+        final AtomicLong peakHeap = new AtomicLong();
+        final long period = TimeUnit.SECONDS.toNanos(1) / Long.parseLong(argument("rate", "50"));
+        final double reconnectShare = Double.parseDouble(argument("reconnect", "0.005"));
+
+        driver.scheduleAtFixedRate(() -> act(clients, reconnector, reconnectShare), period, period, TimeUnit.NANOSECONDS);
+        driver.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(MEMORY.getHeapMemoryUsage().getUsed(), Math::max),
+                                   100, 100, TimeUnit.MILLISECONDS);
+
+        TimeUnit.SECONDS.sleep(Long.parseLong(argument("warmup", "5")));
+        statistics.reset();
+        peakHeap.set(0);
+
+        final long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(Long.parseLong(argument("duration", "30")));
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        //a copy, the clients keep recording until they are closed
+        final long sent = statistics.sent().get();
+        final long deliveries = statistics.deliveries().get();
+        final String line = String.format("%8d %10.1f %12.1f | %-29s | %-29s | %-29s | %-19s | %8d %8d", clientCount,
+                                          sent / seconds, deliveries / seconds,
+                                          percentiles(statistics.messageLatency().copy(), true),
+                                          percentiles(statistics.pictureLatency().copy(), true),
+                                          percentiles(statistics.typingLatency().copy(), true),
+                                          percentiles(statistics.joinLatency().copy(), false),
+                                          peakHeap.get() / (1024 * 1024), server.getSlowConsumerDisconnects());
+
+        driver.shutdownNow();
+        reconnector.shutdownNow();
+
+        for (LoadClient client : clients) {
+
+            client.closeBlocking();
+        }
+
+        server.stop(1000, "load test finished");
+        databaseConnection.close();
+
+        return line;
+    }
+
+    /**
+     Sends the next message of the mix from a random joined client, or lets it reconnect.
+     */
+    private void act(final List<LoadClient> clients, final ExecutorService reconnector, final double reconnectShare) {
+
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final LoadClient client = clients.get(random.nextInt(clients.size()));
+
+        if (!client.isJoined()) {return;}
+
+        if (random.nextDouble() < reconnectShare) {
+
+            reconnector.execute(() -> {
+
+                try {
+
+                    client.rejoin();
+
+                } catch (InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                }
+            });
+            return;
+        }
+
+        final int action = random.nextInt(mix[mix.length - 1]);
+
+        try {
+
+            if (action < mix[0]) {
+
+                client.sendText("load message " + random.nextInt(1_000_000));
+
+            } else if (action < mix[1]) {
+
+                client.sendLink("https://example.com/" + random.nextInt(1_000_000));
+
+            } else if (action < mix[2]) {
+
+                client.sendPicture(base64Picture);
+
+            } else {
+
+                client.sendTyping();
+            }
+
+        } catch (RuntimeException e) {
+
+            //the connection closed between the check and the send
+        }
+    }
+
+    private List<LoadClient> connectClients(final URI serverUri, final int clientCount, final LoadClient.LoadStatistics statistics)
+            throws InterruptedException {
+
+        final List<LoadClient> clients = new ArrayList<>(clientCount);
+        final List<CountDownLatch> joined = new ArrayList<>(clientCount);
+
+        for (int i = 0; i < clientCount; i++) {
+
+            final LoadClient client = new LoadClient(serverUri, "client-" + i, statistics);
+            clients.add(client);
+            joined.add(client.start());
+        }
+
+        for (CountDownLatch latch : joined) {
+
+            if (!latch.await(60, TimeUnit.SECONDS)) {throw new IllegalStateException("clients did not join within 60 seconds");}
+        }
+
+        return clients;
+    }
+
+    private DatabaseConnectionController createStorage(final Path storageDirectory) {
+
+        final String storage = argument("storage", "memory");
+
+        return switch (storage.toLowerCase()) {
+
+            case "memory" -> new InMemoryDatabaseConnection();
+            case "h2" -> new EmbeddedDatabaseConnection(new Properties(), storageDirectory.resolve("teamsocket"));
+            case "log" -> new SegmentedLogDatabaseConnection(storageDirectory);
+            default -> throw new IllegalArgumentException("unknown storage " + storage);
+        };
+    }
+
+    private String argument(final String key, final String defaultValue) {
+
+        return arguments.getOrDefault(key, defaultValue);
+    }
+
+    private static int awaitPort(final NoGuiServer server) throws InterruptedException {
+
+        for (int attempt = 0; attempt < 500; attempt++) {
+
+            if (server.getPort() > 0) {return server.getPort();}
+
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+
+        throw new IllegalStateException("server did not start");
+    }
+
+    /**
+     @return the cumulated shares of text, link, picture and typing
+     */
+    private static int[] parseMix(final String mix) {
+
+        final Map<String, Integer> shares = new HashMap<>();
+
+        for (String share : mix.split(",")) {
+
+            final String[] nameShare = share.split(":", 2);
+            shares.put(nameShare[0].trim(), Integer.parseInt(nameShare[1].trim()));
+        }
+
+        final int[] cumulated = new int[4];
+        int sum = 0;
+
+        for (int i = 0; i < cumulated.length; i++) {
+
+            sum += shares.getOrDefault(List.of("text", "link", "picture", "typing").get(i), 0);
+            cumulated[i] = sum;
+        }
+
+        if (sum == 0) {throw new IllegalArgumentException("the mix needs at least one share");}
+
+        return cumulated;
+    }
+
+    /**
+     A PNG of noise, it does not compress, like a photo.
+     */
+    private static byte[] createPicture(final int pictureBytes) {
+
+        final int side = Math.max(1, (int) Math.sqrt(pictureBytes / 3.0));
+        final BufferedImage image = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+        final Random random = new Random(42);
+
+        for (int y = 0; y < side; y++) {
+
+            for (int x = 0; x < side; x++) {
+
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+
+            ImageIO.write(image, "png", outputStream);
+            return outputStream.toByteArray();
+
+        } catch (IOException e) {
+
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String percentiles(final Histogram histogram, final boolean withP999) {
+
+        if (histogram.getTotalCount() == 0) {return "-";}
+
+        final StringBuilder percentiles = new StringBuilder().append(millis(histogram.getValueAtPercentile(50)))
+                                                             .append('/').append(millis(histogram.getValueAtPercentile(99)));
+
+        if (withP999) {percentiles.append('/').append(millis(histogram.getValueAtPercentile(99.9)));}
+
+        return percentiles.append('/').append(millis(histogram.getMaxValue())).toString();
+    }
+
+    private static String millis(final long nanos) {
+
+        return String.format("%.2f", nanos / 1e6);
+    }
+}
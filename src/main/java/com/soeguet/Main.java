@@ -3,16 +3,35 @@ package com.soeguet;
 import com.soeguet.controller.MessagesController;
 import com.soeguet.controller.interfaces.MessagesControllerInterface;
 import com.soeguet.database.DatabaseConnection;
+import com.soeguet.database.EmbeddedDatabaseConnection;
+import com.soeguet.database.InstrumentedDatabaseConnection;
+import com.soeguet.database.WriteBehindDatabaseConnection;
 import com.soeguet.database.interfaces.DatabaseConnectionController;
+import com.soeguet.database.log.SegmentedLogDatabaseConnection;
+import com.soeguet.database.memory.InMemoryDatabaseConnection;
+import com.soeguet.images.FileSystemImageStore;
+import com.soeguet.images.ThumbnailGenerator;
+import com.soeguet.images.interfaces.ImageStore;
+import com.soeguet.metrics.MetricsHttpServer;
+import com.soeguet.metrics.MetricsMBean;
+import com.soeguet.metrics.MetricsRegistry;
 import com.soeguet.nogui.NoGuiServer;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
 import org.java_websocket.server.WebSocketServer;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -22,6 +41,17 @@ import java.util.logging.Logger;
  */
 public class Main {
 
+    //arguments that fall back to a default if they are not given
+    private static final List<String> OPTIONAL_ARGUMENTS = List.of("decodeThreads", "pipelineQueueCapacity", "writeBehind",
+                                                                 "writeBehindInterval", "writeBehindBatchSize", "writeBehindMaxAttempts",
+                                                                 "writeBehindDeadLetter", "outboundMaxFrames",
+                                                                 "outboundMaxBytes", "slowConsumerPolicy", "imageStore",
+                                                                 "imageStorePath", "historyImages", "thumbnails",
+                                                                 "thumbnailSize", "compression", "compressionThreshold",
+                                                                 "storage", "storagePath", "metricsPort",
+                                                                 "metricsHost", "jfr", "jfrFile", "typingInterval",
+                                                                 "typingTimeout");
+
     final Map<String, String> argumentsMap;
     private final Logger logger = Logger.getLogger(Main.class.getName());
 
@@ -50,6 +80,7 @@ public class Main {
 
     /**
      * Initializes the Properties object and sets the "ip" and "port" properties based on the parsed command line arguments.
+     * Optional arguments are only set if they were given.
      *
      * @return The initialized Properties object.
      */
@@ -60,6 +91,11 @@ public class Main {
         properties.setProperty("ip", parsedArgument("ip"));
         properties.setProperty("port", parsedArgument("port"));
 
+        for (String optionalArgument : OPTIONAL_ARGUMENTS) {
+
+            Optional.ofNullable(argumentsMap.get(optionalArgument)).ifPresent(value -> properties.setProperty(optionalArgument, value));
+        }
+
         return properties;
     }
 
@@ -69,21 +105,204 @@ public class Main {
      initializes the database settings, and initializes the database.
      Then, it creates a new MessagesController instance with the database connection controller.
      Finally, it creates a new NoGuiServer instance with the message controller and the properties.
+     All of them record their metrics in one registry, shown through JMX and, with "metricsPort", over HTTP.
+     With "jfr=true" a flight recording runs until the server is shut down.
 
      @param properties The properties object containing the "ip" and "port" settings.
      @return A new instance of the WebSocketServer class.
      */
     private WebSocketServer initializeWebSocketServer(final Properties properties) {
 
+        final MetricsRegistry metricsRegistry = new MetricsRegistry();
+        MetricsMBean.register(metricsRegistry);
+
         //dependency for message controller - handles all database interactions
-        DatabaseConnectionController databaseConnectionController = new DatabaseConnection(properties);
+        DatabaseConnectionController databaseConnectionController = new InstrumentedDatabaseConnection(initializeDatabaseConnection(properties),
+                                                                                                        metricsRegistry);
         databaseConnectionController.setDatabaseSettings();
         databaseConnectionController.initDatabase();
 
         //dependency for socket server - handles all messages
-        MessagesControllerInterface messagesControllerInterface = new MessagesController(databaseConnectionController);
+        final boolean lazyHistoryImages = "lazy".equalsIgnoreCase(properties.getProperty("historyImages", "inline"));
+        MessagesControllerInterface messagesControllerInterface = new MessagesController(databaseConnectionController,
+                                                                                         initializeImageStore(properties),
+                                                                                         lazyHistoryImages,
+                                                                                         initializeThumbnailGenerator(properties),
+                                                                                         metricsRegistry);
+
+        final NoGuiServer noGuiServer = new NoGuiServer(messagesControllerInterface, properties, metricsRegistry);
+        final MetricsHttpServer metricsHttpServer = initializeMetricsHttpServer(properties, metricsRegistry);
+        final Recording recording = initializeFlightRecording(properties);
+
+        //one hook for both, the server has to drain its pipeline before the database connections are released
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+
+            if (metricsHttpServer != null) {metricsHttpServer.close();}
+
+            shutdown(noGuiServer, databaseConnectionController);
+
+            //stopped last, so the recording covers the drain as well
+            if (recording != null) {
+
+                recording.stop();
+                recording.close();
+                logger.info("flight recording written to " + recording.getDestination());
+            }
+
+        }, "shutdown"));
+
+        return noGuiServer;
+    }
+
+    /**
+     Creates the database connection of the storage engine. "storage=postgresql" connects to the database given by the
+     environment, "storage=h2" keeps the messages in an embedded database file, "storage=log" in an append-only log of
+     segment files and "storage=memory" in memory only. With "writeBehind=true" new messages are queued and saved in
+     batches, which only applies to the database engines.
+
+     @param properties The properties object containing the optional storage and write-behind settings.
+     @return the database connection controller
+     */
+    private DatabaseConnectionController initializeDatabaseConnection(final Properties properties) {
+
+        final String storage = properties.getProperty("storage", "postgresql");
+
+        final DatabaseConnectionController databaseConnectionController = switch (storage.toLowerCase()) {
+
+            case "postgresql" -> new DatabaseConnection(properties);
+            case "h2" -> new EmbeddedDatabaseConnection(properties, Path.of(properties.getProperty("storagePath", "data/teamsocket")));
+            case "log" -> new SegmentedLogDatabaseConnection(Path.of(properties.getProperty("storagePath", "data/log")));
+            case "memory" -> new InMemoryDatabaseConnection();
+            default -> throw new IllegalArgumentException("unknown storage " + storage);
+        };
+
+        //the log and the memory have nothing to write behind, appending is as fast as queueing
+        if (!(databaseConnectionController instanceof DatabaseConnection databaseConnection)
+            || !Boolean.parseBoolean(properties.getProperty("writeBehind", "false"))) {
+
+            return databaseConnectionController;
+        }
+
+        final long flushInterval = Long.parseLong(properties.getProperty("writeBehindInterval", "10"));
+        final int batchSize = Integer.parseInt(properties.getProperty("writeBehindBatchSize", "100"));
+        final int maxAttempts = Integer.parseInt(properties.getProperty("writeBehindMaxAttempts", "5"));
+        final Path deadLetterPath = Path.of(properties.getProperty("writeBehindDeadLetter", "data/write-behind-dead-letter.jsonl"));
+
+        return new WriteBehindDatabaseConnection(databaseConnection, flushInterval, batchSize, maxAttempts, deadLetterPath);
+    }
+
+    /**
+     Starts the metrics endpoint if "metricsPort" is set. It listens on "metricsHost", by default on loopback only.
+
+     @param properties      The properties object containing the optional metrics settings.
+     @param metricsRegistry The metrics to serve.
+     @return the running endpoint, or null if no port is set
+     */
+    private MetricsHttpServer initializeMetricsHttpServer(final Properties properties, final MetricsRegistry metricsRegistry) {
+
+        final String metricsPort = properties.getProperty("metricsPort");
+
+        if (metricsPort == null) {return null;}
+
+        try {
+
+            return new MetricsHttpServer(metricsRegistry, new InetSocketAddress(properties.getProperty("metricsHost", "127.0.0.1"),
+                                                                                Integer.parseInt(metricsPort)));
+
+        } catch (IOException e) {
+
+            logger.log(Level.SEVERE, "Main > initializeMetricsHttpServer", e);
+            throw new RuntimeException(e);
+        }
+    }
 
-        return new NoGuiServer(messagesControllerInterface, properties);
+    /**
+     Starts a flight recording if "jfr=true" is set, with the default settings of the JDK plus the events of the server.
+     The recording is kept on disk for at most an hour and written to "jfrFile" when it stops, by default to
+     "teamsocket.jfr", to be opened in JDK Mission Control.
+
+     @param properties The properties object containing the optional flight recording settings.
+     @return the running recording, or null if none is requested
+     */
+    private Recording initializeFlightRecording(final Properties properties) {
+
+        if (!Boolean.parseBoolean(properties.getProperty("jfr", "false"))) {return null;}
+
+        try {
+
+            final Recording recording = new Recording(Configuration.getConfiguration("default"));
+            recording.setName("teamsocket");
+            recording.setToDisk(true);
+            recording.setMaxAge(Duration.ofHours(1));
+            recording.setDestination(Path.of(properties.getProperty("jfrFile", "teamsocket.jfr")));
+            recording.start();
+
+            logger.info("flight recording started");
+            return recording;
+
+        } catch (IOException | ParseException e) {
+
+            logger.log(Level.SEVERE, "Main > initializeFlightRecording", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     Creates the image store. With "imageStore=filesystem" pictures are written to disk, keyed by their content hash,
+     otherwise they stay in the database.
+
+     @param properties The properties object containing the optional image store settings.
+     @return the image store, or null if pictures are kept in the database
+     */
+    private ImageStore initializeImageStore(final Properties properties) {
+
+        final String imageStore = properties.getProperty("imageStore", "database");
+
+        return switch (imageStore.toLowerCase()) {
+
+            case "database" -> null;
+            case "filesystem" -> new FileSystemImageStore(Path.of(properties.getProperty("imageStorePath", "images")));
+            default -> throw new IllegalArgumentException("unknown imageStore " + imageStore);
+        };
+    }
+
+    /**
+     Creates the thumbnail generator. With "thumbnails=true" new pictures are broadcast as thumbnails.
+
+     @param properties The properties object containing the optional thumbnail settings.
+     @return the thumbnail generator, or null if pictures are broadcast in full
+     */
+    private ThumbnailGenerator initializeThumbnailGenerator(final Properties properties) {
+
+        if (!Boolean.parseBoolean(properties.getProperty("thumbnails", "false"))) {
+
+            return null;
+        }
+
+        return new ThumbnailGenerator(Integer.parseInt(properties.getProperty("thumbnailSize", "320")));
+    }
+
+    /**
+     Stops the socket server, waits until all accepted messages are persisted and closes the database afterward.
+
+     @param webSocketServer              the server to stop
+     @param databaseConnectionController the database to close once the server is stopped
+     */
+    private void shutdown(final WebSocketServer webSocketServer, final DatabaseConnectionController databaseConnectionController) {
+
+        try {
+
+            webSocketServer.stop(1000);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+        } finally {
+
+            databaseConnectionController.close();
+            logger.info("server shut down");
+        }
     }
 
     /**
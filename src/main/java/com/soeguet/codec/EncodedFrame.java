@@ -0,0 +1,135 @@
+package com.soeguet.codec;
+
+import java.nio.ByteBuffer;
+import java.util.function.Supplier;
+
+/**
+ A frame encoded for every wire format a client can negotiate.
+
+ <p>
+ The JSON encoding is created right away, the CBOR encoding on the first request and then shared, so a message is
+ encoded at most once per format, no matter how many clients receive it. The returned buffers are shared, callers
+ have to {@link ByteBuffer#duplicate()} them before reading.
+ </p>
+ */
+public final class EncodedFrame {
+
+    private enum Kind {MESSAGE, MARKER, TYPING}
+
+    // variables -- start
+    private final Kind kind;
+    private final ByteBuffer json;
+    private final Supplier<byte[]> cborEncoder;
+    private volatile ByteBuffer cbor;
+    // variables -- end
+
+    // constructors -- start
+    private EncodedFrame(final Kind kind, final byte[] json, final Supplier<byte[]> cborEncoder) {
+
+        this.kind = kind;
+        this.json = ByteBuffer.wrap(json);
+        this.cborEncoder = cborEncoder;
+    }
+    // constructors -- end
+
+    /**
+     A chat message or response: a text frame for JSON clients, a binary frame for CBOR clients.
+
+     @param json
+     the JSON encoding
+     @param cborEncoder
+     creates the CBOR encoding, called at most once
+
+     @return the frame
+     */
+    public static EncodedFrame message(final byte[] json, final Supplier<byte[]> cborEncoder) {
+
+        return new EncodedFrame(Kind.MESSAGE, json, cborEncoder);
+    }
+
+    /**
+     A control text like the end of the history, sent as the same text frame to every client.
+
+     @param text
+     the UTF-8 encoded text
+
+     @return the frame
+     */
+    public static EncodedFrame marker(final byte[] text) {
+
+        return new EncodedFrame(Kind.MARKER, text, null);
+    }
+
+    /**
+     A typing indicator, sent as binary frame to every client. Indicators that are not valid JSON are relayed as
+     they are.
+
+     @param json
+     the JSON encoded indicator
+
+     @return the frame
+     */
+    public static EncodedFrame typing(final byte[] json) {
+
+        return new EncodedFrame(Kind.TYPING, json, () -> {
+
+            try {
+
+                return WireTranscoder.jsonToCbor(json);
+
+            } catch (RuntimeException e) {
+
+                return json;
+            }
+        });
+    }
+
+    /**
+     Returns the encoding for a wire format.
+
+     @param wireFormat
+     the format of the receiving client
+
+     @return the shared payload
+     */
+    public ByteBuffer payload(final WireFormat wireFormat) {
+
+        if (wireFormat == WireFormat.JSON || cborEncoder == null) {return json;}
+
+        ByteBuffer encoded = this.cbor;
+
+        if (encoded == null) {
+
+            synchronized (this) {
+
+                encoded = this.cbor;
+
+                if (encoded == null) {
+
+                    encoded = ByteBuffer.wrap(cborEncoder.get());
+                    this.cbor = encoded;
+                }
+            }
+        }
+
+        return encoded;
+    }
+
+    /**
+     Tells whether the frame is sent as binary or as text frame.
+
+     @param wireFormat
+     the format of the receiving client
+
+     @return true for a binary frame
+     */
+    public boolean isBinary(final WireFormat wireFormat) {
+
+        return switch (kind) {
+
+            case MESSAGE -> wireFormat == WireFormat.CBOR;
+            case MARKER -> false;
+            case TYPING -> true;
+        };
+    }
+}
@@ -0,0 +1,99 @@
+package com.soeguet.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ A binary frame of a CBOR client, parsed once.
+
+ <p>
+ The tokens are buffered in order, so the frame can be bound to whatever its top-level fields call for without going
+ back to the bytes. A tree would not do: models write their type id and their {@code subclass} field under the same
+ name, and a tree keeps only the last of them. Byte strings, like the picture of a picture message, stay byte arrays.
+ </p>
+ */
+public final class InboundFrame {
+
+    private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+
+    // variables -- start
+    private final TokenBuffer tokens;
+    private final Set<String> fieldNames;
+    private final int size;
+    // variables -- end
+
+    // constructors -- start
+    private InboundFrame(final TokenBuffer tokens, final Set<String> fieldNames, final int size) {
+
+        this.tokens = tokens;
+        this.fieldNames = fieldNames;
+        this.size = size;
+    }
+    // constructors -- end
+
+    /**
+     @param frame
+     the CBOR encoded frame
+
+     @return the parsed frame
+
+     @throws IOException
+     if the frame is no valid CBOR or no map
+     */
+    public static InboundFrame readCbor(final byte[] frame) throws IOException {
+
+        try (JsonParser parser = CBOR_FACTORY.createParser(frame)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {throw new IOException("CBOR frame is no map");}
+
+            final TokenBuffer tokens = new TokenBuffer(parser);
+            final Set<String> fieldNames = new HashSet<>();
+
+            tokens.writeStartObject();
+
+            //each round copies a field name together with its value
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+                fieldNames.add(parser.currentName());
+                tokens.copyCurrentStructure(parser);
+            }
+
+            tokens.writeEndObject();
+
+            return new InboundFrame(tokens, fieldNames, frame.length);
+        }
+    }
+
+    /**
+     @param fieldName
+     the name of a top-level field
+
+     @return true if the frame has the field, whatever its value
+     */
+    public boolean has(final String fieldName) {
+
+        return fieldNames.contains(fieldName);
+    }
+
+    /**
+     @return a new parser over the buffered tokens, for binding the frame
+     */
+    public JsonParser asParser() {
+
+        return tokens.asParser();
+    }
+
+    /**
+     @return the size of the frame on the wire
+     */
+    public int size() {
+
+        return size;
+    }
+}
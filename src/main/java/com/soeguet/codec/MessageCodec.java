@@ -0,0 +1,187 @@
+package com.soeguet.codec;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.soeguet.model.jackson.BaseModel;
+import com.soeguet.model.jackson.PictureModel;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ Reads and writes the {@link BaseModel} hierarchy.
+
+ <p>
+ A client message is parsed exactly once. The streaming parser decodes the base64 picture straight into the byte
+ array of the model while it reads, and the stored form and every outbound frame are written from that one model
+ without parsing it again. The reader and the writers are created once and shared, they are immutable and
+ thread-safe.
+ </p>
+ */
+public class MessageCodec {
+
+    // variables -- start
+    private final Logger logger = Logger.getLogger(MessageCodec.class.getName());
+    private final ObjectMapper jsonMapper;
+    private final ObjectReader modelReader;
+    private final FrameWriters fullWriters;
+    private final FrameWriters pictureLessWriters;
+    // variables -- end
+
+    /**
+     Leaves the picture out of the stored form and of picture-less frames.
+     */
+    @JsonIgnoreProperties({"picture"})
+    private abstract static class PictureLessMixin {}
+
+    /**
+     The writers encoding one view of a model for every wire format.
+     */
+    private record FrameWriters(ObjectWriter json, ObjectWriter cbor) {}
+
+    // constructors -- start
+    public MessageCodec() {
+
+        jsonMapper = new ObjectMapper();
+        final CBORMapper cborMapper = new CBORMapper();
+
+        modelReader = jsonMapper.readerFor(BaseModel.class);
+        fullWriters = new FrameWriters(jsonMapper.writer(), cborMapper.writer());
+        pictureLessWriters = new FrameWriters(jsonMapper.copy().addMixIn(PictureModel.class, PictureLessMixin.class).writer(),
+                                              cborMapper.copy().addMixIn(PictureModel.class, PictureLessMixin.class).writer());
+    }
+    // constructors -- end
+
+    /**
+     Parses a JSON message into its model, picture included.
+
+     @param json
+     the JSON string
+
+     @return the model of the subclass named in the message
+
+     @throws RuntimeException
+     if the message can not be parsed
+     */
+    public BaseModel decode(final String json) {
+
+        try {
+
+            final BaseModel model = modelReader.readValue(json);
+
+            if (model == null) {throw new RuntimeException("deserializedModel is null");}
+
+            return model;
+
+        } catch (JsonProcessingException e) {
+
+            logger.log(Level.SEVERE, "MessageCodec > decode", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     Binds a frame of a CBOR client to its model. A picture sent as byte string is taken over as it is, without a
+     detour through base64.
+
+     @param message
+     the parsed frame
+
+     @return the model of the subclass named in the message
+
+     @throws RuntimeException
+     if the message does not fit a model
+     */
+    public BaseModel decode(final InboundFrame message) {
+
+        try (JsonParser parser = message.asParser()) {
+
+            final BaseModel model = modelReader.readValue(parser);
+
+            if (model == null) {throw new RuntimeException("deserializedModel is null");}
+
+            return model;
+
+        } catch (IOException e) {
+
+            logger.log(Level.SEVERE, "MessageCodec > decode", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     Copies a model without going through text, so a model that is already encoded can be changed in the copy.
+
+     @param model
+     the model to copy
+
+     @return an independent copy, picture included
+     */
+    public BaseModel copy(final BaseModel model) {
+
+        return jsonMapper.convertValue(model, BaseModel.class);
+    }
+
+    /**
+     Writes the form a model is stored in the messages table: JSON without the picture, which is kept apart.
+
+     @param model
+     the model to write
+
+     @return the JSON string
+
+     @throws RuntimeException
+     if the model can not be written
+     */
+    public String encodeForStorage(final BaseModel model) {
+
+        try {
+
+            return pictureLessWriters.json().writeValueAsString(model);
+
+        } catch (JsonProcessingException e) {
+
+            logger.log(Level.SEVERE, "MessageCodec > encodeForStorage", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     Encodes a model as JSON right away and as CBOR on first use. The model must not change afterward.
+
+     @param model
+     the model to encode
+     @param withPicture
+     false to leave the picture out
+
+     @return the encoded frame
+
+     @throws RuntimeException
+     if the model can not be written
+     */
+    public EncodedFrame encodeFrame(final BaseModel model, final boolean withPicture) {
+
+        final FrameWriters frameWriters = withPicture ? fullWriters : pictureLessWriters;
+
+        return EncodedFrame.message(write(frameWriters.json(), model), () -> write(frameWriters.cbor(), model));
+    }
+
+    private byte[] write(final ObjectWriter writer, final BaseModel model) {
+
+        try {
+
+            return writer.writeValueAsBytes(model);
+
+        } catch (JsonProcessingException e) {
+
+            logger.log(Level.SEVERE, "MessageCodec > write", e);
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.soeguet.codec;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.protocols.IProtocol;
+
+/**
+ The encoding a client receives and sends its messages in, negotiated with the websocket subprotocol.
+ */
+public enum WireFormat {
+
+    /**
+     Text frames with JSON, the default for clients that do not ask for a subprotocol.
+     */
+    JSON(""),
+
+    /**
+     Binary frames with CBOR. Pictures are sent as byte strings instead of base64 text.
+     */
+    CBOR("teamsocket-cbor");
+
+    private final String subprotocol;
+
+    WireFormat(final String subprotocol) {
+
+        this.subprotocol = subprotocol;
+    }
+
+    /**
+     Returns the format negotiated by a connection.
+
+     @param webSocket
+     the connection
+
+     @return the negotiated format, JSON if the handshake did not pick a subprotocol
+     */
+    public static WireFormat of(final WebSocket webSocket) {
+
+        final IProtocol protocol = webSocket.getProtocol();
+
+        if (protocol != null && CBOR.subprotocol.equals(protocol.getProvidedProtocol())) {
+
+            return CBOR;
+        }
+
+        return JSON;
+    }
+
+    public String getSubprotocol() {
+
+        return subprotocol;
+    }
+}
@@ -0,0 +1,80 @@
+package com.soeguet.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ Converts documents between JSON and CBOR token by token, without building a tree or binding to a model.
+ */
+public final class WireTranscoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+
+    private WireTranscoder() {
+
+    }
+
+    /**
+     Converts a JSON document to CBOR.
+
+     @param json
+     the UTF-8 encoded JSON document
+
+     @return the CBOR document
+
+     @throws UncheckedIOException
+     if the input is not valid JSON
+     */
+    public static byte[] jsonToCbor(final byte[] json) {
+
+        return transcode(JSON_FACTORY, CBOR_FACTORY, json, 0, json.length);
+    }
+
+    /**
+     Converts a CBOR document to JSON. Byte strings become base64 text.
+
+     @param cbor
+     the array holding the CBOR document
+     @param offset
+     the start of the document in the array
+     @param length
+     the length of the document
+
+     @return the UTF-8 encoded JSON document
+
+     @throws UncheckedIOException
+     if the input is not valid CBOR
+     */
+    public static byte[] cborToJson(final byte[] cbor, final int offset, final int length) {
+
+        return transcode(CBOR_FACTORY, JSON_FACTORY, cbor, offset, length);
+    }
+
+    private static byte[] transcode(final JsonFactory sourceFactory, final JsonFactory targetFactory, final byte[] source,
+                                    final int offset, final int length) {
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(length);
+
+        try (JsonParser parser = sourceFactory.createParser(source, offset, length);
+             JsonGenerator generator = targetFactory.createGenerator(outputStream)
+        ) {
+
+            if (parser.nextToken() == null) {throw new IOException("empty document");}
+
+            generator.copyCurrentStructure(parser);
+
+        } catch (IOException e) {
+
+            throw new UncheckedIOException(e);
+        }
+
+        return outputStream.toByteArray();
+    }
+}
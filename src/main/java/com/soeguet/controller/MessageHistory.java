@@ -0,0 +1,204 @@
+package com.soeguet.controller;
+
+import com.soeguet.codec.EncodedFrame;
+import com.soeguet.model.dtos.HistorySnapshot;
+import com.soeguet.model.jackson.BaseModel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ Fixed-capacity ring buffer of the most recent chat messages, indexed by their database id.
+
+ <p>
+ The history is written through by the {@link MessagesController} whenever a message is saved, edited, deleted or
+ reacted to, so joining clients can be served without querying the database. Once the buffer is full, appending a
+ message evicts the oldest one.
+ </p>
+ <p>
+ Next to every message the history keeps its encoded frame. Only the changed message is encoded again, the
+ {@link HistorySnapshot} handed to joining clients is rebuilt from the already encoded frames on the first request
+ after a change and then shared until the next change.
+ </p>
+ */
+public class MessageHistory {
+
+    // variables -- start
+    private final BaseModel[] ring;
+    private final EncodedFrame[] frames;
+    private final List<EncodedFrame> trailerFrames;
+    private final Map<Long, Integer> slotById;
+    private int head;
+    private int size;
+    private long version;
+    private volatile HistorySnapshot snapshot;
+    // variables -- end
+
+    // constructors -- start
+    public MessageHistory(final int capacity) {
+
+        this(capacity, List.of());
+    }
+
+    /**
+     @param capacity
+     the maximum number of messages kept in the history
+     @param trailerFrames
+     encoded frames appended to every snapshot after the messages
+     */
+    public MessageHistory(final int capacity, final List<EncodedFrame> trailerFrames) {
+
+        if (capacity < 1) {throw new IllegalArgumentException("capacity must be at least 1");}
+
+        this.ring = new BaseModel[capacity];
+        this.frames = new EncodedFrame[capacity];
+        this.trailerFrames = List.copyOf(trailerFrames);
+        this.slotById = new HashMap<>(capacity * 2);
+    }
+    // constructors -- end
+
+    /**
+     Appends a message as the newest entry, evicting the oldest entry if the buffer is full.
+
+     @param baseModel
+     the message to append, its id must be set
+     @param frame
+     the encoded message as it is sent to joining clients
+     */
+    public synchronized void append(final BaseModel baseModel, final EncodedFrame frame) {
+
+        final int slot = (head + size) % ring.length;
+
+        if (size == ring.length) {
+
+            //buffer is full -> the slot we write to holds the oldest entry
+            slotById.remove(ring[slot].getId());
+            head = (head + 1) % ring.length;
+
+        } else {
+
+            size++;
+        }
+
+        ring[slot] = baseModel;
+        frames[slot] = frame;
+        slotById.put(baseModel.getId(), slot);
+
+        invalidateSnapshot();
+    }
+
+    /**
+     Replaces the entry with the same id in place. Messages that already fell out of the buffer are ignored.
+
+     @param baseModel
+     the updated message, its id must be set
+     @param frame
+     the encoded updated message
+
+     @return true if the entry was part of the history and has been replaced
+     */
+    public synchronized boolean replace(final BaseModel baseModel, final EncodedFrame frame) {
+
+        final Integer slot = slotById.get(baseModel.getId());
+
+        if (slot == null) {return false;}
+
+        ring[slot] = baseModel;
+        frames[slot] = frame;
+
+        invalidateSnapshot();
+        return true;
+    }
+
+    /**
+     Looks up a message by its database id.
+
+     @param id
+     the database id of the message
+
+     @return the message, or an empty Optional if it is not part of the history
+     */
+    public synchronized Optional<BaseModel> get(final Long id) {
+
+        final Integer slot = slotById.get(id);
+
+        return slot == null ? Optional.empty() : Optional.of(ring[slot]);
+    }
+
+    /**
+     Returns all messages from oldest to newest.
+
+     @return a copy of the current history
+     */
+    public synchronized List<BaseModel> models() {
+
+        final List<BaseModel> messages = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+
+            messages.add(ring[(head + i) % ring.length]);
+        }
+
+        return messages;
+    }
+
+    /**
+     Returns the encoded history. The snapshot is only rebuilt if a message changed since the last call.
+
+     @return the current snapshot, shared by all callers
+     */
+    public HistorySnapshot snapshot() {
+
+        final HistorySnapshot current = this.snapshot;
+
+        if (current != null) {return current;}
+
+        synchronized (this) {
+
+            if (this.snapshot == null) {
+
+                final List<EncodedFrame> snapshotFrames = new ArrayList<>(size + trailerFrames.size());
+
+                for (int i = 0; i < size; i++) {
+
+                    snapshotFrames.add(frames[(head + i) % ring.length]);
+                }
+
+                snapshotFrames.addAll(trailerFrames);
+
+                this.snapshot = new HistorySnapshot(version, List.copyOf(snapshotFrames));
+            }
+
+            return this.snapshot;
+        }
+    }
+
+    /**
+     Returns the version of the history, incremented by every change.
+
+     @return the current version
+     */
+    public synchronized long version() {
+
+        return version;
+    }
+
+    public synchronized int size() {
+
+        return size;
+    }
+
+    public int capacity() {
+
+        return ring.length;
+    }
+
+    private void invalidateSnapshot() {
+
+        version++;
+        snapshot = null;
+    }
+}
@@ -1,93 +1,477 @@
 package com.soeguet.controller;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.soeguet.codec.EncodedFrame;
+import com.soeguet.codec.InboundFrame;
+import com.soeguet.codec.MessageCodec;
+import com.soeguet.codec.WireTranscoder;
 import com.soeguet.controller.interfaces.MessagesControllerInterface;
 import com.soeguet.database.interfaces.DatabaseConnectionController;
+import com.soeguet.images.ImageMetadataReader;
+import com.soeguet.images.ThumbnailGenerator;
+import com.soeguet.images.interfaces.ImageStore;
+import com.soeguet.jfr.HistoryEvent;
+import com.soeguet.jfr.ImagePersistEvent;
+import com.soeguet.jfr.MessageDecodeEvent;
+import com.soeguet.metrics.LatencyHistogram;
+import com.soeguet.metrics.MetricsRegistry;
 import com.soeguet.model.UserInteraction;
+import com.soeguet.model.dtos.BroadcastMessage;
+import com.soeguet.model.dtos.ClientResponse;
 import com.soeguet.model.dtos.DatabaseResult;
+import com.soeguet.model.dtos.DecodedMessage;
+import com.soeguet.model.dtos.HistorySnapshot;
+import com.soeguet.model.dtos.ImageDimensions;
 import com.soeguet.model.dtos.ReactionToSocketDTO;
-import com.soeguet.model.dtos.UpdatedReactionModelDTO;
+import com.soeguet.model.dtos.SearchResult;
+import com.soeguet.model.dtos.Thumbnail;
 import com.soeguet.model.jackson.BaseModel;
 import com.soeguet.model.jackson.LinkModel;
 import com.soeguet.model.jackson.MessageModel;
 import com.soeguet.model.jackson.PictureModel;
+import com.soeguet.util.EventTypes;
 import com.soeguet.util.MessageTypes;
+import com.soeguet.util.RequestTypes;
 
 import java.io.IOException;
-import java.util.ArrayDeque;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class MessagesController implements MessagesControllerInterface {
 
+    private static final int HISTORY_SIZE = 100;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int MAX_SEARCH_RESULTS = 50;
+    //deep pages of a ranked search get expensive, nobody reads that far anyway
+    private static final int MAX_SEARCH_OFFSET = 1_000;
+    private static final String STAGE_METRIC = "teamsocket_controller_seconds";
+    private static final String STAGE_HELP = "Time spent handling client messages by stage";
+    private static final String MESSAGES_METRIC = "teamsocket_messages_total";
+    private static final String MESSAGES_HELP = "Messages received from clients by type";
+
     private final Logger logger = Logger.getLogger(MessagesController.class.getName());
     private final DatabaseConnectionController databaseConnection;
     private final ObjectMapper mapper;
+    private final MessageCodec messageCodec;
+    private final MessageHistory history;
+    //null -> images are kept in the message_images table
+    private final ImageStore imageStore;
+    //true -> the history only describes pictures, clients request the bytes when they need them
+    private final boolean lazyHistoryImages;
+    //null -> pictures are broadcast in full
+    private final ThumbnailGenerator thumbnailGenerator;
+    private final LatencyHistogram decodeLatency;
+    private final LatencyHistogram persistLatency;
+    private final LatencyHistogram requestLatency;
+    private final LongAdder textMessages;
+    private final LongAdder linkMessages;
+    private final LongAdder imageMessages;
+    private final LongAdder editedMessages;
+    private final LongAdder deletedMessages;
+    private final LongAdder interactedMessages;
+    private final LongAdder reactions;
+    private final LongAdder requests;
 
     public MessagesController(final DatabaseConnectionController databaseConnection) {
 
+        this(databaseConnection, null, false);
+    }
+
+    public MessagesController(final DatabaseConnectionController databaseConnection, final ImageStore imageStore,
+                              final boolean lazyHistoryImages) {
+
+        this(databaseConnection, imageStore, lazyHistoryImages, null);
+    }
+
+    public MessagesController(final DatabaseConnectionController databaseConnection, final ImageStore imageStore,
+                              final boolean lazyHistoryImages, final ThumbnailGenerator thumbnailGenerator) {
+
+        this(databaseConnection, imageStore, lazyHistoryImages, thumbnailGenerator, new MetricsRegistry());
+    }
+
+    /**
+     @param databaseConnection
+     the database the messages are persisted in
+     @param imageStore
+     the store pictures are kept in, or null to keep them in the database
+     @param lazyHistoryImages
+     true to send pictures of the history only on request
+     @param thumbnailGenerator
+     creates the thumbnails broadcast instead of new pictures, or null to broadcast pictures in full
+     @param metricsRegistry
+     the registry the handled messages and their timings are recorded in
+     */
+    public MessagesController(final DatabaseConnectionController databaseConnection, final ImageStore imageStore,
+                              final boolean lazyHistoryImages, final ThumbnailGenerator thumbnailGenerator,
+                              final MetricsRegistry metricsRegistry) {
+
         this.databaseConnection = databaseConnection;
+        this.imageStore = imageStore;
+        this.lazyHistoryImages = lazyHistoryImages;
+        this.thumbnailGenerator = thumbnailGenerator;
+        decodeLatency = metricsRegistry.histogram(STAGE_METRIC, STAGE_HELP, "stage", "decode");
+        persistLatency = metricsRegistry.histogram(STAGE_METRIC, STAGE_HELP, "stage", "persist");
+        requestLatency = metricsRegistry.histogram(STAGE_METRIC, STAGE_HELP, "stage", "request");
+        textMessages = metricsRegistry.counter(MESSAGES_METRIC, MESSAGES_HELP, "type", "text");
+        linkMessages = metricsRegistry.counter(MESSAGES_METRIC, MESSAGES_HELP, "type", "link");
+        imageMessages = metricsRegistry.counter(MESSAGES_METRIC, MESSAGES_HELP, "type", "image");
+        editedMessages = metricsRegistry.counter(MESSAGES_METRIC, MESSAGES_HELP, "type", "edited");
+        deletedMessages = metricsRegistry.counter(MESSAGES_METRIC, MESSAGES_HELP, "type", "deleted");
+        interactedMessages = metricsRegistry.counter(MESSAGES_METRIC, MESSAGES_HELP, "type", "interacted");
+        reactions = metricsRegistry.counter(MESSAGES_METRIC, MESSAGES_HELP, "type", "reaction");
+        requests = metricsRegistry.counter(MESSAGES_METRIC, MESSAGES_HELP, "type", "request");
         mapper = new ObjectMapper();
+        messageCodec = new MessageCodec();
+        //additional information for the new client, sent after the history
+        history = new MessageHistory(HISTORY_SIZE, List.of(EncodedFrame.marker("__startup__end__".getBytes(StandardCharsets.UTF_8)),
+                                                           EncodedFrame.marker("welcome to the server".getBytes(StandardCharsets.UTF_8))));
+
+        //the database is only read once, afterwards every change is written through to the history
+        loadHistoryFromDatabase();
+    }
+
+    /**
+     Retrieves the last 100 messages as pre-encoded JSON frames, followed by the startup markers.
+
+     <p>
+     The frames are encoded once when a message changes and shared by every joining client.
+     </p>
+
+     @return the current history snapshot
+     */
+    @Override
+    public HistorySnapshot retrieveLast100Messages() {
+
+        final HistoryEvent historyEvent = new HistoryEvent();
+        historyEvent.begin();
+
+        final HistorySnapshot snapshot = history.snapshot();
+
+        historyEvent.end();
+
+        if (historyEvent.shouldCommit()) {
+
+            historyEvent.frames = snapshot.frames().size();
+            historyEvent.version = snapshot.version();
+            historyEvent.commit();
+        }
+
+        return snapshot;
+    }
+
+    @Override
+    public String onMessageFromClient(final String message) {
+
+        final BroadcastMessage broadcastMessage = persistMessageFromClient(decodeMessageFromClient(message));
+
+        return broadcastMessage == null ? null : broadcastMessage.message();
+    }
+
+    /**
+     Checks whether a text message is a request to be answered to its sender instead of a chat message.
+
+     @param message
+     the JSON string sent by the client
+
+     @return true if the message is a request
+     */
+    @Override
+    public boolean isClientRequest(final String message) {
+
+        //a quoted key can not appear unescaped inside a chat message
+        return message.contains("\"requestType\"");
+    }
+
+    /**
+     Answers a client request. Does not change anything and may run in parallel with other messages.
+
+     <p>
+     An image request {@code {"requestType":"image","imageId":"..."}} is answered with a JSON header followed by the
+     image as binary frame. Images of the image store are handed out as mapped buffer, without copying them onto the
+     heap.
+     </p>
+     <p>
+     A history request {@code {"requestType":"history","beforeId":123,"limit":50,"includeImages":false}} is answered
+     with a JSON header followed by up to {@code limit} messages older than {@code beforeId}, oldest first. Without
+     {@code beforeId} the newest messages are sent. Pictures are only included if {@code includeImages} is true,
+     otherwise they carry their image id and are requested one by one.
+     </p>
+     <p>
+     A search request {@code {"requestType":"search","query":"...","limit":20,"offset":0}} is answered with a JSON
+     header listing the ids of the matching messages and snippets of their text, best match first.
+     </p>
+
+     @param message
+     the JSON request
+
+     @return the response to send to the requesting client
+     */
+    @Override
+    public ClientResponse handleClientRequest(final String message) {
+
+        final long start = System.nanoTime();
+        requests.increment();
+
+        try {
+
+            return answerClientRequest(message);
+
+        } finally {
+
+            requestLatency.recordSince(start);
+        }
+    }
+
+    /**
+     Answers a request of a CBOR client, see {@link #handleClientRequest(String)}.
+
+     @param request
+     the parsed frame of the request
+
+     @return the response to send to the requesting client
+     */
+    @Override
+    public ClientResponse handleClientRequest(final InboundFrame request) {
+
+        final long start = System.nanoTime();
+        requests.increment();
+
+        try (JsonParser parser = request.asParser()) {
+
+            final JsonNode tree = mapper.readTree(parser);
+            return answerClientRequest(tree);
+
+        } catch (IOException e) {
+
+            logger.log(Level.WARNING, "MessagesController > handleClientRequest - could not parse request", e);
+            return errorResponse("malformed request");
+
+        } finally {
+
+            requestLatency.recordSince(start);
+        }
+    }
+
+    private ClientResponse answerClientRequest(final String message) {
+
+        final JsonNode request;
+
+        try {
+
+            request = mapper.readTree(message);
+
+        } catch (JsonProcessingException e) {
+
+            logger.log(Level.WARNING, "MessagesController > handleClientRequest - could not parse request", e);
+            return errorResponse("malformed request");
+        }
+
+        return answerClientRequest(request);
+    }
+
+    private ClientResponse answerClientRequest(final JsonNode request) {
+
+        final String requestType = request.path("requestType").asText();
+
+        if (RequestTypes.IMAGE.equals(requestType)) {
+
+            return answerImageRequest(request.path("imageId").asText());
+        }
+
+        if (RequestTypes.HISTORY.equals(requestType)) {
+
+            return answerHistoryRequest(request.path("beforeId").asLong(Long.MAX_VALUE),
+                                        request.path("limit").asInt(DEFAULT_PAGE_SIZE),
+                                        request.path("includeImages").asBoolean(false));
+        }
+
+        if (RequestTypes.SEARCH.equals(requestType)) {
+
+            return answerSearchRequest(request.path("query").asText(), request.path("limit").asInt(MAX_SEARCH_RESULTS),
+                                       request.path("offset").asInt(0));
+        }
+
+        return errorResponse("unknown requestType " + requestType);
     }
 
     /**
-     Retrieves the last 100 messages from the database and serializes them to JSON.
+     Parses a message from a client, writes the form it is stored in and creates the thumbnail of a picture. Does not
+     touch the database or the history and may therefore run in parallel with other messages.
+
+     <p>
+     This is the only time the message is parsed, every later stage works with the decoded model.
+     </p>
 
-     @return a Deque of JSON strings representing the serialized messages
+     @param message
+     the JSON string sent by the client
+
+     @return the stored form of the message together with its model and thumbnail
 
      @throws RuntimeException
-     if there is an error retrieving or parsing the messages
+     if the message can not be parsed
      */
     @Override
-    public Deque<String> retrieveLast100Messages() {
+    public DecodedMessage decodeMessageFromClient(final String message) {
 
-        Deque<DatabaseResult> messageQueue = databaseConnection.getAllFromDatabase();
-        final Deque<String> jsonQueue = new ArrayDeque<>();
+        return decodeMessage(() -> decode(message, messageCodec.decode(message)), message.length());
+    }
+
+    /**
+     Binds a message of a CBOR client, see {@link #decodeMessageFromClient(String)}. The stored form is written from
+     the model.
 
-        if (messageQueue.isEmpty()) {return jsonQueue;}
+     @param message
+     the parsed frame of the message
+
+     @return the stored form of the message together with its model and thumbnail
 
-        do {
+     @throws RuntimeException
+     if the message does not fit a model
+     */
+    @Override
+    public DecodedMessage decodeMessageFromClient(final InboundFrame message) {
 
-            final DatabaseResult databaseRow = messageQueue.poll();
+        return decodeMessage(() -> decode(null, messageCodec.decode(message)), message.size());
+    }
 
-            final BaseModel baseModel = deserializeBaseModel(databaseRow.message());
-            baseModel.setId(databaseRow.id());
+    private DecodedMessage decodeMessage(final Supplier<DecodedMessage> decoder, final int messageSize) {
 
-            try {
+        final long start = System.nanoTime();
+        final MessageDecodeEvent decodeEvent = new MessageDecodeEvent();
+        decodeEvent.begin();
+        DecodedMessage decodedMessage = null;
 
-                if (baseModel instanceof PictureModel pictureModel) {
+        try {
 
-                    pictureModel.setPicture(databaseRow.image());
-                    String jsonString = mapper.writeValueAsString(pictureModel);
-                    jsonQueue.add(jsonString);
+            decodedMessage = decoder.get();
+            return decodedMessage;
 
-                } else {
+        } finally {
 
-                    String jsonString = mapper.writeValueAsString(baseModel);
-                    jsonQueue.add(jsonString);
-                }
+            decodeLatency.recordSince(start);
+            decodeEvent.end();
 
-            } catch (JsonProcessingException e) {
+            if (decodeEvent.shouldCommit()) {
 
-                throw new RuntimeException(e);
+                decodeEvent.subclass = decodedMessage == null ? "" : subclassOf(decodedMessage.baseModel());
+                decodeEvent.messageSize = messageSize;
+                decodeEvent.commit();
             }
+        }
+    }
+
+    /**
+     @return the subclass name of the model, the type id is not kept on the decoded model
+     */
+    private static String subclassOf(final BaseModel baseModel) {
+
+        return switch (baseModel) {
+
+            case MessageModel messageModel -> "text";
+            case PictureModel pictureModel -> "image";
+            case LinkModel linkModel -> "link";
+        };
+    }
+
+    /**
+     @param message
+     the JSON string sent by the client, stored as it is unless it is a picture; null to write the stored form from
+     the model
+     @param baseModel
+     the decoded model of the message
+     */
+    private DecodedMessage decode(final String message, final BaseModel baseModel) {
+
+        if (!(baseModel instanceof PictureModel pictureModel)) {
 
-        } while (!messageQueue.isEmpty());
+            return new DecodedMessage(message != null ? message : messageCodec.encodeForStorage(baseModel), baseModel);
+        }
+
+        //pictures are stored in their own table or the image store, the messages table only holds the rest
+        final String storedMessage = messageCodec.encodeForStorage(pictureModel);
+
+        if (thumbnailGenerator != null) {
 
-        //additional information for the new client
-        jsonQueue.add("__startup__end__");
-        jsonQueue.add("welcome to the server");
+            //decoding the picture is the most expensive step of a message, it must not run on the persist thread
+            return new DecodedMessage(storedMessage, baseModel, thumbnailGenerator.create(pictureModel.getPicture()).orElse(null));
+        }
 
-        return jsonQueue;
+        return new DecodedMessage(storedMessage, baseModel);
     }
 
+    /**
+     Persists a decoded message and writes it through to the history. Must be called in message order, one message
+     at a time.
+
+     @param decodedMessage
+     the decoded message
+
+     @return the message to broadcast together with the history version that contains it, or null if there is
+     nothing to broadcast
+
+     @throws RuntimeException
+     if the message type is unknown or the message could not be persisted
+     */
     @Override
-    public String onMessageFromClient(final String message) {
+    public BroadcastMessage persistMessageFromClient(final DecodedMessage decodedMessage) {
+
+        final long start = System.nanoTime();
 
-        final BaseModel baseModel = deserializeBaseModel(message);
+        try {
+
+            final BroadcastMessage broadcastMessage = persist(decodedMessage);
+            countMessage(decodedMessage.baseModel());
+
+            return broadcastMessage;
+
+        } finally {
+
+            persistLatency.recordSince(start);
+        }
+    }
+
+    /**
+     Counts a persisted message by its type.
+     */
+    private void countMessage(final BaseModel baseModel) {
+
+        final LongAdder messageCounter = switch (baseModel) {
+
+            case MessageModel messageModel -> switch (messageModel.getMessageType()) {
+
+                case MessageTypes.EDITED -> editedMessages;
+                case MessageTypes.DELETED -> deletedMessages;
+                case MessageTypes.INTERACTED -> interactedMessages;
+                default -> textMessages;
+            };
+            case PictureModel pictureModel -> imageMessages;
+            case LinkModel linkModel -> linkMessages;
+        };
+
+        messageCounter.increment();
+    }
+
+    private BroadcastMessage persist(final DecodedMessage decodedMessage) {
+
+        final String message = decodedMessage.storedMessage();
+        final BaseModel baseModel = decodedMessage.baseModel();
 
         if (baseModel instanceof MessageModel messageModel) {
 
@@ -97,256 +481,717 @@ public class MessagesController implements MessagesControllerInterface {
 
                     databaseConnection.replaceInDatabase(messageModel.getId(), message);
 
-                    return databaseConnection.retrieveUpdatedEntry(messageModel.getId());
+                    final String updatedEntry = databaseConnection.retrieveUpdatedEntry(messageModel.getId());
+
+                    if (updatedEntry == null) {
+
+                        logger.log(Level.WARNING, "MessagesController > message " + messageModel.getId() + " to update does not exist");
+                        return null;
+                    }
+
+                    final BaseModel updatedModel = toUpdatedModel(messageModel.getId(), updatedEntry);
+                    final boolean partOfHistory = updateHistoryEntry(updatedModel);
+
+                    //like the picture-less database entry, but with the reactions of their own table
+                    final EncodedFrame updateFrame = messageCodec.encodeFrame(updatedModel, false);
+
+                    //messages that fell out of the history were not part of any join, every client needs the update
+                    return new BroadcastMessage(updateFrame, partOfHistory ? history.version() : Long.MAX_VALUE);
                 }
 
                 //new message
                 default -> {
 
-                    databaseConnection.saveToDatabase(message);
+                    final DatabaseResult databaseRow = databaseConnection.saveToDatabaseAndReturnEntry(message);
 
-                    return initializeRetrievalOfLastMessageFromDatabase();
+                    return appendNewMessageToHistory(baseModel, databaseRow);
                 }
             }
 
-        } else if (baseModel instanceof PictureModel) {
+        } else if (baseModel instanceof PictureModel pictureModel) {
+
+            final Thumbnail thumbnail = decodedMessage.thumbnail();
+            final DatabaseResult databaseRow = processAndInitializePersistenceOfPictureMessage(pictureModel, message, thumbnail);
 
-            processAndInitializePersistenceOfPictureMessage(message);
-            return initializeRetrievalOfLastMessageFromDatabase();
+            return appendNewMessageToHistory(baseModel, databaseRow, thumbnail == null ? null : thumbnail.originalDimensions());
 
         } else if (baseModel instanceof LinkModel) {
 
-            databaseConnection.saveToDatabase(message);
+            final DatabaseResult databaseRow = databaseConnection.saveToDatabaseAndReturnEntry(message);
 
-            return initializeRetrievalOfLastMessageFromDatabase();
+            return appendNewMessageToHistory(baseModel, databaseRow);
 
         } else {
 
             throw new RuntimeException("unknown message type");
         }
-
     }
 
+    /**
+     Checks whether a binary frame is a reaction instead of a typing indicator.
+
+     @param array
+     the JSON encoded frame
+
+     @return true if the frame is a reaction
+     */
     @Override
     public boolean checkByteArrayForReaction(final byte[] array) {
 
-        //TODO implement this properly
+        //a quoted key can not appear unescaped inside a typing indicator
+        return new String(array, StandardCharsets.UTF_8).contains("\"reactionName\"");
+    }
 
-        JsonNode jsonNode;
+    /**
+     Parses a reaction. Does not touch the database or the history and may run in parallel with other messages.
 
-        try {
+     @param byteData
+     the JSON encoded reaction
+
+     @return the parsed reaction
+
+     @throws RuntimeException
+     if the reaction can not be parsed
+     */
+    @Override
+    public ReactionToSocketDTO decodeReaction(final byte[] byteData) {
 
-            jsonNode = mapper.readTree(array);
+        try {
 
-            return jsonNode.has("reactionName");
+            return mapper.readValue(byteData, ReactionToSocketDTO.class);
 
         } catch (IOException e) {
 
-            logger.log(Level.SEVERE, "MessageController > checkByteArrayForReaction", e);
-            logger.log(Level.SEVERE, "could not parse byte array to JsonNode, might be something else", e.getMessage());
+            logger.log(Level.SEVERE, "MessageController > decodeReaction", e);
+            logger.log(Level.SEVERE, "could not parse byte array to ReactionToSocketDTO, might be something else", e.getMessage());
 
-            return false;
+            throw new RuntimeException(e);
         }
     }
 
-    @Override
-    public UpdatedReactionModelDTO updateDatabaseEntryWithReaction(final byte[] byteData) {
+    /**
+     Binds a reaction of a CBOR client. Does not touch the database or the history and may run in parallel with other
+     messages.
 
-        ReactionToSocketDTO reactionToSocketDTO;
+     @param reaction
+     the parsed frame of the reaction
 
-        try {
+     @return the reaction
 
-            reactionToSocketDTO = mapper.readValue(byteData, ReactionToSocketDTO.class);
+     @throws RuntimeException
+     if the frame does not fit a reaction
+     */
+    @Override
+    public ReactionToSocketDTO decodeReaction(final InboundFrame reaction) {
 
-        } catch (IOException e) {
+        try (JsonParser parser = reaction.asParser()) {
 
-            logger.log(Level.SEVERE, "MessageController > checkByteArrayForReaction", e);
-            logger.log(Level.SEVERE, "could not parse byte array to ReactionToSocketDTO, might be something else", e.getMessage());
+            return mapper.readValue(parser, ReactionToSocketDTO.class);
 
+        } catch (IOException e) {
+
+            logger.log(Level.SEVERE, "MessageController > decodeReaction", e);
             throw new RuntimeException(e);
         }
+    }
+
+    /**
+     Appends a reaction to its message and writes it through to the history. Must be called in message order, one
+     message at a time.
+
+     <p>
+     The reaction is saved with a single insert, the message itself is not rewritten. Clients get a compact reaction
+     event instead of the whole message again.
+     </p>
+
+     @param reaction
+     the decoded reaction
+
+     @return the reaction event to broadcast, or null if the message does not exist
+
+     @throws RuntimeException
+     if the reaction could not be saved
+     */
+    @Override
+    public BroadcastMessage persistReaction(final ReactionToSocketDTO reaction) {
+
+        reactions.increment();
+
+        if (reaction.messageId() == null || reaction.reactionName() == null || reaction.clientName() == null) {
+
+            logger.log(Level.WARNING, "MessagesController > persistReaction - incomplete reaction " + reaction);
+            return null;
+        }
+
+        if (!databaseConnection.saveReactionToDatabase(reaction.messageId(), reaction.clientName(), reaction.reactionName())) {
+
+            logger.log(Level.WARNING, "MessagesController > message " + reaction.messageId() + " to react to does not exist");
+            return null;
+        }
+
+        final UserInteraction userInteraction = new UserInteraction(reaction.clientName(), reaction.reactionName());
 
-        //fetch entry
-        String databaseEntry = databaseConnection.getMessageFromDatabase(reactionToSocketDTO.messageId());
+        //the cached model is shared with frames that may still be encoded lazily, the reaction goes into a copy
+        final boolean partOfHistory = history.get(reaction.messageId()).map(cachedModel -> {
 
-        //deserialize entry
-        BaseModel baseModel = deserializeBaseModel(databaseEntry);
+            final BaseModel reactedModel = messageCodec.copy(cachedModel);
+            addUserInteractions(reactedModel, List.of(userInteraction));
 
-        baseModel.setMessageType(MessageTypes.INTERACTED);
+            return updateHistoryEntry(reactedModel);
 
-        //add reaction to entry
-        UserInteraction userInteraction = new UserInteraction(reactionToSocketDTO.clientName(), reactionToSocketDTO.reactionName());
-        baseModel.getUserInteractions().add(userInteraction);
+        }).orElse(false);
 
-        return new UpdatedReactionModelDTO(reactionToSocketDTO.messageId(), baseModel);
+        //messages that fell out of the history were not part of any join, every client needs the event
+        return new BroadcastMessage(encodeReactionEvent(reaction), partOfHistory ? history.version() : Long.MAX_VALUE);
     }
 
-    @Override
-    public void replaceDatabaseEntryWithUpdatedModel(final UpdatedReactionModelDTO updatedModel) {
+    /**
+     Fills the in-memory history with the last 100 messages from the database.
 
-        String serializedAndUpdatedBaseModel;
+     @throws RuntimeException
+     if there is an error retrieving or parsing the messages
+     */
+    private void loadHistoryFromDatabase() {
 
-        try {
+        final Deque<DatabaseResult> messageQueue = databaseConnection.getAllFromDatabase();
 
-            serializedAndUpdatedBaseModel = mapper.writeValueAsString(updatedModel.baseModel());
+        if (messageQueue.isEmpty()) {return;}
 
-        } catch (JsonProcessingException e) {
+        //one query for the reactions of the whole history
+        final Map<Long, List<UserInteraction>> reactions = databaseConnection.getReactionsFromDatabase(
+                messageQueue.stream().mapToLong(DatabaseResult::id).min().orElseThrow(),
+                messageQueue.stream().mapToLong(DatabaseResult::id).max().orElseThrow());
 
-            logger.log(Level.SEVERE, "MessageController > replaceDatabaseEntryWithUpdatedModel", e);
-            logger.log(Level.SEVERE, "could not serialize updated model to JSON", e.getMessage());
+        for (DatabaseResult databaseRow : messageQueue) {
 
-            throw new RuntimeException(e);
+            final BaseModel model = toBaseModel(databaseRow);
+            addUserInteractions(model, reactions.getOrDefault(databaseRow.id(), List.of()));
+            history.append(model, messageCodec.encodeFrame(model, !lazyHistoryImages));
         }
 
-        //save to the database
-        databaseConnection.replaceInDatabase(updatedModel.databaseId(), serializedAndUpdatedBaseModel);
+        logger.info("message history loaded - " + history.size() + " messages");
     }
 
-    @Override
-    public void sendUpdatedBaseModelToAllClients(final Long databaseId) {
+    /**
+     Replaces a message in the history with its updated model.
 
-        final String updatedDatabaseEntry = databaseConnection.retrieveUpdatedEntry(databaseId);
+     @param updatedModel
+     the updated model, its id must be set
 
+     @return true if the message is part of the history
+     */
+    private boolean updateHistoryEntry(final BaseModel updatedModel) {
 
+        return history.replace(updatedModel, messageCodec.encodeFrame(updatedModel, !lazyHistoryImages));
     }
 
     /**
-     Initializes the retrieval of the last message from the database and returns it as a JSON string.
+     Converts an updated database entry to its model. Pictures and their metadata are taken over from the history,
+     since the messages table only holds the picture-less model. Reactions are kept in their own table and added
+     as well.
 
-     @return a JSON string representing the last message from the database
+     @param id
+     the database id of the updated message
+     @param updatedEntry
+     the updated JSON string as stored in the database
 
-     @throws RuntimeException
-     if there is an error retrieving or parsing the message
+     @return the updated model including its id
      */
-    private String initializeRetrievalOfLastMessageFromDatabase() {
+    private BaseModel toUpdatedModel(final Long id, final String updatedEntry) {
+
+        final BaseModel updatedModel = messageCodec.decode(updatedEntry);
+        updatedModel.setId(id);
+
+        final Optional<BaseModel> cachedModel = history.get(id);
+        final List<UserInteraction> reactions = cachedModel.isPresent() ? cachedModel.get().getUserInteractions()
+                                                                        : databaseConnection.getReactionsFromDatabase(id, id).get(id);
+        addUserInteractions(updatedModel, reactions == null ? List.of() : reactions);
+
+        if (updatedModel instanceof PictureModel updatedPicture && updatedPicture.getPicture() == null) {
+
+            history.get(id)
+                   .filter(PictureModel.class::isInstance)
+                   .map(PictureModel.class::cast)
+                   .ifPresent(cachedPicture -> {
+
+                       updatedPicture.setPicture(cachedPicture.getPicture());
+                       updatedPicture.setThumbnail(cachedPicture.getThumbnail());
+                       updatedPicture.setImageId(cachedPicture.getImageId());
+                       updatedPicture.setImageSize(cachedPicture.getImageSize());
+                       updatedPicture.setImageWidth(cachedPicture.getImageWidth());
+                       updatedPicture.setImageHeight(cachedPicture.getImageHeight());
+                   });
+        }
 
-        final DatabaseResult databaseRow = databaseConnection.getLastFromDatabase();
+        return updatedModel;
+    }
 
-        try {
+    /**
+     Adds reactions to the user interactions of a model, leaving out those it already has.
 
-            //deserialize message
-            BaseModel model = deserializeBaseModel(databaseRow.message());
-            model.setId(databaseRow.id());
+     @param model
+     the model to add the reactions to, must not be shared yet
+     @param additions
+     the reactions to add, in the order they were saved
+     */
+    private static void addUserInteractions(final BaseModel model, final List<UserInteraction> additions) {
 
-            //if a picture, add it to the model
-            if (model instanceof PictureModel pictureModel) {
+        if (additions.isEmpty()) {return;}
 
-                pictureModel.setPicture(databaseRow.image());
-                return mapper.writeValueAsString(pictureModel);
-            }
+        final Set<UserInteraction> userInteractions = new LinkedHashSet<>();
 
-            //return model for broadcast
-            return mapper.writeValueAsString(model);
+        if (model.getUserInteractions() != null) {userInteractions.addAll(model.getUserInteractions());}
 
-        } catch (JsonProcessingException e) {
+        userInteractions.addAll(additions);
+        model.setUserInteractions(new ArrayList<>(userInteractions));
+    }
 
-            throw new RuntimeException(e);
+    /**
+     Encodes the event telling clients that a reaction was added to a message.
 
-        }
+     @param reaction
+     the saved reaction
+
+     @return the frame to broadcast
+     */
+    private EncodedFrame encodeReactionEvent(final ReactionToSocketDTO reaction) {
+
+        final ObjectNode event = mapper.createObjectNode();
+        event.put("eventType", EventTypes.REACTION);
+        event.put("messageId", reaction.messageId());
+        event.put("clientName", reaction.clientName());
+        event.put("reactionName", reaction.reactionName());
+
+        final byte[] json = event.toString().getBytes(StandardCharsets.UTF_8);
+
+        return EncodedFrame.message(json, () -> WireTranscoder.jsonToCbor(json));
     }
 
     /**
-     Saves an image and its associated metadata to the database.
+     Converts a database row to its model, attaching the picture if there is one.
 
-     @param message
-     the JSON string representing the picture model
+     @param databaseRow
+     the database row to convert
 
-     @throws RuntimeException
-     if there is an error saving the image to the database
+     @return the model including its database id
      */
-    private void processAndInitializePersistenceOfPictureMessage(String message) {
+    private BaseModel toBaseModel(final DatabaseResult databaseRow) {
 
-        //TODO explain this
-        PictureModel pictureModel = parseJsonToPictureModel(message);
+        return withDatabaseRow(messageCodec.decode(databaseRow.message()), databaseRow);
+    }
 
-        //extract picture
-        byte[] imageBytes = pictureModel.getPicture();
+    /**
+     Completes a model with the id, the picture and the thumbnail of its database row.
 
-        //remove it afterward from the model (images are stored in its own table, need to extract it first)
-        pictureModel.setPicture(null);
+     @param model
+     the model of the row
+     @param databaseRow
+     the database row of the model
 
-        //serialize the updated (image stripped) model to json
-        String updatedPictureModelJson = serializePictureModelToJson(pictureModel);
+     @return the completed model
+     */
+    private BaseModel withDatabaseRow(final BaseModel model, final DatabaseResult databaseRow) {
 
-        //save the message (message table is linked to the picture table) to the database and get id
-        long messageId = databaseConnection.saveMessageWithoutPictureToDatabase(updatedPictureModelJson);
+        return withDatabaseRow(model, databaseRow, null);
+    }
+
+    /**
+     Completes a model with the id, the picture and the thumbnail of its database row.
+
+     @param model
+     the model of the row
+     @param databaseRow
+     the database row of the model
+     @param pictureDimensions
+     the dimensions of the picture if they are known already, null to read them from the picture header
+
+     @return the completed model
+     */
+    private BaseModel withDatabaseRow(final BaseModel model, final DatabaseResult databaseRow,
+                                      final ImageDimensions pictureDimensions) {
+
+        model.setId(databaseRow.id());
+
+        if (model instanceof PictureModel pictureModel) {
+
+            //rows saved before the image store was enabled still carry their image
+            pictureModel.setPicture(databaseRow.image() != null ? databaseRow.image() : loadImage(databaseRow.imageHash()));
+
+            pictureModel.setThumbnail(databaseRow.thumbnail() != null ? databaseRow.thumbnail() : loadImage(databaseRow.thumbnailHash()));
+
+            //clients that do not get the picture right away need to know what to request
+            if (lazyHistoryImages || thumbnailGenerator != null) {attachImageMetadata(pictureModel, databaseRow, pictureDimensions);}
+        }
 
-        //save the image to its own image database
-        databaseConnection.saveExtractedImageToDatabaseInImageTable(messageId, imageBytes);
+        return model;
     }
 
     /**
-     Parses a JSON string representation of a message into a PictureModel object.
+     Describes the picture of a model, so clients can lay it out and request it later. Images of the image store are
+     requested by their content hash, all others by the id of their message.
 
-     @param message
-     the JSON string representing the message
+     @param pictureModel
+     the model, its picture must be set already
+     @param databaseRow
+     the database row of the model
+     @param pictureDimensions
+     the dimensions of the picture if they are known already, null to read them from the picture header
+     */
+    private void attachImageMetadata(final PictureModel pictureModel, final DatabaseResult databaseRow,
+                                     final ImageDimensions pictureDimensions) {
 
-     @return the parsed PictureModel object
+        final byte[] picture = pictureModel.getPicture();
 
-     @throws RuntimeException
-     if there is an error parsing the JSON
+        if (picture == null) {return;}
+
+        pictureModel.setImageId(databaseRow.imageHash() != null ? databaseRow.imageHash() : String.valueOf(databaseRow.id()));
+        pictureModel.setImageSize(picture.length);
+
+        //the decode stage read the dimensions of pictures it made a thumbnail of, only the others need their header read
+        final Optional<ImageDimensions> imageDimensions = pictureDimensions != null ? Optional.of(pictureDimensions)
+                                                                                    : ImageMetadataReader.readDimensions(picture);
+
+        imageDimensions.ifPresent(dimensions -> {
+
+            pictureModel.setImageWidth(dimensions.width());
+            pictureModel.setImageHeight(dimensions.height());
+        });
+    }
+
+    /**
+     Looks up the image of an image request: first in the image store, then in the history and at last in the
+     database.
+
+     @param imageId
+     the content hash or the message id of the image
+
+     @return the image header and data, or a header with "found":false
+     */
+    private ClientResponse answerImageRequest(final String imageId) {
+
+        final ObjectNode header = mapper.createObjectNode();
+        header.put("responseType", RequestTypes.IMAGE);
+        header.put("imageId", imageId);
+
+        final ByteBuffer image = findImage(imageId);
+
+        header.put("found", image != null);
+
+        if (image != null) {header.put("imageSize", image.remaining());}
+
+        return new ClientResponse(header.toString(), image);
+    }
+
+    /**
+     Reads a page of older messages from the database. The messages are keyed on their id, so the page is read from
+     the primary key index no matter how far back it is.
+
+     @param beforeId
+     the id the messages are older than, exclusive
+     @param requestedLimit
+     the requested number of messages, capped at {@value #MAX_PAGE_SIZE}
+     @param includeImages
+     true to send pictures and thumbnails along with their messages
+
+     @return the page header, followed by the encoded messages
+     */
+    private ClientResponse answerHistoryRequest(final long beforeId, final int requestedLimit, final boolean includeImages) {
+
+        if (beforeId < 1) {return errorResponse("beforeId must be positive");}
+
+        final int limit = Math.max(1, Math.min(requestedLimit, MAX_PAGE_SIZE));
+
+        //one row more than requested tells whether there is another page
+        final List<DatabaseResult> rows = databaseConnection.getPageFromDatabase(beforeId, limit + 1, includeImages);
+        final boolean hasMore = rows.size() > limit;
+        final List<DatabaseResult> page = hasMore ? rows.subList(1, rows.size()) : rows;
+
+        final Map<Long, List<UserInteraction>> reactions = page.isEmpty() ? Map.of()
+                                                                          : databaseConnection.getReactionsFromDatabase(page.get(0).id(),
+                                                                                                                        page.get(page.size() - 1).id());
+        final List<EncodedFrame> frames = new ArrayList<>(page.size());
+
+        for (DatabaseResult row : page) {
+
+            final BaseModel model = messageCodec.decode(row.message());
+
+            if (includeImages) {
+
+                withDatabaseRow(model, row);
+
+            } else {
+
+                model.setId(row.id());
+
+                //the picture is requested with its image id once it is needed
+                if (model instanceof PictureModel pictureModel) {
+
+                    pictureModel.setImageId(row.imageHash() != null ? row.imageHash() : String.valueOf(row.id()));
+                }
+            }
+
+            addUserInteractions(model, reactions.getOrDefault(row.id(), List.of()));
+            frames.add(messageCodec.encodeFrame(model, includeImages));
+        }
+
+        final ObjectNode header = mapper.createObjectNode();
+        header.put("responseType", RequestTypes.HISTORY);
+        header.put("beforeId", beforeId);
+        header.put("count", frames.size());
+        header.put("hasMore", hasMore);
+
+        //the beforeId of the next page
+        if (!page.isEmpty()) {header.put("oldestId", page.get(0).id());}
+
+        return new ClientResponse(header.toString(), frames, null);
+    }
+
+    /**
+     Searches the messages in the database. The clients look the messages up by their id, in their history or with a
+     history request.
+
+     @param query
+     the words to search for
+     @param requestedLimit
+     the requested number of results, capped at {@value #MAX_SEARCH_RESULTS}
+     @param offset
+     the number of results to skip, at most {@value #MAX_SEARCH_OFFSET}
+
+     @return the header listing the results
      */
-    private PictureModel parseJsonToPictureModel(final String message) {
+    private ClientResponse answerSearchRequest(final String query, final int requestedLimit, final int offset) {
+
+        if (query.isBlank()) {return errorResponse("query must not be empty");}
+
+        if (offset < 0 || offset > MAX_SEARCH_OFFSET) {return errorResponse("offset must be between 0 and " + MAX_SEARCH_OFFSET);}
+
+        final int limit = Math.max(1, Math.min(requestedLimit, MAX_SEARCH_RESULTS));
+
+        //one result more than requested tells whether there is another page
+        final List<SearchResult> results = databaseConnection.searchInDatabase(query.strip(), limit + 1, offset);
+        final boolean hasMore = results.size() > limit;
+
+        final ObjectNode header = mapper.createObjectNode();
+        header.put("responseType", RequestTypes.SEARCH);
+        header.put("query", query);
+        header.put("offset", offset);
+        header.put("hasMore", hasMore);
+
+        final ArrayNode resultNodes = header.putArray("results");
+
+        for (SearchResult result : hasMore ? results.subList(0, limit) : results) {
+
+            resultNodes.addObject()
+                       .put("messageId", result.messageId())
+                       .put("rank", result.rank())
+                       .put("snippet", result.snippet());
+        }
+
+        return new ClientResponse(header.toString(), null);
+    }
+
+    private ByteBuffer findImage(final String imageId) {
+
+        if (imageStore != null && imageStore.contains(imageId)) {
+
+            return imageStore.get(imageId).orElse(null);
+        }
+
+        final long messageId;
 
         try {
 
-            return mapper.readValue(message, PictureModel.class);
+            messageId = Long.parseLong(imageId);
 
-        } catch (JsonProcessingException e) {
+        } catch (NumberFormatException e) {
 
-            logger.log(Level.SEVERE, "Error parsing JSON", e);
-            throw new RuntimeException(e);
+            return null;
         }
+
+        final byte[] cachedPicture = history.get(messageId)
+                                            .filter(PictureModel.class::isInstance)
+                                            .map(model -> ((PictureModel) model).getPicture())
+                                            .orElse(null);
+
+        if (cachedPicture != null) {return ByteBuffer.wrap(cachedPicture);}
+
+        final byte[] storedPicture = databaseConnection.getImageFromDatabase(messageId);
+
+        return storedPicture == null ? null : ByteBuffer.wrap(storedPicture);
+    }
+
+    private ClientResponse errorResponse(final String reason) {
+
+        final ObjectNode header = mapper.createObjectNode();
+        header.put("responseType", RequestTypes.ERROR);
+        header.put("reason", reason);
+
+        return new ClientResponse(header.toString(), null);
     }
 
     /**
-     Serializes a PictureModel object to a JSON string.
+     Reads an image from the image store.
 
-     @param pictureModel
-     the PictureModel object to serialize
+     @param imageHash
+     the key of the image, may be null
+
+     @return the image data, or null if there is no such image
+     */
+    private byte[] loadImage(final String imageHash) {
+
+        if (imageHash == null) {return null;}
+
+        if (imageStore == null) {
+
+            logger.log(Level.WARNING, "MessagesController > loadImage - image " + imageHash + " is referenced, but no image store is configured");
+            return null;
+        }
+
+        return imageStore.get(imageHash).map(imageBuffer -> {
 
-     @return the JSON string representing the serialized PictureModel object
+            final byte[] imageBytes = new byte[imageBuffer.remaining()];
+            imageBuffer.get(imageBytes);
+            return imageBytes;
+
+        }).orElseGet(() -> {
+
+            logger.log(Level.WARNING, "MessagesController > loadImage - image " + imageHash + " is missing in the image store");
+            return null;
+        });
+    }
+
+    /**
+     Appends a freshly persisted message to the history and returns it encoded for the broadcast.
+
+     @param decodedModel
+     the model decoded from the client message, completed with its database row
+     @param databaseRow
+     the persisted row, as returned by the insert
+
+     @return the encoded message, with the history version containing it
 
      @throws RuntimeException
-     if there is an error parsing the JSON
+     if there is an error serializing the message
      */
-    private String serializePictureModelToJson(final PictureModel pictureModel) {
+    private BroadcastMessage appendNewMessageToHistory(final BaseModel decodedModel, final DatabaseResult databaseRow) {
 
-        try {
+        return appendNewMessageToHistory(decodedModel, databaseRow, null);
+    }
 
-            return mapper.writeValueAsString(pictureModel);
+    /**
+     Appends a freshly persisted message to the history and returns it encoded for the broadcast.
 
-        } catch (JsonProcessingException e) {
+     @param decodedModel
+     the model decoded from the client message, completed with its database row
+     @param databaseRow
+     the persisted row, as returned by the insert
+     @param pictureDimensions
+     the dimensions of the picture read while decoding it, null if they are not known
 
-            logger.log(Level.SEVERE, "Error parsing JSON", e);
-            throw new RuntimeException(e);
-        }
+     @return the encoded message, with the history version containing it
+
+     @throws RuntimeException
+     if there is an error serializing the message
+     */
+    private BroadcastMessage appendNewMessageToHistory(final BaseModel decodedModel, final DatabaseResult databaseRow,
+                                                       final ImageDimensions pictureDimensions) {
+
+        //no need to parse the stored form again, the decoded model only lacks what the database added
+        final BaseModel model = withDatabaseRow(decodedModel, databaseRow, pictureDimensions);
+        final EncodedFrame historyFrame = messageCodec.encodeFrame(model, !lazyHistoryImages);
+
+        //write through to the history, the same encoding is used for the broadcast unless pictures are left out
+        history.append(model, historyFrame);
+
+        return new BroadcastMessage(encodeBroadcastFrame(model, historyFrame), history.version());
     }
 
     /**
-     Deserializes the message into a BaseModel object.
+     Encodes a new message the way it is broadcast. Pictures with a thumbnail are broadcast without the picture,
+     clients request it with the image id once it is opened.
 
-     @param message
-     the message to deserialize
+     @param model
+     the new message
+     @param historyFrame
+     the message encoded for the history, reused if the encoding is the same
 
-     @return the deserialized BaseModel object
+     @return the frame to broadcast
 
      @throws RuntimeException
-     if there is an error while deserializing the message
+     if there is an error serializing the model
      */
-    private BaseModel deserializeBaseModel(final String message) {
+    private EncodedFrame encodeBroadcastFrame(final BaseModel model, final EncodedFrame historyFrame) {
 
-        try {
+        if (!(model instanceof PictureModel pictureModel)) {return historyFrame;}
 
-            BaseModel deserializedModel = mapper.readValue(message, BaseModel.class);
+        if (pictureModel.getThumbnail() != null) {return messageCodec.encodeFrame(model, false);}
 
-            if (deserializedModel == null) {throw new RuntimeException("deserializedModel is null");}
+        return lazyHistoryImages ? messageCodec.encodeFrame(model, true) : historyFrame;
+    }
 
-            return deserializedModel;
+    /**
+     Saves an image, its thumbnail and its associated metadata to the database.
 
-        } catch (JsonProcessingException e) {
+     @param pictureModel
+     the decoded picture model, including the picture
+     @param updatedPictureModelJson
+     the picture model as JSON without the picture, written while decoding
+     @param thumbnail
+     the thumbnail created while decoding, or null if there is none
 
-            throw new RuntimeException(e);
+     @return the persisted row, built from the generated id, the stored JSON, the image bytes and the thumbnail
+
+     @throws RuntimeException
+     if there is an error saving the image to the database
+     */
+    private DatabaseResult processAndInitializePersistenceOfPictureMessage(final PictureModel pictureModel,
+                                                                           final String updatedPictureModelJson,
+                                                                           final Thumbnail thumbnail) {
+
+        //images are stored in their own table or the image store, the message only keeps the rest
+        final byte[] imageBytes = pictureModel.getPicture();
+
+        //thumbnails are stored next to their picture
+        final byte[] thumbnailBytes = thumbnail == null ? null : thumbnail.data();
+
+        final ImagePersistEvent persistEvent = new ImagePersistEvent();
+        persistEvent.begin();
+
+        final DatabaseResult databaseRow;
+
+        if (imageStore != null) {
+
+            //identical images are stored once, the message only references the content hash
+            final String imageHash = imageStore.put(imageBytes);
+            final String thumbnailHash = thumbnailBytes == null ? null : imageStore.put(thumbnailBytes);
+            final long messageId = databaseConnection.saveMessageWithImageHashToDatabase(updatedPictureModelJson, imageHash,
+                                                                                        thumbnailHash);
+
+            databaseRow = new DatabaseResult(messageId, updatedPictureModelJson, imageBytes, imageHash, thumbnailBytes, thumbnailHash);
+
+        } else {
+
+            //save the message (message table is linked to the picture table) to the database and get id
+            long messageId = databaseConnection.saveMessageWithoutPictureToDatabase(updatedPictureModelJson);
+
+            //save the image to its own image database
+            databaseConnection.saveExtractedImageToDatabaseInImageTable(messageId, imageBytes, thumbnailBytes);
+
+            //everything of the row is in hand, no need to read it back
+            databaseRow = new DatabaseResult(messageId, updatedPictureModelJson, imageBytes, null, thumbnailBytes, null);
         }
+
+        persistEvent.end();
+
+        if (persistEvent.shouldCommit()) {
+
+            persistEvent.messageId = databaseRow.id();
+            persistEvent.imageSize = imageBytes == null ? 0 : imageBytes.length;
+            persistEvent.thumbnailSize = thumbnailBytes == null ? 0 : thumbnailBytes.length;
+            persistEvent.imageStore = imageStore != null;
+            persistEvent.commit();
+        }
+
+        return databaseRow;
     }
-}
\ No newline at end of file
+}
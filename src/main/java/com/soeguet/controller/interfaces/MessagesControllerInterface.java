@@ -1,19 +1,35 @@
 package com.soeguet.controller.interfaces;
 
-import com.soeguet.model.dtos.UpdatedReactionModelDTO;
-
-import java.util.Deque;
+import com.soeguet.codec.InboundFrame;
+import com.soeguet.model.dtos.BroadcastMessage;
+import com.soeguet.model.dtos.ClientResponse;
+import com.soeguet.model.dtos.DecodedMessage;
+import com.soeguet.model.dtos.HistorySnapshot;
+import com.soeguet.model.dtos.ReactionToSocketDTO;
 
 public interface MessagesControllerInterface {
 
-    Deque<String> retrieveLast100Messages();
+    HistorySnapshot retrieveLast100Messages();
 
     String onMessageFromClient(String message);
 
+    DecodedMessage decodeMessageFromClient(String message);
+
+    DecodedMessage decodeMessageFromClient(InboundFrame message);
+
+    BroadcastMessage persistMessageFromClient(DecodedMessage decodedMessage);
+
+    boolean isClientRequest(String message);
+
+    ClientResponse handleClientRequest(String message);
+
+    ClientResponse handleClientRequest(InboundFrame request);
+
     boolean checkByteArrayForReaction(byte[] array);
 
-    UpdatedReactionModelDTO updateDatabaseEntryWithReaction(byte[] byteData);
+    ReactionToSocketDTO decodeReaction(byte[] byteData);
+
+    ReactionToSocketDTO decodeReaction(InboundFrame reaction);
 
-    void replaceDatabaseEntryWithUpdatedModel(UpdatedReactionModelDTO updatedModel);
-    void sendUpdatedBaseModelToAllClients(Long databaseId);
+    BroadcastMessage persistReaction(ReactionToSocketDTO reaction);
 }
\ No newline at end of file
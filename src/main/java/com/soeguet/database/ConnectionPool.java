@@ -0,0 +1,315 @@
+package com.soeguet.database;
+
+import com.soeguet.model.dtos.PoolStatistics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ A small bounded pool of JDBC connections.
+
+ <p>
+ Connections handed out by {@link #acquire()} are proxies; calling {@link Connection#close()} on them returns the
+ physical connection to the pool instead of closing it. Connections that were idle for longer than the validation
+ interval are checked with {@link Connection#isValid(int)} before they are handed out again.
+ </p>
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    // variables -- start
+    private final Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+    private final ConnectionFactory connectionFactory;
+    private final int maxPoolSize;
+    private final long acquireTimeoutMillis;
+    private final long validationIntervalNanos;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<IdleConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final LongAdder totalAcquired = new LongAdder();
+    private final LongAdder totalCreated = new LongAdder();
+    private final LongAdder totalDiscarded = new LongAdder();
+    private final LongAdder acquireTimeouts = new LongAdder();
+    private volatile boolean closed;
+    // variables -- end
+
+    /**
+     Opens new physical connections for the pool.
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+
+        Connection create() throws SQLException;
+    }
+
+    private record IdleConnection(Connection connection, long idleSinceNanos) {}
+
+    // constructors -- start
+    public ConnectionPool(final ConnectionFactory connectionFactory, final int maxPoolSize,
+                          final long acquireTimeoutMillis, final long validationIntervalMillis) {
+
+        if (maxPoolSize < 1) {throw new IllegalArgumentException("maxPoolSize must be at least 1");}
+
+        this.connectionFactory = connectionFactory;
+        this.maxPoolSize = maxPoolSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(validationIntervalMillis);
+        this.permits = new Semaphore(maxPoolSize, true);
+    }
+    // constructors -- end
+
+    /**
+     Borrows a connection from the pool, opening a new one if no idle connection is available.
+
+     @return a pooled connection, closing it returns it to the pool
+
+     @throws SQLTimeoutException
+     if no connection became available within the acquire timeout
+     @throws SQLException
+     if a new physical connection could not be opened
+     */
+    public Connection acquire() throws SQLException {
+
+        if (closed) {throw new SQLException("connection pool is closed");}
+
+        try {
+
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+
+                acquireTimeouts.increment();
+                throw new SQLTimeoutException("no database connection available after " + acquireTimeoutMillis + " ms");
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for a database connection", e);
+        }
+
+        try {
+
+            final Connection physicalConnection = pollValidIdleConnection();
+
+            activeConnections.incrementAndGet();
+            totalAcquired.increment();
+
+            return wrap(physicalConnection);
+
+        } catch (SQLException | RuntimeException e) {
+
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     Returns the current usage of the pool.
+
+     @return a snapshot of the pool statistics
+     */
+    public PoolStatistics getStatistics() {
+
+        return new PoolStatistics(maxPoolSize, activeConnections.get(), idleConnections.size(),
+                                  permits.getQueueLength(), totalAcquired.sum(), totalCreated.sum(),
+                                  totalDiscarded.sum(), acquireTimeouts.sum());
+    }
+
+    /**
+     Closes all idle connections. Connections still in use are closed once they are returned.
+     */
+    @Override
+    public void close() {
+
+        closed = true;
+
+        IdleConnection idleConnection;
+
+        while ((idleConnection = idleConnections.pollFirst()) != null) {
+
+            discard(idleConnection.connection());
+        }
+    }
+
+    /**
+     Takes the most recently used idle connection that is still valid, or opens a new one.
+
+     @return a physical connection
+
+     @throws SQLException
+     if a new physical connection could not be opened
+     */
+    private Connection pollValidIdleConnection() throws SQLException {
+
+        IdleConnection idleConnection;
+
+        while ((idleConnection = idleConnections.pollFirst()) != null) {
+
+            if (isUsable(idleConnection)) {
+
+                return idleConnection.connection();
+            }
+
+            discard(idleConnection.connection());
+        }
+
+        final Connection connection = connectionFactory.create();
+        totalCreated.increment();
+
+        return connection;
+    }
+
+    /**
+     Checks an idle connection before handing it out. Connections that were only idle for a short time are trusted
+     without a round trip to the database.
+
+     @param idleConnection
+     the idle connection to check
+
+     @return true if the connection can be reused
+     */
+    private boolean isUsable(final IdleConnection idleConnection) {
+
+        try {
+
+            if (idleConnection.connection().isClosed()) {return false;}
+
+            if (System.nanoTime() - idleConnection.idleSinceNanos() < validationIntervalNanos) {return true;}
+
+            return idleConnection.connection().isValid(1);
+
+        } catch (SQLException e) {
+
+            logger.log(Level.WARNING, "ConnectionPool > isUsable", e);
+            return false;
+        }
+    }
+
+    /**
+     Puts a physical connection back into the pool, resetting any transaction state left behind by the borrower.
+
+     @param connection
+     the physical connection to return
+     */
+    private void release(final Connection connection) {
+
+        activeConnections.decrementAndGet();
+
+        try {
+
+            if (closed || connection.isClosed()) {
+
+                discard(connection);
+                return;
+            }
+
+            if (!connection.getAutoCommit()) {
+
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+
+            idleConnections.offerFirst(new IdleConnection(connection, System.nanoTime()));
+
+        } catch (SQLException e) {
+
+            logger.log(Level.WARNING, "ConnectionPool > release", e);
+            discard(connection);
+
+        } finally {
+
+            permits.release();
+        }
+    }
+
+    private void discard(final Connection connection) {
+
+        totalDiscarded.increment();
+
+        try {
+
+            connection.close();
+
+        } catch (SQLException e) {
+
+            logger.log(Level.WARNING, "ConnectionPool > discard", e);
+        }
+    }
+
+    private Connection wrap(final Connection physicalConnection) {
+
+        return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(), new Class<?>[]{Connection.class},
+                                                   new PooledConnectionHandler(physicalConnection));
+    }
+
+    /**
+     Delegates every call to the physical connection, except {@code close()} which hands the connection back to the
+     pool. A returned proxy cannot be used any longer.
+     */
+    private final class PooledConnectionHandler implements InvocationHandler {
+
+        private final Connection physicalConnection;
+        private boolean returned;
+
+        private PooledConnectionHandler(final Connection physicalConnection) {
+
+            this.physicalConnection = physicalConnection;
+        }
+
+        @Override
+        public synchronized Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+
+            switch (method.getName()) {
+
+                case "close" -> {
+
+                    if (!returned) {
+
+                        returned = true;
+                        release(physicalConnection);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+
+                    return returned || physicalConnection.isClosed();
+                }
+                case "equals" -> {
+
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+
+                    return "PooledConnection[" + physicalConnection + "]";
+                }
+                default -> {
+
+                    if (returned) {throw new SQLException("connection has already been returned to the pool");}
+
+                    try {
+
+                        return method.invoke(physicalConnection, args);
+
+                    } catch (InvocationTargetException e) {
+
+                        throw e.getCause();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,11 +1,21 @@
 package com.soeguet.database;
 
 import com.soeguet.database.interfaces.DatabaseConnectionController;
+import com.soeguet.database.migration.SchemaMigrator;
+import com.soeguet.jfr.DatabaseQueryEvent;
+import com.soeguet.model.UserInteraction;
 import com.soeguet.model.dtos.DatabaseResult;
+import com.soeguet.model.dtos.MessageColumns;
+import com.soeguet.model.dtos.PoolStatistics;
+import com.soeguet.model.dtos.SearchResult;
 
 import java.sql.*;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.logging.Level;
@@ -14,9 +24,15 @@ import java.util.logging.Logger;
 public class DatabaseConnection implements DatabaseConnectionController {
 
     // variables -- start
+    private static final String MESSAGE_COLUMNS = "message, payload, sender, message_type, subclass";
     private final Logger logger = Logger.getLogger(DatabaseConnection.class.getName());
     private final Properties properties;
     private String dbPath;
+    private int maxPoolSize = 8;
+    private long acquireTimeoutMillis = 5_000;
+    private long validationIntervalMillis = 30_000;
+    private volatile ConnectionPool connectionPool;
+    private volatile SqlDialect sqlDialect;
     // variables -- end
 
     // constructors -- start
@@ -102,66 +118,50 @@ public class DatabaseConnection implements DatabaseConnectionController {
     }
 
     /**
-     Initializes the database by creating the necessary table if it does not already exist.
+     Binds a message and the columns extracted from it: the JSON document and the indexed sender, message type and
+     subclass. Messages that are not valid JSON are stored as text only.
 
-     @param sqlQuery
-     the SQL statement to create the table
-     */
-    private void initiateDatabaseQuery(String databaseName, String sqlQuery) {
-
-        if (!checkIfTableExists(databaseName)) {
+     @param preparedStatement
+     the statement containing the placeholders of {@link #MESSAGE_COLUMNS}
+     @param index
+     the index of the first placeholder
+     @param message
+     the message JSON as it is stored
 
-            try (Connection connection = DriverManager.getConnection(this.getDbPath(), this.getProperties());
-                 Statement statement = connection.createStatement()
-            ) {
+     @return the index of the placeholder after the message columns
+     */
+    private int bindMessageColumns(final PreparedStatement preparedStatement, final int index, final String message) throws SQLException {
 
-                statement.executeUpdate(sqlQuery);
-                this.logger.info("table created successfully - database table: " + databaseName);
+        final MessageColumns columns = MessageColumnReader.read(message);
 
-            } catch (SQLException e) {
+        preparedStatement.setString(index, message);
+        preparedStatement.setString(index + 1, columns.validJson() ? message : null);
+        preparedStatement.setString(index + 2, columns.sender());
+        preparedStatement.setObject(index + 3, columns.messageType(), Types.SMALLINT);
+        preparedStatement.setString(index + 4, columns.subclass());
 
-                this.logger.log(Level.SEVERE, "DatabaseConnection > initiateDatabaseQuery");
-                logger.log(Level.SEVERE, "Error creating table", e);
-                throw new RuntimeException(e);
-            }
-        }
+        return index + 5;
     }
 
     /**
-     Saves a message to the database and returns the generated ID.
-
-     <p>
-     This method saves a message to the specified database using a prepared statement. The generated ID is fetched from
-     the result set and returned as a long value. If no ID is generated, a SQLException is thrown.
-     </p>
-
-     @param preparedStatement
-     the PreparedStatement object for executing the SQL query
-
-     @return the generated ID for the saved message
+     @return the placeholders matching {@link #MESSAGE_COLUMNS} in the dialect of the database
      */
-    private long saveToDataBaseAndReturnId(final PreparedStatement preparedStatement) {
-
-        // fetch generated ID
-        try (ResultSet resultSet = preparedStatement.executeQuery()) {
-
-            if (resultSet.next()) {
+    private String messageColumnPlaceholders(final Connection connection) throws SQLException {
 
-                return resultSet.getLong("id");
+        return "?, " + getSqlDialect(connection).getJsonParameter() + ", ?, ?, ?";
+    }
 
-            } else {
+    private SqlDialect getSqlDialect(final Connection connection) throws SQLException {
 
-                this.logger.log(Level.SEVERE, "DatabaseConnection > saveToDataBaseAndReturnId");
-                logger.log(Level.SEVERE, "Error saving message to database");
-                throw new SQLException("no ID generated");
-            }
+        SqlDialect dialect = this.sqlDialect;
 
-        } catch (SQLException e) {
+        if (dialect == null) {
 
-            this.logger.log(Level.SEVERE, "DatabaseConnection > saveToDataBaseAndReturnId");
-            logger.log(Level.SEVERE, "Error saving message to database", e);
-            throw new RuntimeException(e);
+            dialect = SqlDialect.of(connection);
+            this.sqlDialect = dialect;
         }
+
+        return dialect;
     }
 
     // overrides -- start
@@ -177,7 +177,7 @@ public class DatabaseConnection implements DatabaseConnectionController {
     @Override
     public boolean checkIfTableExists(String tableName) {
 
-        try (Connection connection = DriverManager.getConnection(this.getDbPath(), this.getProperties());
+        try (Connection connection = getDatabaseConnection();
              ResultSet resultSet = connection.getMetaData().getTables(null, null, tableName, null)
         ) {
 
@@ -199,24 +199,29 @@ public class DatabaseConnection implements DatabaseConnectionController {
     }
 
     /**
-     Initializes the database by creating the necessary table if it does not already exist.
+     Initializes the database by applying all schema migrations it has not seen yet.
+
+     @throws RuntimeException
+     if a migration fails
      */
     @Override
     public void initDatabase() {
 
-        String createTableSql = """
-                                    CREATE TABLE
-                                    IF NOT EXISTS messages (id BIGSERIAL PRIMARY KEY,
-                                    message VARCHAR(2255) NOT NULL);
-                                """;
-        String createTableSqlImages = """
-                                        CREATE TABLE IF NOT EXISTS message_images (id BIGSERIAL PRIMARY KEY,
-                                        message_id BIGINT REFERENCES messages(id),
-                                        image_data bytea NOT NULL);
-                                      """;
+        try (Connection connection = getDatabaseConnection()) {
+
+            final int appliedMigrations = new SchemaMigrator(500).migrate(connection);
 
-        initiateDatabaseQuery("messages", createTableSql);
-        initiateDatabaseQuery("message_images", createTableSqlImages);
+            if (appliedMigrations > 0) {
+
+                this.logger.info("database schema migrated - applied migrations: " + appliedMigrations);
+            }
+
+        } catch (SQLException e) {
+
+            this.logger.log(Level.SEVERE, "DatabaseConnection > initDatabase");
+            logger.log(Level.SEVERE, "Error migrating the database schema", e);
+            throw new RuntimeException(e);
+        }
     }
 
     /**
@@ -261,61 +266,200 @@ public class DatabaseConnection implements DatabaseConnectionController {
 
         //db_ssl - hardcoded for now, since it is not used yet
         this.properties.setProperty("ssl", "false");
+
+        //connection pool - optional, defaults are fine for a small team
+        retrieveEnvironmentVariables("DB_POOL_SIZE").ifPresent(size -> this.maxPoolSize = Integer.parseInt(size));
+        retrieveEnvironmentVariables("DB_POOL_TIMEOUT").ifPresent(timeout -> this.acquireTimeoutMillis = Long.parseLong(timeout));
+        retrieveEnvironmentVariables("DB_POOL_VALIDATION_INTERVAL").ifPresent(interval -> this.validationIntervalMillis = Long.parseLong(interval));
+    }
+
+    /**
+     Fetches the 100 newest messages from the database, along with their images (if available).
+
+     @return a Deque of DatabaseResult objects representing the retrieved messages, from oldest to newest
+
+     @throws RuntimeException
+     if there is an error retrieving the messages from the database
+     */
+    @Override
+    public Deque<DatabaseResult> getAllFromDatabase() {
+
+        return new ArrayDeque<>(getPageFromDatabase(Long.MAX_VALUE, 100, true));
     }
 
     /**
-     Fetches all messages from the database.
+     Fetches a page of messages older than the given id.
 
      <p>
-     This method retrieves all messages from the database by executing the specified SQL query. The messages are fetched
-     along with their IDs and image data (if available). The results are stored in a Deque of DatabaseResult objects and
-     returned. If there is an error executing the query, a SQLException is thrown.
+     The page is cut from the primary key index first and only its rows are joined with their images, so neither the
+     whole table nor the whole join is sorted. Without images the image table is not read at all.
      </p>
 
-     @return a Deque of DatabaseResult objects representing the retrieved messages
+     @param beforeId
+     the id the messages are older than, exclusive
+     @param limit
+     the maximum number of messages
+     @param withImages
+     true to join the images and thumbnails of the image table
+
+     @return the messages of the page, from oldest to newest
 
      @throws RuntimeException
      if there is an error retrieving the messages from the database
      */
     @Override
-    public synchronized Deque<DatabaseResult> getAllFromDatabase() {
+    public List<DatabaseResult> getPageFromDatabase(final long beforeId, final int limit, final boolean withImages) {
 
-        final String SELECT_SQL = """
-            SELECT *
-            FROM (SELECT messages.id, messages.message, message_images.image_data
+        final String PAGE_SQL = """
+            (SELECT id, message, image_hash, thumbnail_hash
             FROM messages
-            LEFT JOIN message_images
-            ON messages.id = message_images.message_id
-            ORDER BY messages.id DESC LIMIT 100)
-            AS tmp
-            ORDER BY tmp.id
-            ASC;
+            WHERE id < ?
+            ORDER BY id DESC
+            LIMIT ?)
+            AS page
         """;
+        final String SELECT_SQL = withImages ? """
+                                                 SELECT page.*, message_images.image_data, message_images.thumbnail_data
+                                                 FROM %s
+                                                 LEFT JOIN message_images
+                                                 ON page.id = message_images.message_id
+                                                 ORDER BY page.id ASC;
+                                               """.formatted(PAGE_SQL)
+                                             : """
+                                                 SELECT page.*
+                                                 FROM %s
+                                                 ORDER BY page.id ASC;
+                                               """.formatted(PAGE_SQL);
+
+        List<DatabaseResult> page = new ArrayList<>(limit);
+        final DatabaseQueryEvent queryEvent = DatabaseQueryEvent.start("get_page");
 
-        Deque<DatabaseResult> messageQueue = new ArrayDeque<>();
-
-        // actual query
-        try (Connection connection = DriverManager.getConnection(dbPath, this.properties);
-             Statement statement = connection.createStatement();
-             ResultSet resultSet = statement.executeQuery(SELECT_SQL)
+        try (Connection connection = getDatabaseConnection();
+             PreparedStatement preparedStatement = getPreparedStatement(connection, SELECT_SQL)
         ) {
 
-            while (resultSet.next()) {
+            preparedStatement.setLong(1, beforeId);
+            preparedStatement.setInt(2, limit);
 
-                final long id = resultSet.getLong("id");
-                final String message = resultSet.getString("message");
-                final byte[] image = resultSet.getBytes("image_data");
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
 
-                messageQueue.add(new DatabaseResult(id, message, image));
+                while (resultSet.next()) {
+
+                    final long id = resultSet.getLong("id");
+                    final String message = resultSet.getString("message");
+                    final byte[] image = withImages ? resultSet.getBytes("image_data") : null;
+                    final String imageHash = resultSet.getString("image_hash");
+                    final byte[] thumbnail = withImages ? resultSet.getBytes("thumbnail_data") : null;
+                    final String thumbnailHash = resultSet.getString("thumbnail_hash");
+
+                    page.add(new DatabaseResult(id, message, image, imageHash, thumbnail, thumbnailHash));
+                }
             }
 
-            return messageQueue;
+            queryEvent.finish(page.size());
+            return page;
 
         } catch (SQLException e) {
 
-            this.logger.log(Level.SEVERE, "DatabaseConnection > getAllFromDatabase");
-            logger.log(Level.SEVERE, "Error retrieving all messages from database", e);
-            throw new RuntimeException(e.getSQLState());
+            this.logger.log(Level.SEVERE, "DatabaseConnection > getPageFromDatabase");
+            logger.log(Level.SEVERE, "Error retrieving a page of messages from database", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     Searches the text of messages, link comments and picture descriptions.
+
+     <p>
+     On PostgreSQL the query is matched against the GIN indexed search vector and ranked with {@code ts_rank}. The
+     snippets are only cut for the rows of the requested page, since {@code ts_headline} has to read the text again.
+     H2 has no full-text vectors, there every message whose text fields contain the query is a match, newest first;
+     its snippets are cut from the generated {@code search_text} column.
+     </p>
+
+     @param query
+     the words to search for
+     @param limit
+     the maximum number of results
+     @param offset
+     the number of best results to skip
+
+     @return the matching messages, best match first
+
+     @throws RuntimeException
+     if there is an error searching the database
+     */
+    @Override
+    public List<SearchResult> searchInDatabase(final String query, final int limit, final int offset) {
+
+        final String POSTGRESQL_SEARCH_SQL = """
+            SELECT page.id, page.search_rank,
+            ts_headline('simple', concat_ws(' ', page.payload->>'message', page.payload->>'comment', page.payload->>'description'),
+                        websearch_to_tsquery('simple', ?), 'MaxFragments=2, MaxWords=12, MinWords=4, StartSel=**, StopSel=**')
+            AS snippet
+            FROM (SELECT id, payload, ts_rank(search_vector, search_query) AS search_rank
+                  FROM messages, websearch_to_tsquery('simple', ?) AS search_query
+                  WHERE search_vector @@ search_query
+                  ORDER BY search_rank DESC, id DESC
+                  LIMIT ? OFFSET ?)
+            AS page
+            ORDER BY page.search_rank DESC, page.id DESC;
+        """;
+        final String FALLBACK_SEARCH_SQL = """
+            SELECT id, 0 AS search_rank, search_text AS snippet
+            FROM messages
+            WHERE LOWER(search_text) LIKE ? ESCAPE '\\'
+            ORDER BY id DESC
+            LIMIT ? OFFSET ?;
+        """;
+
+        List<SearchResult> results = new ArrayList<>(limit);
+        final DatabaseQueryEvent queryEvent = DatabaseQueryEvent.start("search");
+
+        try (Connection connection = getDatabaseConnection()) {
+
+            final boolean fullText = getSqlDialect(connection) == SqlDialect.POSTGRESQL;
+
+            try (PreparedStatement preparedStatement = getPreparedStatement(connection, fullText ? POSTGRESQL_SEARCH_SQL
+                                                                                                 : FALLBACK_SEARCH_SQL)
+            ) {
+
+                int index = 1;
+
+                if (fullText) {
+
+                    preparedStatement.setString(index++, query);
+                    preparedStatement.setString(index++, query);
+
+                } else {
+
+                    final String escapedQuery = query.toLowerCase().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+                    preparedStatement.setString(index++, "%" + escapedQuery + "%");
+                }
+
+                preparedStatement.setInt(index++, limit);
+                preparedStatement.setInt(index, offset);
+
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+
+                    while (resultSet.next()) {
+
+                        final String snippet = fullText ? resultSet.getString("snippet")
+                                                        : SearchSnippets.cut(resultSet.getString("snippet"), query);
+
+                        results.add(new SearchResult(resultSet.getLong("id"), resultSet.getDouble("search_rank"), snippet));
+                    }
+                }
+            }
+
+            queryEvent.finish(results.size());
+            return results;
+
+        } catch (SQLException e) {
+
+            this.logger.log(Level.SEVERE, "DatabaseConnection > searchInDatabase");
+            logger.log(Level.SEVERE, "Error searching messages in database", e);
+            throw new RuntimeException(e);
         }
     }
 
@@ -331,22 +475,21 @@ public class DatabaseConnection implements DatabaseConnectionController {
      if an error occurs while replacing the message
      */
     @Override
-    public synchronized void replaceInDatabase(Long id, String message) {
-
-        final String UPDATE_SQL = """
-            UPDATE messages
-            SET message=?
-            WHERE id=?;
-        """;
+    public void replaceInDatabase(Long id, String message) {
 
-        try (Connection connection = DriverManager.getConnection(this.dbPath, this.properties)) {
+        final DatabaseQueryEvent queryEvent = DatabaseQueryEvent.start("replace");
 
-            //UPDATE query
-            PreparedStatement updateStatement = getPreparedStatement(connection, UPDATE_SQL);
+        try (Connection connection = getDatabaseConnection();
+             PreparedStatement updateStatement = getPreparedStatement(connection, """
+                 UPDATE messages
+                 SET message=?, payload=%s, sender=?, message_type=?, subclass=?
+                 WHERE id=?;
+             """.formatted(getSqlDialect(connection).getJsonParameter()))
+        ) {
 
             //set the parameters
-            updateStatement.setString(1, message);
-            updateStatement.setLong(2, id);
+            final int idIndex = bindMessageColumns(updateStatement, 1, message);
+            updateStatement.setLong(idIndex, id);
 
             // execute -> goal => update one line only!
             final int updatedRows = updateStatement.executeUpdate();
@@ -360,6 +503,8 @@ public class DatabaseConnection implements DatabaseConnectionController {
                 throw new SQLWarning("No rows updated");
             }
 
+            queryEvent.finish(updatedRows);
+
         } catch (SQLException e) {
 
             this.logger.log(Level.SEVERE, "DatabaseConnection > replaceInDatabase");
@@ -375,21 +520,21 @@ public class DatabaseConnection implements DatabaseConnectionController {
      the message to be saved
      */
     @Override
-    public synchronized void saveToDatabase(String message) {
+    public void saveToDatabase(String message) {
 
-        final String INSERT_SQL = """
-            INSERT INTO messages (message)
-            VALUES (?)
-        """;
+        final DatabaseQueryEvent queryEvent = DatabaseQueryEvent.start("save_message");
 
         try {
 
-            try (Connection connection = getDatabaseConnection()) {
-
-                PreparedStatement preparedStatement = getPreparedStatement(connection, INSERT_SQL);
+            try (Connection connection = getDatabaseConnection();
+                 PreparedStatement preparedStatement = getPreparedStatement(connection, """
+                     INSERT INTO messages (%s)
+                     VALUES (%s)
+                 """.formatted(MESSAGE_COLUMNS, messageColumnPlaceholders(connection)))
+            ) {
 
                 //set the parameters
-                preparedStatement.setString(1, message);
+                bindMessageColumns(preparedStatement, 1, message);
 
                 //execute the query
                 final int rowsAffected = preparedStatement.executeUpdate();
@@ -399,6 +544,8 @@ public class DatabaseConnection implements DatabaseConnectionController {
                     this.logger.log(Level.SEVERE, "DatabaseConnection > saveToDatabase");
                     throw new SQLWarning("Message was not saved to database!");
                 }
+
+                queryEvent.finish(rowsAffected);
             }
 
         } catch (SQLException e) {
@@ -409,6 +556,58 @@ public class DatabaseConnection implements DatabaseConnectionController {
         }
     }
 
+    /**
+     Saves the given message to the database and returns the persisted row.
+
+     <p>
+     The generated id and the stored message are returned by the insert statement itself (a RETURNING clause on
+     PostgreSQL), so the row does not need to be read back and can not be confused with a concurrent insert.
+     </p>
+
+     @param message
+     the message to be saved
+
+     @return the persisted row, without image
+
+     @throws RuntimeException
+     if there is an error saving the message to the database
+     */
+    @Override
+    public DatabaseResult saveToDatabaseAndReturnEntry(final String message) {
+
+        final DatabaseQueryEvent queryEvent = DatabaseQueryEvent.start("save_message");
+
+        try (Connection connection = getDatabaseConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement("""
+                 INSERT INTO messages (%s)
+                 VALUES (%s)
+             """.formatted(MESSAGE_COLUMNS, messageColumnPlaceholders(connection)), new String[]{"id", "message"})
+        ) {
+
+            //set the parameters
+            bindMessageColumns(preparedStatement, 1, message);
+            preparedStatement.executeUpdate();
+
+            try (ResultSet resultSet = preparedStatement.getGeneratedKeys()) {
+
+                if (resultSet.next()) {
+
+                    queryEvent.finish(1);
+                    return new DatabaseResult(resultSet.getLong(1), resultSet.getString(2), null);
+                }
+
+                this.logger.log(Level.SEVERE, "DatabaseConnection > saveToDatabaseAndReturnEntry");
+                throw new SQLWarning("Message was not saved to database!");
+            }
+
+        } catch (SQLException e) {
+
+            this.logger.log(Level.SEVERE, "DatabaseConnection > saveToDatabaseAndReturnEntry");
+            logger.log(Level.SEVERE, "Error saving message to database", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      Retrieves the last message from the database.
 
@@ -418,16 +617,18 @@ public class DatabaseConnection implements DatabaseConnectionController {
      if an error occurs while retrieving the last message
      */
     @Override
-    public synchronized DatabaseResult getLastFromDatabase() {
+    public DatabaseResult getLastFromDatabase() {
 
         final String SELECT_SQL = """
-                                    SELECT messages.id, messages.message, message_images.image_data
+                                    SELECT messages.id, messages.message, messages.image_hash, messages.thumbnail_hash,
+                                    message_images.image_data, message_images.thumbnail_data
                                     FROM messages
                                     LEFT JOIN message_images
                                     ON messages.id = message_images.message_id
                                     ORDER BY messages.id
                                     DESC LIMIT 1;
                                   """;
+        final DatabaseQueryEvent queryEvent = DatabaseQueryEvent.start("get_last");
 
         try (Connection connection = getDatabaseConnection();
              Statement statement = connection.createStatement();
@@ -436,8 +637,10 @@ public class DatabaseConnection implements DatabaseConnectionController {
 
             if (resultSet.next()) {
 
+                queryEvent.finish(1);
                 return new DatabaseResult(resultSet.getLong("id"), resultSet.getString("message"),
-                                          resultSet.getBytes("image_data"));
+                                          resultSet.getBytes("image_data"), resultSet.getString("image_hash"),
+                                          resultSet.getBytes("thumbnail_data"), resultSet.getString("thumbnail_hash"));
 
             } else {
 
@@ -472,20 +675,31 @@ public class DatabaseConnection implements DatabaseConnectionController {
     @Override
     public long saveMessageWithoutPictureToDatabase(final String updatedPictureModelJson) {
 
-        final String INSERT_MESSAGE_SQL = """
-                                            INSERT INTO messages (message)
-                                            VALUES (?)
-                                            RETURNING id;
-                                        """;
+        final DatabaseQueryEvent queryEvent = DatabaseQueryEvent.start("save_message");
 
-        try (Connection connection = DriverManager.getConnection(this.dbPath, this.properties)) {
+        try (Connection connection = getDatabaseConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement("""
+                 INSERT INTO messages (%s)
+                 VALUES (%s);
+             """.formatted(MESSAGE_COLUMNS, messageColumnPlaceholders(connection)), new String[]{"id"})
+        ) {
 
             //set the parameters
-            PreparedStatement preparedStatement = getPreparedStatement(connection, INSERT_MESSAGE_SQL);
-            preparedStatement.setString(1, updatedPictureModelJson);
+            bindMessageColumns(preparedStatement, 1, updatedPictureModelJson);
+            preparedStatement.executeUpdate();
+
+            //the generated id is returned by the insert itself
+            try (ResultSet resultSet = preparedStatement.getGeneratedKeys()) {
+
+                if (resultSet.next()) {
+
+                    queryEvent.finish(1);
+                    return resultSet.getLong(1);
+                }
 
-            //execute the query and return the generated id
-            return saveToDataBaseAndReturnId(preparedStatement);
+                this.logger.log(Level.SEVERE, "DatabaseConnection > saveMessageWithoutPictureToDatabase");
+                throw new SQLWarning("no ID generated");
+            }
 
         } catch (SQLException e) {
 
@@ -516,18 +730,41 @@ public class DatabaseConnection implements DatabaseConnectionController {
     @Override
     public void saveExtractedImageToDatabaseInImageTable(final long messageId, final byte[] imageBytes) {
 
+        saveExtractedImageToDatabaseInImageTable(messageId, imageBytes, null);
+    }
+
+    /**
+     Saves an image and its thumbnail associated with a message to the database.
+
+     @param messageId
+     the ID of the message to associate the image with
+     @param imageBytes
+     an array of bytes representing the image data
+     @param thumbnailBytes
+     the thumbnail of the image, or null if there is none
+
+     @throws RuntimeException
+     if there is an error saving the image to the database
+     */
+    @Override
+    public void saveExtractedImageToDatabaseInImageTable(final long messageId, final byte[] imageBytes,
+                                                         final byte[] thumbnailBytes) {
+
         // insert image into database
         final String INSERT_IMAGE_SQL = """
-                    INSERT INTO message_images (message_id, image_data)
-                    VALUES (?, ?);
+                    INSERT INTO message_images (message_id, image_data, thumbnail_data)
+                    VALUES (?, ?, ?);
                 """;
+        final DatabaseQueryEvent queryEvent = DatabaseQueryEvent.start("save_image");
 
         try (Connection connection = getDatabaseConnection();
              PreparedStatement preparedStatement = getPreparedStatement(connection, INSERT_IMAGE_SQL)
         ) {
 
             //save the image to the database
+            preparedStatement.setBytes(3, thumbnailBytes);
             saveImageToDatabase(preparedStatement, messageId, imageBytes);
+            queryEvent.finish(1);
 
         } catch (SQLException e) {
 
@@ -537,6 +774,103 @@ public class DatabaseConnection implements DatabaseConnectionController {
         }
     }
 
+    /**
+     Saves a picture message whose image is kept in an image store and returns the generated message ID.
+
+     @param updatedPictureModelJson
+     an updated `PictureModel` JSON string, without the picture
+     @param imageHash
+     the key of the image in the image store
+     @param thumbnailHash
+     the key of the thumbnail in the image store, or null if there is none
+
+     @return the generated message ID
+
+     @throws RuntimeException
+     if there is an error saving the message to the database
+     */
+    @Override
+    public long saveMessageWithImageHashToDatabase(final String updatedPictureModelJson, final String imageHash,
+                                                   final String thumbnailHash) {
+
+        final DatabaseQueryEvent queryEvent = DatabaseQueryEvent.start("save_message");
+
+        try (Connection connection = getDatabaseConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement("""
+                 INSERT INTO messages (%s, image_hash, thumbnail_hash)
+                 VALUES (%s, ?, ?);
+             """.formatted(MESSAGE_COLUMNS, messageColumnPlaceholders(connection)), new String[]{"id"})
+        ) {
+
+            //set the parameters
+            final int hashIndex = bindMessageColumns(preparedStatement, 1, updatedPictureModelJson);
+            preparedStatement.setString(hashIndex, imageHash);
+            preparedStatement.setString(hashIndex + 1, thumbnailHash);
+            preparedStatement.executeUpdate();
+
+            try (ResultSet resultSet = preparedStatement.getGeneratedKeys()) {
+
+                if (resultSet.next()) {
+
+                    queryEvent.finish(1);
+                    return resultSet.getLong(1);
+                }
+
+                this.logger.log(Level.SEVERE, "DatabaseConnection > saveMessageWithImageHashToDatabase");
+                throw new SQLWarning("Message was not saved to database!");
+            }
+
+        } catch (SQLException e) {
+
+            this.logger.log(Level.SEVERE, "DatabaseConnection > saveMessageWithImageHashToDatabase");
+            logger.log(Level.SEVERE, "Error saving message to database", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     Retrieves the image saved for a message in the message_images table.
+
+     @param messageId
+     the ID of the message the image belongs to
+
+     @return the image data, or null if the message has no image in the table
+
+     @throws RuntimeException
+     if there is an error retrieving the image from the database
+     */
+    @Override
+    public byte[] getImageFromDatabase(final Long messageId) {
+
+        final String SELECT_SQL = """
+                                    SELECT image_data
+                                    FROM message_images
+                                    WHERE message_id = ?;
+                                  """;
+        final DatabaseQueryEvent queryEvent = DatabaseQueryEvent.start("get_image");
+
+        try (Connection connection = getDatabaseConnection();
+             PreparedStatement selectStatement = getPreparedStatement(connection, SELECT_SQL)
+        ) {
+
+            //set the parameters
+            selectStatement.setLong(1, messageId);
+
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+
+                final byte[] image = resultSet.next() ? resultSet.getBytes("image_data") : null;
+                queryEvent.finish(image == null ? 0 : 1);
+                return image;
+            }
+
+        } catch (SQLException e) {
+
+            this.logger.log(Level.SEVERE, "DatabaseConnection > getImageFromDatabase");
+            logger.log(Level.SEVERE, "Error retrieving image from database", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      Retrieves the updated entry for a given ID from the database.
 
@@ -555,31 +889,34 @@ public class DatabaseConnection implements DatabaseConnectionController {
      if there is an error retrieving the entry from the database
      */
     @Override
-    public synchronized String retrieveUpdatedEntry(final Long updatedId) {
+    public String retrieveUpdatedEntry(final Long updatedId) {
 
         final String RETRIEVE_UPDATED_LINE = """
                     SELECT * FROM messages
                     WHERE id=?;
                 """;
+        final DatabaseQueryEvent queryEvent = DatabaseQueryEvent.start("get_message");
 
-        try (Connection connection = DriverManager.getConnection(this.dbPath, this.properties)) {
-
-            // If one row was updated, retrieve the updated message from the database
-            PreparedStatement selectStatement = getPreparedStatement(connection, RETRIEVE_UPDATED_LINE);
+        try (Connection connection = getDatabaseConnection();
+             PreparedStatement selectStatement = getPreparedStatement(connection, RETRIEVE_UPDATED_LINE)
+        ) {
 
             //set the parameters
             selectStatement.setLong(1, updatedId);
 
             //execute the query and return
-            ResultSet rs = selectStatement.executeQuery();
+            try (ResultSet rs = selectStatement.executeQuery()) {
 
-            if (rs.next()) {
+                if (rs.next()) {
 
-                return rs.getString(2);
+                    queryEvent.finish(1);
+                    return rs.getString(2);
 
-            } else {
+                } else {
 
-                return null;
+                    queryEvent.finish(0);
+                    return null;
+                }
             }
 
         } catch (SQLException e) {
@@ -590,27 +927,42 @@ public class DatabaseConnection implements DatabaseConnectionController {
         }
     }
 
+    /**
+     Retrieves the stored JSON of a message.
+
+     @param aLong
+     the ID of the message
+
+     @return the message as JSON string, or null if there is no such message
+
+     @throws RuntimeException
+     if there is an error retrieving the message from the database
+     */
     @Override
     public String getMessageFromDatabase(final Long aLong) {
 
+        //the picture is not part of the stored JSON, no need to join the image table
         final String SELECT_SQL = """
-                                    SELECT messages.id, messages.message, message_images.image_data
-                                    FROM messages LEFT
-                                    JOIN message_images
-                                    ON messages.id = message_images.message_id
+                                    SELECT messages.message
+                                    FROM messages
                                     WHERE messages.id = ?;
                                 """;
+        final DatabaseQueryEvent queryEvent = DatabaseQueryEvent.start("get_message");
 
-        try (Connection connection = DriverManager.getConnection(this.dbPath, this.properties)) {
-
-            // If one row was updated, retrieve the updated message from the database
-            PreparedStatement selectStatement = getPreparedStatement(connection, SELECT_SQL);
+        try (Connection connection = getDatabaseConnection();
+             PreparedStatement selectStatement = getPreparedStatement(connection, SELECT_SQL)
+        ) {
 
             //set the parameters
             selectStatement.setLong(1, aLong);
 
             //execute the query and return
-            return selectStatement.executeQuery().getString(2);
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+
+                final String message = resultSet.next() ? resultSet.getString("message") : null;
+                queryEvent.finish(message == null ? 0 : 1);
+                return message;
+            }
 
         } catch (SQLException e) {
 
@@ -619,11 +971,271 @@ public class DatabaseConnection implements DatabaseConnectionController {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     Appends a reaction to a message with a single insert. The message row is neither read nor locked, so any number of
+     concurrent reactions to the same message are saved without losing one.
+
+     @param messageId
+     the ID of the message the reaction belongs to
+     @param clientName
+     the name of the reacting client
+     @param reactionName
+     the reaction, e.g. an emoji
+
+     @return true if the reaction was saved, false if there is no such message
+
+     @throws RuntimeException
+     if there is an error saving the reaction
+     */
+    @Override
+    public boolean saveReactionToDatabase(final long messageId, final String clientName, final String reactionName) {
+
+        final String INSERT_REACTION_SQL = """
+                                             INSERT INTO message_reactions (message_id, client_name, reaction_name)
+                                             SELECT id, ?, ? FROM messages WHERE id = ?;
+                                           """;
+        final DatabaseQueryEvent queryEvent = DatabaseQueryEvent.start("save_reaction");
+
+        try (Connection connection = getDatabaseConnection();
+             PreparedStatement preparedStatement = getPreparedStatement(connection, INSERT_REACTION_SQL)
+        ) {
+
+            //set the parameters
+            preparedStatement.setString(1, clientName);
+            preparedStatement.setString(2, reactionName);
+            preparedStatement.setLong(3, messageId);
+
+            final int insertedRows = preparedStatement.executeUpdate();
+            queryEvent.finish(insertedRows);
+            return insertedRows == 1;
+
+        } catch (SQLException e) {
+
+            this.logger.log(Level.SEVERE, "DatabaseConnection > saveReactionToDatabase");
+            logger.log(Level.SEVERE, "Error saving reaction to database", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     Retrieves the reactions of a range of messages, in the order they were saved.
+
+     @param fromMessageId
+     the lowest message ID, inclusive
+     @param toMessageId
+     the highest message ID, inclusive
+
+     @return the reactions per message ID
+
+     @throws RuntimeException
+     if there is an error retrieving the reactions
+     */
+    @Override
+    public Map<Long, List<UserInteraction>> getReactionsFromDatabase(final long fromMessageId, final long toMessageId) {
+
+        final String SELECT_SQL = """
+                                    SELECT message_id, client_name, reaction_name
+                                    FROM message_reactions
+                                    WHERE message_id BETWEEN ? AND ?
+                                    ORDER BY id;
+                                  """;
+        final DatabaseQueryEvent queryEvent = DatabaseQueryEvent.start("get_reactions");
+
+        try (Connection connection = getDatabaseConnection();
+             PreparedStatement selectStatement = getPreparedStatement(connection, SELECT_SQL)
+        ) {
+
+            //set the parameters
+            selectStatement.setLong(1, fromMessageId);
+            selectStatement.setLong(2, toMessageId);
+
+            final Map<Long, List<UserInteraction>> reactions = new HashMap<>();
+            long rows = 0;
+
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+
+                while (resultSet.next()) {
+
+                    rows++;
+
+                    reactions.computeIfAbsent(resultSet.getLong("message_id"), messageId -> new ArrayList<>())
+                             .add(new UserInteraction(resultSet.getString("client_name"), resultSet.getString("reaction_name")));
+                }
+            }
+
+            queryEvent.finish(rows);
+            return reactions;
+
+        } catch (SQLException e) {
+
+            this.logger.log(Level.SEVERE, "DatabaseConnection > getReactionsFromDatabase");
+            logger.log(Level.SEVERE, "Error retrieving reactions from database", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     Returns the current usage of the connection pool.
+
+     @return the pool statistics, or an empty Optional if no connection has been requested yet
+     */
+    @Override
+    public Optional<PoolStatistics> getPoolStatistics() {
+
+        final ConnectionPool pool = this.connectionPool;
+
+        return pool == null ? Optional.empty() : Optional.of(pool.getStatistics());
+    }
+
+    /**
+     Closes the connection pool and all idle database connections.
+     */
+    @Override
+    public void close() {
+
+        final ConnectionPool pool = this.connectionPool;
+
+        if (pool != null) {
+
+            pool.close();
+            logger.info("database connection pool closed");
+        }
+    }
     // overrides -- end
 
+    /**
+     Retrieves the highest message id in the database.
+
+     @return the highest id, or 0 if there are no messages yet
+
+     @throws RuntimeException
+     if there is an error querying the database
+     */
+    public long getHighestMessageId() {
+
+        try (Connection connection = getDatabaseConnection()) {
+
+            return getHighestMessageId(connection);
+
+        } catch (SQLException e) {
+
+            this.logger.log(Level.SEVERE, "DatabaseConnection > getHighestMessageId");
+            logger.log(Level.SEVERE, "Error retrieving highest message id", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private long getHighestMessageId(final Connection connection) throws SQLException {
+
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COALESCE(MAX(id), 0) FROM messages;")
+        ) {
+
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+
+    /**
+     Saves a batch of messages with already assigned ids in a single transaction.
+
+     <p>
+     Every entry inserts a message row if its message is set (together with its image and thumbnail hash, if any) and
+     an image row (together with its thumbnail, if any) if its image is set, so an image can
+     follow its message in a later batch. All message rows are inserted before the image rows. The id sequence is moved
+     past the highest inserted id, so regular inserts keep working afterward.
+     </p>
+
+     @param batch
+     the messages and images to save, in id order
+
+     @throws RuntimeException
+     if the batch could not be saved, nothing of the batch is saved in that case
+     */
+    public void saveBatchToDatabase(final List<DatabaseResult> batch) {
+
+        final String INSERT_IMAGE_SQL = """
+                                          INSERT INTO message_images (message_id, image_data, thumbnail_data)
+                                          VALUES (?, ?, ?);
+                                        """;
+        final String SYNC_SEQUENCE_SQL = """
+                                           SELECT setval(pg_get_serial_sequence('messages', 'id'), (SELECT MAX(id) FROM messages));
+                                         """;
+        final DatabaseQueryEvent queryEvent = DatabaseQueryEvent.start("save_batch");
+
+        try (Connection connection = getDatabaseConnection()) {
+
+            connection.setAutoCommit(false);
+
+            final String INSERT_MESSAGE_SQL = """
+                                                INSERT INTO messages (id, %s, image_hash, thumbnail_hash)
+                                                VALUES (?, %s, ?, ?);
+                                              """.formatted(MESSAGE_COLUMNS, messageColumnPlaceholders(connection));
+
+            try (PreparedStatement messageStatement = getPreparedStatement(connection, INSERT_MESSAGE_SQL);
+                 PreparedStatement imageStatement = getPreparedStatement(connection, INSERT_IMAGE_SQL)
+            ) {
+
+                for (DatabaseResult entry : batch) {
+
+                    if (entry.message() != null) {
+
+                        messageStatement.setLong(1, entry.id());
+                        final int hashIndex = bindMessageColumns(messageStatement, 2, entry.message());
+                        messageStatement.setString(hashIndex, entry.imageHash());
+                        messageStatement.setString(hashIndex + 1, entry.thumbnailHash());
+                        messageStatement.addBatch();
+                    }
+
+                    if (entry.image() != null) {
+
+                        imageStatement.setLong(1, entry.id());
+                        imageStatement.setBytes(2, entry.image());
+                        imageStatement.setBytes(3, entry.thumbnail());
+                        imageStatement.addBatch();
+                    }
+                }
+
+                messageStatement.executeBatch();
+                imageStatement.executeBatch();
+
+                if (getSqlDialect(connection) == SqlDialect.POSTGRESQL) {
+
+                    try (Statement statement = connection.createStatement()) {
+
+                        statement.execute(SYNC_SEQUENCE_SQL);
+                    }
+                }
+
+                connection.commit();
+                queryEvent.finish(batch.size());
+
+                //H2 can not set its identity from a query, and only does so outside the transaction
+                if (getSqlDialect(connection) == SqlDialect.H2) {
+
+                    try (Statement statement = connection.createStatement()) {
+
+                        statement.execute("ALTER TABLE messages ALTER COLUMN id RESTART WITH " + (getHighestMessageId(connection) + 1) + ";");
+                    }
+                }
+
+            } catch (SQLException e) {
+
+                connection.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+
+            this.logger.log(Level.SEVERE, "DatabaseConnection > saveBatchToDatabase");
+            logger.log(Level.SEVERE, "Error saving batch of " + batch.size() + " messages to database", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     // getter & setter -- start
     /**
-     Returns a connection to the database.
+     Returns a pooled connection to the database. Closing the connection hands it back to the pool.
 
      @return a Connection object representing the database connection
 
@@ -632,7 +1244,24 @@ public class DatabaseConnection implements DatabaseConnectionController {
      */
     private Connection getDatabaseConnection() throws SQLException {
 
-        return DriverManager.getConnection(dbPath, properties);
+        ConnectionPool pool = this.connectionPool;
+
+        if (pool == null) {
+
+            synchronized (this) {
+
+                pool = this.connectionPool;
+
+                if (pool == null) {
+
+                    pool = new ConnectionPool(() -> DriverManager.getConnection(this.getDbPath(), this.getProperties()),
+                                              maxPoolSize, acquireTimeoutMillis, validationIntervalMillis);
+                    this.connectionPool = pool;
+                }
+            }
+        }
+
+        return pool.acquire();
     }
 
     public String getDbPath() {
@@ -0,0 +1,62 @@
+package com.soeguet.database;
+
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ The database running inside the server process: an H2 database kept in a file, so a node without PostgreSQL keeps
+ its messages across restarts. Uses the same statements, migrations and connection pool as PostgreSQL.
+ */
+public class EmbeddedDatabaseConnection extends DatabaseConnection {
+
+    // variables -- start
+    private final Logger logger = Logger.getLogger(EmbeddedDatabaseConnection.class.getName());
+    private final Path databasePath;
+    // variables -- end
+
+    // constructors -- start
+    /**
+     @param properties
+     the server properties
+     @param databasePath
+     the path of the database file, without the ".mv.db" extension H2 appends
+     */
+    public EmbeddedDatabaseConnection(final Properties properties, final Path databasePath) {
+
+        super(properties);
+        this.databasePath = databasePath.toAbsolutePath();
+    }
+    // constructors -- end
+
+    // overrides -- start
+    /**
+     Nothing to look up, the embedded database needs neither a server nor credentials.
+     */
+    @Override
+    public void setDatabaseSettings() {
+
+        logger.info("embedded database: " + databasePath);
+    }
+
+    /**
+     @return the JDBC URL of the database file. H2 must not close it on its own at exit, the write-behind queue is
+     flushed by the shutdown hook of the server.
+     */
+    @Override
+    public String getDbPath() {
+
+        return "jdbc:h2:file:" + databasePath + ";DB_CLOSE_ON_EXIT=FALSE";
+    }
+
+    @Override
+    public Properties getProperties() {
+
+        final Properties properties = new Properties();
+        properties.setProperty("user", "sa");
+        properties.setProperty("password", "");
+
+        return properties;
+    }
+    // overrides -- end
+}
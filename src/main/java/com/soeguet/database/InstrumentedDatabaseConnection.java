@@ -0,0 +1,375 @@
+package com.soeguet.database;
+
+import com.soeguet.database.interfaces.DatabaseConnectionController;
+import com.soeguet.metrics.LatencyHistogram;
+import com.soeguet.metrics.MetricsRegistry;
+import com.soeguet.model.UserInteraction;
+import com.soeguet.model.dtos.DatabaseResult;
+import com.soeguet.model.dtos.PoolStatistics;
+import com.soeguet.model.dtos.SearchResult;
+
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.ToLongFunction;
+
+/**
+ Timing decorator for any storage engine.
+
+ <p>
+ Every query is timed into the {@code teamsocket_database_query_seconds} histogram, labeled with the query, as the
+ caller sees it: with write-behind a save is the time to queue it. Pool statistics of the decorated connection are
+ registered as gauges and counters. Setup and shutdown are passed through untimed.
+ </p>
+ */
+public class InstrumentedDatabaseConnection implements DatabaseConnectionController {
+
+    // variables -- start
+    private static final String QUERY_METRIC = "teamsocket_database_query_seconds";
+    private static final String QUERY_HELP = "Time spent in database queries";
+
+    private final DatabaseConnectionController databaseConnection;
+    private final LatencyHistogram getAll;
+    private final LatencyHistogram getPage;
+    private final LatencyHistogram search;
+    private final LatencyHistogram replace;
+    private final LatencyHistogram saveMessage;
+    private final LatencyHistogram getLast;
+    private final LatencyHistogram saveImage;
+    private final LatencyHistogram getImage;
+    private final LatencyHistogram getMessage;
+    private final LatencyHistogram saveReaction;
+    private final LatencyHistogram getReactions;
+    // variables -- end
+
+    // constructors -- start
+    /**
+     @param databaseConnection
+     the storage engine to time
+     @param metricsRegistry
+     the registry the timings are recorded in
+     */
+    public InstrumentedDatabaseConnection(final DatabaseConnectionController databaseConnection,
+                                          final MetricsRegistry metricsRegistry) {
+
+        this.databaseConnection = databaseConnection;
+
+        getAll = metricsRegistry.histogram(QUERY_METRIC, QUERY_HELP, "query", "get_all");
+        getPage = metricsRegistry.histogram(QUERY_METRIC, QUERY_HELP, "query", "get_page");
+        search = metricsRegistry.histogram(QUERY_METRIC, QUERY_HELP, "query", "search");
+        replace = metricsRegistry.histogram(QUERY_METRIC, QUERY_HELP, "query", "replace");
+        saveMessage = metricsRegistry.histogram(QUERY_METRIC, QUERY_HELP, "query", "save_message");
+        getLast = metricsRegistry.histogram(QUERY_METRIC, QUERY_HELP, "query", "get_last");
+        saveImage = metricsRegistry.histogram(QUERY_METRIC, QUERY_HELP, "query", "save_image");
+        getImage = metricsRegistry.histogram(QUERY_METRIC, QUERY_HELP, "query", "get_image");
+        getMessage = metricsRegistry.histogram(QUERY_METRIC, QUERY_HELP, "query", "get_message");
+        saveReaction = metricsRegistry.histogram(QUERY_METRIC, QUERY_HELP, "query", "save_reaction");
+        getReactions = metricsRegistry.histogram(QUERY_METRIC, QUERY_HELP, "query", "get_reactions");
+
+        registerPoolMetrics(metricsRegistry, databaseConnection);
+    }
+    // constructors -- end
+
+    // overrides -- start
+    @Override
+    public boolean checkIfTableExists(final String tableName) {
+
+        return databaseConnection.checkIfTableExists(tableName);
+    }
+
+    @Override
+    public void initDatabase() {
+
+        databaseConnection.initDatabase();
+    }
+
+    @Override
+    public Optional<String> retrieveEnvironmentVariables(final String variableName) {
+
+        return databaseConnection.retrieveEnvironmentVariables(variableName);
+    }
+
+    @Override
+    public void setDatabaseSettings() {
+
+        databaseConnection.setDatabaseSettings();
+    }
+
+    @Override
+    public Deque<DatabaseResult> getAllFromDatabase() {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            return databaseConnection.getAllFromDatabase();
+
+        } finally {
+
+            getAll.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<DatabaseResult> getPageFromDatabase(final long beforeId, final int limit, final boolean withImages) {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            return databaseConnection.getPageFromDatabase(beforeId, limit, withImages);
+
+        } finally {
+
+            getPage.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<SearchResult> searchInDatabase(final String query, final int limit, final int offset) {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            return databaseConnection.searchInDatabase(query, limit, offset);
+
+        } finally {
+
+            search.recordSince(start);
+        }
+    }
+
+    @Override
+    public void replaceInDatabase(final Long id, final String message) {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            databaseConnection.replaceInDatabase(id, message);
+
+        } finally {
+
+            replace.recordSince(start);
+        }
+    }
+
+    @Override
+    public void saveToDatabase(final String message) {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            databaseConnection.saveToDatabase(message);
+
+        } finally {
+
+            saveMessage.recordSince(start);
+        }
+    }
+
+    @Override
+    public DatabaseResult saveToDatabaseAndReturnEntry(final String message) {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            return databaseConnection.saveToDatabaseAndReturnEntry(message);
+
+        } finally {
+
+            saveMessage.recordSince(start);
+        }
+    }
+
+    @Override
+    public DatabaseResult getLastFromDatabase() {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            return databaseConnection.getLastFromDatabase();
+
+        } finally {
+
+            getLast.recordSince(start);
+        }
+    }
+
+    @Override
+    public long saveMessageWithoutPictureToDatabase(final String updatedPictureModelJson) {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            return databaseConnection.saveMessageWithoutPictureToDatabase(updatedPictureModelJson);
+
+        } finally {
+
+            saveMessage.recordSince(start);
+        }
+    }
+
+    @Override
+    public void saveExtractedImageToDatabaseInImageTable(final long messageId, final byte[] imageBytes) {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            databaseConnection.saveExtractedImageToDatabaseInImageTable(messageId, imageBytes);
+
+        } finally {
+
+            saveImage.recordSince(start);
+        }
+    }
+
+    @Override
+    public void saveExtractedImageToDatabaseInImageTable(final long messageId, final byte[] imageBytes,
+                                                         final byte[] thumbnailBytes) {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            databaseConnection.saveExtractedImageToDatabaseInImageTable(messageId, imageBytes, thumbnailBytes);
+
+        } finally {
+
+            saveImage.recordSince(start);
+        }
+    }
+
+    @Override
+    public long saveMessageWithImageHashToDatabase(final String updatedPictureModelJson, final String imageHash,
+                                                   final String thumbnailHash) {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            return databaseConnection.saveMessageWithImageHashToDatabase(updatedPictureModelJson, imageHash, thumbnailHash);
+
+        } finally {
+
+            saveMessage.recordSince(start);
+        }
+    }
+
+    @Override
+    public byte[] getImageFromDatabase(final Long messageId) {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            return databaseConnection.getImageFromDatabase(messageId);
+
+        } finally {
+
+            getImage.recordSince(start);
+        }
+    }
+
+    @Override
+    public String retrieveUpdatedEntry(final Long updatedId) {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            return databaseConnection.retrieveUpdatedEntry(updatedId);
+
+        } finally {
+
+            getMessage.recordSince(start);
+        }
+    }
+
+    @Override
+    public String getMessageFromDatabase(final Long aLong) {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            return databaseConnection.getMessageFromDatabase(aLong);
+
+        } finally {
+
+            getMessage.recordSince(start);
+        }
+    }
+
+    @Override
+    public boolean saveReactionToDatabase(final long messageId, final String clientName, final String reactionName) {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            return databaseConnection.saveReactionToDatabase(messageId, clientName, reactionName);
+
+        } finally {
+
+            saveReaction.recordSince(start);
+        }
+    }
+
+    @Override
+    public Map<Long, List<UserInteraction>> getReactionsFromDatabase(final long fromMessageId, final long toMessageId) {
+
+        final long start = System.nanoTime();
+
+        try {
+
+            return databaseConnection.getReactionsFromDatabase(fromMessageId, toMessageId);
+
+        } finally {
+
+            getReactions.recordSince(start);
+        }
+    }
+
+    @Override
+    public Optional<PoolStatistics> getPoolStatistics() {
+
+        return databaseConnection.getPoolStatistics();
+    }
+
+    @Override
+    public void close() {
+
+        databaseConnection.close();
+    }
+    // overrides -- end
+
+    /**
+     Registers the pool statistics of the timed engine, engines without a pool report 0.
+     */
+    private static void registerPoolMetrics(final MetricsRegistry metricsRegistry,
+                                            final DatabaseConnectionController databaseConnection) {
+
+        metricsRegistry.gauge("teamsocket_database_pool_connections", "Pooled database connections by state",
+                              () -> poolValue(databaseConnection, PoolStatistics::activeConnections), "state", "active");
+        metricsRegistry.gauge("teamsocket_database_pool_connections", "Pooled database connections by state",
+                              () -> poolValue(databaseConnection, PoolStatistics::idleConnections), "state", "idle");
+        metricsRegistry.gauge("teamsocket_database_pool_waiting_threads", "Threads waiting for a pooled connection",
+                              () -> poolValue(databaseConnection, PoolStatistics::waitingThreads));
+        metricsRegistry.counter("teamsocket_database_pool_acquire_timeouts_total", "Pool acquisitions that timed out",
+                                () -> poolValue(databaseConnection, PoolStatistics::acquireTimeouts));
+    }
+
+    private static long poolValue(final DatabaseConnectionController databaseConnection,
+                                  final ToLongFunction<PoolStatistics> value) {
+
+        return databaseConnection.getPoolStatistics().map(value::applyAsLong).orElse(0L);
+    }
+}
@@ -0,0 +1,111 @@
+package com.soeguet.database;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.soeguet.model.dtos.MessageColumns;
+
+import java.io.IOException;
+
+/**
+ Pulls the indexed columns out of a message JSON with the streaming parser. Only top-level fields are read, nested
+ objects like quoted messages are skipped without being parsed into a tree or a model.
+ */
+public final class MessageColumnReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private MessageColumnReader() {
+
+    }
+
+    /**
+     Reads the indexed columns of a message.
+
+     @param json
+     the message JSON as it is stored
+
+     @return the column values, {@link MessageColumns#INVALID} if the message is not a JSON object
+     */
+    public static MessageColumns read(final String json) {
+
+        String sender = null;
+        String subclass = null;
+        Short messageType = null;
+
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {return MessageColumns.INVALID;}
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+                final String fieldName = parser.currentName();
+                final JsonToken value = parser.nextToken();
+
+                switch (fieldName) {
+
+                    case "sender" -> sender = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                    case "subclass" -> subclass = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                    case "messageType" -> messageType = value == JsonToken.VALUE_NUMBER_INT ? parser.getShortValue() : null;
+                    default -> parser.skipChildren();
+                }
+            }
+
+            return new MessageColumns(sender, subclass, messageType, true);
+
+        } catch (IOException e) {
+
+            return MessageColumns.INVALID;
+        }
+    }
+
+    /**
+     Reads the words a message is searched by: the text of a message, the comment of a link and the description of a
+     picture. Names, ids and quoted messages are not part of it.
+
+     <p>
+     H2 calls this method for its generated {@code search_text} column, so it has to stay public and static.
+     </p>
+
+     @param json
+     the message JSON as it is stored
+
+     @return the text fields separated by a space, null if the message has none or is not a JSON object
+     */
+    public static String readSearchText(final String json) {
+
+        if (json == null) {return null;}
+
+        final StringBuilder searchText = new StringBuilder();
+
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {return null;}
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+                final String fieldName = parser.currentName();
+                final JsonToken value = parser.nextToken();
+
+                switch (fieldName) {
+
+                    case "message", "comment", "description" -> {
+
+                        if (value != JsonToken.VALUE_STRING || parser.getTextLength() == 0) {break;}
+
+                        if (!searchText.isEmpty()) {searchText.append(' ');}
+
+                        searchText.append(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+
+        } catch (IOException e) {
+
+            return null;
+        }
+
+        return searchText.isEmpty() ? null : searchText.toString();
+    }
+}
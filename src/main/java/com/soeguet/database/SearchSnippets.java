@@ -0,0 +1,106 @@
+package com.soeguet.database;
+
+/**
+ Matches a query against the search text of a message and cuts the text around the match, for the storages without
+ a full-text index. The snippets look like the ones PostgreSQL cuts with {@code ts_headline}: a few words on either
+ side, the match between {@code **}.
+ */
+public final class SearchSnippets {
+
+    private static final int CONTEXT_CHARS = 60;
+    private static final String ELLIPSIS = "…";
+
+    private SearchSnippets() {
+
+    }
+
+    /**
+     @param searchText
+     the search text of a message, see {@link MessageColumnReader#readSearchText(String)}
+     @param query
+     the text to search for
+
+     @return true if the search text contains the query, ignoring case
+     */
+    public static boolean contains(final String searchText, final String query) {
+
+        return searchText != null && indexOfIgnoreCase(searchText, query) >= 0;
+    }
+
+    /**
+     Cuts the search text around the first match of the query.
+
+     @param searchText
+     the search text of a message
+     @param query
+     the text that was searched for
+
+     @return the words around the match, the beginning of the text if the query does not match
+     */
+    public static String cut(final String searchText, final String query) {
+
+        if (searchText == null) {return "";}
+
+        final int matchIndex = indexOfIgnoreCase(searchText, query);
+
+        if (matchIndex < 0) {return cut(searchText, 0, 0);}
+
+        return cut(searchText, matchIndex, query.length());
+    }
+
+    private static String cut(final String searchText, final int matchIndex, final int matchLength) {
+
+        final int matchEnd = matchIndex + matchLength;
+        int start = Math.max(0, matchIndex - CONTEXT_CHARS);
+        int end = Math.min(searchText.length(), matchEnd + CONTEXT_CHARS);
+
+        //do not start or end within a word, unless the word is all there is
+        if (start > 0) {
+
+            int wordStart = start;
+
+            while (wordStart < matchIndex && !Character.isWhitespace(searchText.charAt(wordStart - 1))) {wordStart++;}
+
+            if (wordStart < matchIndex) {start = wordStart;}
+        }
+
+        if (end < searchText.length()) {
+
+            int wordEnd = end;
+
+            while (wordEnd > matchEnd && !Character.isWhitespace(searchText.charAt(wordEnd))) {wordEnd--;}
+
+            if (wordEnd > matchEnd) {end = wordEnd;}
+        }
+
+        //nor between the halves of a surrogate pair
+        if (start > 0 && start < matchIndex && Character.isLowSurrogate(searchText.charAt(start))) {start++;}
+        if (end < searchText.length() && end > matchEnd && Character.isLowSurrogate(searchText.charAt(end))) {end--;}
+
+        final StringBuilder snippet = new StringBuilder(end - start + 8);
+
+        if (start > 0) {snippet.append(ELLIPSIS);}
+
+        snippet.append(searchText, start, matchIndex);
+
+        if (matchLength > 0) {snippet.append("**").append(searchText, matchIndex, matchEnd).append("**");}
+
+        snippet.append(searchText, matchEnd, end);
+
+        if (end < searchText.length()) {snippet.append(ELLIPSIS);}
+
+        return snippet.toString().strip();
+    }
+
+    private static int indexOfIgnoreCase(final String searchText, final String query) {
+
+        final int lastStart = searchText.length() - query.length();
+
+        for (int index = 0; index <= lastStart; index++) {
+
+            if (searchText.regionMatches(true, index, query, 0, query.length())) {return index;}
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,73 @@
+package com.soeguet.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ The SQL that differs between the databases the server runs on: PostgreSQL in production, H2 in the tests.
+ */
+public enum SqlDialect {
+
+    POSTGRESQL("PostgreSQL", "JSONB", "CAST(? AS JSONB)", "TEXT"),
+    H2("H2", "JSON", "? FORMAT JSON", "CHARACTER VARYING");
+
+    private final String productName;
+    private final String jsonType;
+    private final String jsonParameter;
+    private final String unboundedTextType;
+
+    SqlDialect(final String productName, final String jsonType, final String jsonParameter, final String unboundedTextType) {
+
+        this.productName = productName;
+        this.jsonType = jsonType;
+        this.jsonParameter = jsonParameter;
+        this.unboundedTextType = unboundedTextType;
+    }
+
+    /**
+     Detects the dialect of a connection.
+
+     @param connection
+     an open connection
+
+     @return the dialect of the database behind the connection
+
+     @throws SQLException
+     if the database is not supported
+     */
+    public static SqlDialect of(final Connection connection) throws SQLException {
+
+        final String databaseProductName = connection.getMetaData().getDatabaseProductName();
+
+        for (SqlDialect dialect : values()) {
+
+            if (dialect.productName.equals(databaseProductName)) {return dialect;}
+        }
+
+        throw new SQLException("unsupported database " + databaseProductName);
+    }
+
+    /**
+     @return the column type for indexed JSON documents
+     */
+    public String getJsonType() {
+
+        return jsonType;
+    }
+
+    /**
+     @return the placeholder binding a JSON string parameter to a JSON column
+     */
+    public String getJsonParameter() {
+
+        return jsonParameter;
+    }
+
+    /**
+     @return the column type for text without length limit
+     */
+    public String getUnboundedTextType() {
+
+        return unboundedTextType;
+    }
+}
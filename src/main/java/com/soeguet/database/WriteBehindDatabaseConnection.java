@@ -0,0 +1,715 @@
+package com.soeguet.database;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.soeguet.database.interfaces.DatabaseConnectionController;
+import com.soeguet.model.UserInteraction;
+import com.soeguet.model.dtos.DatabaseResult;
+import com.soeguet.model.dtos.PoolStatistics;
+import com.soeguet.model.dtos.SearchResult;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ Write-behind decorator for {@link DatabaseConnection}.
+
+ <p>
+ New messages get their id assigned right away and are queued. A background writer saves the queue in batches, one
+ transaction per batch, once the batch is full or the flush interval has passed since the first queued message.
+ Reads and updates flush the queue first, so they always see every message saved before. The last saved message is
+ kept in memory, so {@link #getLastFromDatabase()} does not need to wait for the writer.
+ </p>
+ <p>
+ A failed batch is saved again one write at a time, so a write that can never be saved (a constraint violation, a
+ duplicate id) is found and does not hold up the writes behind it. Every write is tried at most "maxAttempts"
+ times, with a growing pause in between, then it is moved to the dead-letter file as a JSON line and given up. Only
+ a {@link #flush()} that was waiting for a given up write fails, later ones see the database as it is.
+ </p>
+ <p>
+ {@link #close()} saves everything still queued before the database connections are released.
+ </p>
+ */
+public class WriteBehindDatabaseConnection implements DatabaseConnectionController {
+
+    // variables -- start
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final long MIN_RETRY_PAUSE_MILLIS = 1000;
+    private static final long MAX_RETRY_PAUSE_MILLIS = 30_000;
+    private static final int REMEMBERED_DEAD_LETTERS = 1024;
+
+    private final Logger logger = Logger.getLogger(WriteBehindDatabaseConnection.class.getName());
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final DatabaseConnection databaseConnection;
+    private final long flushIntervalMillis;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Path deadLetterPath;
+    private final LinkedBlockingQueue<PendingWrite> pendingWrites = new LinkedBlockingQueue<>();
+    private final AtomicLong messageIdSequence = new AtomicLong();
+    private final AtomicLong queuedWrites = new AtomicLong();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition flushed = flushLock.newCondition();
+    private final LongAdder flushedBatches = new LongAdder();
+    private final Thread writerThread;
+    //guarded by flushLock
+    private long committedWrites;
+    private long deadLetteredWrites;
+    private long settledSequence;
+    private final NavigableMap<Long, RuntimeException> deadLetterFailures = new TreeMap<>();
+    //written by the writer only
+    private long takenSequence;
+    private volatile boolean flushRequested;
+    private volatile DatabaseResult lastSavedMessage;
+    private volatile boolean running = true;
+    // variables -- end
+
+    /**
+     A queued write, numbered in queue order.
+     */
+    private record PendingWrite(long sequence, DatabaseResult row, int attempts) {
+
+        private PendingWrite failedOnce() {
+
+            return new PendingWrite(sequence, row, attempts + 1);
+        }
+    }
+
+    // constructors -- start
+    public WriteBehindDatabaseConnection(final DatabaseConnection databaseConnection, final long flushIntervalMillis,
+                                         final int batchSize) {
+
+        this(databaseConnection, flushIntervalMillis, batchSize, DEFAULT_MAX_ATTEMPTS, null);
+    }
+
+    /**
+     @param databaseConnection
+     the database the writes are saved to
+     @param flushIntervalMillis
+     milliseconds a batch waits for more writes
+     @param batchSize
+     the maximum number of writes saved in one transaction
+     @param maxAttempts
+     how often a write is tried before it is given up
+     @param deadLetterPath
+     the file given up writes are appended to, or null to only log them
+     */
+    public WriteBehindDatabaseConnection(final DatabaseConnection databaseConnection, final long flushIntervalMillis,
+                                         final int batchSize, final int maxAttempts, final Path deadLetterPath) {
+
+        this.databaseConnection = databaseConnection;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.deadLetterPath = deadLetterPath;
+        this.writerThread = new Thread(this::writeLoop, "database-write-behind");
+        this.writerThread.setDaemon(true);
+    }
+    // constructors -- end
+
+    /**
+     Waits for the first queued write, collects more writes until the batch is full, the flush interval is over or a
+     flush is requested, and saves them in one transaction. Writes that failed are kept at the front of the batch and
+     retried together with the next writes. The loop only ends once it is stopped and nothing is left to save.
+     */
+    private void writeLoop() {
+
+        final List<PendingWrite> batch = new ArrayList<>(batchSize);
+
+        while (running || !pendingWrites.isEmpty() || !batch.isEmpty()) {
+
+            try {
+
+                if (batch.isEmpty()) {
+
+                    final PendingWrite first = pendingWrites.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+                    if (first == null) {continue;}
+
+                    batch.add(first);
+                }
+
+                //group commit: give the following messages of a burst the chance to join this batch
+                final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+
+                while (batch.size() < batchSize && !flushRequested && running) {
+
+                    final long remaining = deadline - System.nanoTime();
+                    final PendingWrite next = remaining > 0 ? pendingWrites.poll(remaining, TimeUnit.NANOSECONDS) : null;
+
+                    if (next == null) {break;}
+
+                    batch.add(next);
+                }
+
+                pendingWrites.drainTo(batch, Math.max(0, batchSize - batch.size()));
+                takenSequence = Math.max(takenSequence, batch.getLast().sequence());
+
+                writeBatch(batch);
+
+            } catch (InterruptedException e) {
+
+                //the remaining writes are still saved before the loop ends
+                running = false;
+            }
+        }
+    }
+
+    /**
+     Saves a batch and reports the result to threads waiting in {@link #flush()}. If the batch fails, its writes are
+     saved one at a time, see {@link #writeOneByOne(List)}.
+
+     @param batch
+     the writes to save, the ones saved or given up are removed
+     */
+    private void writeBatch(final List<PendingWrite> batch) {
+
+        long committed = 0;
+        final Map<PendingWrite, RuntimeException> deadLetters = new LinkedHashMap<>();
+
+        try {
+
+            databaseConnection.saveBatchToDatabase(batch.stream().map(PendingWrite::row).toList());
+            flushedBatches.increment();
+            committed = batch.size();
+            batch.clear();
+
+        } catch (RuntimeException e) {
+
+            logger.log(Level.SEVERE, "WriteBehindDatabaseConnection > writeBatch - saving " + batch.size() + " writes one by one", e);
+            committed = writeOneByOne(batch, deadLetters);
+        }
+
+        flushLock.lock();
+
+        try {
+
+            committedWrites += committed;
+            deadLetteredWrites += deadLetters.size();
+
+            deadLetters.forEach((deadLetter, failure) -> deadLetterFailures.put(deadLetter.sequence(), failure));
+
+            while (deadLetterFailures.size() > REMEMBERED_DEAD_LETTERS) {deadLetterFailures.pollFirstEntry();}
+
+            //everything before the first write still kept is saved or given up
+            settledSequence = batch.isEmpty() ? takenSequence : batch.getFirst().sequence() - 1;
+            flushRequested = false;
+            flushed.signalAll();
+
+        } finally {
+
+            flushLock.unlock();
+        }
+
+        if (!batch.isEmpty()) {
+
+            //do not hammer a database that is down, pause longer the more often the oldest write failed
+            final long pause = Math.max(MIN_RETRY_PAUSE_MILLIS, flushIntervalMillis * 10) << Math.min(batch.getFirst().attempts() - 1, 10);
+            sleepQuietly(Math.min(pause, MAX_RETRY_PAUSE_MILLIS));
+        }
+    }
+
+    /**
+     Saves the writes of a failed batch one at a time. A write that fails again counts an attempt and is given up
+     after "maxAttempts". Two failures in a row end the pass, the database is more likely down than both writes
+     broken, and the remaining writes are not tried in vain.
+
+     @param batch
+     the writes of the failed batch, the ones saved or given up are removed
+     @param deadLetters
+     collects the writes given up, with their last failure
+
+     @return the number of writes saved
+     */
+    private long writeOneByOne(final List<PendingWrite> batch, final Map<PendingWrite, RuntimeException> deadLetters) {
+
+        long committed = 0;
+        boolean previousFailed = false;
+
+        for (int index = 0; index < batch.size(); ) {
+
+            final PendingWrite write = batch.get(index);
+
+            try {
+
+                databaseConnection.saveBatchToDatabase(List.of(write.row()));
+                flushedBatches.increment();
+                batch.remove(index);
+                committed++;
+                previousFailed = false;
+
+            } catch (RuntimeException e) {
+
+                final PendingWrite failedWrite = write.failedOnce();
+
+                if (failedWrite.attempts() >= maxAttempts) {
+
+                    batch.remove(index);
+                    deadLetters.put(failedWrite, e);
+                    writeDeadLetter(failedWrite, e);
+
+                } else {
+
+                    batch.set(index++, failedWrite);
+                }
+
+                if (previousFailed) {break;}
+
+                previousFailed = true;
+            }
+        }
+
+        return committed;
+    }
+
+    /**
+     Appends a given up write to the dead-letter file as one JSON line, so it can be looked at and saved by hand.
+
+     @param write
+     the given up write
+     @param failure
+     why it could not be saved
+     */
+    private void writeDeadLetter(final PendingWrite write, final RuntimeException failure) {
+
+        final DatabaseResult row = write.row();
+        logger.log(Level.SEVERE, "WriteBehindDatabaseConnection > writeDeadLetter - message " + row.id() + " given up after "
+                                 + write.attempts() + " attempts", failure);
+
+        if (deadLetterPath == null) {return;}
+
+        final ObjectNode deadLetter = mapper.createObjectNode();
+        deadLetter.put("id", row.id());
+        deadLetter.put("message", row.message());
+        deadLetter.put("image", row.image() == null ? null : Base64.getEncoder().encodeToString(row.image()));
+        deadLetter.put("imageHash", row.imageHash());
+        deadLetter.put("thumbnail", row.thumbnail() == null ? null : Base64.getEncoder().encodeToString(row.thumbnail()));
+        deadLetter.put("thumbnailHash", row.thumbnailHash());
+        deadLetter.put("error", String.valueOf(failure.getMessage()));
+
+        try {
+
+            if (deadLetterPath.getParent() != null) {Files.createDirectories(deadLetterPath.getParent());}
+
+            Files.writeString(deadLetterPath, deadLetter + "\n", StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                              StandardOpenOption.APPEND);
+
+        } catch (IOException e) {
+
+            logger.log(Level.SEVERE, "WriteBehindDatabaseConnection > writeDeadLetter - could not write " + deadLetterPath, e);
+        }
+    }
+
+    /**
+     Saves every write queued so far and returns once they are committed or given up.
+
+     @throws RuntimeException
+     if a write queued before the call and not yet saved when it began was given up
+     */
+    public void flush() {
+
+        final long target = queuedWrites.get();
+
+        flushLock.lock();
+
+        try {
+
+            final long settledBefore = settledSequence;
+
+            while (settledSequence < target) {
+
+                if (!writerThread.isAlive()) {throw new IllegalStateException("write-behind writer is not running");}
+
+                flushRequested = true;
+                flushed.await(flushIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+
+            final Map.Entry<Long, RuntimeException> givenUp = deadLetterFailures.subMap(settledBefore, false, target, true)
+                                                                                .firstEntry();
+
+            if (givenUp != null) {
+
+                throw new RuntimeException("write " + givenUp.getKey() + " was given up, see the dead-letter file", givenUp.getValue());
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+
+        } finally {
+
+            flushLock.unlock();
+        }
+    }
+
+    public long getPendingWrites() {
+
+        flushLock.lock();
+
+        try {
+
+            return queuedWrites.get() - committedWrites - deadLetteredWrites;
+
+        } finally {
+
+            flushLock.unlock();
+        }
+    }
+
+    public long getFlushedBatches() {
+
+        return flushedBatches.sum();
+    }
+
+    public long getDeadLetteredWrites() {
+
+        flushLock.lock();
+
+        try {
+
+            return deadLetteredWrites;
+
+        } finally {
+
+            flushLock.unlock();
+        }
+    }
+
+    public long getFlushedWrites() {
+
+        flushLock.lock();
+
+        try {
+
+            return committedWrites;
+
+        } finally {
+
+            flushLock.unlock();
+        }
+    }
+
+    // overrides -- start
+    @Override
+    public boolean checkIfTableExists(final String tableName) {
+
+        return databaseConnection.checkIfTableExists(tableName);
+    }
+
+    /**
+     Initializes the database and starts the writer. Ids of new messages continue after the highest id in the
+     database.
+     */
+    @Override
+    public void initDatabase() {
+
+        databaseConnection.initDatabase();
+        messageIdSequence.set(databaseConnection.getHighestMessageId());
+
+        writerThread.start();
+        logger.info("write-behind enabled - flush interval " + flushIntervalMillis + " ms, batch size " + batchSize);
+    }
+
+    @Override
+    public Optional<String> retrieveEnvironmentVariables(final String variableName) {
+
+        return databaseConnection.retrieveEnvironmentVariables(variableName);
+    }
+
+    @Override
+    public void setDatabaseSettings() {
+
+        databaseConnection.setDatabaseSettings();
+    }
+
+    @Override
+    public Deque<DatabaseResult> getAllFromDatabase() {
+
+        flush();
+        return databaseConnection.getAllFromDatabase();
+    }
+
+    @Override
+    public List<DatabaseResult> getPageFromDatabase(final long beforeId, final int limit, final boolean withImages) {
+
+        flush();
+        return databaseConnection.getPageFromDatabase(beforeId, limit, withImages);
+    }
+
+    @Override
+    public List<SearchResult> searchInDatabase(final String query, final int limit, final int offset) {
+
+        flush();
+        return databaseConnection.searchInDatabase(query, limit, offset);
+    }
+
+    @Override
+    public void replaceInDatabase(final Long id, final String message) {
+
+        flush();
+        databaseConnection.replaceInDatabase(id, message);
+    }
+
+    /**
+     Queues the message, it is saved with the next batch.
+
+     @param message
+     the message to be saved
+     */
+    @Override
+    public void saveToDatabase(final String message) {
+
+        queueMessage(message);
+    }
+
+    /**
+     Queues the message and returns it with its assigned id right away.
+
+     @param message
+     the message to be saved
+
+     @return the queued row, without image
+     */
+    @Override
+    public DatabaseResult saveToDatabaseAndReturnEntry(final String message) {
+
+        return new DatabaseResult(queueMessage(message), message, null);
+    }
+
+    /**
+     Returns the last message saved through this connection, without waiting for the writer.
+
+     @return the last saved message
+     */
+    @Override
+    public DatabaseResult getLastFromDatabase() {
+
+        final DatabaseResult lastMessage = this.lastSavedMessage;
+
+        if (lastMessage != null) {return lastMessage;}
+
+        flush();
+        return databaseConnection.getLastFromDatabase();
+    }
+
+    /**
+     Queues the message and returns its id right away.
+
+     @param updatedPictureModelJson
+     an updated `PictureModel` JSON string
+
+     @return the id assigned to the message
+     */
+    @Override
+    public long saveMessageWithoutPictureToDatabase(final String updatedPictureModelJson) {
+
+        return queueMessage(updatedPictureModelJson);
+    }
+
+    /**
+     Queues the image, it is saved with the same or a later batch than its message.
+
+     @param messageId
+     the ID of the message to associate the image with
+     @param imageBytes
+     an array of bytes representing the image data
+     */
+    @Override
+    public void saveExtractedImageToDatabaseInImageTable(final long messageId, final byte[] imageBytes) {
+
+        saveExtractedImageToDatabaseInImageTable(messageId, imageBytes, null);
+    }
+
+    /**
+     Queues the image and its thumbnail, they are saved with the same or a later batch than their message.
+
+     @param messageId
+     the ID of the message to associate the image with
+     @param imageBytes
+     an array of bytes representing the image data
+     @param thumbnailBytes
+     the thumbnail of the image, or null if there is none
+     */
+    @Override
+    public void saveExtractedImageToDatabaseInImageTable(final long messageId, final byte[] imageBytes,
+                                                         final byte[] thumbnailBytes) {
+
+        queueWrite(new DatabaseResult(messageId, null, imageBytes, null, thumbnailBytes, null));
+
+        final DatabaseResult lastMessage = this.lastSavedMessage;
+
+        if (lastMessage != null && lastMessage.id() == messageId) {
+
+            this.lastSavedMessage = new DatabaseResult(messageId, lastMessage.message(), imageBytes, lastMessage.imageHash(),
+                                                       thumbnailBytes, lastMessage.thumbnailHash());
+        }
+    }
+
+    /**
+     Queues the message together with its image and thumbnail hash and returns its id right away.
+
+     @param updatedPictureModelJson
+     an updated `PictureModel` JSON string, without the picture
+     @param imageHash
+     the key of the image in the image store
+     @param thumbnailHash
+     the key of the thumbnail in the image store, or null if there is none
+
+     @return the id assigned to the message
+     */
+    @Override
+    public long saveMessageWithImageHashToDatabase(final String updatedPictureModelJson, final String imageHash,
+                                                   final String thumbnailHash) {
+
+        return queueMessage(updatedPictureModelJson, imageHash, thumbnailHash);
+    }
+
+    @Override
+    public byte[] getImageFromDatabase(final Long messageId) {
+
+        flush();
+        return databaseConnection.getImageFromDatabase(messageId);
+    }
+
+    @Override
+    public String retrieveUpdatedEntry(final Long updatedId) {
+
+        flush();
+        return databaseConnection.retrieveUpdatedEntry(updatedId);
+    }
+
+    @Override
+    public String getMessageFromDatabase(final Long aLong) {
+
+        flush();
+        return databaseConnection.getMessageFromDatabase(aLong);
+    }
+
+    /**
+     Saves the reaction right away, once the message it belongs to has been saved.
+
+     @param messageId
+     the ID of the message the reaction belongs to
+     @param clientName
+     the name of the reacting client
+     @param reactionName
+     the reaction, e.g. an emoji
+
+     @return true if the reaction was saved, false if there is no such message
+     */
+    @Override
+    public boolean saveReactionToDatabase(final long messageId, final String clientName, final String reactionName) {
+
+        flush();
+        return databaseConnection.saveReactionToDatabase(messageId, clientName, reactionName);
+    }
+
+    @Override
+    public Map<Long, List<UserInteraction>> getReactionsFromDatabase(final long fromMessageId, final long toMessageId) {
+
+        flush();
+        return databaseConnection.getReactionsFromDatabase(fromMessageId, toMessageId);
+    }
+
+    @Override
+    public Optional<PoolStatistics> getPoolStatistics() {
+
+        return databaseConnection.getPoolStatistics();
+    }
+
+    /**
+     Stops the writer, saves everything still queued and closes the database.
+     */
+    @Override
+    public void close() {
+
+        try {
+
+            flush();
+            logger.info("write-behind flushed - " + getFlushedWrites() + " writes in " + flushedBatches.sum() + " batches");
+
+        } catch (RuntimeException e) {
+
+            logger.log(Level.SEVERE, "WriteBehindDatabaseConnection > close - " + getPendingWrites() + " writes pending, "
+                                     + getDeadLetteredWrites() + " given up", e);
+
+        } finally {
+
+            running = false;
+            joinWriter();
+            databaseConnection.close();
+        }
+    }
+    // overrides -- end
+
+    private long queueMessage(final String message) {
+
+        return queueMessage(message, null, null);
+    }
+
+    private long queueMessage(final String message, final String imageHash, final String thumbnailHash) {
+
+        final long id = messageIdSequence.incrementAndGet();
+        final DatabaseResult pendingMessage = new DatabaseResult(id, message, null, imageHash, null, thumbnailHash);
+
+        queueWrite(pendingMessage);
+        this.lastSavedMessage = pendingMessage;
+
+        return id;
+    }
+
+    private void queueWrite(final DatabaseResult write) {
+
+        //numbered and queued together, so the queue is in sequence order
+        synchronized (pendingWrites) {
+
+            pendingWrites.add(new PendingWrite(queuedWrites.get() + 1, write, 0));
+            queuedWrites.incrementAndGet();
+        }
+    }
+
+    private void joinWriter() {
+
+        try {
+
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sleepQuietly(final long millis) {
+
+        try {
+
+            Thread.sleep(millis);
+
+        } catch (InterruptedException e) {
+
+            running = false;
+        }
+    }
+}
@@ -1,14 +1,19 @@
 package com.soeguet.database.interfaces;
 
+import com.soeguet.model.UserInteraction;
 import com.soeguet.model.dtos.DatabaseResult;
+import com.soeguet.model.dtos.PoolStatistics;
+import com.soeguet.model.dtos.SearchResult;
 
 import java.util.Deque;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
  * The DatabaseConnectionController interface provides methods to interact with a database.
  */
-public interface DatabaseConnectionController {
+public interface DatabaseConnectionController extends AutoCloseable {
 
     /**
      * Checks if a table exists in the database.
@@ -50,6 +55,27 @@ public interface DatabaseConnectionController {
      */
     Deque<DatabaseResult> getAllFromDatabase();
 
+    /**
+     * Retrieves a page of messages older than a given message, using the primary key instead of an offset.
+     * Only the rows of the page are read, so the cost depends on the page size and not on the size of the table.
+     *
+     * @param beforeId   The ID the messages of the page are older than, exclusive.
+     * @param limit      The maximum number of messages in the page.
+     * @param withImages true to load the images and thumbnails kept in the image table as well.
+     * @return The messages of the page, from oldest to newest.
+     */
+    List<DatabaseResult> getPageFromDatabase(long beforeId, int limit, boolean withImages);
+
+    /**
+     * Searches the text of messages, link comments and picture descriptions.
+     *
+     * @param query  The words to search for, in web search syntax: quoted phrases, "or" and a leading "-" to exclude a word.
+     * @param limit  The maximum number of results.
+     * @param offset The number of best results to skip.
+     * @return The matching messages, best match first.
+     */
+    List<SearchResult> searchInDatabase(String query, int limit, int offset);
+
     /**
      * Replaces a specific record in the database with a new message.
      * This method updates the message column of a specific record in the database table with the given id.
@@ -70,6 +96,17 @@ public interface DatabaseConnectionController {
      */
     void saveToDatabase(String message);
 
+    /**
+     * Saves the given message to the database and returns the persisted record.
+     * The id and the stored message are returned by the insert itself, so no second query is needed,
+     * and concurrent inserts can not be mixed up.
+     *
+     * @param message The message to be saved in the database.
+     *                This should be a non-null string.
+     * @return A DatabaseResult object containing the generated id and the stored message, without image.
+     */
+    DatabaseResult saveToDatabaseAndReturnEntry(String message);
+
     /**
      * Retrieves the last record from the database.
      * This method retrieves the latest record from the database table and returns it as a DatabaseResult object.
@@ -109,6 +146,35 @@ public interface DatabaseConnectionController {
      */
     void saveExtractedImageToDatabaseInImageTable(final long messageId, final byte[] imageBytes);
 
+    /**
+     * Saves an image and its thumbnail associated with a message.
+     *
+     * @param messageId      The ID of the message to which the image belongs.
+     * @param imageBytes     The byte array representing the image to be saved.
+     * @param thumbnailBytes The thumbnail of the image, or null if there is none.
+     */
+    void saveExtractedImageToDatabaseInImageTable(final long messageId, final byte[] imageBytes, final byte[] thumbnailBytes);
+
+    /**
+     * Saves a picture message whose image is kept in an image store.
+     * Only the content hashes of the image and its thumbnail are saved next to the message, the images are not touched.
+     *
+     * @param updatedPictureModelJson A String containing the JSON representation of the picture model, without the picture.
+     * @param imageHash               The key of the image in the image store.
+     * @param thumbnailHash           The key of the thumbnail in the image store, or null if there is none.
+     * @return The generated ID of the saved message as a long value.
+     */
+    long saveMessageWithImageHashToDatabase(final String updatedPictureModelJson, final String imageHash,
+                                            final String thumbnailHash);
+
+    /**
+     * Retrieves the image saved for a message in the image table.
+     *
+     * @param messageId The ID of the message the image belongs to.
+     * @return The image data, or null if the message has no image in the image table.
+     */
+    byte[] getImageFromDatabase(Long messageId);
+
     /**
      * Retrieves an updated entry from the database.
      * This method takes the ID of an updated entry and returns the corresponding entry as a string.
@@ -121,4 +187,40 @@ public interface DatabaseConnectionController {
     String retrieveUpdatedEntry(Long updatedId);
 
     String getMessageFromDatabase(Long aLong);
+
+    /**
+     * Appends a reaction to a message.
+     * Every reaction is a row of its own, so concurrent reactions never overwrite each other and the message itself is
+     * not rewritten.
+     *
+     * @param messageId    The ID of the message the reaction belongs to.
+     * @param clientName   The name of the reacting client.
+     * @param reactionName The reaction, e.g. an emoji.
+     * @return true if the reaction was saved, false if there is no such message.
+     */
+    boolean saveReactionToDatabase(long messageId, String clientName, String reactionName);
+
+    /**
+     * Retrieves the reactions of a range of messages, in the order they were saved.
+     *
+     * @param fromMessageId The lowest message ID, inclusive.
+     * @param toMessageId   The highest message ID, inclusive.
+     * @return The reactions per message ID, messages without reactions are left out.
+     */
+    Map<Long, List<UserInteraction>> getReactionsFromDatabase(long fromMessageId, long toMessageId);
+
+    /**
+     * Retrieves the current usage of the connection pool.
+     *
+     * @return An {@link Optional} containing the pool statistics,
+     *         or an empty {@link Optional} if no pool has been opened yet.
+     */
+    Optional<PoolStatistics> getPoolStatistics();
+
+    /**
+     * Releases all database resources held by this controller.
+     * After this call no further queries should be issued.
+     */
+    @Override
+    void close();
 }
\ No newline at end of file
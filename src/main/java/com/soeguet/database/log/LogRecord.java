@@ -0,0 +1,166 @@
+package com.soeguet.database.log;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ Layout of the records of the segmented log.
+
+ <p>
+ A record is a header of two ints, the length of the body and its CRC32C checksum, followed by the body: the record
+ type, the message id and the fields of the type. Strings and byte arrays are prefixed with their length, -1 stands
+ for null. A length of 0 marks the end of the written part of a segment, a checksum mismatch a record that was torn
+ by a crash.
+ </p>
+ */
+final class LogRecord {
+
+    static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    //a new message with the keys of its pictures in the image store
+    static final byte MESSAGE = 1;
+    //the new text of an edited message, replaces the text of the message and of earlier edits
+    static final byte EDIT = 2;
+    //the picture and the thumbnail of a message
+    static final byte IMAGE = 3;
+    //a reaction to a message, every reaction is kept
+    static final byte REACTION = 4;
+
+    private LogRecord() {
+
+    }
+
+    static ByteBuffer message(final long messageId, final String message, final String imageHash, final String thumbnailHash) {
+
+        final byte[] messageBytes = utf8(message);
+        final byte[] imageHashBytes = utf8(imageHash);
+        final byte[] thumbnailHashBytes = utf8(thumbnailHash);
+
+        final ByteBuffer body = body(MESSAGE, messageId, fieldSize(messageBytes) + fieldSize(imageHashBytes) + fieldSize(thumbnailHashBytes));
+        putField(body, messageBytes);
+        putField(body, imageHashBytes);
+        putField(body, thumbnailHashBytes);
+
+        return body.flip();
+    }
+
+    static ByteBuffer edit(final long messageId, final String message) {
+
+        final byte[] messageBytes = utf8(message);
+
+        final ByteBuffer body = body(EDIT, messageId, fieldSize(messageBytes));
+        putField(body, messageBytes);
+
+        return body.flip();
+    }
+
+    static ByteBuffer image(final long messageId, final byte[] image, final byte[] thumbnail) {
+
+        final ByteBuffer body = body(IMAGE, messageId, fieldSize(image) + fieldSize(thumbnail));
+        putField(body, image);
+        putField(body, thumbnail);
+
+        return body.flip();
+    }
+
+    static ByteBuffer reaction(final long messageId, final String clientName, final String reactionName) {
+
+        final byte[] clientNameBytes = utf8(clientName);
+        final byte[] reactionNameBytes = utf8(reactionName);
+
+        final ByteBuffer body = body(REACTION, messageId, fieldSize(clientNameBytes) + fieldSize(reactionNameBytes));
+        putField(body, clientNameBytes);
+        putField(body, reactionNameBytes);
+
+        return body.flip();
+    }
+
+    /**
+     @return the checksum of a body, from its position to its limit, without changing its position
+     */
+    static int checksum(final ByteBuffer body) {
+
+        final CRC32C crc = new CRC32C();
+        crc.update(body.duplicate());
+
+        return (int) crc.getValue();
+    }
+
+    static byte type(final ByteBuffer body) {
+
+        return body.get(body.position());
+    }
+
+    static long messageId(final ByteBuffer body) {
+
+        return body.getLong(body.position() + 1);
+    }
+
+    /**
+     @param body
+     the body of a record
+
+     @return a view of the body positioned at its first field
+     */
+    static ByteBuffer fields(final ByteBuffer body) {
+
+        return body.duplicate().position(body.position() + 1 + Long.BYTES);
+    }
+
+    static String readString(final ByteBuffer fields) {
+
+        final byte[] bytes = readBytes(fields);
+
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static byte[] readBytes(final ByteBuffer fields) {
+
+        final int length = fields.getInt();
+
+        if (length < 0) {return null;}
+
+        final byte[] bytes = new byte[length];
+        fields.get(bytes);
+
+        return bytes;
+    }
+
+    /**
+     Skips a field without copying it.
+     */
+    static void skip(final ByteBuffer fields) {
+
+        final int length = fields.getInt();
+
+        if (length > 0) {fields.position(fields.position() + length);}
+    }
+
+    private static ByteBuffer body(final byte type, final long messageId, final int fieldsSize) {
+
+        return ByteBuffer.allocate(1 + Long.BYTES + fieldsSize).put(type).putLong(messageId);
+    }
+
+    private static byte[] utf8(final String value) {
+
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int fieldSize(final byte[] value) {
+
+        return Integer.BYTES + (value == null ? 0 : value.length);
+    }
+
+    private static void putField(final ByteBuffer body, final byte[] value) {
+
+        if (value == null) {
+
+            body.putInt(-1);
+
+        } else {
+
+            body.putInt(value.length).put(value);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.soeguet.database.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ One file of the segmented log, mapped into memory as a whole.
+
+ <p>
+ The file is created at its full size, records are appended with absolute puts into the mapping, so the position of
+ the shared buffer never changes and readers can take views of it without synchronization. Only one thread appends
+ at a time. Segments are never reused: once full, the log continues in a new segment.
+ </p>
+ */
+final class LogSegment {
+
+    // variables -- start
+    private final int number;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private int writePosition;
+    // variables -- end
+
+    // constructors -- start
+    private LogSegment(final int number, final Path path, final MappedByteBuffer buffer, final int writePosition) {
+
+        this.number = number;
+        this.path = path;
+        this.buffer = buffer;
+        this.writePosition = writePosition;
+    }
+    // constructors -- end
+
+    /**
+     Creates an empty segment file of the given size.
+
+     @param number
+     the number of the segment, segments are read in number order
+     @param path
+     the file to create, it must not exist yet
+     @param capacity
+     the size of the file in bytes
+
+     @return the segment, empty
+     */
+    static LogSegment create(final int number, final Path path, final int capacity) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+
+            return new LogSegment(number, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity), 0);
+        }
+    }
+
+    /**
+     Maps an existing segment file. The written part is found by {@link #recover(int)}.
+
+     @param number
+     the number of the segment
+     @param path
+     the segment file
+
+     @return the segment, positioned at its start
+     */
+    static LogSegment open(final int number, final Path path) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            return new LogSegment(number, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()), 0);
+        }
+    }
+
+    /**
+     Appends a record.
+
+     @param body
+     the body of the record, from its position to its limit
+
+     @return the offset of the record in the segment, or -1 if the segment has no room left for it
+     */
+    int append(final ByteBuffer body) {
+
+        final int length = body.remaining();
+
+        if (writePosition + LogRecord.HEADER_SIZE + length > buffer.capacity()) {return -1;}
+
+        final int offset = writePosition;
+
+        buffer.putInt(offset + Integer.BYTES, LogRecord.checksum(body));
+        buffer.put(offset + LogRecord.HEADER_SIZE, body, body.position(), length);
+
+        //the length goes last, a record without its length is not there for the recovery
+        buffer.putInt(offset, length);
+
+        writePosition = offset + LogRecord.HEADER_SIZE + length;
+        return offset;
+    }
+
+    /**
+     Returns the body of the record at an offset, as a view sharing the memory of the segment.
+
+     @param offset
+     the offset returned by {@link #append(ByteBuffer)}
+
+     @return a read-only view of the body
+     */
+    ByteBuffer read(final int offset) {
+
+        final int length = buffer.getInt(offset);
+
+        return buffer.slice(offset + LogRecord.HEADER_SIZE, length).asReadOnlyBuffer();
+    }
+
+    /**
+     Returns the size of the record at an offset, header included.
+     */
+    int recordSize(final int offset) {
+
+        return LogRecord.HEADER_SIZE + buffer.getInt(offset);
+    }
+
+    /**
+     Finds the end of the written part, starting at the offset of a record known to be intact. The written part ends
+     at the first record without length or with a wrong checksum, which is where the next record is appended.
+
+     @param offset
+     the offset to check from
+     @param visitor
+     called with the offset and the body of every intact record after that offset
+
+     @return the number of bytes checked
+     */
+    int recover(final int offset, final RecordVisitor visitor) {
+
+        int position = offset;
+
+        while (position + LogRecord.HEADER_SIZE <= buffer.capacity()) {
+
+            final int length = buffer.getInt(position);
+
+            if (length <= 0 || position + LogRecord.HEADER_SIZE + length > buffer.capacity()) {break;}
+
+            final ByteBuffer body = buffer.slice(position + LogRecord.HEADER_SIZE, length).asReadOnlyBuffer();
+
+            if (LogRecord.checksum(body) != buffer.getInt(position + Integer.BYTES)) {break;}
+
+            visitor.visit(position, body);
+            position += LogRecord.HEADER_SIZE + length;
+        }
+
+        writePosition = position;
+        return position - offset;
+    }
+
+    /**
+     Writes the appended records to the disk.
+     */
+    void force() {
+
+        buffer.force();
+    }
+
+    /**
+     Renames the file of the segment. The mapping stays valid.
+
+     @param target
+     the new path
+
+     @return the segment under its new path
+     */
+    LogSegment moveTo(final Path target) throws IOException {
+
+        Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+
+        return new LogSegment(number, target, buffer, writePosition);
+    }
+
+    int number() {
+
+        return number;
+    }
+
+    Path path() {
+
+        return path;
+    }
+
+    int writePosition() {
+
+        return writePosition;
+    }
+
+    int capacity() {
+
+        return buffer.capacity();
+    }
+
+    /**
+     Called for every intact record while a segment is recovered.
+     */
+    @FunctionalInterface
+    interface RecordVisitor {
+
+        void visit(int offset, ByteBuffer body);
+    }
+}
@@ -0,0 +1,828 @@
+package com.soeguet.database.log;
+
+import com.soeguet.database.memory.LongKeyedArray;
+import com.soeguet.model.UserInteraction;
+import com.soeguet.model.dtos.DatabaseResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ Messages, edits, pictures and reactions as records appended to a log of memory-mapped segment files.
+
+ <p>
+ Writes are appended one after the other, nothing is ever written in place. An index kept in memory points every
+ message id at the record of the message, the record of its latest edit, the record of its picture and the records of
+ its reactions, so a read is a lookup followed by reading the records straight from the mapped segments. Reads take
+ no lock, appends are serialized.
+ </p>
+ <p>
+ The index is rebuilt on startup by reading the log. A snapshot of the index is written from time to time, after it
+ only the records appended since the snapshot are read. Superseded edits and pictures stay in the log until it is
+ compacted: the compaction writes the current state of every message into new segments, publishes them with a
+ snapshot and deletes the old segments.
+ </p>
+ */
+final class SegmentedLog {
+
+    // variables -- start
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACTION_SUFFIX = ".compact";
+    private static final String SNAPSHOT_FILE = "index.snapshot";
+    private static final int SNAPSHOT_MAGIC = 0x54534c47;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final long[] NO_REACTIONS = new long[0];
+
+    private final Logger logger = Logger.getLogger(SegmentedLog.class.getName());
+    private final Path directory;
+    private final int segmentSize;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile LogState state;
+    private volatile long lastId;
+    //guarded by the write lock
+    private SegmentWriter writer;
+    private long totalBytes;
+    private long garbageBytes;
+    private boolean unsynced;
+    // variables -- end
+
+    /**
+     Where the records of a message are, as position of the record: the segment number in the upper and the offset in
+     the lower half. The content record is the message record itself until the message is edited, the image record
+     is -1 until a picture is saved.
+     */
+    private record MessageEntry(long messageRecord, long contentRecord, long imageRecord, long[] reactionRecords) {}
+
+    /**
+     The index and the segments it points into, replaced together by a compaction.
+     */
+    private record LogState(LongKeyedArray<MessageEntry> index, NavigableMap<Integer, LogSegment> segments) {}
+
+    private record Snapshot(int firstSegment, int coveredSegment, int coveredOffset, long lastId, long totalBytes,
+                            long garbageBytes, LongKeyedArray<MessageEntry> index) {}
+
+    /**
+     Appends to the last segment of a segment map and continues in a new segment once it is full.
+     */
+    private final class SegmentWriter {
+
+        private final NavigableMap<Integer, LogSegment> segments;
+        private final String suffix;
+        private LogSegment segment;
+
+        private SegmentWriter(final NavigableMap<Integer, LogSegment> segments, final String suffix, final LogSegment segment) {
+
+            this.segments = segments;
+            this.suffix = suffix;
+            this.segment = segment;
+        }
+
+        private long append(final ByteBuffer body) throws IOException {
+
+            int offset = segment.append(body);
+
+            if (offset < 0) {
+
+                //a segment is written to the disk as soon as it is full, later segments never wait for it
+                segment.force();
+                segment = LogSegment.create(segment.number() + 1, segmentPath(segment.number() + 1, suffix),
+                                            Math.max(segmentSize, LogRecord.HEADER_SIZE + body.remaining()));
+                segments.put(segment.number(), segment);
+                offset = segment.append(body);
+            }
+
+            return position(segment.number(), offset);
+        }
+    }
+
+    // constructors -- start
+    /**
+     @param directory
+     the directory of the segment files and the snapshot
+     @param segmentSize
+     the size of a segment file in bytes, records larger than that get a segment of their own
+     */
+    SegmentedLog(final Path directory, final int segmentSize) {
+
+        if (segmentSize < 1024) {throw new IllegalArgumentException("segmentSize must be at least 1024 bytes");}
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+    // constructors -- end
+
+    /**
+     Opens the log: loads the latest snapshot, finishes or discards an interrupted compaction and reads the records
+     appended after the snapshot.
+
+     @throws UncheckedIOException
+     if the directory can not be read
+     */
+    void open() {
+
+        writeLock.lock();
+
+        try {
+
+            Files.createDirectories(directory);
+
+            final NavigableMap<Integer, Path> segmentFiles = listSegmentFiles(SEGMENT_SUFFIX);
+            final NavigableMap<Integer, Path> compactionFiles = listSegmentFiles(COMPACTION_SUFFIX);
+            Snapshot snapshot = readSnapshot();
+
+            //the snapshot of a compaction points at its first segment, without that snapshot the compaction never happened.
+            //A crash while renaming leaves the first compacted segments renamed already, the snapshot then points at
+            //the first of them, above the old segments that are only deleted after the last rename.
+            final boolean compactionPublished = snapshot != null && !compactionFiles.isEmpty()
+                                                && snapshot.firstSegment() <= compactionFiles.firstKey()
+                                                && segmentFiles.lowerKey(snapshot.firstSegment()) != null
+                                                && segmentFiles.subMap(snapshot.firstSegment(), compactionFiles.firstKey()).size()
+                                                   == compactionFiles.firstKey() - snapshot.firstSegment();
+
+            for (Map.Entry<Integer, Path> compactionFile : compactionFiles.entrySet()) {
+
+                if (compactionPublished) {
+
+                    final Path segmentFile = segmentPath(compactionFile.getKey(), SEGMENT_SUFFIX);
+                    Files.move(compactionFile.getValue(), segmentFile, StandardCopyOption.ATOMIC_MOVE);
+                    segmentFiles.put(compactionFile.getKey(), segmentFile);
+
+                } else {
+
+                    Files.delete(compactionFile.getValue());
+                }
+            }
+
+            if (snapshot != null && !segmentFiles.containsKey(snapshot.coveredSegment())) {
+
+                logger.warning("SegmentedLog > open - snapshot points at a missing segment, reading the whole log");
+                snapshot = null;
+            }
+
+            if (snapshot != null) {
+
+                //segments replaced by a compaction whose deletion was interrupted
+                for (Path obsoleteFile : segmentFiles.headMap(snapshot.firstSegment()).values()) {
+
+                    Files.delete(obsoleteFile);
+                }
+
+                segmentFiles.headMap(snapshot.firstSegment()).clear();
+            }
+
+            final NavigableMap<Integer, LogSegment> segments = new ConcurrentSkipListMap<>();
+
+            for (Map.Entry<Integer, Path> segmentFile : segmentFiles.entrySet()) {
+
+                segments.put(segmentFile.getKey(), LogSegment.open(segmentFile.getKey(), segmentFile.getValue()));
+            }
+
+            if (segments.isEmpty()) {
+
+                segments.put(1, LogSegment.create(1, segmentPath(1, SEGMENT_SUFFIX), segmentSize));
+            }
+
+            final LongKeyedArray<MessageEntry> index = snapshot != null ? snapshot.index() : new LongKeyedArray<>();
+            state = new LogState(index, segments);
+            lastId = snapshot != null ? snapshot.lastId() : 0;
+            totalBytes = snapshot != null ? snapshot.totalBytes() : 0;
+            garbageBytes = snapshot != null ? snapshot.garbageBytes() : 0;
+
+            long recoveredBytes = 0;
+
+            for (LogSegment segment : segments.values()) {
+
+                if (snapshot != null && segment.number() < snapshot.coveredSegment()) {continue;}
+
+                final int offset = snapshot != null && segment.number() == snapshot.coveredSegment() ? snapshot.coveredOffset() : 0;
+                recoveredBytes += segment.recover(offset, (recordOffset, body) -> apply(position(segment.number(), recordOffset), body));
+            }
+
+            totalBytes += recoveredBytes;
+            writer = new SegmentWriter(segments, SEGMENT_SUFFIX, segments.lastEntry().getValue());
+
+            logger.info("segmented log opened - " + lastId + " messages, " + segments.size() + " segments, "
+                        + recoveredBytes + " bytes read after the snapshot");
+
+        } catch (IOException e) {
+
+            logger.log(Level.SEVERE, "SegmentedLog > open", e);
+            throw new UncheckedIOException(e);
+
+        } finally {
+
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     Appends a new message.
+
+     @return the id of the message
+     */
+    long appendMessage(final String message, final String imageHash, final String thumbnailHash) {
+
+        writeLock.lock();
+
+        try {
+
+            final long id = lastId + 1;
+            final long position = append(LogRecord.message(id, message, imageHash, thumbnailHash));
+
+            state.index().put(id, new MessageEntry(position, position, -1, NO_REACTIONS));
+            lastId = id;
+
+            return id;
+
+        } finally {
+
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     Appends the new text of a message.
+
+     @return false if there is no such message
+     */
+    boolean appendEdit(final long id, final String message) {
+
+        return appendToMessage(id, LogRecord.edit(id, message));
+    }
+
+    /**
+     Appends the picture and thumbnail of a message.
+
+     @return false if there is no such message
+     */
+    boolean appendImage(final long id, final byte[] image, final byte[] thumbnail) {
+
+        return appendToMessage(id, LogRecord.image(id, image, thumbnail));
+    }
+
+    /**
+     Appends a reaction to a message.
+
+     @return false if there is no such message
+     */
+    boolean appendReaction(final long id, final String clientName, final String reactionName) {
+
+        return appendToMessage(id, LogRecord.reaction(id, clientName, reactionName));
+    }
+
+    /**
+     Reads the current state of a message.
+
+     @param id
+     the id of the message
+     @param withImages
+     true to read its picture and thumbnail as well
+
+     @return the message, or null if there is no such message
+     */
+    DatabaseResult read(final long id, final boolean withImages) {
+
+        final LogState current = state;
+        final MessageEntry entry = entry(current, id);
+
+        if (entry == null) {return null;}
+
+        final ByteBuffer messageFields = LogRecord.fields(body(current, entry.messageRecord()));
+        final boolean edited = entry.contentRecord() != entry.messageRecord();
+
+        if (edited) {LogRecord.skip(messageFields);}
+
+        final String message = edited ? LogRecord.readString(LogRecord.fields(body(current, entry.contentRecord())))
+                                      : LogRecord.readString(messageFields);
+        final String imageHash = LogRecord.readString(messageFields);
+        final String thumbnailHash = LogRecord.readString(messageFields);
+
+        if (!withImages || entry.imageRecord() < 0) {
+
+            return new DatabaseResult(id, message, null, imageHash, null, thumbnailHash);
+        }
+
+        final ByteBuffer imageFields = LogRecord.fields(body(current, entry.imageRecord()));
+        final byte[] image = LogRecord.readBytes(imageFields);
+
+        return new DatabaseResult(id, message, image, imageHash, LogRecord.readBytes(imageFields), thumbnailHash);
+    }
+
+    /**
+     @return the picture of a message, or null if it has none
+     */
+    byte[] readImage(final long id) {
+
+        final LogState current = state;
+        final MessageEntry entry = entry(current, id);
+
+        if (entry == null || entry.imageRecord() < 0) {return null;}
+
+        return LogRecord.readBytes(LogRecord.fields(body(current, entry.imageRecord())));
+    }
+
+    /**
+     @return the reactions to a message in the order they were appended, empty if there are none
+     */
+    List<UserInteraction> readReactions(final long id) {
+
+        final LogState current = state;
+        final MessageEntry entry = entry(current, id);
+
+        if (entry == null || entry.reactionRecords().length == 0) {return List.of();}
+
+        final List<UserInteraction> reactions = new ArrayList<>(entry.reactionRecords().length);
+
+        for (long reactionRecord : entry.reactionRecords()) {
+
+            final ByteBuffer fields = LogRecord.fields(body(current, reactionRecord));
+            reactions.add(new UserInteraction(LogRecord.readString(fields), LogRecord.readString(fields)));
+        }
+
+        return reactions;
+    }
+
+    long lastId() {
+
+        return lastId;
+    }
+
+    /**
+     @return the bytes of superseded edits and pictures a compaction would free
+     */
+    long garbageBytes() {
+
+        writeLock.lock();
+
+        try {
+
+            return garbageBytes;
+
+        } finally {
+
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     Writes the records appended since the last call to the disk.
+     */
+    void sync() {
+
+        writeLock.lock();
+
+        try {
+
+            if (unsynced) {
+
+                writer.segment.force();
+                unsynced = false;
+            }
+
+        } finally {
+
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     Writes a snapshot of the index, so the next startup only reads the records appended after it.
+
+     @throws UncheckedIOException
+     if the snapshot can not be written, the previous snapshot stays in place
+     */
+    void snapshot() {
+
+        writeLock.lock();
+
+        try {
+
+            //the snapshot must not point past what is on the disk
+            writer.segment.force();
+            unsynced = false;
+
+            writeSnapshot(state.index(), state.segments().firstKey(), writer.segment);
+
+        } catch (IOException e) {
+
+            logger.log(Level.SEVERE, "SegmentedLog > snapshot", e);
+            throw new UncheckedIOException(e);
+
+        } finally {
+
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     Compacts the log if at least half of it is garbage and there is at least the size of a segment to free.
+
+     @return true if the log was compacted
+     */
+    boolean compactIfWorthwhile() {
+
+        writeLock.lock();
+
+        try {
+
+            if (garbageBytes < segmentSize || garbageBytes * 2 < totalBytes) {return false;}
+
+            compact();
+            return true;
+
+        } finally {
+
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     Rewrites the current state of every message into new segments and deletes the old ones. Appends wait for the
+     compaction, reads continue on the old segments until the new ones are published.
+
+     @throws UncheckedIOException
+     if the compaction fails, the log stays as it was
+     */
+    void compact() {
+
+        writeLock.lock();
+
+        try {
+
+            final long start = System.nanoTime();
+            final LogState previous = state;
+            final int firstNumber = writer.segment.number() + 1;
+
+            //the new segments are only taken up on startup once the snapshot pointing at them is written
+            final NavigableMap<Integer, LogSegment> compactedSegments = new ConcurrentSkipListMap<>();
+            compactedSegments.put(firstNumber, LogSegment.create(firstNumber, segmentPath(firstNumber, COMPACTION_SUFFIX), segmentSize));
+
+            final SegmentWriter compactionWriter = new SegmentWriter(compactedSegments, COMPACTION_SUFFIX,
+                                                                     compactedSegments.firstEntry().getValue());
+            final LongKeyedArray<MessageEntry> compactedIndex = new LongKeyedArray<>();
+
+            for (long id = 1; id <= lastId; id++) {
+
+                final DatabaseResult message = read(id, true);
+
+                if (message == null) {continue;}
+
+                final long messageRecord = compactionWriter.append(LogRecord.message(id, message.message(), message.imageHash(),
+                                                                                     message.thumbnailHash()));
+                final long imageRecord = message.image() == null && message.thumbnail() == null
+                                         ? -1 : compactionWriter.append(LogRecord.image(id, message.image(), message.thumbnail()));
+                final List<UserInteraction> reactions = readReactions(id);
+                final long[] reactionRecords = new long[reactions.size()];
+
+                for (int i = 0; i < reactionRecords.length; i++) {
+
+                    reactionRecords[i] = compactionWriter.append(LogRecord.reaction(id, reactions.get(i).timeAndUsername(),
+                                                                                    reactions.get(i).emoji()));
+                }
+
+                compactedIndex.put(id, new MessageEntry(messageRecord, messageRecord, imageRecord, reactionRecords));
+            }
+
+            long compactedBytes = 0;
+
+            for (LogSegment segment : compactedSegments.values()) {
+
+                segment.force();
+                compactedBytes += segment.writePosition();
+            }
+
+            totalBytes = compactedBytes;
+            garbageBytes = 0;
+            writeSnapshot(compactedIndex, firstNumber, compactionWriter.segment);
+
+            //published, from here on a crash finishes the compaction on startup
+            final NavigableMap<Integer, LogSegment> segments = new ConcurrentSkipListMap<>();
+
+            for (LogSegment segment : compactedSegments.values()) {
+
+                segments.put(segment.number(), segment.moveTo(segmentPath(segment.number(), SEGMENT_SUFFIX)));
+            }
+
+            state = new LogState(compactedIndex, segments);
+            writer = new SegmentWriter(segments, SEGMENT_SUFFIX, segments.lastEntry().getValue());
+
+            //readers still holding the previous state keep their mappings, unlinking a mapped file does not unmap it
+            for (LogSegment segment : previous.segments().values()) {
+
+                Files.deleteIfExists(segment.path());
+            }
+
+            logger.info("segmented log compacted - " + previous.segments().size() + " segments into " + segments.size()
+                        + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        } catch (IOException e) {
+
+            logger.log(Level.SEVERE, "SegmentedLog > compact", e);
+            throw new UncheckedIOException(e);
+
+        } finally {
+
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     Writes everything to the disk and takes a snapshot, so the next startup is fast.
+     */
+    void close() {
+
+        snapshot();
+    }
+
+    private boolean appendToMessage(final long id, final ByteBuffer body) {
+
+        writeLock.lock();
+
+        try {
+
+            if (entry(state, id) == null) {return false;}
+
+            apply(append(body), body);
+            return true;
+
+        } finally {
+
+            writeLock.unlock();
+        }
+    }
+
+    private long append(final ByteBuffer body) {
+
+        try {
+
+            final long position = writer.append(body);
+
+            totalBytes += LogRecord.HEADER_SIZE + body.remaining();
+            unsynced = true;
+
+            return position;
+
+        } catch (IOException e) {
+
+            logger.log(Level.SEVERE, "SegmentedLog > append", e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     Updates the index with an appended or recovered record.
+
+     @param position
+     the position of the record
+     @param body
+     the body of the record
+     */
+    private void apply(final long position, final ByteBuffer body) {
+
+        final LogState current = state;
+        final long id = LogRecord.messageId(body);
+
+        if (LogRecord.type(body) == LogRecord.MESSAGE) {
+
+            current.index().put(id, new MessageEntry(position, position, -1, NO_REACTIONS));
+            lastId = Math.max(lastId, id);
+            return;
+        }
+
+        final MessageEntry entry = entry(current, id);
+
+        if (entry == null) {
+
+            logger.warning("SegmentedLog > apply - record for unknown message " + id + " ignored");
+            return;
+        }
+
+        final MessageEntry updated = switch (LogRecord.type(body)) {
+
+            case LogRecord.EDIT -> {
+
+                if (entry.contentRecord() != entry.messageRecord()) {garbageBytes += recordSize(current, entry.contentRecord());}
+
+                yield new MessageEntry(entry.messageRecord(), position, entry.imageRecord(), entry.reactionRecords());
+            }
+            case LogRecord.IMAGE -> {
+
+                if (entry.imageRecord() >= 0) {garbageBytes += recordSize(current, entry.imageRecord());}
+
+                yield new MessageEntry(entry.messageRecord(), entry.contentRecord(), position, entry.reactionRecords());
+            }
+            case LogRecord.REACTION -> {
+
+                final long[] reactionRecords = Arrays.copyOf(entry.reactionRecords(), entry.reactionRecords().length + 1);
+                reactionRecords[reactionRecords.length - 1] = position;
+
+                yield new MessageEntry(entry.messageRecord(), entry.contentRecord(), entry.imageRecord(), reactionRecords);
+            }
+            default -> {
+
+                logger.warning("SegmentedLog > apply - unknown record type " + LogRecord.type(body) + " ignored");
+                yield entry;
+            }
+        };
+
+        current.index().put(id, updated);
+    }
+
+    private MessageEntry entry(final LogState current, final long id) {
+
+        return id < 1 || id > lastId ? null : current.index().get(id);
+    }
+
+    private static ByteBuffer body(final LogState current, final long position) {
+
+        return current.segments().get(segmentNumber(position)).read(offset(position));
+    }
+
+    private static int recordSize(final LogState current, final long position) {
+
+        return current.segments().get(segmentNumber(position)).recordSize(offset(position));
+    }
+
+    private static long position(final int segmentNumber, final int offset) {
+
+        return (long) segmentNumber << 32 | offset;
+    }
+
+    private static int segmentNumber(final long position) {
+
+        return (int) (position >>> 32);
+    }
+
+    private static int offset(final long position) {
+
+        return (int) position;
+    }
+
+    private Path segmentPath(final int number, final String suffix) {
+
+        return directory.resolve(String.format("%010d%s", number, suffix));
+    }
+
+    private NavigableMap<Integer, Path> listSegmentFiles(final String suffix) throws IOException {
+
+        final NavigableMap<Integer, Path> segmentFiles = new TreeMap<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + suffix)) {
+
+            for (Path file : files) {
+
+                final String fileName = file.getFileName().toString();
+                segmentFiles.put(Integer.parseInt(fileName.substring(0, fileName.length() - suffix.length())), file);
+            }
+        }
+
+        return segmentFiles;
+    }
+
+    /**
+     Writes the index into a temporary file and moves it over the previous snapshot once it is on the disk.
+
+     @param index
+     the index to write
+     @param firstSegment
+     the first segment the index points into
+     @param coveredSegment
+     the segment whose written part is the end of what the snapshot covers
+     */
+    private void writeSnapshot(final LongKeyedArray<MessageEntry> index, final int firstSegment,
+                               final LogSegment coveredSegment) throws IOException {
+
+        final Path temporaryFile = directory.resolve(SNAPSHOT_FILE + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            final CheckedOutputStream checkedOutputStream = new CheckedOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)),
+                                                                                    new CRC32C());
+            final DataOutputStream output = new DataOutputStream(checkedOutputStream);
+
+            output.writeInt(SNAPSHOT_MAGIC);
+            output.writeInt(SNAPSHOT_VERSION);
+            output.writeInt(firstSegment);
+            output.writeInt(coveredSegment.number());
+            output.writeInt(coveredSegment.writePosition());
+            output.writeLong(lastId);
+            output.writeLong(totalBytes);
+            output.writeLong(garbageBytes);
+
+            for (long id = 1; id <= lastId; id++) {
+
+                final MessageEntry entry = index.get(id);
+
+                if (entry == null) {continue;}
+
+                output.writeLong(id);
+                output.writeLong(entry.messageRecord());
+                output.writeLong(entry.contentRecord());
+                output.writeLong(entry.imageRecord());
+                output.writeInt(entry.reactionRecords().length);
+
+                for (long reactionRecord : entry.reactionRecords()) {
+
+                    output.writeLong(reactionRecord);
+                }
+            }
+
+            //no message has the id 0, it ends the entries
+            output.writeLong(0);
+            output.writeInt((int) checkedOutputStream.getChecksum().getValue());
+            output.flush();
+            channel.force(true);
+        }
+
+        Files.move(temporaryFile, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     @return the latest snapshot, or null if there is none or it can not be read
+     */
+    private Snapshot readSnapshot() {
+
+        try (CheckedInputStream checkedInputStream = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(directory.resolve(SNAPSHOT_FILE))),
+                                                                            new CRC32C())) {
+
+            final DataInputStream input = new DataInputStream(checkedInputStream);
+
+            if (input.readInt() != SNAPSHOT_MAGIC || input.readInt() != SNAPSHOT_VERSION) {
+
+                logger.warning("SegmentedLog > readSnapshot - unknown snapshot format, reading the whole log");
+                return null;
+            }
+
+            final int firstSegment = input.readInt();
+            final int coveredSegment = input.readInt();
+            final int coveredOffset = input.readInt();
+            final long snapshotLastId = input.readLong();
+            final long snapshotTotalBytes = input.readLong();
+            final long snapshotGarbageBytes = input.readLong();
+            final LongKeyedArray<MessageEntry> index = new LongKeyedArray<>();
+
+            for (long id = input.readLong(); id != 0; id = input.readLong()) {
+
+                final long messageRecord = input.readLong();
+                final long contentRecord = input.readLong();
+                final long imageRecord = input.readLong();
+                final long[] reactionRecords = new long[input.readInt()];
+
+                for (int i = 0; i < reactionRecords.length; i++) {
+
+                    reactionRecords[i] = input.readLong();
+                }
+
+                index.put(id, new MessageEntry(messageRecord, contentRecord, imageRecord, reactionRecords));
+            }
+
+            final int expectedChecksum = (int) checkedInputStream.getChecksum().getValue();
+
+            if (input.readInt() != expectedChecksum) {
+
+                logger.warning("SegmentedLog > readSnapshot - snapshot is damaged, reading the whole log");
+                return null;
+            }
+
+            return new Snapshot(firstSegment, coveredSegment, coveredOffset, snapshotLastId, snapshotTotalBytes,
+                                snapshotGarbageBytes, index);
+
+        } catch (NoSuchFileException e) {
+
+            return null;
+
+        } catch (IOException | RuntimeException e) {
+
+            logger.log(Level.WARNING, "SegmentedLog > readSnapshot - snapshot can not be read, reading the whole log", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.soeguet.database.log;
+
+import com.soeguet.database.MessageColumnReader;
+import com.soeguet.database.SearchSnippets;
+import com.soeguet.database.interfaces.DatabaseConnectionController;
+import com.soeguet.database.memory.LongKeyedArray;
+import com.soeguet.model.UserInteraction;
+import com.soeguet.model.dtos.DatabaseResult;
+import com.soeguet.model.dtos.PoolStatistics;
+import com.soeguet.model.dtos.SearchResult;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ Keeps the messages in an append-only log of memory-mapped segment files, see {@link SegmentedLog}.
+
+ <p>
+ Meant for single-node deployments that want their messages to survive a restart without running a database. Every
+ change is appended to the mapped segment and visible right away; the segment is written to the disk about once per
+ sync interval, so a crash of the machine loses at most the changes of the last interval. A crash of the server
+ alone loses nothing, the operating system writes the mapped pages. Snapshots of the index keep the startup short,
+ compactions drop superseded edits and pictures once they make up half of the log.
+ </p>
+ */
+public class SegmentedLogDatabaseConnection implements DatabaseConnectionController {
+
+    // variables -- start
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final long DEFAULT_SYNC_INTERVAL = 1000;
+    private static final long DEFAULT_MAINTENANCE_INTERVAL = 300_000;
+    private static final String NO_SEARCH_TEXT = "";
+
+    private final Logger logger = Logger.getLogger(SegmentedLogDatabaseConnection.class.getName());
+    private final SegmentedLog log;
+    private final LongKeyedArray<String> searchTexts = new LongKeyedArray<>();
+    private final long syncInterval;
+    private final long maintenanceInterval;
+    private ScheduledExecutorService scheduler;
+    // variables -- end
+
+    // constructors -- start
+    /**
+     @param directory
+     the directory of the log, created if it does not exist
+     */
+    public SegmentedLogDatabaseConnection(final Path directory) {
+
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SYNC_INTERVAL, DEFAULT_MAINTENANCE_INTERVAL);
+    }
+
+    /**
+     @param directory
+     the directory of the log, created if it does not exist
+     @param segmentSize
+     the size of a segment file in bytes
+     @param syncInterval
+     the milliseconds between two writes of the active segment to the disk
+     @param maintenanceInterval
+     the milliseconds between two snapshots, each preceded by a compaction if it is worthwhile
+     */
+    public SegmentedLogDatabaseConnection(final Path directory, final int segmentSize, final long syncInterval,
+                                          final long maintenanceInterval) {
+
+        this.log = new SegmentedLog(directory, segmentSize);
+        this.syncInterval = syncInterval;
+        this.maintenanceInterval = maintenanceInterval;
+    }
+    // constructors -- end
+
+    // overrides -- start
+    @Override
+    public boolean checkIfTableExists(final String tableName) {
+
+        return true;
+    }
+
+    @Override
+    public void initDatabase() {
+
+        log.open();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+
+            final Thread thread = new Thread(runnable, "segmented-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler.scheduleWithFixedDelay(this::sync, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::maintain, maintenanceInterval, maintenanceInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Optional<String> retrieveEnvironmentVariables(final String variableName) {
+
+        return Optional.ofNullable(System.getenv(variableName));
+    }
+
+    /**
+     Nothing to configure, the log needs no database.
+     */
+    @Override
+    public void setDatabaseSettings() {
+
+    }
+
+    @Override
+    public Deque<DatabaseResult> getAllFromDatabase() {
+
+        return new ArrayDeque<>(getPageFromDatabase(Long.MAX_VALUE, 100, true));
+    }
+
+    /**
+     Walks the ids downward from the one before {@code beforeId}, a lookup in the index per message.
+     */
+    @Override
+    public List<DatabaseResult> getPageFromDatabase(final long beforeId, final int limit, final boolean withImages) {
+
+        final List<DatabaseResult> page = new ArrayList<>(limit);
+
+        for (long id = Math.min(beforeId - 1, log.lastId()); id > 0 && page.size() < limit; id--) {
+
+            final DatabaseResult row = log.read(id, withImages);
+
+            if (row != null) {page.add(row);}
+        }
+
+        Collections.reverse(page);
+        return page;
+    }
+
+    /**
+     Scans the text fields of the messages from newest to oldest for the query, ignoring case. There is no search
+     index, every search reads the messages until enough of them match. The text fields of a message are parsed the
+     first time it is searched and kept in memory, so later searches neither read the log nor parse the JSON again.
+     */
+    @Override
+    public List<SearchResult> searchInDatabase(final String query, final int limit, final int offset) {
+
+        final List<SearchResult> results = new ArrayList<>(limit);
+        int skipped = 0;
+
+        for (long id = log.lastId(); id > 0 && results.size() < limit; id--) {
+
+            final String searchText = getSearchText(id);
+
+            if (!SearchSnippets.contains(searchText, query)) {continue;}
+
+            if (skipped++ < offset) {continue;}
+
+            results.add(new SearchResult(id, 0, SearchSnippets.cut(searchText, query)));
+        }
+
+        return results;
+    }
+
+    @Override
+    public void replaceInDatabase(final Long id, final String message) {
+
+        if (!log.appendEdit(id, message)) {
+
+            logger.log(Level.SEVERE, "SegmentedLogDatabaseConnection > replaceInDatabase");
+            throw new RuntimeException("No rows updated");
+        }
+
+        searchTexts.put(id, readSearchText(message));
+    }
+
+    @Override
+    public void saveToDatabase(final String message) {
+
+        log.appendMessage(message, null, null);
+    }
+
+    @Override
+    public DatabaseResult saveToDatabaseAndReturnEntry(final String message) {
+
+        final long id = log.appendMessage(message, null, null);
+
+        return new DatabaseResult(id, message, null, null, null, null);
+    }
+
+    @Override
+    public DatabaseResult getLastFromDatabase() {
+
+        final DatabaseResult last = log.read(log.lastId(), true);
+
+        if (last == null) {
+
+            logger.log(Level.SEVERE, "SegmentedLogDatabaseConnection > getLastFromDatabase");
+            throw new RuntimeException("No rows found");
+        }
+
+        return last;
+    }
+
+    @Override
+    public long saveMessageWithoutPictureToDatabase(final String updatedPictureModelJson) {
+
+        return log.appendMessage(updatedPictureModelJson, null, null);
+    }
+
+    @Override
+    public void saveExtractedImageToDatabaseInImageTable(final long messageId, final byte[] imageBytes) {
+
+        saveExtractedImageToDatabaseInImageTable(messageId, imageBytes, null);
+    }
+
+    @Override
+    public void saveExtractedImageToDatabaseInImageTable(final long messageId, final byte[] imageBytes,
+                                                         final byte[] thumbnailBytes) {
+
+        if (!log.appendImage(messageId, imageBytes, thumbnailBytes)) {
+
+            logger.log(Level.SEVERE, "SegmentedLogDatabaseConnection > saveExtractedImageToDatabaseInImageTable");
+            throw new RuntimeException("no message " + messageId);
+        }
+    }
+
+    @Override
+    public long saveMessageWithImageHashToDatabase(final String updatedPictureModelJson, final String imageHash,
+                                                   final String thumbnailHash) {
+
+        return log.appendMessage(updatedPictureModelJson, imageHash, thumbnailHash);
+    }
+
+    @Override
+    public byte[] getImageFromDatabase(final Long messageId) {
+
+        return log.readImage(messageId);
+    }
+
+    @Override
+    public String retrieveUpdatedEntry(final Long updatedId) {
+
+        return getMessageFromDatabase(updatedId);
+    }
+
+    @Override
+    public String getMessageFromDatabase(final Long aLong) {
+
+        final DatabaseResult row = log.read(aLong, false);
+
+        return row == null ? null : row.message();
+    }
+
+    @Override
+    public boolean saveReactionToDatabase(final long messageId, final String clientName, final String reactionName) {
+
+        return log.appendReaction(messageId, clientName, reactionName);
+    }
+
+    @Override
+    public Map<Long, List<UserInteraction>> getReactionsFromDatabase(final long fromMessageId, final long toMessageId) {
+
+        final Map<Long, List<UserInteraction>> reactionsById = new HashMap<>();
+
+        for (long id = Math.max(1, fromMessageId); id <= Math.min(toMessageId, log.lastId()); id++) {
+
+            final List<UserInteraction> messageReactions = log.readReactions(id);
+
+            if (!messageReactions.isEmpty()) {reactionsById.put(id, messageReactions);}
+        }
+
+        return reactionsById;
+    }
+
+    @Override
+    public Optional<PoolStatistics> getPoolStatistics() {
+
+        return Optional.empty();
+    }
+
+    /**
+     Stops the background work, writes everything to the disk and takes a snapshot.
+     */
+    @Override
+    public void close() {
+
+        if (scheduler != null) {
+
+            scheduler.shutdown();
+
+            try {
+
+                if (!scheduler.awaitTermination(30, TimeUnit.SECONDS)) {
+
+                    logger.warning("SegmentedLogDatabaseConnection > close - maintenance did not finish in time");
+                }
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        log.close();
+        logger.info("segmented log closed - " + log.lastId() + " messages");
+    }
+    // overrides -- end
+
+    /**
+     Compacts the log if that is worthwhile.
+
+     @return true if the log was compacted
+     */
+    public boolean compact() {
+
+        return log.compactIfWorthwhile();
+    }
+
+    /**
+     @return the text fields of a message, null if it has none or does not exist
+     */
+    private String getSearchText(final long id) {
+
+        String searchText = searchTexts.get(id);
+
+        if (searchText == null) {
+
+            final DatabaseResult row = log.read(id, false);
+
+            if (row == null) {return null;}
+
+            //an edit in between has put the newer text already, which wins
+            searchText = searchTexts.putIfAbsent(id, readSearchText(row.message()));
+        }
+
+        return searchText.isEmpty() ? null : searchText;
+    }
+
+    private static String readSearchText(final String message) {
+
+        final String searchText = MessageColumnReader.readSearchText(message);
+
+        return searchText == null ? NO_SEARCH_TEXT : searchText;
+    }
+
+    private void sync() {
+
+        try {
+
+            log.sync();
+
+        } catch (RuntimeException e) {
+
+            logger.log(Level.SEVERE, "SegmentedLogDatabaseConnection > sync", e);
+        }
+    }
+
+    private void maintain() {
+
+        try {
+
+            log.compactIfWorthwhile();
+            log.snapshot();
+
+        } catch (RuntimeException e) {
+
+            logger.log(Level.SEVERE, "SegmentedLogDatabaseConnection > maintain", e);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.soeguet.database.memory;
+
+import com.soeguet.database.MessageColumnReader;
+import com.soeguet.database.SearchSnippets;
+import com.soeguet.database.interfaces.DatabaseConnectionController;
+import com.soeguet.model.UserInteraction;
+import com.soeguet.model.dtos.DatabaseResult;
+import com.soeguet.model.dtos.PoolStatistics;
+import com.soeguet.model.dtos.SearchResult;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ Keeps all messages in memory, nothing survives a restart.
+
+ <p>
+ Meant for ephemeral deployments and for measuring the server without a database in the way. Message ids are handed
+ out by an atomic sequence and index a {@link LongKeyedArray}, so reads and writes never take a lock and never box a
+ key. A row is an immutable {@link DatabaseResult}; edits and images replace the whole row by compare-and-set.
+ Reactions are appended to a lock-free queue per message. The searched text fields of every message are parsed
+ once when it is stored.
+ </p>
+ */
+public class InMemoryDatabaseConnection implements DatabaseConnectionController {
+
+    // variables -- start
+    private final Logger logger = Logger.getLogger(InMemoryDatabaseConnection.class.getName());
+    private final AtomicLong messageIdSequence = new AtomicLong();
+    private final LongKeyedArray<DatabaseResult> messages = new LongKeyedArray<>();
+    private final LongKeyedArray<String> searchTexts = new LongKeyedArray<>();
+    private final LongKeyedArray<ConcurrentLinkedQueue<UserInteraction>> reactions = new LongKeyedArray<>();
+    // variables -- end
+
+    // overrides -- start
+    @Override
+    public boolean checkIfTableExists(final String tableName) {
+
+        return true;
+    }
+
+    @Override
+    public void initDatabase() {
+
+        logger.info("in-memory storage - messages are lost on restart");
+    }
+
+    @Override
+    public Optional<String> retrieveEnvironmentVariables(final String variableName) {
+
+        return Optional.ofNullable(System.getenv(variableName));
+    }
+
+    /**
+     Nothing to configure, the in-memory storage needs no database.
+     */
+    @Override
+    public void setDatabaseSettings() {
+
+    }
+
+    @Override
+    public Deque<DatabaseResult> getAllFromDatabase() {
+
+        return new ArrayDeque<>(getPageFromDatabase(Long.MAX_VALUE, 100, true));
+    }
+
+    /**
+     Walks the ids downward from the one before {@code beforeId}. The ids have no gaps, so the page costs as many
+     lookups as it has messages.
+     */
+    @Override
+    public List<DatabaseResult> getPageFromDatabase(final long beforeId, final int limit, final boolean withImages) {
+
+        final List<DatabaseResult> page = new ArrayList<>(limit);
+
+        for (long id = Math.min(beforeId - 1, messageIdSequence.get()); id > 0 && page.size() < limit; id--) {
+
+            final DatabaseResult row = messages.get(id);
+
+            if (row != null) {page.add(withImages ? row : withoutImages(row));}
+        }
+
+        Collections.reverse(page);
+        return page;
+    }
+
+    /**
+     Scans the text fields of the messages from newest to oldest for the query, ignoring case. There is no index,
+     every search reads the messages until enough of them match.
+     */
+    @Override
+    public List<SearchResult> searchInDatabase(final String query, final int limit, final int offset) {
+
+        final List<SearchResult> results = new ArrayList<>(limit);
+        int skipped = 0;
+
+        for (long id = messageIdSequence.get(); id > 0 && results.size() < limit; id--) {
+
+            final String searchText = searchTexts.get(id);
+
+            if (!SearchSnippets.contains(searchText, query)) {continue;}
+
+            if (skipped++ < offset) {continue;}
+
+            results.add(new SearchResult(id, 0, SearchSnippets.cut(searchText, query)));
+        }
+
+        return results;
+    }
+
+    @Override
+    public void replaceInDatabase(final Long id, final String message) {
+
+        final DatabaseResult replaced = messages.updateIfPresent(id, row -> new DatabaseResult(row.id(), message, row.image(),
+                                                                                                row.imageHash(), row.thumbnail(),
+                                                                                                row.thumbnailHash()));
+
+        if (replaced == null) {
+
+            logger.log(Level.SEVERE, "InMemoryDatabaseConnection > replaceInDatabase");
+            throw new RuntimeException("No rows updated");
+        }
+
+        searchTexts.put(id, MessageColumnReader.readSearchText(message));
+    }
+
+    @Override
+    public void saveToDatabase(final String message) {
+
+        saveToDatabaseAndReturnEntry(message);
+    }
+
+    @Override
+    public DatabaseResult saveToDatabaseAndReturnEntry(final String message) {
+
+        return insert(message, null, null);
+    }
+
+    @Override
+    public DatabaseResult getLastFromDatabase() {
+
+        final DatabaseResult last = messages.get(Math.max(1, messageIdSequence.get()));
+
+        if (last == null) {
+
+            logger.log(Level.SEVERE, "InMemoryDatabaseConnection > getLastFromDatabase");
+            throw new RuntimeException("No rows found");
+        }
+
+        return last;
+    }
+
+    @Override
+    public long saveMessageWithoutPictureToDatabase(final String updatedPictureModelJson) {
+
+        return insert(updatedPictureModelJson, null, null).id();
+    }
+
+    @Override
+    public void saveExtractedImageToDatabaseInImageTable(final long messageId, final byte[] imageBytes) {
+
+        saveExtractedImageToDatabaseInImageTable(messageId, imageBytes, null);
+    }
+
+    @Override
+    public void saveExtractedImageToDatabaseInImageTable(final long messageId, final byte[] imageBytes,
+                                                         final byte[] thumbnailBytes) {
+
+        final DatabaseResult updated = messages.updateIfPresent(messageId, row -> new DatabaseResult(row.id(), row.message(),
+                                                                                                      imageBytes, row.imageHash(),
+                                                                                                      thumbnailBytes,
+                                                                                                      row.thumbnailHash()));
+
+        if (updated == null) {
+
+            logger.log(Level.SEVERE, "InMemoryDatabaseConnection > saveExtractedImageToDatabaseInImageTable");
+            throw new RuntimeException("no message " + messageId);
+        }
+    }
+
+    @Override
+    public long saveMessageWithImageHashToDatabase(final String updatedPictureModelJson, final String imageHash,
+                                                   final String thumbnailHash) {
+
+        return insert(updatedPictureModelJson, imageHash, thumbnailHash).id();
+    }
+
+    @Override
+    public byte[] getImageFromDatabase(final Long messageId) {
+
+        final DatabaseResult row = messages.get(messageId);
+
+        return row == null ? null : row.image();
+    }
+
+    @Override
+    public String retrieveUpdatedEntry(final Long updatedId) {
+
+        return getMessageFromDatabase(updatedId);
+    }
+
+    @Override
+    public String getMessageFromDatabase(final Long aLong) {
+
+        final DatabaseResult row = messages.get(aLong);
+
+        return row == null ? null : row.message();
+    }
+
+    @Override
+    public boolean saveReactionToDatabase(final long messageId, final String clientName, final String reactionName) {
+
+        if (messages.get(messageId) == null) {return false;}
+
+        ConcurrentLinkedQueue<UserInteraction> messageReactions = reactions.get(messageId);
+
+        if (messageReactions == null) {
+
+            messageReactions = reactions.putIfAbsent(messageId, new ConcurrentLinkedQueue<>());
+        }
+
+        messageReactions.add(new UserInteraction(clientName, reactionName));
+        return true;
+    }
+
+    @Override
+    public Map<Long, List<UserInteraction>> getReactionsFromDatabase(final long fromMessageId, final long toMessageId) {
+
+        final Map<Long, List<UserInteraction>> reactionsById = new HashMap<>();
+
+        for (long id = Math.max(1, fromMessageId); id <= Math.min(toMessageId, messageIdSequence.get()); id++) {
+
+            final ConcurrentLinkedQueue<UserInteraction> messageReactions = reactions.get(id);
+
+            if (messageReactions != null && !messageReactions.isEmpty()) {
+
+                reactionsById.put(id, List.copyOf(messageReactions));
+            }
+        }
+
+        return reactionsById;
+    }
+
+    @Override
+    public Optional<PoolStatistics> getPoolStatistics() {
+
+        return Optional.empty();
+    }
+
+    @Override
+    public void close() {
+
+        logger.info("in-memory storage closed - " + messageIdSequence.get() + " messages discarded");
+    }
+    // overrides -- end
+
+    private DatabaseResult insert(final String message, final String imageHash, final String thumbnailHash) {
+
+        final long id = messageIdSequence.incrementAndGet();
+        final DatabaseResult row = new DatabaseResult(id, message, null, imageHash, null, thumbnailHash);
+
+        searchTexts.put(id, MessageColumnReader.readSearchText(message));
+        messages.put(id, row);
+        return row;
+    }
+
+    private static DatabaseResult withoutImages(final DatabaseResult row) {
+
+        if (row.image() == null && row.thumbnail() == null) {return row;}
+
+        return new DatabaseResult(row.id(), row.message(), null, row.imageHash(), null, row.thumbnailHash());
+    }
+}
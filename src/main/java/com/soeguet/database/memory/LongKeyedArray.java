@@ -0,0 +1,131 @@
+package com.soeguet.database.memory;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.UnaryOperator;
+
+/**
+ Lock-free map from positive long keys to values, for keys handed out by a sequence.
+
+ <p>
+ The keys are not boxed and not hashed: a key is split into the index of a chunk and the index within that chunk.
+ Chunks are allocated the first time one of their keys is written and never move, so readers only ever follow two
+ array references. Every slot is changed by compare-and-set, concurrent writers of the same key retry instead of
+ blocking each other.
+ </p>
+
+ @param <V>
+ the type of the values
+ */
+public class LongKeyedArray<V> {
+
+    // variables -- start
+    private static final int CHUNK_BITS = 15;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int CHUNKS = 1 << 15;
+
+    public static final long MAX_KEY = (long) CHUNKS * CHUNK_SIZE - 1;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<V>> chunks = new AtomicReferenceArray<>(CHUNKS);
+    // variables -- end
+
+    /**
+     @param key
+     the key, between 1 and {@link #MAX_KEY}
+
+     @return the value, or null if the key has none
+     */
+    public V get(final long key) {
+
+        final AtomicReferenceArray<V> chunk = chunks.get(chunkIndex(key));
+
+        return chunk == null ? null : chunk.get(slotIndex(key));
+    }
+
+    /**
+     Sets the value of a key, replacing the value it had.
+
+     @param key
+     the key, between 1 and {@link #MAX_KEY}
+     @param value
+     the new value
+     */
+    public void put(final long key, final V value) {
+
+        chunk(key).set(slotIndex(key), value);
+    }
+
+    /**
+     Sets the value of a key if it has none yet.
+
+     @param key
+     the key, between 1 and {@link #MAX_KEY}
+     @param value
+     the new value
+
+     @return the value of the key afterward, either the given one or the one already set
+     */
+    public V putIfAbsent(final long key, final V value) {
+
+        final AtomicReferenceArray<V> chunk = chunk(key);
+        final int slot = slotIndex(key);
+
+        return chunk.compareAndSet(slot, null, value) ? value : chunk.get(slot);
+    }
+
+    /**
+     Replaces the value of a key by a function of it. The function may be called more than once if other threads
+     change the key at the same time, so it must not have side effects.
+
+     @param key
+     the key, between 1 and {@link #MAX_KEY}
+     @param update
+     computes the new value from the current one, returning the current one leaves the key as it is
+
+     @return the new value, or null if the key has no value
+     */
+    public V updateIfPresent(final long key, final UnaryOperator<V> update) {
+
+        final AtomicReferenceArray<V> chunk = chunks.get(chunkIndex(key));
+
+        if (chunk == null) {return null;}
+
+        final int slot = slotIndex(key);
+
+        while (true) {
+
+            final V current = chunk.get(slot);
+
+            if (current == null) {return null;}
+
+            final V updated = update.apply(current);
+
+            if (updated == current || chunk.compareAndSet(slot, current, updated)) {return updated;}
+        }
+    }
+
+    private AtomicReferenceArray<V> chunk(final long key) {
+
+        final int chunkIndex = chunkIndex(key);
+        final AtomicReferenceArray<V> chunk = chunks.get(chunkIndex);
+
+        if (chunk != null) {return chunk;}
+
+        //two writers may allocate the same chunk, the loser drops its copy
+        final AtomicReferenceArray<V> allocated = new AtomicReferenceArray<>(CHUNK_SIZE);
+
+        return chunks.compareAndSet(chunkIndex, null, allocated) ? allocated : chunks.get(chunkIndex);
+    }
+
+    private static int chunkIndex(final long key) {
+
+        if (key < 1 || key > MAX_KEY) {throw new IllegalArgumentException("key " + key + " is out of range");}
+
+        return (int) (key >>> CHUNK_BITS);
+    }
+
+    private static int slotIndex(final long key) {
+
+        return (int) (key & CHUNK_MASK);
+    }
+}
@@ -0,0 +1,328 @@
+package com.soeguet.database.migration;
+
+import com.soeguet.database.MessageColumnReader;
+import com.soeguet.database.SqlDialect;
+import com.soeguet.model.dtos.MessageColumns;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ Brings the database schema up to date, one numbered migration after the other.
+
+ <p>
+ Applied migrations are recorded in the {@code schema_version} table, so every migration runs exactly once per
+ database. The first migration is the schema the server used to create on every start; its statements are
+ idempotent, so databases created before migrations existed are taken over as they are. Migrations are applied in
+ their own transaction where the database supports transactional DDL. Long running data migrations commit in batches
+ and can be resumed if they are interrupted.
+ </p>
+ */
+public class SchemaMigrator {
+
+    // variables -- start
+    private final Logger logger = Logger.getLogger(SchemaMigrator.class.getName());
+    private final int backfillBatchSize;
+    private final List<Migration> migrations = new ArrayList<>();
+    // variables -- end
+
+    /**
+     One step of the schema.
+     */
+    @FunctionalInterface
+    private interface MigrationStep {
+
+        void apply(Connection connection, SqlDialect dialect) throws SQLException;
+    }
+
+    private record Migration(int version, String description, MigrationStep step) {}
+
+    // constructors -- start
+    public SchemaMigrator(final int backfillBatchSize) {
+
+        if (backfillBatchSize < 1) {throw new IllegalArgumentException("backfillBatchSize must be at least 1");}
+
+        this.backfillBatchSize = backfillBatchSize;
+
+        migrations.add(new Migration(1, "baseline", this::createBaseline));
+        migrations.add(new Migration(2, "structured message columns", this::addStructuredColumns));
+        migrations.add(new Migration(3, "backfill structured message columns", this::backfillStructuredColumns));
+        migrations.add(new Migration(4, "message search", this::addSearchVector));
+        migrations.add(new Migration(5, "message search text", this::addSearchText));
+    }
+    // constructors -- end
+
+    /**
+     Applies every migration the database has not seen yet, in version order.
+
+     @param connection
+     the connection to migrate through, its auto-commit mode is restored afterward
+
+     @return the number of applied migrations
+
+     @throws SQLException
+     if a migration fails, the migrations before it stay applied
+     */
+    public int migrate(final Connection connection) throws SQLException {
+
+        final SqlDialect dialect = SqlDialect.of(connection);
+        final boolean autoCommit = connection.getAutoCommit();
+
+        try {
+
+            createVersionTable(connection);
+
+            final int currentVersion = readCurrentVersion(connection);
+            int applied = 0;
+
+            for (Migration migration : migrations) {
+
+                if (migration.version() <= currentVersion) {continue;}
+
+                apply(connection, dialect, migration);
+                applied++;
+            }
+
+            return applied;
+
+        } finally {
+
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     @return the version of the newest migration
+     */
+    public int getLatestVersion() {
+
+        return migrations.get(migrations.size() - 1).version();
+    }
+
+    private void apply(final Connection connection, final SqlDialect dialect, final Migration migration) throws SQLException {
+
+        final long start = System.nanoTime();
+
+        connection.setAutoCommit(false);
+
+        try {
+
+            migration.step().apply(connection, dialect);
+            recordVersion(connection, migration);
+            connection.commit();
+
+        } catch (SQLException | RuntimeException e) {
+
+            connection.rollback();
+            logger.log(Level.SEVERE, "SchemaMigrator > migration " + migration.version() + " failed", e);
+            throw e;
+        }
+
+        logger.info("schema migrated to version " + migration.version() + " (" + migration.description() + ") in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private void createVersionTable(final Connection connection) throws SQLException {
+
+        execute(connection, """
+                              CREATE TABLE IF NOT EXISTS schema_version (version INTEGER PRIMARY KEY,
+                              description VARCHAR(255) NOT NULL,
+                              applied_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP NOT NULL);
+                            """);
+    }
+
+    private int readCurrentVersion(final Connection connection) throws SQLException {
+
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version;")
+        ) {
+
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    private void recordVersion(final Connection connection, final Migration migration) throws SQLException {
+
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO schema_version (version, description) VALUES (?, ?);")) {
+
+            statement.setInt(1, migration.version());
+            statement.setString(2, migration.description());
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     Version 1: messages, their images and their reactions.
+     */
+    private void createBaseline(final Connection connection, final SqlDialect dialect) throws SQLException {
+
+        execute(connection, """
+                              CREATE TABLE IF NOT EXISTS messages (id BIGSERIAL PRIMARY KEY,
+                              message VARCHAR(2255) NOT NULL);
+                            """);
+        execute(connection, """
+                              CREATE TABLE IF NOT EXISTS message_images (id BIGSERIAL PRIMARY KEY,
+                              message_id BIGINT REFERENCES messages(id),
+                              image_data bytea NOT NULL);
+                            """);
+
+        //images kept in an image store are only referenced by their content hash
+        execute(connection, "ALTER TABLE messages ADD COLUMN IF NOT EXISTS image_hash VARCHAR(64);");
+
+        //thumbnails are stored next to their picture
+        execute(connection, "ALTER TABLE messages ADD COLUMN IF NOT EXISTS thumbnail_hash VARCHAR(64);");
+        execute(connection, "ALTER TABLE message_images ADD COLUMN IF NOT EXISTS thumbnail_data bytea;");
+
+        //reactions are appended as rows of their own instead of rewriting the message
+        execute(connection, """
+                              CREATE TABLE IF NOT EXISTS message_reactions (id BIGSERIAL PRIMARY KEY,
+                              message_id BIGINT NOT NULL REFERENCES messages(id),
+                              client_name VARCHAR(255) NOT NULL,
+                              reaction_name VARCHAR(255) NOT NULL);
+                            """);
+        execute(connection, "CREATE INDEX IF NOT EXISTS message_reactions_message_id ON message_reactions (message_id);");
+    }
+
+    /**
+     Version 2: the message as JSON document next to its text, the fields queries filter on as indexed columns, and
+     no length limit on the message text anymore.
+     */
+    private void addStructuredColumns(final Connection connection, final SqlDialect dialect) throws SQLException {
+
+        execute(connection, "ALTER TABLE messages ALTER COLUMN message SET DATA TYPE " + dialect.getUnboundedTextType() + ";");
+        execute(connection, "ALTER TABLE messages ADD COLUMN IF NOT EXISTS payload " + dialect.getJsonType() + ";");
+        execute(connection, "ALTER TABLE messages ADD COLUMN IF NOT EXISTS sender VARCHAR(255);");
+        execute(connection, "ALTER TABLE messages ADD COLUMN IF NOT EXISTS message_type SMALLINT;");
+        execute(connection, "ALTER TABLE messages ADD COLUMN IF NOT EXISTS subclass VARCHAR(16);");
+
+        //existing rows do not know when they were sent, only new rows get the default
+        execute(connection, "ALTER TABLE messages ADD COLUMN IF NOT EXISTS sent_at TIMESTAMP WITH TIME ZONE;");
+        execute(connection, "ALTER TABLE messages ALTER COLUMN sent_at SET DEFAULT CURRENT_TIMESTAMP;");
+
+        //every index ends with the id, so filtered history pages are read in id order straight from the index
+        execute(connection, "CREATE INDEX IF NOT EXISTS messages_sender_id ON messages (sender, id);");
+        execute(connection, "CREATE INDEX IF NOT EXISTS messages_message_type_id ON messages (message_type, id);");
+        execute(connection, "CREATE INDEX IF NOT EXISTS messages_subclass_id ON messages (subclass, id);");
+        execute(connection, "CREATE INDEX IF NOT EXISTS messages_sent_at ON messages (sent_at);");
+
+        if (dialect == SqlDialect.POSTGRESQL) {
+
+            execute(connection, "CREATE INDEX IF NOT EXISTS messages_payload ON messages USING GIN (payload jsonb_path_ops);");
+        }
+    }
+
+    /**
+     Version 3: fills the new columns of the existing rows, one committed batch at a time, so the table is never locked
+     as a whole. Rows that are not valid JSON keep empty columns.
+     */
+    private void backfillStructuredColumns(final Connection connection, final SqlDialect dialect) throws SQLException {
+
+        final String SELECT_SQL = """
+                                    SELECT id, message
+                                    FROM messages
+                                    WHERE payload IS NULL AND id > ?
+                                    ORDER BY id
+                                    LIMIT ?;
+                                  """;
+        final String UPDATE_SQL = "UPDATE messages SET payload = " + dialect.getJsonParameter()
+                                  + ", sender = ?, message_type = ?, subclass = ? WHERE id = ?;";
+
+        long lastId = 0;
+        long backfilledRows = 0;
+        int batchRows;
+
+        try (PreparedStatement selectStatement = connection.prepareStatement(SELECT_SQL);
+             PreparedStatement updateStatement = connection.prepareStatement(UPDATE_SQL)
+        ) {
+
+            do {
+
+                selectStatement.setLong(1, lastId);
+                selectStatement.setInt(2, backfillBatchSize);
+                batchRows = 0;
+
+                try (ResultSet resultSet = selectStatement.executeQuery()) {
+
+                    while (resultSet.next()) {
+
+                        batchRows++;
+                        lastId = resultSet.getLong("id");
+
+                        final String message = resultSet.getString("message");
+                        final MessageColumns columns = MessageColumnReader.read(message);
+
+                        if (!columns.validJson()) {
+
+                            logger.warning("SchemaMigrator > message " + lastId + " is not valid JSON, left as it is");
+                            continue;
+                        }
+
+                        updateStatement.setString(1, message);
+                        updateStatement.setString(2, columns.sender());
+                        updateStatement.setObject(3, columns.messageType(), Types.SMALLINT);
+                        updateStatement.setString(4, columns.subclass());
+                        updateStatement.setLong(5, lastId);
+                        updateStatement.addBatch();
+                    }
+                }
+
+                updateStatement.executeBatch();
+                connection.commit();
+                backfilledRows += batchRows;
+
+            } while (batchRows == backfillBatchSize);
+        }
+
+        logger.info("backfilled the structured columns of " + backfilledRows + " messages");
+    }
+
+    /**
+     Version 4: a full-text index over the words of text messages, link comments and picture descriptions. The
+     vector is generated from the payload by the database, so existing rows are indexed right away and no insert has
+     to care about it. H2 has no full-text vectors, see version 5 for its searches.
+     */
+    private void addSearchVector(final Connection connection, final SqlDialect dialect) throws SQLException {
+
+        if (dialect != SqlDialect.POSTGRESQL) {return;}
+
+        //'simple' neither stems nor drops stop words, the team does not chat in one language only
+        execute(connection, """
+                              ALTER TABLE messages ADD COLUMN IF NOT EXISTS search_vector tsvector
+                              GENERATED ALWAYS AS (to_tsvector('simple', coalesce(payload->>'message', '') || ' '
+                                                                         || coalesce(payload->>'comment', '') || ' '
+                                                                         || coalesce(payload->>'description', ''))) STORED;
+                            """);
+        execute(connection, "CREATE INDEX IF NOT EXISTS messages_search_vector ON messages USING GIN (search_vector);");
+    }
+
+    /**
+     Version 5: on H2 the searched text fields of the payload as a column of their own. H2 has no JSON field access,
+     so the column is generated by the same reader the server parses messages with, registered as a deterministic
+     function. PostgreSQL searches its vector instead.
+     */
+    private void addSearchText(final Connection connection, final SqlDialect dialect) throws SQLException {
+
+        if (dialect != SqlDialect.H2) {return;}
+
+        execute(connection, "CREATE ALIAS IF NOT EXISTS MESSAGE_SEARCH_TEXT DETERMINISTIC FOR '"
+                            + MessageColumnReader.class.getName() + ".readSearchText';");
+        execute(connection, "ALTER TABLE messages ADD COLUMN IF NOT EXISTS search_text " + dialect.getUnboundedTextType()
+                            + " GENERATED ALWAYS AS (MESSAGE_SEARCH_TEXT(message));");
+    }
+
+    private static void execute(final Connection connection, final String sqlQuery) throws SQLException {
+
+        try (Statement statement = connection.createStatement()) {
+
+            statement.executeUpdate(sqlQuery);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.soeguet.images;
+
+import com.soeguet.images.interfaces.ImageStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ Content-addressed image store on the local disk.
+
+ <p>
+ Every image is written to a file named after the SHA-256 hash of its content, sharded into two directory levels
+ ({@code ab/cd/abcd...}) so no directory grows too large. Files are written to a temporary file first and moved into
+ place atomically, a reader never sees a half written image and an image that is already stored is not written again.
+ </p>
+ <p>
+ Images are read through memory-mapped files, the data is not copied onto the heap until a caller asks for it.
+ </p>
+ */
+public class FileSystemImageStore implements ImageStore {
+
+    private static final Pattern IMAGE_HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    // variables -- start
+    private final Logger logger = Logger.getLogger(FileSystemImageStore.class.getName());
+    private final Path rootDirectory;
+    private final LongAdder storedImages = new LongAdder();
+    private final LongAdder deduplicatedImages = new LongAdder();
+    // variables -- end
+
+    // constructors -- start
+    public FileSystemImageStore(final Path rootDirectory) {
+
+        this.rootDirectory = rootDirectory.toAbsolutePath();
+
+        try {
+
+            Files.createDirectories(this.rootDirectory);
+
+        } catch (IOException e) {
+
+            logger.log(Level.SEVERE, "FileSystemImageStore > could not create " + this.rootDirectory, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+    // constructors -- end
+
+    // overrides -- start
+    /**
+     Stores an image unless an image with the same content is stored already.
+
+     @param imageBytes
+     the image data
+
+     @return the hex encoded SHA-256 hash of the image
+
+     @throws UncheckedIOException
+     if the image could not be written
+     */
+    @Override
+    public String put(final byte[] imageBytes) {
+
+        final String imageHash = hash(imageBytes);
+        final Path target = resolve(imageHash);
+
+        if (Files.exists(target)) {
+
+            deduplicatedImages.increment();
+            return imageHash;
+        }
+
+        try {
+
+            Files.createDirectories(target.getParent());
+
+            final Path temporaryFile = Files.createTempFile(target.getParent(), imageHash, ".tmp");
+
+            try {
+
+                Files.write(temporaryFile, imageBytes, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.SYNC);
+                moveIntoPlace(temporaryFile, target);
+
+            } finally {
+
+                Files.deleteIfExists(temporaryFile);
+            }
+
+            storedImages.increment();
+            return imageHash;
+
+        } catch (IOException e) {
+
+            logger.log(Level.SEVERE, "FileSystemImageStore > put - could not store image " + imageHash, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     Maps a stored image into memory.
+
+     @param imageHash
+     the content hash of the image
+
+     @return a read-only mapped buffer, or an empty Optional if the image is not stored
+
+     @throws UncheckedIOException
+     if the image exists but could not be read
+     */
+    @Override
+    public Optional<ByteBuffer> get(final String imageHash) {
+
+        if (!isValidHash(imageHash)) {return Optional.empty();}
+
+        final Path imageFile = resolve(imageHash);
+
+        if (!Files.exists(imageFile)) {return Optional.empty();}
+
+        //the mapping stays valid after the channel is closed
+        try (FileChannel fileChannel = FileChannel.open(imageFile, StandardOpenOption.READ)) {
+
+            return Optional.of(fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size()));
+
+        } catch (IOException e) {
+
+            logger.log(Level.SEVERE, "FileSystemImageStore > get - could not read image " + imageHash, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean contains(final String imageHash) {
+
+        return isValidHash(imageHash) && Files.exists(resolve(imageHash));
+    }
+    // overrides -- end
+
+    /**
+     Moves a fully written temporary file to its final name. Losing the race against another writer of the same image
+     is fine, both wrote the same content.
+
+     @param temporaryFile
+     the written temporary file
+     @param target
+     the final location of the image
+
+     @throws IOException
+     if the file could not be moved
+     */
+    private void moveIntoPlace(final Path temporaryFile, final Path target) throws IOException {
+
+        try {
+
+            Files.move(temporaryFile, target, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (AtomicMoveNotSupportedException e) {
+
+            try {
+
+                Files.move(temporaryFile, target);
+
+            } catch (FileAlreadyExistsException alreadyStored) {
+
+                deduplicatedImages.increment();
+            }
+
+        } catch (FileAlreadyExistsException e) {
+
+            deduplicatedImages.increment();
+        }
+    }
+
+    private Path resolve(final String imageHash) {
+
+        return rootDirectory.resolve(imageHash.substring(0, 2)).resolve(imageHash.substring(2, 4)).resolve(imageHash);
+    }
+
+    //the hash ends up in a path, anything else than a hash must not be resolved
+    private static boolean isValidHash(final String imageHash) {
+
+        return imageHash != null && IMAGE_HASH_PATTERN.matcher(imageHash).matches();
+    }
+
+    private static String hash(final byte[] imageBytes) {
+
+        try {
+
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(imageBytes));
+
+        } catch (NoSuchAlgorithmException e) {
+
+            //every JVM has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // getter & setter -- start
+    public Path getRootDirectory() {
+
+        return rootDirectory;
+    }
+
+    public long getStoredImages() {
+
+        return storedImages.sum();
+    }
+
+    public long getDeduplicatedImages() {
+
+        return deduplicatedImages.sum();
+    }
+    // getter & setter -- end
+}
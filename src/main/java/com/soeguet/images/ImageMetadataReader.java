@@ -0,0 +1,63 @@
+package com.soeguet.images;
+
+import com.soeguet.model.dtos.ImageDimensions;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ Reads the dimensions of an image from its header, without decoding the pixels.
+ */
+public final class ImageMetadataReader {
+
+    private static final Logger logger = Logger.getLogger(ImageMetadataReader.class.getName());
+
+    private ImageMetadataReader() {
+
+    }
+
+    /**
+     Reads width and height of an image.
+
+     @param imageBytes
+     the encoded image, e.g. PNG or JPEG
+
+     @return the dimensions, or an empty Optional if the format is unknown or the image is broken
+     */
+    public static Optional<ImageDimensions> readDimensions(final byte[] imageBytes) {
+
+        if (imageBytes == null || imageBytes.length == 0) {return Optional.empty();}
+
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(imageBytes))) {
+
+            final Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+
+            if (!imageReaders.hasNext()) {return Optional.empty();}
+
+            final ImageReader imageReader = imageReaders.next();
+
+            try {
+
+                imageReader.setInput(imageInputStream, true, true);
+                return Optional.of(new ImageDimensions(imageReader.getWidth(0), imageReader.getHeight(0)));
+
+            } finally {
+
+                imageReader.dispose();
+            }
+
+        } catch (IOException | RuntimeException e) {
+
+            //image readers throw runtime exceptions on malformed headers as well
+            logger.log(Level.WARNING, "ImageMetadataReader > readDimensions - could not read image header", e);
+            return Optional.empty();
+        }
+    }
+}
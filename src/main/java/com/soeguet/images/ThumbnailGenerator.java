@@ -0,0 +1,186 @@
+package com.soeguet.images;
+
+import com.soeguet.model.dtos.ImageDimensions;
+import com.soeguet.model.dtos.Thumbnail;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ Creates thumbnails that fit into a square of a fixed size, keeping the aspect ratio.
+
+ <p>
+ The dimensions are read from the header first. Pictures claiming more than {@link #MAX_PIXELS} pixels are not
+ decoded at all, a small upload could otherwise claim gigapixels and exhaust the heap. The others are decoded once,
+ subsampled while decoding to about twice the thumbnail size, so the decoded picture stays small whatever the size
+ of the original. Pictures without transparency are encoded as JPEG, which is by far
+ the smallest for screenshots and photos, pictures with transparency as PNG. Decoding is expensive, so thumbnails
+ should be created on a worker thread and never on the thread that persists the messages in order.
+ </p>
+ */
+public class ThumbnailGenerator {
+
+    private static final float JPEG_QUALITY = 0.8f;
+
+    //about twice an 8K picture
+    static final long MAX_PIXELS = 64L * 1024 * 1024;
+
+    // variables -- start
+    private final Logger logger = Logger.getLogger(ThumbnailGenerator.class.getName());
+    private final int maxEdge;
+    // variables -- end
+
+    // constructors -- start
+    /**
+     @param maxEdge
+     the maximum width and height of a thumbnail in pixels
+     */
+    public ThumbnailGenerator(final int maxEdge) {
+
+        if (maxEdge < 1) {throw new IllegalArgumentException("maxEdge must be at least 1");}
+
+        this.maxEdge = maxEdge;
+    }
+    // constructors -- end
+
+    /**
+     Creates the thumbnail of a picture.
+
+     @param imageBytes
+     the encoded picture
+
+     @return the thumbnail, or an empty Optional if the picture can not be decoded, is not larger than a thumbnail or
+     larger than {@link #MAX_PIXELS}
+     */
+    public Optional<Thumbnail> create(final byte[] imageBytes) {
+
+        if (imageBytes == null || imageBytes.length == 0) {return Optional.empty();}
+
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(imageBytes))) {
+
+            final Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+
+            if (!imageReaders.hasNext()) {return Optional.empty();}
+
+            final ImageReader imageReader = imageReaders.next();
+
+            try {
+
+                imageReader.setInput(imageInputStream, true, true);
+                return create(imageReader);
+
+            } finally {
+
+                imageReader.dispose();
+            }
+
+        } catch (IOException | RuntimeException e) {
+
+            //a broken upload must not take the message down, it is sent without thumbnail
+            logger.log(Level.WARNING, "ThumbnailGenerator > create - could not create thumbnail", e);
+            return Optional.empty();
+        }
+    }
+
+    private Optional<Thumbnail> create(final ImageReader imageReader) throws IOException {
+
+        final ImageDimensions originalDimensions = new ImageDimensions(imageReader.getWidth(0), imageReader.getHeight(0));
+        final int width = originalDimensions.width();
+        final int height = originalDimensions.height();
+
+        //small pictures are sent as they are
+        if (width <= maxEdge && height <= maxEdge) {return Optional.empty();}
+
+        if ((long) width * height > MAX_PIXELS) {
+
+            logger.warning("ThumbnailGenerator > create - picture of " + width + "x" + height + " is too large to decode");
+            return Optional.empty();
+        }
+
+        //keep twice the thumbnail size, so the scaling below still has pixels to interpolate
+        final int subsampling = Math.max(1, Math.max(width, height) / (2 * maxEdge));
+        final ImageReadParam readParam = imageReader.getDefaultReadParam();
+        readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+        final BufferedImage original = imageReader.read(0, readParam);
+        final BufferedImage scaled = scale(original);
+        final byte[] thumbnail = scaled.getColorModel().hasAlpha() ? encodePng(scaled) : encodeJpeg(scaled);
+
+        return Optional.of(new Thumbnail(thumbnail, originalDimensions));
+    }
+
+    public int getMaxEdge() {
+
+        return maxEdge;
+    }
+
+    private BufferedImage scale(final BufferedImage original) {
+
+        final double factor = Math.min((double) maxEdge / original.getWidth(), (double) maxEdge / original.getHeight());
+        final int width = Math.max(1, (int) Math.round(original.getWidth() * factor));
+        final int height = Math.max(1, (int) Math.round(original.getHeight() * factor));
+        final int imageType = original.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        final BufferedImage scaled = new BufferedImage(width, height, imageType);
+        final Graphics2D graphics = scaled.createGraphics();
+
+        try {
+
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(original, 0, 0, width, height, null);
+
+        } finally {
+
+            graphics.dispose();
+        }
+
+        return scaled;
+    }
+
+    private byte[] encodePng(final BufferedImage image) throws IOException {
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", outputStream);
+
+        return outputStream.toByteArray();
+    }
+
+    private byte[] encodeJpeg(final BufferedImage image) throws IOException {
+
+        final ImageWriter imageWriter = ImageIO.getImageWritersByFormatName("jpeg").next();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        try (ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(outputStream)) {
+
+            final ImageWriteParam writeParam = imageWriter.getDefaultWriteParam();
+            writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            writeParam.setCompressionQuality(JPEG_QUALITY);
+
+            imageWriter.setOutput(imageOutputStream);
+            imageWriter.write(null, new IIOImage(image, null, null), writeParam);
+
+        } finally {
+
+            imageWriter.dispose();
+        }
+
+        return outputStream.toByteArray();
+    }
+}
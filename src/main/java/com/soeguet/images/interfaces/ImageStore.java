@@ -0,0 +1,35 @@
+package com.soeguet.images.interfaces;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * The ImageStore interface stores image blobs outside the messages table, addressed by the hash of their content.
+ * Storing the same image twice only stores it once.
+ */
+public interface ImageStore {
+
+    /**
+     * Stores an image and returns the key it can be read with.
+     *
+     * @param imageBytes the image data, not null
+     * @return the hex encoded content hash of the image
+     */
+    String put(byte[] imageBytes);
+
+    /**
+     * Reads an image.
+     *
+     * @param imageHash the content hash returned by {@link #put(byte[])}
+     * @return a read-only buffer with the image data, or an empty {@link Optional} if the image is unknown
+     */
+    Optional<ByteBuffer> get(String imageHash);
+
+    /**
+     * Checks whether an image is stored.
+     *
+     * @param imageHash the content hash returned by {@link #put(byte[])}
+     * @return true if the image is stored
+     */
+    boolean contains(String imageHash);
+}
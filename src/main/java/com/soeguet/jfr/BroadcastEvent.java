@@ -0,0 +1,33 @@
+package com.soeguet.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ A broadcast of {@link com.soeguet.nogui.NoGuiServer} to the joined clients.
+ */
+@Name("com.soeguet.Broadcast")
+@Label("Broadcast")
+@Category({"TeamSocket", "Server"})
+@Description("Sending a frame to the joined clients")
+@StackTrace(false)
+public class BroadcastEvent extends Event {
+
+    // variables -- start
+    @Label("Kind")
+    @Description("message or typing")
+    public String kind;
+
+    @Label("Receivers")
+    public int receivers;
+
+    @Label("Payload Size")
+    @DataAmount
+    public long payloadSize;
+    // variables -- end
+}
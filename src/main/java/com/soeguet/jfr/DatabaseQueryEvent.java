@@ -0,0 +1,66 @@
+package com.soeguet.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ A query of {@link com.soeguet.database.DatabaseConnection}, from borrowing the connection to reading the last row.
+
+ <p>
+ Only successful queries are committed, a failed one is logged by the connection already.
+ </p>
+ */
+@Name("com.soeguet.DatabaseQuery")
+@Label("Database Query")
+@Category({"TeamSocket", "Database"})
+@Description("A query of the relational storage engine")
+@StackTrace(false)
+public class DatabaseQueryEvent extends Event {
+
+    // variables -- start
+    @Label("Query")
+    @Description("The kind of query, e.g. get_page or save_message")
+    private String query;
+
+    @Label("Rows")
+    @Description("The rows read or written")
+    private long rows;
+    // variables -- end
+
+    /**
+     Begins the event of a query.
+
+     @param query
+     the kind of query, e.g. get_page
+
+     @return the begun event, to be finished once the rows are known
+     */
+    public static DatabaseQueryEvent start(final String query) {
+
+        final DatabaseQueryEvent event = new DatabaseQueryEvent();
+        event.query = query;
+        event.begin();
+        return event;
+    }
+
+    /**
+     Ends the event and commits it, if a recording asks for it.
+
+     @param rows
+     the rows read or written
+     */
+    public void finish(final long rows) {
+
+        end();
+
+        if (shouldCommit()) {
+
+            this.rows = rows;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.soeguet.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ The assembly of the history a joining client receives.
+ */
+@Name("com.soeguet.History")
+@Label("History")
+@Category({"TeamSocket", "Messages"})
+@Description("Assembling the last messages for a joining client")
+@StackTrace(false)
+public class HistoryEvent extends Event {
+
+    // variables -- start
+    @Label("Frames")
+    @Description("The frames of the history")
+    public int frames;
+
+    @Label("Version")
+    @Description("The version of the history, the same version was served from the cache")
+    public long version;
+    // variables -- end
+}
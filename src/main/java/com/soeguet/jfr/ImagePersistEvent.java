@@ -0,0 +1,37 @@
+package com.soeguet.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ The persistence of a picture message, from extracting the picture to saving it and its thumbnail.
+ */
+@Name("com.soeguet.ImagePersist")
+@Label("Image Persist")
+@Category({"TeamSocket", "Messages"})
+@Description("Saving the picture and thumbnail of a picture message")
+@StackTrace(false)
+public class ImagePersistEvent extends Event {
+
+    // variables -- start
+    @Label("Message Id")
+    public long messageId;
+
+    @Label("Image Size")
+    @DataAmount
+    public long imageSize;
+
+    @Label("Thumbnail Size")
+    @DataAmount
+    public long thumbnailSize;
+
+    @Label("Image Store")
+    @Description("True if the picture went to the image store instead of the database")
+    public boolean imageStore;
+    // variables -- end
+}
@@ -0,0 +1,30 @@
+package com.soeguet.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ The decoding of an inbound message in {@link com.soeguet.controller.MessagesController}.
+ */
+@Name("com.soeguet.MessageDecode")
+@Label("Message Decode")
+@Category({"TeamSocket", "Messages"})
+@Description("Decoding an inbound message to its model")
+@StackTrace(false)
+public class MessageDecodeEvent extends Event {
+
+    // variables -- start
+    @Label("Subclass")
+    @Description("The subclass of the decoded message, empty if it could not be decoded")
+    public String subclass;
+
+    @Label("Message Size")
+    @DataAmount
+    public long messageSize;
+    // variables -- end
+}
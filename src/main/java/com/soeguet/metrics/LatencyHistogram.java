@@ -0,0 +1,113 @@
+package com.soeguet.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ A histogram of durations with fixed buckets from 50 microseconds to 10 seconds.
+
+ <p>
+ All buckets are allocated up front and counted by striped adders, so recording a duration is a binary search over
+ 17 bounds and an uncontended increment: no lock, no allocation. The buckets are the ones a Prometheus histogram
+ exposes, quantiles are estimated from them.
+ </p>
+ */
+public class LatencyHistogram {
+
+    // variables -- start
+    private static final long[] BOUNDS = {
+            TimeUnit.MICROSECONDS.toNanos(50), TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.MICROSECONDS.toNanos(250),
+            TimeUnit.MICROSECONDS.toNanos(500), TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.MICROSECONDS.toNanos(2500),
+            TimeUnit.MILLISECONDS.toNanos(5), TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(25),
+            TimeUnit.MILLISECONDS.toNanos(50), TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(250),
+            TimeUnit.MILLISECONDS.toNanos(500), TimeUnit.SECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(2500),
+            TimeUnit.SECONDS.toNanos(5), TimeUnit.SECONDS.toNanos(10)};
+
+    //the last bucket counts everything above the largest bound
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+    // variables -- end
+
+    // constructors -- start
+    public LatencyHistogram() {
+
+        Arrays.setAll(buckets, index -> new LongAdder());
+    }
+    // constructors -- end
+
+    /**
+     @param nanos
+     the duration in nanoseconds, negative durations count as 0
+     */
+    public void record(final long nanos) {
+
+        final long duration = Math.max(0, nanos);
+        final int index = Arrays.binarySearch(BOUNDS, duration);
+
+        buckets[index >= 0 ? index : -index - 1].increment();
+        sumNanos.add(duration);
+    }
+
+    /**
+     @param startNanos
+     the {@link System#nanoTime()} the measured work started at
+     */
+    public void recordSince(final long startNanos) {
+
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     @return the number of recorded durations in each bucket, the last one above the largest bound
+     */
+    public long[] bucketCounts() {
+
+        final long[] counts = new long[buckets.length];
+        Arrays.setAll(counts, index -> buckets[index].sum());
+
+        return counts;
+    }
+
+    /**
+     @return the upper bounds of the buckets in seconds, without the unbounded last one
+     */
+    public static double[] bucketBounds() {
+
+        return Arrays.stream(BOUNDS).mapToDouble(bound -> bound / 1e9).toArray();
+    }
+
+    public long count() {
+
+        return Arrays.stream(bucketCounts()).sum();
+    }
+
+    public double sumSeconds() {
+
+        return sumNanos.sum() / 1e9;
+    }
+
+    /**
+     Estimates a quantile as the upper bound of the bucket it falls into.
+
+     @param quantile
+     between 0 and 1
+
+     @return the estimate in seconds, 0 if nothing was recorded, infinity if it falls above the largest bound
+     */
+    public double quantileSeconds(final double quantile) {
+
+        final long[] counts = bucketCounts();
+        final long rank = (long) Math.ceil(quantile * Arrays.stream(counts).sum());
+        long cumulated = 0;
+
+        for (int index = 0; index < BOUNDS.length; index++) {
+
+            cumulated += counts[index];
+
+            if (cumulated >= rank) {return rank == 0 ? 0 : BOUNDS[index] / 1e9;}
+        }
+
+        return Double.POSITIVE_INFINITY;
+    }
+}
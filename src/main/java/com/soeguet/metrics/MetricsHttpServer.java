@@ -0,0 +1,107 @@
+package com.soeguet.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ Serves the metrics in the Prometheus text format on {@code /metrics}, on the HTTP server of the JDK. Requests are
+ answered one after the other on a single daemon thread, a scrape every few seconds is all it has to handle.
+ */
+public final class MetricsHttpServer implements AutoCloseable {
+
+    // variables -- start
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Logger logger = Logger.getLogger(MetricsHttpServer.class.getName());
+    private final MetricsRegistry metricsRegistry;
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+    // variables -- end
+
+    // constructors -- start
+    /**
+     Starts serving right away.
+
+     @param metricsRegistry
+     the metrics to serve
+     @param address
+     the address to listen on
+
+     @throws IOException
+     if the address can not be bound
+     */
+    public MetricsHttpServer(final MetricsRegistry metricsRegistry, final InetSocketAddress address) throws IOException {
+
+        this.metricsRegistry = metricsRegistry;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+
+            final Thread thread = new Thread(runnable, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        httpServer = HttpServer.create(address, 0);
+        httpServer.createContext("/metrics", this::handle);
+        httpServer.setExecutor(executor);
+        httpServer.start();
+
+        logger.info("metrics served on http://" + address.getHostString() + ":" + getPort() + "/metrics");
+    }
+    // constructors -- end
+
+    /**
+     @return the port listened on, the bound one if port 0 was asked for
+     */
+    public int getPort() {
+
+        return httpServer.getAddress().getPort();
+    }
+
+    // overrides -- start
+    @Override
+    public void close() {
+
+        httpServer.stop(0);
+        executor.shutdownNow();
+    }
+    // overrides -- end
+
+    private void handle(final HttpExchange exchange) throws IOException {
+
+        try (exchange) {
+
+            final String method = exchange.getRequestMethod();
+
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            final byte[] body = metricsRegistry.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+
+            if ("HEAD".equals(method)) {
+
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+
+                responseBody.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.soeguet.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ Shows the metrics of a {@link MetricsRegistry} as read-only attributes of the MBean {@code com.soeguet:type=Metrics},
+ one attribute per series. Every read of an attribute reads the registry, nothing is cached.
+ */
+public class MetricsMBean implements DynamicMBean {
+
+    // variables -- start
+    public static final String OBJECT_NAME = "com.soeguet:type=Metrics";
+
+    private final Logger logger = Logger.getLogger(MetricsMBean.class.getName());
+    private final MetricsRegistry metricsRegistry;
+    // variables -- end
+
+    // constructors -- start
+    private MetricsMBean(final MetricsRegistry metricsRegistry) {
+
+        this.metricsRegistry = metricsRegistry;
+    }
+    // constructors -- end
+
+    /**
+     Registers the metrics with the platform MBean server, replacing metrics registered before.
+
+     @param metricsRegistry
+     the metrics to show
+
+     @throws RuntimeException
+     if the MBean can not be registered
+     */
+    public static void register(final MetricsRegistry metricsRegistry) {
+
+        try {
+
+            final ObjectName objectName = new ObjectName(OBJECT_NAME);
+
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            }
+
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(metricsRegistry), objectName);
+
+        } catch (MalformedObjectNameException | InstanceAlreadyExistsException | MBeanRegistrationException |
+                 NotCompliantMBeanException | InstanceNotFoundException e) {
+
+            Logger.getLogger(MetricsMBean.class.getName()).log(Level.SEVERE, "MetricsMBean > register", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    // overrides -- start
+    @Override
+    public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+
+        final Double value = metricsRegistry.snapshot().get(attribute);
+
+        if (value == null) {throw new AttributeNotFoundException(attribute);}
+
+        return value;
+    }
+
+    @Override
+    public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+
+        throw new AttributeNotFoundException("metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(final String[] attributes) {
+
+        final Map<String, Double> snapshot = metricsRegistry.snapshot();
+        final AttributeList attributeList = new AttributeList();
+
+        for (String attribute : attributes) {
+
+            final Double value = snapshot.get(attribute);
+
+            if (value != null) {attributeList.add(new Attribute(attribute, value));}
+        }
+
+        return attributeList;
+    }
+
+    @Override
+    public AttributeList setAttributes(final AttributeList attributes) {
+
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(final String actionName, final Object[] params, final String[] signature) {
+
+        logger.warning("MetricsMBean > invoke - metrics have no operations: " + actionName);
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    /**
+     Lists the series registered right now, metrics registered later show up on the next request of the info.
+     */
+    @Override
+    public MBeanInfo getMBeanInfo() {
+
+        final MBeanAttributeInfo[] attributeInfos = metricsRegistry.snapshot().keySet().stream()
+                                                                   .map(name -> new MBeanAttributeInfo(name, Double.class.getName(), name,
+                                                                                                       true, false, false))
+                                                                   .toArray(MBeanAttributeInfo[]::new);
+
+        return new MBeanInfo(MetricsMBean.class.getName(), "TeamSocket metrics", attributeInfos, null, null, null);
+    }
+    // overrides -- end
+}
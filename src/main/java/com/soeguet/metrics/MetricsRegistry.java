@@ -0,0 +1,258 @@
+package com.soeguet.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ The metrics of the server, written in the Prometheus text format and read by the JMX bean.
+
+ <p>
+ A metric is registered once, usually in a constructor, and the returned adder or histogram is kept in a field, so
+ recording never looks anything up. Registering the same name and labels twice returns the same metric. Values that
+ are counted elsewhere already are registered as suppliers and only read when the metrics are.
+ </p>
+ */
+public class MetricsRegistry {
+
+    // variables -- start
+    //guarded by this, only registrations and reads of all metrics lock
+    private final Map<String, MetricFamily> families = new LinkedHashMap<>();
+    // variables -- end
+
+    /**
+     All series of one metric name, keyed by their labels.
+     */
+    private record MetricFamily(String name, String help, String type, Map<String, Object> series) {}
+
+    /**
+     @param name
+     the metric name, ending in "_total"
+     @param help
+     what is counted
+     @param labels
+     label names and values, alternating
+
+     @return the adder to count with
+     */
+    public LongAdder counter(final String name, final String help, final String... labels) {
+
+        return register(name, help, "counter", labels, LongAdder.class, new LongAdder());
+    }
+
+    /**
+     Registers a counter that is counted elsewhere.
+
+     @param name
+     the metric name, ending in "_total"
+     @param help
+     what is counted
+     @param value
+     reads the current count
+     @param labels
+     label names and values, alternating
+     */
+    public void counter(final String name, final String help, final LongSupplier value, final String... labels) {
+
+        register(name, help, "counter", labels, LongSupplier.class, value);
+    }
+
+    /**
+     @param name
+     the metric name, ending in "_seconds"
+     @param help
+     what is timed
+     @param labels
+     label names and values, alternating
+
+     @return the histogram to record durations with
+     */
+    public LatencyHistogram histogram(final String name, final String help, final String... labels) {
+
+        return register(name, help, "histogram", labels, LatencyHistogram.class, new LatencyHistogram());
+    }
+
+    /**
+     @param name
+     the metric name
+     @param help
+     what is measured
+     @param value
+     reads the current value
+     @param labels
+     label names and values, alternating
+     */
+    public void gauge(final String name, final String help, final DoubleSupplier value, final String... labels) {
+
+        register(name, help, "gauge", labels, DoubleSupplier.class, value);
+    }
+
+    /**
+     Writes all metrics in the Prometheus text exposition format, version 0.0.4.
+
+     @return the metrics text
+     */
+    public String scrape() {
+
+        final StringBuilder text = new StringBuilder(4096);
+
+        for (MetricFamily family : families()) {
+
+            text.append("# HELP ").append(family.name()).append(' ').append(family.help()).append('\n');
+            text.append("# TYPE ").append(family.name()).append(' ').append(family.type()).append('\n');
+
+            for (Map.Entry<String, Object> series : family.series().entrySet()) {
+
+                if (series.getValue() instanceof LatencyHistogram histogram) {
+
+                    appendHistogram(text, family.name(), series.getKey(), histogram);
+
+                } else {
+
+                    appendSample(text, family.name(), series.getKey(), readValue(series.getValue()));
+                }
+            }
+        }
+
+        return text.toString();
+    }
+
+    /**
+     Reads every series as a flat map, histograms as their count, sum and estimated p50 and p99.
+
+     @return the values by series name, e.g. {@code teamsocket_messages_total{type="text"}}
+     */
+    public Map<String, Double> snapshot() {
+
+        final Map<String, Double> values = new LinkedHashMap<>();
+
+        for (MetricFamily family : families()) {
+
+            for (Map.Entry<String, Object> series : family.series().entrySet()) {
+
+                final String labels = series.getKey().isEmpty() ? "" : "{" + series.getKey() + "}";
+
+                if (series.getValue() instanceof LatencyHistogram histogram) {
+
+                    values.put(family.name() + "_count" + labels, (double) histogram.count());
+                    values.put(family.name() + "_sum" + labels, histogram.sumSeconds());
+                    values.put(family.name() + "_p50" + labels, histogram.quantileSeconds(0.5));
+                    values.put(family.name() + "_p99" + labels, histogram.quantileSeconds(0.99));
+
+                } else {
+
+                    values.put(family.name() + labels, readValue(series.getValue()));
+                }
+            }
+        }
+
+        return values;
+    }
+
+    private synchronized <T> T register(final String name, final String help, final String type, final String[] labels,
+                                        final Class<T> kind, final T metric) {
+
+        if (labels.length % 2 != 0) {throw new IllegalArgumentException("labels must be name and value pairs");}
+
+        final MetricFamily family = families.computeIfAbsent(name, key -> new MetricFamily(name, help, type, new LinkedHashMap<>()));
+
+        if (!family.type().equals(type)) {
+
+            throw new IllegalArgumentException(name + " is registered as " + family.type() + " already");
+        }
+
+        final Object registered = family.series().computeIfAbsent(labelText(labels), key -> metric);
+
+        if (!kind.isInstance(registered)) {
+
+            throw new IllegalArgumentException(name + " is registered as " + registered.getClass().getSimpleName() + " already");
+        }
+
+        return kind.cast(registered);
+    }
+
+    /**
+     @return a copy of the families, their series copied as well, so reading does not hold the lock
+     */
+    private synchronized List<MetricFamily> families() {
+
+        final List<MetricFamily> copy = new ArrayList<>(families.size());
+
+        for (MetricFamily family : families.values()) {
+
+            copy.add(new MetricFamily(family.name(), family.help(), family.type(), new LinkedHashMap<>(family.series())));
+        }
+
+        return copy;
+    }
+
+    private static double readValue(final Object metric) {
+
+        return switch (metric) {
+
+            case LongAdder adder -> adder.sum();
+            case LongSupplier supplier -> supplier.getAsLong();
+            case DoubleSupplier supplier -> supplier.getAsDouble();
+            default -> throw new IllegalStateException("unknown metric " + metric.getClass());
+        };
+    }
+
+    private static void appendHistogram(final StringBuilder text, final String name, final String labels,
+                                        final LatencyHistogram histogram) {
+
+        final long[] counts = histogram.bucketCounts();
+        final double[] bounds = LatencyHistogram.bucketBounds();
+        final String separator = labels.isEmpty() ? "" : ",";
+        long cumulated = 0;
+
+        for (int index = 0; index < counts.length; index++) {
+
+            cumulated += counts[index];
+
+            final String bound = index < bounds.length ? formatNumber(bounds[index]) : "+Inf";
+            appendSample(text, name + "_bucket", labels + separator + "le=\"" + bound + "\"", cumulated);
+        }
+
+        appendSample(text, name + "_sum", labels, histogram.sumSeconds());
+        appendSample(text, name + "_count", labels, cumulated);
+    }
+
+    private static void appendSample(final StringBuilder text, final String name, final String labels, final double value) {
+
+        text.append(name);
+
+        if (!labels.isEmpty()) {text.append('{').append(labels).append('}');}
+
+        text.append(' ').append(formatNumber(value)).append('\n');
+    }
+
+    private static String formatNumber(final double value) {
+
+        if (Double.isInfinite(value)) {return value > 0 ? "+Inf" : "-Inf";}
+
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    /**
+     @return the labels as written inside the braces, e.g. {@code type="text"}
+     */
+    private static String labelText(final String[] labels) {
+
+        final StringBuilder text = new StringBuilder();
+
+        for (int index = 0; index < labels.length; index += 2) {
+
+            if (index > 0) {text.append(',');}
+
+            text.append(labels[index]).append("=\"").append(labels[index + 1].replace("\\", "\\\\")
+                                                                             .replace("\"", "\\\"")
+                                                                             .replace("\n", "\\n")).append('"');
+        }
+
+        return text.toString();
+    }
+}
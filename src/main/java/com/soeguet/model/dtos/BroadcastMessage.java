@@ -0,0 +1,26 @@
+package com.soeguet.model.dtos;
+
+import com.soeguet.codec.EncodedFrame;
+import com.soeguet.codec.WireFormat;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ A persisted message ready to be broadcast.
+
+ @param frame
+ the message encoded for all clients
+ @param historyVersion
+ the history version that already contains this message, clients that joined with this version or a newer one
+ received it as part of their history
+ */
+public record BroadcastMessage(EncodedFrame frame, long historyVersion) {
+
+    /**
+     @return the JSON string sent to JSON clients
+     */
+    public String message() {
+
+        return StandardCharsets.UTF_8.decode(frame.payload(WireFormat.JSON).duplicate()).toString();
+    }
+}
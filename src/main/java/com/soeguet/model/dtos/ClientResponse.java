@@ -0,0 +1,18 @@
+package com.soeguet.model.dtos;
+
+import com.soeguet.codec.EncodedFrame;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ The answer to a client request, sent to the requesting client only. The JSON header is followed by the encoded
+ frames, if any, and by a binary frame if there is a payload.
+ */
+public record ClientResponse(String header, List<EncodedFrame> frames, ByteBuffer payload) {
+
+    public ClientResponse(final String header, final ByteBuffer payload) {
+
+        this(header, List.of(), payload);
+    }
+}
@@ -0,0 +1,15 @@
+package com.soeguet.model.dtos;
+
+public record CompressionStatistics(long compressedFrames, long skippedFrames, long uncompressedBytes,
+                                    long compressedBytes, long compressionNanos, long decompressionNanos) {
+
+    /**
+     Returns the size of the compressed frames relative to their original size.
+
+     @return the ratio between 0 and 1, or 1 if nothing was compressed yet
+     */
+    public double compressionRatio() {
+
+        return uncompressedBytes == 0 ? 1 : (double) compressedBytes / uncompressedBytes;
+    }
+}
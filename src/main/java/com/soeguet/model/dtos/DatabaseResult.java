@@ -1,4 +1,19 @@
 package com.soeguet.model.dtos;
 
-public record DatabaseResult(Long id, String message, byte[] image) {
-}
\ No newline at end of file
+/**
+ A row of the messages table. Images and their thumbnails are either loaded into {@code image} and {@code thumbnail}
+ or referenced by {@code imageHash} and {@code thumbnailHash}, their keys in the image store.
+ */
+public record DatabaseResult(Long id, String message, byte[] image, String imageHash, byte[] thumbnail,
+                             String thumbnailHash) {
+
+    public DatabaseResult(final Long id, final String message, final byte[] image) {
+
+        this(id, message, image, null, null, null);
+    }
+
+    public DatabaseResult(final Long id, final String message, final byte[] image, final String imageHash) {
+
+        this(id, message, image, imageHash, null, null);
+    }
+}
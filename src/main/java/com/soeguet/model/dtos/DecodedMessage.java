@@ -0,0 +1,15 @@
+package com.soeguet.model.dtos;
+
+import com.soeguet.model.jackson.BaseModel;
+
+/**
+ A parsed client message together with the JSON it is stored as, which leaves out the picture of picture messages.
+ Pictures come with the thumbnail created while decoding, if thumbnails are enabled.
+ */
+public record DecodedMessage(String storedMessage, BaseModel baseModel, Thumbnail thumbnail) {
+
+    public DecodedMessage(final String storedMessage, final BaseModel baseModel) {
+
+        this(storedMessage, baseModel, null);
+    }
+}
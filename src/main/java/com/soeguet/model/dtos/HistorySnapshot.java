@@ -0,0 +1,18 @@
+package com.soeguet.model.dtos;
+
+import com.soeguet.codec.EncodedFrame;
+
+import java.util.List;
+
+/**
+ Immutable, versioned set of pre-encoded history frames that is shared by all joining clients.
+ The frames are shared as well, send {@link java.nio.ByteBuffer#duplicate()}s of their payloads and never modify
+ their content.
+
+ @param version
+ incremented every time a message of the history changes
+ @param frames
+ the encoded frames, oldest message first, followed by the startup markers
+ */
+public record HistorySnapshot(long version, List<EncodedFrame> frames) {
+}
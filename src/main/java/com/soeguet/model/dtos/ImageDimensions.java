@@ -0,0 +1,4 @@
+package com.soeguet.model.dtos;
+
+public record ImageDimensions(int width, int height) {
+}
@@ -0,0 +1,9 @@
+package com.soeguet.model.dtos;
+
+/**
+ The fields of a message JSON that are stored in columns of their own, null if the message does not have them.
+ */
+public record MessageColumns(String sender, String subclass, Short messageType, boolean validJson) {
+
+    public static final MessageColumns INVALID = new MessageColumns(null, null, null, false);
+}
@@ -0,0 +1,5 @@
+package com.soeguet.model.dtos;
+
+public record OutboundStatistics(String client, int queuedFrames, long queuedBytes, long sentFrames,
+                                 long droppedFrames, long coalescedFrames) {
+}
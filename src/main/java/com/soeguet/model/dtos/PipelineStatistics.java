@@ -0,0 +1,6 @@
+package com.soeguet.model.dtos;
+
+public record PipelineStatistics(int decodeQueueDepth, int persistQueueDepth, int broadcastQueueDepth,
+                                 long decodedMessages, long persistedMessages, long broadcastMessages,
+                                 long blockedSubmissions) {
+}
@@ -0,0 +1,5 @@
+package com.soeguet.model.dtos;
+
+public record PoolStatistics(int maxPoolSize, int activeConnections, int idleConnections, int waitingThreads,
+                             long totalAcquired, long totalCreated, long totalDiscarded, long acquireTimeouts) {
+}
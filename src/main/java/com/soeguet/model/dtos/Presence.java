@@ -0,0 +1,16 @@
+package com.soeguet.model.dtos;
+
+/**
+ A connected client as the presence registry sees it.
+
+ @param connectionId
+ the id the server gave the connection, unique for the lifetime of the server
+ @param clientName
+ the name the client announced, null until it did
+ @param address
+ the IP address of the client
+ @param lastActivity
+ the last frame received from the client, in epoch milliseconds
+ */
+public record Presence(long connectionId, String clientName, String address, long lastActivity) {
+}
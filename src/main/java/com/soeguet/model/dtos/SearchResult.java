@@ -0,0 +1,7 @@
+package com.soeguet.model.dtos;
+
+/**
+ A message matching a search, with the text around the matched words.
+ */
+public record SearchResult(long messageId, double rank, String snippet) {
+}
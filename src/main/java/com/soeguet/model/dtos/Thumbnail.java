@@ -0,0 +1,7 @@
+package com.soeguet.model.dtos;
+
+/**
+ A scaled down copy of a picture, together with the dimensions of the original picture.
+ */
+public record Thumbnail(byte[] data, ImageDimensions originalDimensions) {
+}
@@ -1,5 +0,0 @@
-package com.soeguet.model.dtos;
-
-import com.soeguet.model.jackson.BaseModel;
-
-public record UpdatedReactionModelDTO(Long databaseId, BaseModel baseModel) {}
\ No newline at end of file
@@ -1,10 +1,23 @@
 package com.soeguet.model.jackson;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 public non-sealed class PictureModel extends BaseModel {
 
     // variables -- start
     protected byte[] picture;
     protected String description;
+    //only set if the picture is delivered on request, left out of the JSON otherwise
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    protected String imageId;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    protected Integer imageSize;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    protected Integer imageWidth;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    protected Integer imageHeight;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    protected byte[] thumbnail;
     // variables -- end
 
     // constructors -- start
@@ -33,5 +46,55 @@ public non-sealed class PictureModel extends BaseModel {
 
         this.picture = picture;
     }
+
+    public String getImageId() {
+
+        return imageId;
+    }
+
+    public void setImageId(final String imageId) {
+
+        this.imageId = imageId;
+    }
+
+    public Integer getImageSize() {
+
+        return imageSize;
+    }
+
+    public void setImageSize(final Integer imageSize) {
+
+        this.imageSize = imageSize;
+    }
+
+    public Integer getImageWidth() {
+
+        return imageWidth;
+    }
+
+    public void setImageWidth(final Integer imageWidth) {
+
+        this.imageWidth = imageWidth;
+    }
+
+    public Integer getImageHeight() {
+
+        return imageHeight;
+    }
+
+    public void setImageHeight(final Integer imageHeight) {
+
+        this.imageHeight = imageHeight;
+    }
+
+    public byte[] getThumbnail() {
+
+        return thumbnail;
+    }
+
+    public void setThumbnail(final byte[] thumbnail) {
+
+        this.thumbnail = thumbnail;
+    }
     // getter & setter -- end
 }
\ No newline at end of file
@@ -1,56 +1,250 @@
 package com.soeguet.nogui;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.util.Deque;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
 import org.java_websocket.framing.Framedata;
 import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.protocols.Protocol;
 import org.java_websocket.server.WebSocketServer;
 
+import com.soeguet.codec.EncodedFrame;
+import com.soeguet.codec.InboundFrame;
+import com.soeguet.codec.WireFormat;
 import com.soeguet.controller.interfaces.MessagesControllerInterface;
+import com.soeguet.jfr.BroadcastEvent;
+import com.soeguet.metrics.LatencyHistogram;
+import com.soeguet.metrics.MetricsRegistry;
+import com.soeguet.model.dtos.BroadcastMessage;
+import com.soeguet.model.dtos.CompressionStatistics;
+import com.soeguet.model.dtos.DecodedMessage;
+import com.soeguet.model.dtos.HistorySnapshot;
+import com.soeguet.model.dtos.OutboundStatistics;
+import com.soeguet.model.dtos.PipelineStatistics;
+import com.soeguet.model.dtos.Presence;
+import com.soeguet.nogui.compression.MeteredPerMessageDeflateExtension;
+import com.soeguet.nogui.outbound.OutboundQueueGuard;
+import com.soeguet.nogui.outbound.SlowConsumerPolicy;
+import com.soeguet.nogui.pipeline.MessagePipeline;
+import com.soeguet.nogui.presence.PresenceRegistry;
+import com.soeguet.nogui.typing.TypingIndicatorService;
 
 public class NoGuiServer extends WebSocketServer {
 
     private final Logger logger = Logger.getLogger(NoGuiServer.class.getName());
 
     private final MessagesControllerInterface messageController;
+    private final MessagePipeline messagePipeline;
+    private final OutboundQueueGuard outboundQueueGuard;
+    private final TypingIndicatorService typingIndicatorService;
+    private final PresenceRegistry presenceRegistry = new PresenceRegistry();
+    private final ScheduledExecutorService scheduler;
+    private final MeteredPerMessageDeflateExtension compression;
+    private final MetricsRegistry metricsRegistry;
+
+    //history version each client received on join, clients only get broadcasts that are newer than their history
+    private final Map<WebSocket, Long> joinedHistoryVersions = new ConcurrentHashMap<>();
+
+    //user each connection last sent a typing indicator for, to stop it when the user sends a message or leaves
+    private final Map<WebSocket, String> typingUserByConnection = new ConcurrentHashMap<>();
+
+    private final LongAdder joins;
+    private final LongAdder disconnects;
+    private final LongAdder typingFrames;
+    private final LongAdder broadcastReceivers;
+    private final LatencyHistogram messageLatency;
+    private final LatencyHistogram broadcastLatency;
 
     public NoGuiServer(final MessagesControllerInterface messageController, final Properties properties) {
 
-        super(new InetSocketAddress(properties.getProperty("ip"), Integer.parseInt(properties.getProperty("port"))));
+        this(messageController, properties, new MetricsRegistry());
+    }
+
+    public NoGuiServer(final MessagesControllerInterface messageController, final Properties properties,
+                       final MetricsRegistry metricsRegistry) {
+
+        this(messageController, properties, metricsRegistry, createCompression(properties));
+    }
+
+    private NoGuiServer(final MessagesControllerInterface messageController, final Properties properties,
+                        final MetricsRegistry metricsRegistry, final MeteredPerMessageDeflateExtension compression) {
+
+        super(new InetSocketAddress(properties.getProperty("ip"), Integer.parseInt(properties.getProperty("port"))), createDrafts(compression));
         this.messageController = messageController;
+        this.compression = compression;
+        this.metricsRegistry = metricsRegistry;
+
+        final int decodeThreads = Integer.parseInt(properties.getProperty("decodeThreads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        final int queueCapacity = Integer.parseInt(properties.getProperty("pipelineQueueCapacity", "1024"));
+        this.messagePipeline = new MessagePipeline(decodeThreads, queueCapacity);
+
+        final int outboundMaxFrames = Integer.parseInt(properties.getProperty("outboundMaxFrames", "1000"));
+        final long outboundMaxBytes = Long.parseLong(properties.getProperty("outboundMaxBytes", String.valueOf(32L * 1024 * 1024)));
+        final SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.valueOf(properties.getProperty("slowConsumerPolicy", SlowConsumerPolicy.DROP_TYPING.name()).toUpperCase());
+        this.outboundQueueGuard = new OutboundQueueGuard(outboundMaxFrames, outboundMaxBytes, slowConsumerPolicy);
+
+        final long typingInterval = Long.parseLong(properties.getProperty("typingInterval", "250"));
+        final long typingTimeout = Long.parseLong(properties.getProperty("typingTimeout", "5000"));
+        this.typingIndicatorService = new TypingIndicatorService(typingTimeout);
+        this.scheduler = startScheduler(slowConsumerPolicy, typingInterval);
+
+        this.joins = metricsRegistry.counter("teamsocket_joins_total", "Clients that joined and received the history");
+        this.disconnects = metricsRegistry.counter("teamsocket_disconnects_total", "Closed client connections");
+        this.typingFrames = metricsRegistry.counter("teamsocket_messages_total", "Messages received from clients by type",
+                                                    "type", "typing");
+        this.broadcastReceivers = metricsRegistry.counter("teamsocket_broadcast_receivers_total",
+                                                          "Frames handed to clients by message broadcasts");
+        this.messageLatency = metricsRegistry.histogram("teamsocket_message_seconds",
+                                                        "Time from receiving a message to handing its broadcast to the clients");
+        this.broadcastLatency = metricsRegistry.histogram("teamsocket_broadcast_seconds",
+                                                          "Time spent fanning a message out to the clients");
+    }
+
+    /**
+     Registers the values the server counts anyway, they are only read when the metrics are. Called once the server
+     listens, the gauges read the connections of the fully constructed server.
+     */
+    private void registerMetrics() {
+
+        metricsRegistry.gauge("teamsocket_connections", "Open client connections", () -> getConnections().size());
+        metricsRegistry.gauge("teamsocket_joined_clients", "Clients that received the history and get broadcasts",
+                              joinedHistoryVersions::size);
+        metricsRegistry.gauge("teamsocket_typing_users", "Users typing right now", typingIndicatorService::getTypingUsers);
+        metricsRegistry.counter("teamsocket_outbound_bytes_total", "Payload bytes sent to clients, before compression",
+                                outboundQueueGuard::getSentBytes);
+        metricsRegistry.counter("teamsocket_slow_consumer_disconnects_total", "Clients disconnected for falling behind",
+                                outboundQueueGuard::getSlowConsumerDisconnects);
+
+        for (String stage : List.of("decode", "persist", "broadcast")) {
+
+            metricsRegistry.gauge("teamsocket_pipeline_queue_depth", "Tasks waiting in a pipeline stage",
+                                  () -> queueDepth(messagePipeline.getStatistics(), stage), "stage", stage);
+        }
+
+        metricsRegistry.counter("teamsocket_pipeline_blocked_submissions_total", "Submissions that waited for a full pipeline queue",
+                                () -> messagePipeline.getStatistics().blockedSubmissions());
+
+        if (compression != null) {
+
+            metricsRegistry.counter("teamsocket_compression_bytes_total", "Bytes of compressed frames by side",
+                                    () -> compression.getStatistics().uncompressedBytes(), "side", "uncompressed");
+            metricsRegistry.counter("teamsocket_compression_bytes_total", "Bytes of compressed frames by side",
+                                    () -> compression.getStatistics().compressedBytes(), "side", "compressed");
+        }
+    }
+
+    private static int queueDepth(final PipelineStatistics statistics, final String stage) {
+
+        return switch (stage) {
+
+            case "decode" -> statistics.decodeQueueDepth();
+            case "persist" -> statistics.persistQueueDepth();
+            default -> statistics.broadcastQueueDepth();
+        };
     }
 
     /**
-     Called when a Ping message is received from a WebSocket connection.
+     Creates the permessage-deflate extension if "compression=true" is set. Frames below "compressionThreshold" bytes
+     are not compressed.
+
+     @param properties The properties object containing the optional compression settings.
 
-     @param webSocket The WebSocket connection object representing the connection from which the Ping message was received.
-     @param framedata The Ping message frame data received from the client.
+     @return the extension, or null if compression is off
      */
-    @Override
-    public void onWebsocketPing(WebSocket webSocket, Framedata framedata) {
+    private static MeteredPerMessageDeflateExtension createCompression(final Properties properties) {
 
-        //TODO find a better value for type
-        broadcastStopTypingToClients();
-        super.onWebsocketPing(webSocket, framedata);
+        if (!Boolean.parseBoolean(properties.getProperty("compression", "false"))) {return null;}
+
+        return new MeteredPerMessageDeflateExtension(Integer.parseInt(properties.getProperty("compressionThreshold", "256")));
+    }
+
+    /**
+     Offers the CBOR subprotocol to clients that ask for it. The empty protocol accepts every other client, they keep
+     talking JSON. Compression is offered if it is enabled, clients that do not ask for it get uncompressed frames.
+
+     @param compression The permessage-deflate extension, or null if compression is off.
+
+     @return the drafts the server accepts
+     */
+    private static List<Draft> createDrafts(final MeteredPerMessageDeflateExtension compression) {
+
+        return List.of(new Draft_6455(compression == null ? Collections.emptyList() : List.of(compression),
+                                      List.of(new Protocol(WireFormat.CBOR.getSubprotocol()),
+                                              new Protocol(WireFormat.JSON.getSubprotocol()))));
     }
 
-    private void broadcastStopTypingToClients() {
-        String stopTypingIndicator = "{\"type\":\"send\"}";
-        broadcast(stopTypingIndicator.getBytes());
+    /**
+     Starts the timers of the server: the typing indicators are flushed every "typingInterval" milliseconds, and with
+     the COALESCE policy coalesced typing frames are handed to the clients that caught up again. Both hand their work
+     to the broadcast stage, and only if there is any.
+
+     @param slowConsumerPolicy The configured policy.
+     @param typingInterval     Milliseconds between two typing events.
+
+     @return the running scheduler
+     */
+    private ScheduledExecutorService startScheduler(final SlowConsumerPolicy slowConsumerPolicy, final long typingInterval) {
+
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+
+            final Thread thread = new Thread(runnable, "nogui-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler.scheduleWithFixedDelay(() -> {
+
+            if (typingIndicatorService.isActive()) {messagePipeline.submitBroadcast(this::flushTypingIndicators);}
+
+        }, typingInterval, typingInterval, TimeUnit.MILLISECONDS);
+
+        if (slowConsumerPolicy == SlowConsumerPolicy.COALESCE) {
+
+            scheduler.scheduleWithFixedDelay(() -> messagePipeline.submitBroadcast(outboundQueueGuard::flushCoalesced),
+                                             100, 100, TimeUnit.MILLISECONDS);
+        }
+
+        return scheduler;
     }
 
+    /**
+     Takes the payload of a pong as the name of the client. Only a changed name is handed to the broadcast stage,
+     heartbeats cost nothing else. Control frames do not touch the typing indicators.
+
+     @param webSocket The WebSocket connection the pong was received on.
+     @param framedata The pong frame.
+     */
     @Override
     public void onWebsocketPong(WebSocket webSocket, Framedata framedata) {
 
-        //TODO
-        broadcastStopTypingToClients();
-        if (webSocket.getAttachment() == null) webSocket.setAttachment(new String(framedata.getPayloadData().array()));
+        presenceRegistry.touch(webSocket);
+
+        final String clientName = StandardCharsets.UTF_8.decode(framedata.getPayloadData()).toString().trim();
+
+        //the pongs answering the pings of the server carry no name
+        if (clientName.isEmpty() || clientName.equals(presenceRegistry.getClientName(webSocket))) {return;}
+
+        messagePipeline.submitBroadcast(() -> renameClient(webSocket, clientName));
     }
 
     /**
@@ -84,19 +278,146 @@ public class NoGuiServer extends WebSocketServer {
     /**
      Called when the WebSocket connection is opened. Sends 100 last messages to the freshly connected client.
 
+     <p>
+     The history is sent from the broadcast stage of the pipeline, so it can not interleave with a broadcast.
+     </p>
+
      @param webSocket         The WebSocket connection object representing the connection that has been opened.
      @param clientHandshake   The handshake information provided by the client.
      */
     @Override
-    public synchronized void onOpen(WebSocket webSocket, ClientHandshake clientHandshake) {
+    public void onOpen(WebSocket webSocket, ClientHandshake clientHandshake) {
 
         logger.info("+++ User " + webSocket.getRemoteSocketAddress() + " just connected! +++");
 
-        final Deque<String> messageHistory = messageController.retrieveLast100Messages();
+        outboundQueueGuard.add(webSocket);
+        messagePipeline.submitBroadcast(() -> joinClient(webSocket));
+    }
+
+    /**
+     Sends the current history to a freshly connected client and registers it for broadcasts. Runs on the broadcast
+     stage.
+
+     @param webSocket The WebSocket connection that has been opened.
+     */
+    private void joinClient(final WebSocket webSocket) {
+
+        final HistorySnapshot messageHistory = messageController.retrieveLast100Messages();
 
-        if (messageHistory != null) {
+        if (messageHistory == null || !webSocket.isOpen()) {return;}
 
-            messageHistory.forEach(webSocket::send);
+        //the history is bounded by its own size, it is exempt from the outbound limits
+        outboundQueueGuard.sendHistory(webSocket, messageHistory.frames());
+        joinedHistoryVersions.put(webSocket, messageHistory.version());
+
+        //the others learn about the client before it gets the roster, which contains the client itself
+        final EncodedFrame joinDelta = presenceRegistry.join(webSocket, addressOf(webSocket), null);
+        outboundQueueGuard.sendMessage(otherJoinedClients(webSocket), joinDelta);
+        outboundQueueGuard.sendMessage(List.of(webSocket), presenceRegistry.roster());
+
+        //flushes run on this stage as well, so the client can not miss a change in between
+        typingIndicatorService.currentTypingEvent().ifPresent(typing -> outboundQueueGuard.sendTyping(List.of(webSocket), typing));
+        joins.increment();
+
+        //closed while we were sending, onClose might have run already
+        if (!webSocket.isOpen()) {joinedHistoryVersions.remove(webSocket);}
+    }
+
+    /**
+     Renames a client and tells every joined client. Runs on the broadcast stage.
+
+     @param webSocket  The WebSocket connection of the client.
+     @param clientName The new name.
+     */
+    private void renameClient(final WebSocket webSocket, final String clientName) {
+
+        presenceRegistry.rename(webSocket, clientName)
+                        .ifPresent(renameDelta -> outboundQueueGuard.sendMessage(joinedHistoryVersions.keySet(), renameDelta));
+    }
+
+    /**
+     Removes a client and tells the remaining joined clients. Runs on the broadcast stage.
+
+     @param webSocket The WebSocket connection that was closed.
+     */
+    private void leaveClient(final WebSocket webSocket) {
+
+        presenceRegistry.leave(webSocket)
+                        .ifPresent(leaveDelta -> outboundQueueGuard.sendMessage(joinedHistoryVersions.keySet(), leaveDelta));
+    }
+
+    private List<WebSocket> otherJoinedClients(final WebSocket webSocket) {
+
+        final List<WebSocket> others = new ArrayList<>(joinedHistoryVersions.size());
+
+        joinedHistoryVersions.keySet().forEach(joined -> {
+
+            if (joined != webSocket) {others.add(joined);}
+        });
+
+        return others;
+    }
+
+    private static String addressOf(final WebSocket webSocket) {
+
+        final InetSocketAddress remoteAddress = webSocket.getRemoteSocketAddress();
+
+        return remoteAddress == null || remoteAddress.getAddress() == null ? null : remoteAddress.getAddress().getHostAddress();
+    }
+
+    /**
+     Broadcasts a persisted message to every joined client whose history does not contain it yet. Runs on the
+     broadcast stage.
+
+     @param broadcastMessage The persisted message.
+     */
+    private void broadcastToJoinedClients(final BroadcastMessage broadcastMessage) {
+
+        final long start = System.nanoTime();
+        final BroadcastEvent broadcastEvent = new BroadcastEvent();
+        broadcastEvent.begin();
+        final List<WebSocket> receivers = new ArrayList<>(joinedHistoryVersions.size());
+
+        joinedHistoryVersions.forEach((webSocket, historyVersion) -> {
+
+            if (historyVersion < broadcastMessage.historyVersion()) {receivers.add(webSocket);}
+        });
+
+        outboundQueueGuard.sendMessage(receivers, broadcastMessage.frame());
+        broadcastReceivers.add(receivers.size());
+        broadcastLatency.recordSince(start);
+        commitBroadcastEvent(broadcastEvent, "message", receivers.size(), broadcastMessage.frame());
+    }
+
+    /**
+     Sends who started and who stopped typing since the last flush to every joined client, nothing if nobody did. Runs
+     on the broadcast stage.
+     */
+    private void flushTypingIndicators() {
+
+        final BroadcastEvent broadcastEvent = new BroadcastEvent();
+        broadcastEvent.begin();
+
+        typingIndicatorService.flush(System.nanoTime()).ifPresent(typing -> {
+
+            final Collection<WebSocket> receivers = joinedHistoryVersions.keySet();
+
+            outboundQueueGuard.sendTyping(receivers, typing);
+            commitBroadcastEvent(broadcastEvent, "typing", receivers.size(), typing);
+        });
+    }
+
+    private static void commitBroadcastEvent(final BroadcastEvent broadcastEvent, final String kind, final int receivers,
+                                             final EncodedFrame frame) {
+
+        broadcastEvent.end();
+
+        if (broadcastEvent.shouldCommit()) {
+
+            broadcastEvent.kind = kind;
+            broadcastEvent.receivers = receivers;
+            broadcastEvent.payloadSize = frame.payload(WireFormat.JSON).remaining();
+            broadcastEvent.commit();
         }
     }
 
@@ -111,15 +432,52 @@ public class NoGuiServer extends WebSocketServer {
     @Override
     public void onClose(WebSocket webSocket, int code, String reason, boolean remote) {
 
-        logger.info("closed " + webSocket.getRemoteSocketAddress() + " " + webSocket.getAttachment() + " with exit code " + code + " additional info: " + reason);
+        joinedHistoryVersions.remove(webSocket);
+        outboundQueueGuard.remove(webSocket);
+        typingIndicatorService.stopped(typingUserByConnection.remove(webSocket));
+        disconnects.increment();
+        logger.info("closed " + webSocket.getRemoteSocketAddress() + " " + presenceRegistry.getClientName(webSocket) + " with exit code " + code + " additional info: " + reason);
+
+        //after the join of the client, which was submitted on open
+        messagePipeline.submitBroadcast(() -> leaveClient(webSocket));
     }
 
+    /**
+     Hands a text message to the pipeline. It is decoded in parallel with other messages, then persisted and
+     broadcast in arrival order. Client requests are answered right away.
+
+     @param webSocket The WebSocket connection the message was received on.
+     @param message   The JSON message.
+     */
     @Override
-    public synchronized void onMessage(WebSocket webSocket, String message) {
+    public void onMessage(WebSocket webSocket, String message) {
+
+        presenceRegistry.touch(webSocket);
+
+        //requests are answered to the sender only, they never reach the database or the other clients
+        if (messageController.isClientRequest(message)) {
 
-        final String broadcastMessage = messageController.onMessageFromClient(message);
+            messagePipeline.submitRequest(() -> outboundQueueGuard.sendResponse(webSocket, messageController.handleClientRequest(message)));
+            return;
+        }
 
-        broadcast(broadcastMessage);
+        submitMessage(webSocket, () -> messageController.decodeMessageFromClient(message));
+    }
+
+    private void submitMessage(final WebSocket webSocket, final Supplier<DecodedMessage> decoder) {
+
+        final long received = System.nanoTime();
+
+        //a sent message ends the typing of its user
+        typingIndicatorService.stopped(typingUserByConnection.get(webSocket));
+
+        messagePipeline.submitOrdered(decoder,
+                                      messageController::persistMessageFromClient,
+                                      broadcastMessage -> {
+
+                                          broadcastToJoinedClients(broadcastMessage);
+                                          messageLatency.recordSince(received);
+                                      });
     }
 
     /**
@@ -153,6 +511,8 @@ public class NoGuiServer extends WebSocketServer {
     @Override
     public void onStart() {
 
+        registerMetrics();
+
         logger.info("***");
         logger.info("server started successfully with ip " + this.getAddress().getHostString() + " and port " + this.getAddress().getPort() + "!");
         logger.info("***");
@@ -161,28 +521,153 @@ public class NoGuiServer extends WebSocketServer {
     /**
      Callback method invoked when a message is received by the WebSocket server.
 
-     This method broadcasts the received message to all connected clients.
+     Binary frames are typing indicators, recorded for the next typing event, or reactions, which are saved and
+     broadcast as reaction event. CBOR clients send all their frames as binary frames, those are parsed once and
+     handed on by their fields, see {@link #onCborMessage(WebSocket, byte[])}.
 
      @param webSocket  The WebSocket connection object.
      @param byteBuffer The message received, as a ByteBuffer.
      */
     @Override
-    public synchronized void onMessage(WebSocket webSocket, ByteBuffer byteBuffer) {
-
-        //TODO reaction!
-//        //no need to broadcast if it is a reaction
-//        final byte[] byteData = byteBuffer.array();
-//
-//        if(messageController.checkByteArrayForReaction(byteData)){
-//
-//            UpdatedReactionModelDTO updatedModel = messageController.updateDatabaseEntryWithReaction(byteData);
-//            messageController.replaceDatabaseEntryWithUpdatedModel(updatedModel);
-//            messageController.sendUpdatedBaseModelToAllClients(updatedModel.databaseId());
-//
-//            return;
-//        }
-
-        //TODO javadoc
-        broadcast(byteBuffer);
+    public void onMessage(WebSocket webSocket, ByteBuffer byteBuffer) {
+
+        final byte[] frame = new byte[byteBuffer.remaining()];
+        byteBuffer.get(frame);
+        presenceRegistry.touch(webSocket);
+
+        if (WireFormat.of(webSocket) == WireFormat.CBOR) {
+
+            onCborMessage(webSocket, frame);
+            return;
+        }
+
+        //reactions change a message, they keep their order with the other messages
+        if (messageController.checkByteArrayForReaction(frame)) {
+
+            messagePipeline.submitOrdered(() -> messageController.decodeReaction(frame),
+                                          messageController::persistReaction,
+                                          this::broadcastToJoinedClients);
+            return;
+        }
+
+        //typing indicators are only recorded here, the next flush tells the clients about any change
+        typingFrames.increment();
+        typingIndicatorService.record(frame, presenceRegistry.getClientName(webSocket))
+                              .ifPresent(user -> typingUserByConnection.put(webSocket, user));
+    }
+
+    /**
+     Parses a frame of a CBOR client once and hands it on by its top-level fields: requests are answered, chat
+     messages (with a subclass) and reactions go through the pipeline like their JSON counterparts, anything else is
+     a typing indicator.
+
+     @param webSocket The WebSocket connection the frame was received on.
+     @param frame     The CBOR frame.
+     */
+    private void onCborMessage(final WebSocket webSocket, final byte[] frame) {
+
+        final InboundFrame message;
+
+        try {
+
+            message = InboundFrame.readCbor(frame);
+
+        } catch (IOException e) {
+
+            logger.log(Level.WARNING, "NoGuiServer > onMessage - invalid CBOR from " + webSocket.getRemoteSocketAddress(), e);
+            return;
+        }
+
+        if (message.has("requestType")) {
+
+            messagePipeline.submitRequest(() -> outboundQueueGuard.sendResponse(webSocket, messageController.handleClientRequest(message)));
+            return;
+        }
+
+        if (message.has("subclass")) {
+
+            submitMessage(webSocket, () -> messageController.decodeMessageFromClient(message));
+            return;
+        }
+
+        if (message.has("reactionName")) {
+
+            messagePipeline.submitOrdered(() -> messageController.decodeReaction(message),
+                                          messageController::persistReaction,
+                                          this::broadcastToJoinedClients);
+            return;
+        }
+
+        typingFrames.increment();
+        typingIndicatorService.record(message, presenceRegistry.getClientName(webSocket))
+                              .ifPresent(user -> typingUserByConnection.put(webSocket, user));
+    }
+
+    /**
+     Stops the server and waits until every message already accepted by the pipeline has been persisted.
+
+     @param timeout      Milliseconds to wait for the connections to close.
+     @param closeMessage The message sent to the clients.
+
+     @throws InterruptedException if interrupted while waiting for the server thread
+     */
+    @Override
+    public void stop(int timeout, String closeMessage) throws InterruptedException {
+
+        scheduler.shutdownNow();
+
+        super.stop(timeout, closeMessage);
+        messagePipeline.close();
+    }
+
+    /**
+     Returns the queue depths and throughput counters of the message pipeline.
+
+     @return a snapshot of the pipeline statistics
+     */
+    public PipelineStatistics getPipelineStatistics() {
+
+        return messagePipeline.getStatistics();
+    }
+
+    /**
+     Returns the compression ratio and the time spent compressing of all connections that negotiated
+     permessage-deflate.
+
+     @return the statistics, or an empty Optional if compression is off
+     */
+    public Optional<CompressionStatistics> getCompressionStatistics() {
+
+        return Optional.ofNullable(compression).map(MeteredPerMessageDeflateExtension::getStatistics);
+    }
+
+    /**
+     Returns the outbound backlog and counters of every connection.
+
+     @return one entry per connection
+     */
+    public List<OutboundStatistics> getOutboundStatistics() {
+
+        return outboundQueueGuard.getStatistics();
+    }
+
+    /**
+     Returns the joined clients with their name, address and last activity.
+
+     @return one entry per joined client, longest idle first
+     */
+    public List<Presence> getPresence() {
+
+        return presenceRegistry.getPresence();
+    }
+
+    /**
+     Returns the number of clients disconnected for not keeping up with their outbound queue.
+
+     @return the number of slow consumer disconnects
+     */
+    public long getSlowConsumerDisconnects() {
+
+        return outboundQueueGuard.getSlowConsumerDisconnects();
     }
 }
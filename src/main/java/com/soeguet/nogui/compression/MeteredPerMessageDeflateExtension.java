@@ -0,0 +1,129 @@
+package com.soeguet.nogui.compression;
+
+import com.soeguet.model.dtos.CompressionStatistics;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.Framedata;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ permessage-deflate with a size threshold and counters.
+
+ <p>
+ Frames smaller than the threshold, like typing indicators, are sent as they are. For every other data frame the
+ original and the compressed size and the time spent deflating are counted, so the compression ratio and its CPU cost
+ can be read from {@link #getStatistics()}. Every connection gets its own copy with its own deflater, all copies share
+ the counters of the instance they were copied from.
+ </p>
+ */
+public final class MeteredPerMessageDeflateExtension extends PerMessageDeflateExtension {
+
+    // variables -- start
+    private final Counters counters;
+    // variables -- end
+
+    private static final class Counters {
+
+        private final LongAdder compressedFrames = new LongAdder();
+        private final LongAdder skippedFrames = new LongAdder();
+        private final LongAdder uncompressedBytes = new LongAdder();
+        private final LongAdder compressedBytes = new LongAdder();
+        private final LongAdder compressionNanos = new LongAdder();
+        private final LongAdder decompressionNanos = new LongAdder();
+    }
+
+    // constructors -- start
+    public MeteredPerMessageDeflateExtension(final int threshold) {
+
+        this(threshold, new Counters());
+    }
+
+    private MeteredPerMessageDeflateExtension(final int threshold, final Counters counters) {
+
+        this.counters = counters;
+        setThreshold(threshold);
+    }
+    // constructors -- end
+
+    /**
+     Returns the counters of all connections that negotiated this extension.
+
+     @return a snapshot of the compression statistics
+     */
+    public CompressionStatistics getStatistics() {
+
+        return new CompressionStatistics(counters.compressedFrames.sum(), counters.skippedFrames.sum(),
+                                         counters.uncompressedBytes.sum(), counters.compressedBytes.sum(),
+                                         counters.compressionNanos.sum(), counters.decompressionNanos.sum());
+    }
+
+    // overrides -- start
+    /**
+     Compresses a data frame if it reaches the threshold and counts the result.
+
+     @param inputFrame
+     the frame to encode, its payload is replaced by the compressed payload
+     */
+    @Override
+    public void encodeFrame(final Framedata inputFrame) {
+
+        if (!(inputFrame instanceof DataFrame dataFrame)) {return;}
+
+        //the deflater works on the whole backing array, pictures from the image store may be memory mapped
+        final ByteBuffer payload = toExactHeapBuffer(dataFrame.getPayloadData());
+        dataFrame.setPayload(payload);
+
+        if (payload.remaining() < getThreshold()) {
+
+            counters.skippedFrames.increment();
+            return;
+        }
+
+        final long start = System.nanoTime();
+        super.encodeFrame(dataFrame);
+
+        counters.compressionNanos.add(System.nanoTime() - start);
+        counters.compressedFrames.increment();
+        counters.uncompressedBytes.add(payload.remaining());
+        counters.compressedBytes.add(dataFrame.getPayloadData().remaining());
+    }
+
+    @Override
+    public void decodeFrame(final Framedata inputFrame) throws InvalidDataException {
+
+        final long start = System.nanoTime();
+        super.decodeFrame(inputFrame);
+
+        counters.decompressionNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     Creates the extension for a new connection, keeping the threshold and sharing the counters.
+
+     @return a fresh extension
+     */
+    @Override
+    public IExtension copyInstance() {
+
+        return new MeteredPerMessageDeflateExtension(getThreshold(), counters);
+    }
+    // overrides -- end
+
+    private static ByteBuffer toExactHeapBuffer(final ByteBuffer payload) {
+
+        if (payload.hasArray() && payload.arrayOffset() == 0 && payload.position() == 0
+            && payload.remaining() == payload.array().length) {
+
+            return payload;
+        }
+
+        final byte[] copy = new byte[payload.remaining()];
+        payload.duplicate().get(copy);
+
+        return ByteBuffer.wrap(copy);
+    }
+}
@@ -0,0 +1,491 @@
+package com.soeguet.nogui.outbound;
+
+import com.soeguet.codec.EncodedFrame;
+import com.soeguet.codec.WireFormat;
+import com.soeguet.codec.WireTranscoder;
+import com.soeguet.model.dtos.ClientResponse;
+import com.soeguet.model.dtos.OutboundStatistics;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.BinaryFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.TextFrame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ Keeps the outbound queue of every connection within a frame and a byte limit.
+
+ <p>
+ Java-WebSocket queues every frame sent to a connection without limit. All frames of the server go through this
+ guard instead, which checks the backlog of the connection before queueing another frame and applies the configured
+ {@link SlowConsumerPolicy} to clients that do not keep up. Payloads are encoded once per wire format and shared by
+ all receivers of that format, only the frame objects are created per connection.
+ </p>
+
+ <p>
+ The backlog is not measured by walking the queue of the library. The guard notes the payload size of every frame it
+ queues; since the queue is written in order, the frames missing from its length are the oldest noted ones, and
+ their sizes are released. Reading the length of the queue takes no lock.
+ </p>
+
+ <p>
+ Connections are known to the guard from {@link #add(WebSocket)} to {@link #remove(WebSocket)}. Frames for other
+ connections are not sent, so a frame sent after the close of its connection does not bring its counters back.
+ </p>
+ */
+public class OutboundQueueGuard {
+
+    public static final int SLOW_CONSUMER_CLOSE_CODE = 4008;
+    public static final String SLOW_CONSUMER_CLOSE_REASON = "slow consumer - reconnect to resume";
+
+    // variables -- start
+    private final Logger logger = Logger.getLogger(OutboundQueueGuard.class.getName());
+    private final int maxFrames;
+    private final long maxBytes;
+    private final SlowConsumerPolicy policy;
+    private final Map<WebSocket, ConnectionCounters> countersByConnection = new ConcurrentHashMap<>();
+    private final LongAdder slowConsumerDisconnects = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+    // variables -- end
+
+    private static final class ConnectionCounters {
+
+        private final QueuedFrames queuedFrames = new QueuedFrames();
+        private final LongAdder sentFrames = new LongAdder();
+        private final LongAdder droppedFrames = new LongAdder();
+        private final LongAdder coalescedFrames = new LongAdder();
+        private final AtomicReference<EncodedFrame> coalescedFrame = new AtomicReference<>();
+    }
+
+    /**
+     The payload sizes of the frames queued for a connection that may not be written yet, oldest first.
+     */
+    private static final class QueuedFrames {
+
+        private int[] sizes = new int[16];
+        private int head;
+        private int count;
+        private long bytes;
+
+        private synchronized void add(final int payloadBytes) {
+
+            if (count == sizes.length) {grow();}
+
+            sizes[(head + count) & (sizes.length - 1)] = payloadBytes;
+            count++;
+            bytes += payloadBytes;
+        }
+
+        /**
+         @param queueLength
+         the number of buffers the library still has to write
+
+         @return the backlog after releasing the frames that were written
+         */
+        private synchronized Backlog release(final int queueLength) {
+
+            while (count > queueLength) {
+
+                bytes -= sizes[head];
+                head = (head + 1) & (sizes.length - 1);
+                count--;
+            }
+
+            return new Backlog(queueLength, bytes);
+        }
+
+        private void grow() {
+
+            final int[] grown = new int[sizes.length * 2];
+
+            for (int i = 0; i < count; i++) {
+
+                grown[i] = sizes[(head + i) & (sizes.length - 1)];
+            }
+
+            sizes = grown;
+            head = 0;
+        }
+    }
+
+    private record Backlog(int frames, long bytes) {}
+
+    // constructors -- start
+    public OutboundQueueGuard(final int maxFrames, final long maxBytes, final SlowConsumerPolicy policy) {
+
+        this.maxFrames = maxFrames;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+    }
+    // constructors -- end
+
+    /**
+     Sends a chat message to the receivers. Chat messages are never dropped, a receiver that can not take it any
+     longer is disconnected.
+
+     @param receivers
+     the connections to send to
+     @param message
+     the encoded message
+     */
+    public void sendMessage(final Collection<WebSocket> receivers, final EncodedFrame message) {
+
+        for (WebSocket webSocket : receivers) {
+
+            final WireFormat wireFormat = WireFormat.of(webSocket);
+            final ByteBuffer payload = message.payload(wireFormat);
+
+            final ConnectionCounters counters = countersByConnection.get(webSocket);
+
+            if (counters != null && admit(webSocket, counters, payload.remaining(), false)) {
+
+                send(webSocket, counters, toFrame(message, wireFormat));
+            }
+        }
+    }
+
+    /**
+     Sends a typing frame to the receivers. Typing frames are the first to go if a receiver falls behind.
+
+     @param receivers
+     the connections to send to
+     @param typing
+     the encoded typing indicator
+     */
+    public void sendTyping(final Collection<WebSocket> receivers, final EncodedFrame typing) {
+
+        for (WebSocket webSocket : receivers) {
+
+            final WireFormat wireFormat = WireFormat.of(webSocket);
+
+            final ConnectionCounters counters = countersByConnection.get(webSocket);
+
+            if (counters == null) {continue;}
+
+            if (admit(webSocket, counters, typing.payload(wireFormat).remaining(), true)) {
+
+                send(webSocket, counters, toFrame(typing, wireFormat));
+
+            } else if (policy == SlowConsumerPolicy.COALESCE && webSocket.isOpen()) {
+
+                //only the latest typing state matters, older ones are replaced
+                if (counters.coalescedFrame.getAndSet(typing) != null) {
+
+                    counters.coalescedFrames.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     Sends the history to a freshly joined client. The history is bounded by its own size and exempt from the limits,
+     but counts towards the backlog of the following frames.
+
+     @param webSocket
+     the joined connection
+     @param historyFrames
+     the shared encoded frames
+     */
+    public void sendHistory(final WebSocket webSocket, final List<EncodedFrame> historyFrames) {
+
+        final ConnectionCounters counters = countersByConnection.get(webSocket);
+
+        if (counters == null || !webSocket.isOpen()) {return;}
+
+        final WireFormat wireFormat = WireFormat.of(webSocket);
+        final List<Framedata> frames = new ArrayList<>(historyFrames.size());
+
+        for (EncodedFrame historyFrame : historyFrames) {
+
+            frames.add(toFrame(historyFrame, wireFormat));
+        }
+
+        try {
+
+            queue(webSocket, counters, frames);
+
+        } catch (WebsocketNotConnectedException e) {
+
+            logger.fine("OutboundQueueGuard > sendHistory - " + webSocket.getRemoteSocketAddress() + " already closed");
+        }
+    }
+
+    /**
+     Sends the response to a client request. The header, the encoded frames and the binary payload are queued
+     together, so no other frame can get between them.
+
+     @param webSocket
+     the requesting connection
+     @param clientResponse
+     the JSON header, the encoded frames and the optional binary payload
+     */
+    public void sendResponse(final WebSocket webSocket, final ClientResponse clientResponse) {
+
+        final WireFormat wireFormat = WireFormat.of(webSocket);
+        final byte[] headerJson = clientResponse.header().getBytes(StandardCharsets.UTF_8);
+        final EncodedFrame header = EncodedFrame.message(headerJson, () -> WireTranscoder.jsonToCbor(headerJson));
+        final ByteBuffer payload = clientResponse.payload();
+        int responseBytes = header.payload(wireFormat).remaining() + (payload == null ? 0 : payload.remaining());
+
+        for (EncodedFrame frame : clientResponse.frames()) {
+
+            responseBytes += frame.payload(wireFormat).remaining();
+        }
+
+        final ConnectionCounters counters = countersByConnection.get(webSocket);
+
+        if (counters == null || !admit(webSocket, counters, responseBytes, false)) {return;}
+
+        final List<Framedata> frames = new ArrayList<>(clientResponse.frames().size() + 2);
+        frames.add(toFrame(header, wireFormat));
+
+        for (EncodedFrame frame : clientResponse.frames()) {
+
+            frames.add(toFrame(frame, wireFormat));
+        }
+
+        if (payload != null) {frames.add(binaryFrame(payload));}
+
+        try {
+
+            queue(webSocket, counters, frames);
+
+        } catch (WebsocketNotConnectedException e) {
+
+            logger.fine("OutboundQueueGuard > sendResponse - " + webSocket.getRemoteSocketAddress() + " already closed");
+        }
+    }
+
+    /**
+     Delivers coalesced typing frames to every connection that caught up again.
+     */
+    public void flushCoalesced() {
+
+        countersByConnection.forEach((webSocket, counters) -> {
+
+            if (counters.coalescedFrame.get() == null) {return;}
+
+            final Backlog backlog = backlog(webSocket, counters);
+
+            if (!isOverSoftLimit(backlog, 0)) {
+
+                final EncodedFrame typing = counters.coalescedFrame.getAndSet(null);
+
+                if (typing != null) {send(webSocket, counters, toFrame(typing, WireFormat.of(webSocket)));}
+            }
+        });
+    }
+
+    /**
+     Starts counting the frames of an opened connection.
+
+     @param webSocket
+     the opened connection
+     */
+    public void add(final WebSocket webSocket) {
+
+        countersByConnection.putIfAbsent(webSocket, new ConnectionCounters());
+    }
+
+    /**
+     Forgets a closed connection.
+
+     @param webSocket
+     the closed connection
+     */
+    public void remove(final WebSocket webSocket) {
+
+        countersByConnection.remove(webSocket);
+    }
+
+    /**
+     Returns the current backlog and counters of every known connection.
+
+     @return one entry per connection
+     */
+    public List<OutboundStatistics> getStatistics() {
+
+        final List<OutboundStatistics> statistics = new ArrayList<>(countersByConnection.size());
+
+        countersByConnection.forEach((webSocket, counters) -> {
+
+            final Backlog backlog = backlog(webSocket, counters);
+            statistics.add(new OutboundStatistics(String.valueOf(webSocket.getRemoteSocketAddress()), backlog.frames(),
+                                                  backlog.bytes(), counters.sentFrames.sum(),
+                                                  counters.droppedFrames.sum(), counters.coalescedFrames.sum()));
+        });
+
+        return statistics;
+    }
+
+    public long getSlowConsumerDisconnects() {
+
+        return slowConsumerDisconnects.sum();
+    }
+
+    /**
+     @return the payload bytes handed to all connections, before compression
+     */
+    public long getSentBytes() {
+
+        return sentBytes.sum();
+    }
+
+    /**
+     Decides whether a frame may be queued for a connection, disconnecting the connection if the policy says so.
+
+     @param webSocket
+     the receiving connection
+     @param counters
+     the counters of the connection
+     @param payloadBytes
+     the size of the frame payload
+     @param typing
+     true for typing frames, which may be dropped
+
+     @return true if the frame should be sent
+     */
+    private boolean admit(final WebSocket webSocket, final ConnectionCounters counters, final int payloadBytes,
+                          final boolean typing) {
+
+        if (!webSocket.isOpen()) {return false;}
+
+        final Backlog backlog = backlog(webSocket, counters);
+
+        if (typing && policy != SlowConsumerPolicy.DISCONNECT && isOverSoftLimit(backlog, payloadBytes)) {
+
+            counters.droppedFrames.increment();
+            return false;
+        }
+
+        if (backlog.frames() + 1 > maxFrames || backlog.bytes() + payloadBytes > maxBytes) {
+
+            disconnectSlowConsumer(webSocket, counters, backlog);
+            return false;
+        }
+
+        return true;
+    }
+
+    private boolean isOverSoftLimit(final Backlog backlog, final int payloadBytes) {
+
+        return backlog.frames() + 1 > maxFrames / 2 || backlog.bytes() + payloadBytes > maxBytes / 2;
+    }
+
+    private void disconnectSlowConsumer(final WebSocket webSocket, final ConnectionCounters counters,
+                                        final Backlog backlog) {
+
+        logger.warning("OutboundQueueGuard > disconnecting slow consumer " + webSocket.getRemoteSocketAddress() + " with "
+                       + backlog.frames() + " frames / " + backlog.bytes() + " bytes queued");
+
+        slowConsumerDisconnects.increment();
+        counters.droppedFrames.increment();
+
+        //a close frame would queue behind the backlog, the backlog is dropped with the connection instead
+        webSocket.closeConnection(SLOW_CONSUMER_CLOSE_CODE, SLOW_CONSUMER_CLOSE_REASON);
+    }
+
+    private void send(final WebSocket webSocket, final ConnectionCounters counters, final Framedata frame) {
+
+        try {
+
+            sentBytes.add(queue(webSocket, counters, frame));
+
+        } catch (WebsocketNotConnectedException e) {
+
+            logger.fine("OutboundQueueGuard > send - " + webSocket.getRemoteSocketAddress() + " already closed");
+        }
+    }
+
+    /**
+     Queues a frame and notes its payload size. The connection's queued frames are locked while queueing, so the
+     sizes are noted in the order the library queues the frames.
+
+     @return the payload size of the frame
+     */
+    private int queue(final WebSocket webSocket, final ConnectionCounters counters, final Framedata frame) {
+
+        //encoding moves the position of the payload, it is measured before
+        final int payloadBytes = frame.getPayloadData().remaining();
+
+        synchronized (counters.queuedFrames) {
+
+            webSocket.sendFrame(frame);
+            counters.queuedFrames.add(payloadBytes);
+        }
+
+        counters.sentFrames.increment();
+        return payloadBytes;
+    }
+
+    private void queue(final WebSocket webSocket, final ConnectionCounters counters, final List<Framedata> frames) {
+
+        final int[] payloadBytes = new int[frames.size()];
+
+        for (int i = 0; i < payloadBytes.length; i++) {
+
+            payloadBytes[i] = frames.get(i).getPayloadData().remaining();
+        }
+
+        synchronized (counters.queuedFrames) {
+
+            webSocket.sendFrame(frames);
+
+            for (int frameBytes : payloadBytes) {
+
+                counters.queuedFrames.add(frameBytes);
+            }
+        }
+
+        counters.sentFrames.add(payloadBytes.length);
+    }
+
+    /**
+     Measures the frames and payload bytes waiting to be written to a connection. The frames are the length of the
+     queue of the library, including control frames; the bytes are the noted sizes of the frames still queued.
+
+     @param webSocket
+     the connection
+     @param counters
+     the counters of the connection
+
+     @return the current backlog
+     */
+    private Backlog backlog(final WebSocket webSocket, final ConnectionCounters counters) {
+
+        if (!(webSocket instanceof WebSocketImpl webSocketImpl)) {return new Backlog(0, 0);}
+
+        return counters.queuedFrames.release(webSocketImpl.outQueue.size());
+    }
+
+    private static Framedata toFrame(final EncodedFrame encodedFrame, final WireFormat wireFormat) {
+
+        final ByteBuffer payload = encodedFrame.payload(wireFormat);
+
+        return encodedFrame.isBinary(wireFormat) ? binaryFrame(payload) : withPayload(new TextFrame(), payload);
+    }
+
+    private static Framedata binaryFrame(final ByteBuffer payload) {
+
+        return withPayload(new BinaryFrame(), payload);
+    }
+
+    private static Framedata withPayload(final DataFrame frame, final ByteBuffer payload) {
+
+        //every frame gets its own view, encoding a frame moves the position of its payload
+        frame.setPayload(payload.duplicate());
+        return frame;
+    }
+}
@@ -0,0 +1,23 @@
+package com.soeguet.nogui.outbound;
+
+/**
+ What happens to a client whose outbound queue is over its limits.
+ */
+public enum SlowConsumerPolicy {
+
+    /**
+     Typing frames are dropped once half of the limits are used, the client is disconnected once a chat message
+     would exceed them.
+     */
+    DROP_TYPING,
+
+    /**
+     Like {@link #DROP_TYPING}, but the latest dropped typing frame is kept and delivered once the queue drained.
+     */
+    COALESCE,
+
+    /**
+     The client is disconnected as soon as any frame would exceed the limits.
+     */
+    DISCONNECT
+}
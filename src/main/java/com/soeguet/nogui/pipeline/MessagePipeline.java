@@ -0,0 +1,285 @@
+package com.soeguet.nogui.pipeline;
+
+import com.soeguet.model.dtos.PipelineStatistics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ Staged message pipeline: decode, persist, broadcast.
+
+ <p>
+ Every stage runs on its own executor with a bounded queue. Decoding runs in parallel on several threads, persisting
+ and broadcasting run on one thread each, so messages are persisted and broadcast in the order they were submitted
+ while the next messages are already being decoded. If a queue is full, the submitting thread blocks until there is
+ room again, which pushes back on the websocket connections instead of buffering without limit.
+ </p>
+
+ <p>
+ Once the pipeline is closed, new work is logged and dropped. Connections still report their close while the server
+ stops, those callbacks must not fail.
+ </p>
+ */
+public class MessagePipeline implements AutoCloseable {
+
+    // variables -- start
+    private final Logger logger = Logger.getLogger(MessagePipeline.class.getName());
+    private final ThreadPoolExecutor decodeExecutor;
+    private final ThreadPoolExecutor persistExecutor;
+    private final ThreadPoolExecutor broadcastExecutor;
+    private final Object submitLock = new Object();
+    private final LongAdder decodedMessages = new LongAdder();
+    private final LongAdder persistedMessages = new LongAdder();
+    private final LongAdder broadcastMessages = new LongAdder();
+    private final LongAdder blockedSubmissions = new LongAdder();
+    // variables -- end
+
+    // constructors -- start
+    public MessagePipeline(final int decodeThreads, final int queueCapacity) {
+
+        this.decodeExecutor = createExecutor("pipeline-decode", decodeThreads, queueCapacity);
+        this.persistExecutor = createExecutor("pipeline-persist", 1, queueCapacity);
+        this.broadcastExecutor = createExecutor("pipeline-broadcast", 1, queueCapacity);
+    }
+    // constructors -- end
+
+    /**
+     Submits a message that has to keep its global order. The decode stage may run in parallel with other messages,
+     the persist and broadcast stages run in submission order.
+
+     @param decodeStage
+     parses the message, runs on one of the decode threads
+     @param persistStage
+     persists the decoded message, returns null if nothing should be broadcast
+     @param broadcastStage
+     sends the persisted message to the clients
+
+     @param <D>
+     type of the decoded message
+     @param <P>
+     type of the persisted message
+     */
+    public <D, P> void submitOrdered(final Supplier<D> decodeStage, final Function<D, P> persistStage,
+                                     final Consumer<P> broadcastStage) {
+
+        //the lock fixes the global order: persist tasks are queued in the same order as the decode tasks
+        synchronized (submitLock) {
+
+            final CompletableFuture<D> decoded;
+
+            try {
+
+                decoded = CompletableFuture.supplyAsync(() -> {
+
+                    final D result = decodeStage.get();
+                    decodedMessages.increment();
+                    return result;
+
+                }, decodeExecutor);
+
+            } catch (RejectedExecutionException e) {
+
+                dropIfClosed(decodeExecutor, "message", e);
+                return;
+            }
+
+            //the decode stage is shut down under the lock and the persist stage only after it, this still gets queued
+            persistExecutor.execute(() -> {
+
+                final P persisted;
+
+                try {
+
+                    persisted = persistStage.apply(decoded.join());
+                    persistedMessages.increment();
+
+                } catch (RuntimeException e) {
+
+                    logger.log(Level.SEVERE, "MessagePipeline > message could not be processed, dropping it", e);
+                    return;
+                }
+
+                if (persisted != null) {
+
+                    submitBroadcast(() -> broadcastStage.accept(persisted));
+                }
+            });
+        }
+    }
+
+    /**
+     Submits work to the broadcast stage. Broadcast tasks run one after another in submission order.
+
+     @param broadcastStage
+     the work to run on the broadcast thread
+     */
+    public void submitBroadcast(final Runnable broadcastStage) {
+
+        try {
+
+            broadcastExecutor.execute(() -> {
+
+                try {
+
+                    broadcastStage.run();
+                    broadcastMessages.increment();
+
+                } catch (RuntimeException e) {
+
+                    logger.log(Level.SEVERE, "MessagePipeline > broadcast failed", e);
+                }
+            });
+
+        } catch (RejectedExecutionException e) {
+
+            dropIfClosed(broadcastExecutor, "broadcast", e);
+        }
+    }
+
+    /**
+     Submits a client request to the decode stage. Requests do not change any state, so they are answered in parallel
+     and never wait for the persist stage.
+
+     @param requestStage
+     answers the request and sends the response
+     */
+    public void submitRequest(final Runnable requestStage) {
+
+        try {
+
+            decodeExecutor.execute(() -> {
+
+                try {
+
+                    requestStage.run();
+
+                } catch (RuntimeException e) {
+
+                    logger.log(Level.SEVERE, "MessagePipeline > request failed", e);
+                }
+            });
+
+        } catch (RejectedExecutionException e) {
+
+            dropIfClosed(decodeExecutor, "request", e);
+        }
+    }
+
+    /**
+     Returns the current queue depths and throughput counters of the pipeline.
+
+     @return a snapshot of the pipeline statistics
+     */
+    public PipelineStatistics getStatistics() {
+
+        return new PipelineStatistics(decodeExecutor.getQueue().size(), persistExecutor.getQueue().size(),
+                                      broadcastExecutor.getQueue().size(), decodedMessages.sum(),
+                                      persistedMessages.sum(), broadcastMessages.sum(), blockedSubmissions.sum());
+    }
+
+    /**
+     Stops accepting new messages and waits until every stage has drained its queue, in pipeline order.
+     */
+    @Override
+    public void close() {
+
+        synchronized (submitLock) {
+
+            decodeExecutor.shutdown();
+        }
+
+        shutdownAndAwait(decodeExecutor);
+        shutdownAndAwait(persistExecutor);
+        shutdownAndAwait(broadcastExecutor);
+    }
+
+    /**
+     Drops work the stage rejected because the pipeline is closed, any other rejection is passed on.
+
+     @param executor
+     the stage that rejected the work
+     @param work
+     what was submitted, for the log
+     @param rejection
+     the rejection of the stage
+     */
+    private void dropIfClosed(final ThreadPoolExecutor executor, final String work,
+                              final RejectedExecutionException rejection) {
+
+        if (!executor.isShutdown()) {throw rejection;}
+
+        logger.log(Level.FINE, "MessagePipeline > pipeline is closed, dropping " + work);
+    }
+
+    private void shutdownAndAwait(final ThreadPoolExecutor executor) {
+
+        executor.shutdown();
+
+        try {
+
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+
+                logger.log(Level.WARNING, "MessagePipeline > stage did not drain in time, " + executor.getQueue().size() + " tasks left");
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ThreadPoolExecutor createExecutor(final String name, final int threads, final int queueCapacity) {
+
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                      new ArrayBlockingQueue<>(queueCapacity), namedThreadFactory(name),
+                                      new BlockWhenFullPolicy());
+    }
+
+    private static ThreadFactory namedThreadFactory(final String name) {
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+
+        return runnable -> {
+
+            final Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     Blocks the submitting thread until the stage queue has room again.
+     */
+    private final class BlockWhenFullPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(final Runnable runnable, final ThreadPoolExecutor executor) {
+
+            if (executor.isShutdown()) {throw new RejectedExecutionException("pipeline is shut down");}
+
+            blockedSubmissions.increment();
+
+            try {
+
+                executor.getQueue().put(runnable);
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("interrupted while waiting for the pipeline", e);
+            }
+        }
+    }
+}
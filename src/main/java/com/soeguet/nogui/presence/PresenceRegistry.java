@@ -0,0 +1,215 @@
+package com.soeguet.nogui.presence;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.soeguet.codec.EncodedFrame;
+import com.soeguet.codec.WireTranscoder;
+import com.soeguet.model.dtos.Presence;
+import com.soeguet.util.EventTypes;
+import org.java_websocket.WebSocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ Keeps the clients that joined, with their name, address and last activity.
+
+ <p>
+ Every join, leave and rename increments the roster version and is answered as a compact
+ {@code {"eventType":"presence","version":3,"change":"join","client":{...}}} delta for the joined clients; a joining
+ client receives the whole {@code {"eventType":"roster","version":3,"clients":[...]}} once. A client applies the
+ deltas with a higher version than its roster. Every client carries a {@code connectionId} the server hands out per
+ connection; the deltas are applied by that id, since neither the address nor the name tells two connections apart.
+ Changes must be made from a single thread, the broadcast stage, so the deltas are sent in version order. Activity is
+ touched and the registry is read from any thread.
+ </p>
+ */
+public class PresenceRegistry {
+
+    // variables -- start
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<WebSocket, PresenceEntry> entriesByConnection = new ConcurrentHashMap<>();
+    private final AtomicLong connectionSequence = new AtomicLong();
+    private volatile long version;
+    // variables -- end
+
+    private static final class PresenceEntry {
+
+        private final long connectionId;
+        private final String address;
+        private volatile String clientName;
+        private volatile long lastActivity;
+
+        private PresenceEntry(final long connectionId, final String address, final String clientName) {
+
+            this.connectionId = connectionId;
+            this.address = address;
+            this.clientName = clientName;
+            this.lastActivity = System.currentTimeMillis();
+        }
+
+        private ObjectNode toNode(final ObjectMapper mapper) {
+
+            final ObjectNode client = mapper.createObjectNode();
+            client.put("connectionId", connectionId);
+            client.put("localIpAddress", address);
+            client.put("clientName", clientName);
+
+            return client;
+        }
+    }
+
+    /**
+     Registers a client that joined.
+
+     @param webSocket
+     the connection of the client
+     @param address
+     the IP address of the client
+     @param clientName
+     the name the client announced already, or null
+
+     @return the join delta
+     */
+    public EncodedFrame join(final WebSocket webSocket, final String address, final String clientName) {
+
+        final PresenceEntry entry = new PresenceEntry(connectionSequence.incrementAndGet(), address, clientName);
+        entriesByConnection.put(webSocket, entry);
+
+        return encodeDelta("join", entry, null);
+    }
+
+    /**
+     Removes a client that left.
+
+     @param webSocket
+     the connection of the client
+
+     @return the leave delta, empty if the client never joined
+     */
+    public Optional<EncodedFrame> leave(final WebSocket webSocket) {
+
+        final PresenceEntry entry = entriesByConnection.remove(webSocket);
+
+        if (entry == null) {return Optional.empty();}
+
+        return Optional.of(encodeDelta("leave", entry, null));
+    }
+
+    /**
+     Changes the name of a client.
+
+     @param webSocket
+     the connection of the client
+     @param clientName
+     the new name
+
+     @return the rename delta, empty if the client did not join or the name did not change
+     */
+    public Optional<EncodedFrame> rename(final WebSocket webSocket, final String clientName) {
+
+        final PresenceEntry entry = entriesByConnection.get(webSocket);
+
+        if (entry == null || Objects.equals(entry.clientName, clientName)) {return Optional.empty();}
+
+        final String previousName = entry.clientName;
+        entry.clientName = clientName;
+        entry.lastActivity = System.currentTimeMillis();
+
+        return Optional.of(encodeDelta("rename", entry, previousName));
+    }
+
+    /**
+     Notes that a frame was received from a client.
+
+     @param webSocket
+     the connection of the client
+     */
+    public void touch(final WebSocket webSocket) {
+
+        final PresenceEntry entry = entriesByConnection.get(webSocket);
+
+        if (entry != null) {entry.lastActivity = System.currentTimeMillis();}
+    }
+
+    /**
+     @param webSocket
+     the connection of the client
+
+     @return the name of the client, null if it did not join or announce a name yet
+     */
+    public String getClientName(final WebSocket webSocket) {
+
+        final PresenceEntry entry = entriesByConnection.get(webSocket);
+
+        return entry == null ? null : entry.clientName;
+    }
+
+    /**
+     The full roster, sent once to a joining client.
+
+     @return the roster event with the current version
+     */
+    public EncodedFrame roster() {
+
+        final ObjectNode event = mapper.createObjectNode();
+        event.put("eventType", EventTypes.ROSTER);
+        event.put("version", version);
+        final ArrayNode clients = event.putArray("clients");
+        entriesByConnection.values().stream()
+                           .sorted(Comparator.comparingLong(entry -> entry.connectionId))
+                           .forEach(entry -> clients.add(entry.toNode(mapper)));
+
+        return encode(event);
+    }
+
+    /**
+     @return every joined client, longest idle first
+     */
+    public List<Presence> getPresence() {
+
+        final List<Presence> presence = new ArrayList<>(entriesByConnection.size());
+
+        entriesByConnection.values().forEach(entry -> presence.add(new Presence(entry.connectionId, entry.clientName,
+                                                                                entry.address, entry.lastActivity)));
+        presence.sort(Comparator.comparingLong(Presence::lastActivity));
+
+        return presence;
+    }
+
+    /**
+     @return the version of the roster, incremented by every change
+     */
+    public long getVersion() {
+
+        return version;
+    }
+
+    private EncodedFrame encodeDelta(final String change, final PresenceEntry entry, final String previousName) {
+
+        final ObjectNode event = mapper.createObjectNode();
+        event.put("eventType", EventTypes.PRESENCE);
+        event.put("version", ++version);
+        event.put("change", change);
+        event.set("client", entry.toNode(mapper));
+
+        if (previousName != null) {event.put("previousName", previousName);}
+
+        return encode(event);
+    }
+
+    private static EncodedFrame encode(final ObjectNode event) {
+
+        final byte[] json = event.toString().getBytes(StandardCharsets.UTF_8);
+
+        return EncodedFrame.message(json, () -> WireTranscoder.jsonToCbor(json));
+    }
+}
@@ -0,0 +1,218 @@
+package com.soeguet.nogui.typing;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.soeguet.codec.EncodedFrame;
+import com.soeguet.codec.InboundFrame;
+import com.soeguet.util.EventTypes;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Keeps track of who is typing and turns it into one typing event per flush interval.
+
+ <p>
+ Clients send {@code {"type":"typing","sender":"..."}} while their user types and {@code {"type":"stopped"}} once
+ the user stopped or sent the message; the legacy {@code {"type":"send"}} stops as well. Sending a chat message stops
+ typing too. A user that sends nothing for the typing timeout stops on its own, so a client that vanished does not
+ type forever. Frames of a user that is typing already only refresh its timeout.
+ </p>
+
+ <p>
+ Every flush compares who is typing with what the clients were told last time and answers the difference as a single
+ {@code {"eventType":"typing","typing":[...],"stopped":[...]}} event, or nothing if nobody started or stopped. The
+ indicators are recorded from the socket threads, {@link #flush(long)} and {@link #currentTypingEvent()} must be
+ called from a single thread, the broadcast stage.
+ </p>
+ */
+public class TypingIndicatorService {
+
+    // variables -- start
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final long timeoutNanos;
+
+    //last typing frame of each typing user, in System.nanoTime()
+    private final Map<String, Long> lastTypedByUser = new ConcurrentHashMap<>();
+
+    //the users the clients were told are typing, replaced by every flush
+    private volatile Set<String> announcedUsers = Set.of();
+    // variables -- end
+
+    // constructors -- start
+    /**
+     @param timeoutMillis
+     milliseconds without a typing frame after which a user stops typing
+     */
+    public TypingIndicatorService(final long timeoutMillis) {
+
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+    // constructors -- end
+
+    /**
+     Records a typing indicator of a client.
+
+     @param frame
+     the JSON indicator
+     @param fallbackUser
+     the user if the indicator does not name its sender, e.g. the name the connection announced
+
+     @return the user the indicator was recorded for, empty if it could not be attributed to one
+     */
+    public Optional<String> record(final byte[] frame, final String fallbackUser) {
+
+        return record(readIndicator(frame), fallbackUser);
+    }
+
+    /**
+     Records a typing indicator of a CBOR client, see {@link #record(byte[], String)}.
+
+     @param frame
+     the parsed frame
+     @param fallbackUser
+     the user if the frame does not name its sender, e.g. the name the connection announced
+
+     @return the user the indicator was recorded for, empty if it could not be attributed to one
+     */
+    public Optional<String> record(final InboundFrame frame, final String fallbackUser) {
+
+        return record(readIndicator(frame), fallbackUser);
+    }
+
+    private Optional<String> record(final JsonNode indicator, final String fallbackUser) {
+
+        final String user = indicator.path("sender").asText(fallbackUser);
+
+        if (user == null || user.isEmpty()) {return Optional.empty();}
+
+        switch (indicator.path("type").asText("typing")) {
+
+            case "stopped", "send" -> lastTypedByUser.remove(user);
+            default -> lastTypedByUser.put(user, System.nanoTime());
+        }
+
+        return Optional.of(user);
+    }
+
+    /**
+     Stops the typing indicator of a user, e.g. because the user sent a message or left.
+
+     @param user
+     the user that stopped typing, may be null
+     */
+    public void stopped(final String user) {
+
+        if (user != null) {lastTypedByUser.remove(user);}
+    }
+
+    /**
+     Tells whether a flush could have anything to send, so an idle server does not schedule one.
+
+     @return true if a user is typing or the clients still believe one is
+     */
+    public boolean isActive() {
+
+        return !lastTypedByUser.isEmpty() || !announcedUsers.isEmpty();
+    }
+
+    /**
+     Expires users whose timeout passed and returns who started and who stopped typing since the last flush.
+
+     @param now
+     the current {@link System#nanoTime()}
+
+     @return the typing event, empty if nothing changed
+     */
+    public Optional<EncodedFrame> flush(final long now) {
+
+        //remove only if untouched since reading, a fresh typing frame keeps the user typing
+        lastTypedByUser.forEach((user, lastTyped) -> {
+
+            if (now - lastTyped > timeoutNanos) {lastTypedByUser.remove(user, lastTyped);}
+        });
+
+        final Set<String> typingUsers = Set.copyOf(lastTypedByUser.keySet());
+        final Set<String> previouslyAnnounced = announcedUsers;
+
+        final Set<String> started = new TreeSet<>(typingUsers);
+        started.removeAll(previouslyAnnounced);
+
+        final Set<String> stopped = new TreeSet<>(previouslyAnnounced);
+        stopped.removeAll(typingUsers);
+
+        announcedUsers = typingUsers;
+
+        if (started.isEmpty() && stopped.isEmpty()) {return Optional.empty();}
+
+        return Optional.of(encodeTypingEvent(started, stopped));
+    }
+
+    /**
+     The users typing right now, for clients that join in the middle of it.
+
+     @return the typing event of every announced user, empty if nobody is typing
+     */
+    public Optional<EncodedFrame> currentTypingEvent() {
+
+        final Set<String> typingUsers = announcedUsers;
+
+        if (typingUsers.isEmpty()) {return Optional.empty();}
+
+        return Optional.of(encodeTypingEvent(new TreeSet<>(typingUsers), Set.of()));
+    }
+
+    /**
+     @return the number of users typing right now
+     */
+    public int getTypingUsers() {
+
+        return lastTypedByUser.size();
+    }
+
+    private JsonNode readIndicator(final byte[] frame) {
+
+        try {
+
+            final JsonNode indicator = mapper.readTree(frame);
+
+            return indicator == null ? mapper.createObjectNode() : indicator;
+
+        } catch (IOException e) {
+
+            //indicators that are no JSON still tell that their connection is typing
+            return mapper.createObjectNode();
+        }
+    }
+
+    private JsonNode readIndicator(final InboundFrame frame) {
+
+        try (JsonParser parser = frame.asParser()) {
+
+            return mapper.readTree(parser);
+
+        } catch (IOException e) {
+
+            return mapper.createObjectNode();
+        }
+    }
+
+    private EncodedFrame encodeTypingEvent(final Collection<String> started, final Collection<String> stopped) {
+
+        final ObjectNode event = mapper.createObjectNode();
+        event.put("eventType", EventTypes.TYPING);
+        started.forEach(event.putArray("typing")::add);
+        stopped.forEach(event.putArray("stopped")::add);
+
+        return EncodedFrame.typing(event.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
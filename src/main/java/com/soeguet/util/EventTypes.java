@@ -0,0 +1,11 @@
+package com.soeguet.util;
+
+/**
+ Values of the "eventType" field of compact events the server broadcasts instead of a whole message.
+ */
+public interface EventTypes {
+    String REACTION = "reaction";
+    String TYPING = "typing";
+    String PRESENCE = "presence";
+    String ROSTER = "roster";
+}
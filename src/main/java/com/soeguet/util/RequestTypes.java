@@ -0,0 +1,11 @@
+package com.soeguet.util;
+
+/**
+ Values of the "requestType" field of client requests. A response carries the same value in its "responseType" field.
+ */
+public interface RequestTypes {
+    String IMAGE = "image";
+    String HISTORY = "history";
+    String SEARCH = "search";
+    String ERROR = "error";
+}
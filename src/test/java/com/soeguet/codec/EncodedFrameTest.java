@@ -0,0 +1,67 @@
+package com.soeguet.codec;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncodedFrameTest {
+
+    private static byte[] toBytes(final ByteBuffer buffer) {
+
+        ByteBuffer view = buffer.duplicate();
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    @DisplayName("Test if the CBOR encoding is created once and converts back to the same JSON")
+    void testCborIsEncodedOnce() {
+
+        //setup
+        byte[] json = "{\"subclass\":\"MessageModel\",\"id\":7,\"message\":\"hello\"}".getBytes(StandardCharsets.UTF_8);
+        AtomicInteger encodings = new AtomicInteger();
+        EncodedFrame frame = EncodedFrame.message(json, () -> {
+
+            encodings.incrementAndGet();
+            return WireTranscoder.jsonToCbor(json);
+        });
+
+        //method call
+        byte[] first = toBytes(frame.payload(WireFormat.CBOR));
+        byte[] second = toBytes(frame.payload(WireFormat.CBOR));
+        byte[] roundTrip = WireTranscoder.cborToJson(first, 0, first.length);
+
+        //assertions
+        assertEquals(1, encodings.get());
+        assertArrayEquals(first, second);
+        assertArrayEquals(json, roundTrip);
+        assertArrayEquals(json, toBytes(frame.payload(WireFormat.JSON)));
+        assertTrue(frame.isBinary(WireFormat.CBOR));
+        assertFalse(frame.isBinary(WireFormat.JSON));
+    }
+
+    @Test
+    @DisplayName("Test if markers stay text frames and typing indicators that are no JSON are relayed as they are")
+    void testMarkersAndTyping() {
+
+        //setup
+        EncodedFrame marker = EncodedFrame.marker("__startup__end__".getBytes(StandardCharsets.UTF_8));
+        EncodedFrame typing = EncodedFrame.typing("not json".getBytes(StandardCharsets.UTF_8));
+
+        //method call
+        byte[] markerPayload = toBytes(marker.payload(WireFormat.CBOR));
+        byte[] typingPayload = toBytes(typing.payload(WireFormat.CBOR));
+
+        //assertions
+        assertFalse(marker.isBinary(WireFormat.CBOR));
+        assertEquals("__startup__end__", new String(markerPayload, StandardCharsets.UTF_8));
+        assertTrue(typing.isBinary(WireFormat.JSON));
+        assertEquals("not json", new String(typingPayload, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,51 @@
+package com.soeguet.codec;
+
+import com.soeguet.model.jackson.BaseModel;
+import com.soeguet.model.jackson.PictureModel;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageCodecTest {
+
+    private static byte[] toBytes(final ByteBuffer buffer) {
+
+        ByteBuffer view = buffer.duplicate();
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    @DisplayName("Test if a picture message is decoded once and written for storage and both wire formats")
+    void testPictureMessageForms() throws IOException {
+
+        //setup
+        MessageCodec messageCodec = new MessageCodec();
+        byte[] picture = {1, 2, 3, 4, 5};
+        String message = "{\"subclass\":\"image\",\"sender\":\"alice\",\"time\":\"12:00\",\"picture\":\""
+                         + Base64.getEncoder().encodeToString(picture) + "\"}";
+
+        //method call
+        BaseModel model = messageCodec.decode(message);
+        String storedMessage = messageCodec.encodeForStorage(model);
+        EncodedFrame frame = messageCodec.encodeFrame(model, true);
+        byte[] cbor = toBytes(frame.payload(WireFormat.CBOR));
+        BaseModel fromCbor = messageCodec.decode(InboundFrame.readCbor(cbor));
+
+        //assertions
+        PictureModel pictureModel = assertInstanceOf(PictureModel.class, model);
+        assertArrayEquals(picture, pictureModel.getPicture());
+        assertFalse(storedMessage.contains("picture"));
+        assertNull(((PictureModel) messageCodec.decode(storedMessage)).getPicture());
+        assertTrue(new String(toBytes(frame.payload(WireFormat.JSON)), StandardCharsets.UTF_8).contains("\"picture\""));
+        assertArrayEquals(picture, ((PictureModel) fromCbor).getPicture());
+        assertEquals("alice", fromCbor.getSender());
+    }
+}
@@ -0,0 +1,94 @@
+package com.soeguet.controller;
+
+import com.soeguet.codec.EncodedFrame;
+import com.soeguet.codec.WireFormat;
+import com.soeguet.model.dtos.HistorySnapshot;
+import com.soeguet.model.jackson.BaseModel;
+import com.soeguet.model.jackson.MessageModel;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageHistoryTest {
+
+    private static MessageModel message(long id, String text) {
+
+        MessageModel messageModel = new MessageModel();
+        messageModel.setId(id);
+        messageModel.setMessage(text);
+        return messageModel;
+    }
+
+    private static EncodedFrame frame(String text) {
+
+        byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+        return EncodedFrame.message(encoded, () -> encoded);
+    }
+
+    @Test
+    @DisplayName("Test if the oldest message is evicted once the history is full")
+    void testOldestMessageIsEvicted() {
+
+        //setup
+        MessageHistory history = new MessageHistory(3);
+
+        //method call
+        for (long id = 1; id <= 5; id++) {
+            history.append(message(id, "message " + id), frame("message " + id));
+        }
+
+        //assertions
+        List<BaseModel> snapshot = history.models();
+        assertEquals(3, snapshot.size());
+        assertEquals(List.of(3L, 4L, 5L), snapshot.stream().map(BaseModel::getId).toList());
+        assertTrue(history.get(2L).isEmpty());
+        assertTrue(history.get(5L).isPresent());
+    }
+
+    @Test
+    @DisplayName("Test if a message is replaced in place")
+    void testMessageIsReplacedInPlace() {
+
+        //setup
+        MessageHistory history = new MessageHistory(3);
+        history.append(message(1, "first"), frame("first"));
+        history.append(message(2, "second"), frame("second"));
+
+        //method call
+        boolean replaced = history.replace(message(1, "edited"), frame("edited"));
+        boolean evicted = history.replace(message(42, "unknown"), frame("unknown"));
+
+        //assertions
+        assertTrue(replaced);
+        assertFalse(evicted);
+        assertEquals("edited", ((MessageModel) history.models().get(0)).getMessage());
+        assertEquals(2, history.size());
+    }
+
+    @Test
+    @DisplayName("Test if the snapshot is shared until a message changes")
+    void testSnapshotIsSharedUntilChange() {
+
+        //setup
+        MessageHistory history = new MessageHistory(3, List.of(EncodedFrame.marker("__startup__end__".getBytes(StandardCharsets.UTF_8))));
+        history.append(message(1, "first"), frame("first"));
+
+        //method call
+        HistorySnapshot first = history.snapshot();
+        HistorySnapshot second = history.snapshot();
+        history.replace(message(1, "edited"), frame("edited"));
+        HistorySnapshot third = history.snapshot();
+
+        //assertions
+        assertSame(first, second);
+        assertNotSame(first, third);
+        assertTrue(third.version() > first.version());
+        assertEquals(2, third.frames().size());
+        assertEquals("edited", StandardCharsets.UTF_8.decode(third.frames().get(0).payload(WireFormat.JSON).duplicate()).toString());
+        assertEquals("__startup__end__", StandardCharsets.UTF_8.decode(third.frames().get(1).payload(WireFormat.JSON).duplicate()).toString());
+    }
+}
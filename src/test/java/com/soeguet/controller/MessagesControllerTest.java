@@ -0,0 +1,225 @@
+package com.soeguet.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.soeguet.codec.WireFormat;
+import com.soeguet.database.interfaces.DatabaseConnectionController;
+import com.soeguet.model.dtos.BroadcastMessage;
+import com.soeguet.model.dtos.ClientResponse;
+import com.soeguet.model.dtos.DatabaseResult;
+import com.soeguet.model.dtos.HistorySnapshot;
+import com.soeguet.model.dtos.SearchResult;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessagesControllerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Test if decoding a message and serving the history are recorded as flight recorder events")
+    void testFlightRecorderEvents() throws IOException {
+
+        //setup
+        DatabaseConnectionController databaseConnection = Mockito.mock(DatabaseConnectionController.class);
+        Mockito.when(databaseConnection.getAllFromDatabase())
+               .thenReturn(new ArrayDeque<>(List.of(new DatabaseResult(1L, "{\"subclass\":\"text\",\"sender\":\"user\",\"message\":\"hi\"}", null))));
+        MessagesController messagesController = new MessagesController(databaseConnection);
+        Path recordingFile = directory.resolve("events.jfr");
+
+        //method call
+        try (Recording recording = new Recording()) {
+
+            recording.enable("com.soeguet.MessageDecode");
+            recording.enable("com.soeguet.History");
+            recording.start();
+
+            messagesController.decodeMessageFromClient("{\"subclass\":\"link\",\"sender\":\"user\",\"link\":\"https://example.com\"}");
+            messagesController.retrieveLast100Messages();
+
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+
+        //assertions
+        RecordedEvent decodeEvent = events.stream().filter(event -> event.getEventType().getName().equals("com.soeguet.MessageDecode"))
+                                          .findFirst().orElseThrow();
+        RecordedEvent historyEvent = events.stream().filter(event -> event.getEventType().getName().equals("com.soeguet.History"))
+                                           .findFirst().orElseThrow();
+        assertEquals("link", decodeEvent.getString("subclass"));
+        assertTrue(decodeEvent.getLong("messageSize") > 0);
+        assertTrue(historyEvent.getInt("frames") > 0);
+    }
+
+    @Test
+    @DisplayName("Test if the lazy history only describes pictures and the picture is sent on request")
+    void testLazyHistoryImages() throws IOException {
+
+        //setup
+        byte[] picture = createPicture(3, 2);
+        DatabaseConnectionController databaseConnection = Mockito.mock(DatabaseConnectionController.class);
+        Mockito.when(databaseConnection.getAllFromDatabase())
+               .thenReturn(new ArrayDeque<>(List.of(new DatabaseResult(1L, "{\"subclass\":\"image\",\"sender\":\"user\"}", picture))));
+
+        //method call
+        MessagesController messagesController = new MessagesController(databaseConnection, null, true);
+        HistorySnapshot historySnapshot = messagesController.retrieveLast100Messages();
+        ClientResponse clientResponse = messagesController.handleClientRequest("{\"requestType\":\"image\",\"imageId\":\"1\"}");
+
+        //assertions
+        JsonNode pictureMessage = mapper.readTree(toBytes(historySnapshot.frames().get(0).payload(WireFormat.JSON)));
+        assertTrue(pictureMessage.path("picture").isMissingNode());
+        assertEquals("1", pictureMessage.path("imageId").asText());
+        assertEquals(picture.length, pictureMessage.path("imageSize").asInt());
+        assertEquals(3, pictureMessage.path("imageWidth").asInt());
+        assertEquals(2, pictureMessage.path("imageHeight").asInt());
+
+        assertTrue(mapper.readTree(clientResponse.header()).path("found").asBoolean());
+        assertArrayEquals(picture, toBytes(clientResponse.payload()));
+    }
+
+    @Test
+    @DisplayName("Test if unknown images and unknown requests are answered without payload")
+    void testUnknownRequests() throws IOException {
+
+        //setup
+        DatabaseConnectionController databaseConnection = Mockito.mock(DatabaseConnectionController.class);
+        Mockito.when(databaseConnection.getAllFromDatabase()).thenReturn(new ArrayDeque<>());
+        MessagesController messagesController = new MessagesController(databaseConnection, null, true);
+
+        //method call
+        ClientResponse unknownImage = messagesController.handleClientRequest("{\"requestType\":\"image\",\"imageId\":\"42\"}");
+        ClientResponse unknownRequest = messagesController.handleClientRequest("{\"requestType\":\"nothing\"}");
+
+        //assertions
+        assertFalse(mapper.readTree(unknownImage.header()).path("found").asBoolean());
+        assertNull(unknownImage.payload());
+        assertEquals("error", mapper.readTree(unknownRequest.header()).path("responseType").asText());
+        assertTrue(messagesController.isClientRequest("{\"requestType\":\"image\"}"));
+        assertFalse(messagesController.isClientRequest("{\"subclass\":\"text\",\"message\":\"\\\"requestType\\\"\"}"));
+    }
+
+    @Test
+    @DisplayName("Test if a reaction is saved on its own and broadcast as compact event")
+    void testPersistReaction() throws IOException {
+
+        //setup
+        DatabaseConnectionController databaseConnection = Mockito.mock(DatabaseConnectionController.class);
+        Mockito.when(databaseConnection.getAllFromDatabase())
+               .thenReturn(new ArrayDeque<>(List.of(new DatabaseResult(1L, "{\"subclass\":\"text\",\"sender\":\"user\",\"message\":\"hi\"}", null))));
+        Mockito.when(databaseConnection.saveReactionToDatabase(1L, "alice", "thumbs_up")).thenReturn(true);
+        MessagesController messagesController = new MessagesController(databaseConnection);
+        byte[] reaction = "{\"messageId\":1,\"reactionName\":\"thumbs_up\",\"clientName\":\"alice\"}".getBytes();
+
+        //method call
+        BroadcastMessage broadcastMessage = messagesController.persistReaction(messagesController.decodeReaction(reaction));
+        HistorySnapshot historySnapshot = messagesController.retrieveLast100Messages();
+
+        //assertions
+        assertTrue(messagesController.checkByteArrayForReaction(reaction));
+        Mockito.verify(databaseConnection, Mockito.never()).replaceInDatabase(Mockito.anyLong(), Mockito.anyString());
+        JsonNode event = mapper.readTree(broadcastMessage.message());
+        assertEquals("reaction", event.path("eventType").asText());
+        assertEquals(1, event.path("messageId").asLong());
+        assertTrue(event.path("message").isMissingNode());
+        assertEquals(historySnapshot.version(), broadcastMessage.historyVersion());
+        JsonNode historyEntry = mapper.readTree(toBytes(historySnapshot.frames().get(0).payload(WireFormat.JSON)));
+        assertEquals("thumbs_up", historyEntry.path("userInteractions").path(0).path("emoji").asText());
+    }
+
+    @Test
+    @DisplayName("Test if a history page is read by id and pictures are only described unless requested")
+    void testHistoryPage() throws IOException {
+
+        //setup
+        DatabaseConnectionController databaseConnection = Mockito.mock(DatabaseConnectionController.class);
+        Mockito.when(databaseConnection.getAllFromDatabase()).thenReturn(new ArrayDeque<>());
+        Mockito.when(databaseConnection.getPageFromDatabase(10L, 3, false))
+               .thenReturn(List.of(new DatabaseResult(5L, "{\"subclass\":\"text\",\"sender\":\"user\",\"message\":\"oldest\"}", null),
+                                   new DatabaseResult(6L, "{\"subclass\":\"image\",\"sender\":\"user\"}", null),
+                                   new DatabaseResult(8L, "{\"subclass\":\"text\",\"sender\":\"user\",\"message\":\"newest\"}", null)));
+        Mockito.when(databaseConnection.getReactionsFromDatabase(6L, 8L)).thenReturn(Map.of());
+        MessagesController messagesController = new MessagesController(databaseConnection);
+
+        //method call
+        ClientResponse page = messagesController.handleClientRequest("{\"requestType\":\"history\",\"beforeId\":10,\"limit\":2}");
+
+        //assertions
+        JsonNode header = mapper.readTree(page.header());
+        assertEquals("history", header.path("responseType").asText());
+        assertEquals(2, header.path("count").asInt());
+        assertTrue(header.path("hasMore").asBoolean());
+        assertEquals(6, header.path("oldestId").asLong());
+        assertNull(page.payload());
+        JsonNode picture = mapper.readTree(toBytes(page.frames().get(0).payload(WireFormat.JSON)));
+        assertEquals("6", picture.path("imageId").asText());
+        assertTrue(picture.path("picture").isMissingNode());
+        assertEquals("newest", mapper.readTree(toBytes(page.frames().get(1).payload(WireFormat.JSON))).path("message").asText());
+    }
+
+    @Test
+    @DisplayName("Test if search results are paged and blank queries are rejected")
+    void testSearchRequest() throws IOException {
+
+        //setup
+        DatabaseConnectionController databaseConnection = Mockito.mock(DatabaseConnectionController.class);
+        Mockito.when(databaseConnection.getAllFromDatabase()).thenReturn(new ArrayDeque<>());
+        Mockito.when(databaseConnection.searchInDatabase("deploy", 2, 0))
+               .thenReturn(List.of(new SearchResult(9L, 0.5, "**deploy** on Friday"), new SearchResult(4L, 0.1, "no **deploy**")));
+        MessagesController messagesController = new MessagesController(databaseConnection);
+
+        //method call
+        JsonNode header = mapper.readTree(messagesController.handleClientRequest("{\"requestType\":\"search\",\"query\":\" deploy \",\"limit\":1}").header());
+        JsonNode blank = mapper.readTree(messagesController.handleClientRequest("{\"requestType\":\"search\",\"query\":\" \"}").header());
+
+        //assertions
+        assertEquals("search", header.path("responseType").asText());
+        assertTrue(header.path("hasMore").asBoolean());
+        assertEquals(1, header.path("results").size());
+        assertEquals(9, header.path("results").path(0).path("messageId").asLong());
+        assertEquals("**deploy** on Friday", header.path("results").path(0).path("snippet").asText());
+        assertEquals("error", blank.path("responseType").asText());
+    }
+
+    private static byte[] createPicture(final int width, final int height) throws IOException {
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", outputStream);
+
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] toBytes(final ByteBuffer buffer) {
+
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+
+        return bytes;
+    }
+}
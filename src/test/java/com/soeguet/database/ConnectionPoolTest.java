@@ -0,0 +1,81 @@
+package com.soeguet.database;
+
+import com.soeguet.model.dtos.PoolStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+
+    private ConnectionPool connectionPool;
+
+    @BeforeEach
+    void setUp() {
+
+        connectionPool = new ConnectionPool(() -> DriverManager.getConnection("jdbc:h2:mem:pooltest", "sa", ""), 2, 100, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+
+        connectionPool.close();
+    }
+
+    @Test
+    @DisplayName("Test if a returned connection is reused instead of opening a new one")
+    void testConnectionIsReused() throws SQLException {
+
+        //method call
+        try (Connection connection = connectionPool.acquire(); Statement statement = connection.createStatement()) {
+            statement.execute("SELECT 1");
+        }
+        try (Connection connection = connectionPool.acquire(); Statement statement = connection.createStatement()) {
+            statement.execute("SELECT 1");
+        }
+
+        //assertions
+        PoolStatistics statistics = connectionPool.getStatistics();
+        assertEquals(2, statistics.totalAcquired());
+        assertEquals(1, statistics.totalCreated());
+        assertEquals(0, statistics.activeConnections());
+        assertEquals(1, statistics.idleConnections());
+    }
+
+    @Test
+    @DisplayName("Test if acquiring times out when the pool is exhausted")
+    void testAcquireTimesOutWhenExhausted() throws SQLException {
+
+        //setup
+        Connection first = connectionPool.acquire();
+        Connection second = connectionPool.acquire();
+
+        //assertions
+        assertThrows(SQLTimeoutException.class, () -> connectionPool.acquire());
+        assertEquals(1, connectionPool.getStatistics().acquireTimeouts());
+
+        first.close();
+        second.close();
+    }
+
+    @Test
+    @DisplayName("Test if a returned connection can not be used any longer")
+    void testReturnedConnectionIsUnusable() throws SQLException {
+
+        //setup
+        Connection connection = connectionPool.acquire();
+        connection.close();
+
+        //assertions
+        assertTrue(connection.isClosed());
+        assertThrows(SQLException.class, connection::createStatement);
+    }
+}
@@ -1,5 +1,8 @@
 package com.soeguet.database;
 
+import com.soeguet.model.UserInteraction;
+import com.soeguet.model.dtos.DatabaseResult;
+import com.soeguet.model.dtos.SearchResult;
 import jdk.jfr.Name;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -8,9 +11,14 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import java.sql.*;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class DatabaseIntegrationTest {
 
@@ -53,6 +61,142 @@ public class DatabaseIntegrationTest {
         }
     }
 
+    @Test
+    @DisplayName("Test if the insert returns the persisted row")
+    public void testSaveToDatabaseAndReturnEntry() throws SQLException {
+
+        //properties setup
+        Properties properties = new Properties();
+        properties.setProperty("user", "sa");
+        properties.setProperty("password", "");
+
+        //mock setup
+        DatabaseConnection databaseConnection = Mockito.spy(DatabaseConnection.class);
+        Mockito.when(databaseConnection.getDbPath()).thenReturn("jdbc:h2:mem:testdb");
+        Mockito.when(databaseConnection.getProperties()).thenReturn(properties);
+        databaseConnection.initDatabase();
+
+        //method call
+        DatabaseResult first = databaseConnection.saveToDatabaseAndReturnEntry("{\"message\":\"first\"}");
+        DatabaseResult second = databaseConnection.saveToDatabaseAndReturnEntry("{\"sender\":\"carol\",\"message\":\"second\"}");
+
+        //assertions
+        assertTrue(second.id() > first.id());
+        assertEquals("{\"sender\":\"carol\",\"message\":\"second\"}", second.message());
+        assertNull(second.image());
+
+        try (PreparedStatement statement = connection.prepareStatement("SELECT sender, payload IS NOT NULL FROM messages WHERE id = ?;")) {
+
+            statement.setLong(1, second.id());
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+
+                assertTrue(resultSet.next());
+                assertEquals("carol", resultSet.getString(1));
+                assertTrue(resultSet.getBoolean(2));
+            }
+        }
+
+        databaseConnection.close();
+    }
+
+    @Test
+    @DisplayName("Test if reactions are appended without rewriting the message")
+    public void testSaveReactionToDatabase() {
+
+        //properties setup
+        Properties properties = new Properties();
+        properties.setProperty("user", "sa");
+        properties.setProperty("password", "");
+
+        //mock setup
+        DatabaseConnection databaseConnection = Mockito.spy(DatabaseConnection.class);
+        Mockito.when(databaseConnection.getDbPath()).thenReturn("jdbc:h2:mem:testdb");
+        Mockito.when(databaseConnection.getProperties()).thenReturn(properties);
+        databaseConnection.initDatabase();
+        DatabaseResult message = databaseConnection.saveToDatabaseAndReturnEntry("{\"message\":\"react to me\"}");
+
+        //method call
+        boolean first = databaseConnection.saveReactionToDatabase(message.id(), "alice", "thumbs_up");
+        boolean second = databaseConnection.saveReactionToDatabase(message.id(), "bob", "heart");
+        boolean missing = databaseConnection.saveReactionToDatabase(message.id() + 1000, "bob", "heart");
+        Map<Long, List<UserInteraction>> reactions = databaseConnection.getReactionsFromDatabase(message.id(), message.id());
+
+        //assertions
+        assertTrue(first);
+        assertTrue(second);
+        assertFalse(missing);
+        assertEquals(List.of(new UserInteraction("alice", "thumbs_up"), new UserInteraction("bob", "heart")), reactions.get(message.id()));
+        assertEquals("{\"message\":\"react to me\"}", databaseConnection.getMessageFromDatabase(message.id()));
+        assertNull(databaseConnection.getMessageFromDatabase(message.id() + 1000));
+
+        databaseConnection.close();
+    }
+
+    @Test
+    @DisplayName("Test if a page holds the messages before the given id, oldest first")
+    public void testGetPageFromDatabase() {
+
+        //properties setup
+        Properties properties = new Properties();
+        properties.setProperty("user", "sa");
+        properties.setProperty("password", "");
+
+        //mock setup
+        DatabaseConnection databaseConnection = Mockito.spy(DatabaseConnection.class);
+        Mockito.when(databaseConnection.getDbPath()).thenReturn("jdbc:h2:mem:testdb");
+        Mockito.when(databaseConnection.getProperties()).thenReturn(properties);
+        databaseConnection.initDatabase();
+        DatabaseResult first = databaseConnection.saveToDatabaseAndReturnEntry("{\"message\":\"page 1\"}");
+        DatabaseResult second = databaseConnection.saveToDatabaseAndReturnEntry("{\"message\":\"page 2\"}");
+        DatabaseResult third = databaseConnection.saveToDatabaseAndReturnEntry("{\"message\":\"page 3\"}");
+
+        //method call
+        List<DatabaseResult> page = databaseConnection.getPageFromDatabase(third.id(), 2, false);
+        List<DatabaseResult> pageWithImages = databaseConnection.getPageFromDatabase(third.id(), 2, true);
+
+        //assertions
+        assertEquals(List.of(first.id(), second.id()), page.stream().map(DatabaseResult::id).toList());
+        assertEquals("{\"message\":\"page 2\"}", page.get(1).message());
+        assertEquals(List.of(first.id(), second.id()), pageWithImages.stream().map(DatabaseResult::id).toList());
+        assertNull(pageWithImages.get(0).image());
+
+        databaseConnection.close();
+    }
+
+    @Test
+    @DisplayName("Test if a search finds the messages whose text contains the query, newest first")
+    public void testSearchInDatabase() {
+
+        //properties setup
+        Properties properties = new Properties();
+        properties.setProperty("user", "sa");
+        properties.setProperty("password", "");
+
+        //mock setup
+        DatabaseConnection databaseConnection = Mockito.spy(DatabaseConnection.class);
+        Mockito.when(databaseConnection.getDbPath()).thenReturn("jdbc:h2:mem:testdb");
+        Mockito.when(databaseConnection.getProperties()).thenReturn(properties);
+        databaseConnection.initDatabase();
+        DatabaseResult older = databaseConnection.saveToDatabaseAndReturnEntry("{\"message\":\"Deploy on Friday\"}");
+        DatabaseResult newer = databaseConnection.saveToDatabaseAndReturnEntry("{\"message\":\"no deploy today\"}");
+        databaseConnection.saveToDatabaseAndReturnEntry("{\"message\":\"100% done\"}");
+        databaseConnection.saveToDatabaseAndReturnEntry("{\"sender\":\"deploybot\",\"message\":\"all green\"}");
+
+        //method call
+        List<SearchResult> results = databaseConnection.searchInDatabase("deploy", 10, 0);
+        List<SearchResult> secondPage = databaseConnection.searchInDatabase("deploy", 1, 1);
+        List<SearchResult> wildcard = databaseConnection.searchInDatabase("0%", 10, 0);
+
+        //assertions
+        assertEquals(List.of(newer.id(), older.id()), results.stream().map(SearchResult::messageId).toList());
+        assertEquals("no **deploy** today", results.get(0).snippet());
+        assertEquals(List.of(older.id()), secondPage.stream().map(SearchResult::messageId).toList());
+        assertEquals(1, wildcard.size());
+
+        databaseConnection.close();
+    }
+
     @AfterAll
     public static void tearDown() throws SQLException {
         connection.close();
@@ -0,0 +1,39 @@
+package com.soeguet.database;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchSnippetsTest {
+
+    @Test
+    @DisplayName("Test if only the text fields of a message are searched and long texts are cut around the match")
+    void testSearchTextAndSnippet() {
+
+        //setup
+        String words = "lorem ipsum dolor sit amet consectetur adipiscing elit ";
+        String json = "{\"sender\":\"deploybot\",\"quotedMessage\":{\"message\":\"deploy\"},\"message\":\""
+                      + words.repeat(3) + "we deploy on Friday " + words.repeat(3) + "\",\"comment\":\"see link\"}";
+
+        //method call
+        String searchText = MessageColumnReader.readSearchText(json);
+        String snippet = SearchSnippets.cut(searchText, "DEPLOY");
+
+        //assertions
+        assertTrue(searchText.endsWith(" see link"));
+        assertFalse(searchText.contains("deploybot"));
+        assertTrue(SearchSnippets.contains(searchText, "Friday"));
+        assertFalse(SearchSnippets.contains(searchText, "quotedMessage"));
+        assertNull(MessageColumnReader.readSearchText("{\"sender\":\"alice\"}"));
+
+        assertTrue(snippet.startsWith("…"));
+        assertTrue(snippet.endsWith("…"));
+        assertTrue(snippet.contains(" we **deploy** on Friday "));
+        assertTrue(snippet.length() < 160);
+        assertEquals("all **green**", SearchSnippets.cut("all green", "green"));
+    }
+}
@@ -0,0 +1,109 @@
+package com.soeguet.database;
+
+import com.soeguet.model.dtos.DatabaseResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindDatabaseConnectionTest {
+
+    @Test
+    @DisplayName("Test if queued messages are saved in batches and visible after a flush")
+    void testQueuedMessagesAreSavedInBatches() {
+
+        //properties setup
+        Properties properties = new Properties();
+        properties.setProperty("user", "sa");
+        properties.setProperty("password", "");
+
+        //mock setup
+        DatabaseConnection databaseConnection = Mockito.spy(DatabaseConnection.class);
+        Mockito.when(databaseConnection.getDbPath()).thenReturn("jdbc:h2:mem:writebehind;DB_CLOSE_DELAY=-1");
+        Mockito.when(databaseConnection.getProperties()).thenReturn(properties);
+
+        WriteBehindDatabaseConnection writeBehind = new WriteBehindDatabaseConnection(databaseConnection, 50, 20);
+        writeBehind.initDatabase();
+
+        //method call
+        for (int i = 0; i < 50; i++) {
+            writeBehind.saveToDatabase("{\"message\":\"" + i + "\"}");
+        }
+        long pictureId = writeBehind.saveMessageWithoutPictureToDatabase("{\"description\":\"picture\"}");
+        writeBehind.saveExtractedImageToDatabaseInImageTable(pictureId, new byte[]{1, 2, 3});
+
+        DatabaseResult lastMessage = writeBehind.getLastFromDatabase();
+        Deque<DatabaseResult> allMessages = writeBehind.getAllFromDatabase();
+
+        //assertions
+        assertEquals(51, pictureId);
+        assertEquals(51, lastMessage.id());
+        assertArrayEquals(new byte[]{1, 2, 3}, lastMessage.image());
+        assertEquals(51, allMessages.size());
+        assertArrayEquals(new byte[]{1, 2, 3}, allMessages.getLast().image());
+        assertEquals(0, writeBehind.getPendingWrites());
+        assertTrue(writeBehind.getFlushedBatches() < 51);
+
+        writeBehind.close();
+    }
+
+    @Test
+    @DisplayName("Test if a write that always fails is given up without holding up the writes behind it")
+    void testPermanentlyFailingWriteIsGivenUp(@TempDir Path directory) throws IOException {
+
+        //properties setup
+        Properties properties = new Properties();
+        properties.setProperty("user", "sa");
+        properties.setProperty("password", "");
+
+        //mock setup, every batch containing the poisoned message fails
+        DatabaseConnection databaseConnection = Mockito.spy(DatabaseConnection.class);
+        Mockito.when(databaseConnection.getDbPath()).thenReturn("jdbc:h2:mem:writebehindpoison;DB_CLOSE_DELAY=-1");
+        Mockito.when(databaseConnection.getProperties()).thenReturn(properties);
+        Mockito.doAnswer(invocation -> {
+
+            List<DatabaseResult> batch = invocation.getArgument(0);
+
+            if (batch.stream().anyMatch(row -> row.message() != null && row.message().contains("poison"))) {
+
+                throw new RuntimeException("constraint violated");
+            }
+
+            return invocation.callRealMethod();
+
+        }).when(databaseConnection).saveBatchToDatabase(Mockito.anyList());
+
+        Path deadLetterPath = directory.resolve("dead-letter.jsonl");
+        WriteBehindDatabaseConnection writeBehind = new WriteBehindDatabaseConnection(databaseConnection, 10, 20, 2, deadLetterPath);
+        writeBehind.initDatabase();
+
+        //method call
+        for (int i = 1; i <= 10; i++) {
+            writeBehind.saveToDatabase(i == 5 ? "{\"message\":\"poison\"}" : "{\"message\":\"" + i + "\"}");
+        }
+
+        RuntimeException waitingReadFailure = assertThrows(RuntimeException.class, writeBehind::getAllFromDatabase);
+        writeBehind.saveToDatabase("{\"message\":\"11\"}");
+        Deque<DatabaseResult> allMessages = writeBehind.getAllFromDatabase();
+
+        //assertions
+        assertTrue(waitingReadFailure.getMessage().contains("given up"));
+        assertEquals(10, allMessages.size());
+        assertTrue(allMessages.stream().noneMatch(row -> row.id() == 5));
+        assertEquals(11, allMessages.getLast().id());
+        assertEquals(1, writeBehind.getDeadLetteredWrites());
+        assertEquals(0, writeBehind.getPendingWrites());
+        assertTrue(Files.readString(deadLetterPath).contains("poison"));
+
+        writeBehind.close();
+    }
+}
@@ -0,0 +1,179 @@
+package com.soeguet.database.log;
+
+import com.soeguet.model.UserInteraction;
+import com.soeguet.model.dtos.DatabaseResult;
+import com.soeguet.model.dtos.SearchResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedLogDatabaseConnectionTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Test if messages, edits, pictures and reactions survive a restart across several segments")
+    void testReopen() {
+
+        //setup
+        SegmentedLogDatabaseConnection databaseConnection = new SegmentedLogDatabaseConnection(directory, 1024, 60_000, 60_000);
+        databaseConnection.initDatabase();
+
+        for (int i = 1; i <= 50; i++) {
+
+            databaseConnection.saveToDatabase("{\"message\":\"message " + i + "\"}");
+        }
+
+        long pictureId = databaseConnection.saveMessageWithImageHashToDatabase("{\"description\":\"cat\"}", "hash", null);
+        databaseConnection.saveExtractedImageToDatabaseInImageTable(pictureId, new byte[2048], new byte[]{1, 2});
+        databaseConnection.replaceInDatabase(3L, "{\"message\":\"edited\"}");
+        assertTrue(databaseConnection.saveReactionToDatabase(3, "alice", "thumbsup"));
+        assertFalse(databaseConnection.saveReactionToDatabase(99, "alice", "thumbsup"));
+
+        //method call
+        databaseConnection.close();
+        SegmentedLogDatabaseConnection reopened = new SegmentedLogDatabaseConnection(directory, 1024, 60_000, 60_000);
+        reopened.initDatabase();
+
+        List<DatabaseResult> page = reopened.getPageFromDatabase(4, 10, false);
+
+        //assertions
+        assertEquals(51, reopened.getLastFromDatabase().id());
+        assertEquals(2048, reopened.getImageFromDatabase(pictureId).length);
+        assertEquals("hash", reopened.getLastFromDatabase().imageHash());
+        assertEquals(List.of(1L, 2L, 3L), page.stream().map(DatabaseResult::id).toList());
+        assertEquals("{\"message\":\"edited\"}", page.get(2).message());
+        assertEquals(List.of(new UserInteraction("alice", "thumbsup")), reopened.getReactionsFromDatabase(1, 51).get(3L));
+        assertEquals(1, reopened.searchInDatabase("message 50", 10, 0).size());
+        assertEquals(List.of(new SearchResult(3, 0, "**edited**")), reopened.searchInDatabase("EDITED", 10, 0));
+        assertEquals(pictureId, reopened.searchInDatabase("cat", 10, 0).get(0).messageId());
+        assertTrue(reopened.searchInDatabase("description", 10, 0).isEmpty());
+
+        reopened.replaceInDatabase(3L, "{\"message\":\"edited twice\"}");
+        assertEquals(3, reopened.searchInDatabase("twice", 10, 0).get(0).messageId());
+
+        reopened.close();
+    }
+
+    @Test
+    @DisplayName("Test if records appended after the snapshot are recovered and a compaction keeps the current state only")
+    void testRecoveryAndCompaction() throws IOException {
+
+        //setup
+        SegmentedLog log = new SegmentedLog(directory, 1024);
+        log.open();
+        long id = log.appendMessage("{\"message\":\"first\"}", null, null);
+        log.snapshot();
+
+        for (int i = 0; i < 100; i++) {
+
+            log.appendEdit(id, "{\"message\":\"edit " + i + "\"}");
+        }
+
+        log.appendReaction(id, "bob", "heart");
+        log.sync();
+
+        //method call
+        SegmentedLog recovered = new SegmentedLog(directory, 1024);
+        recovered.open();
+        long garbageBytes = recovered.garbageBytes();
+        recovered.compact();
+        recovered.close();
+
+        SegmentedLog compacted = new SegmentedLog(directory, 1024);
+        compacted.open();
+
+        //assertions
+        assertTrue(garbageBytes > 0);
+        assertEquals("{\"message\":\"edit 99\"}", compacted.read(id, true).message());
+        assertEquals(List.of(new UserInteraction("bob", "heart")), compacted.readReactions(id));
+        assertEquals(0, compacted.garbageBytes());
+
+        try (Stream<Path> files = Files.list(directory)) {
+
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    @DisplayName("Test if a compaction that crashed while renaming its segments is finished on startup")
+    void testPartiallyRenamedCompaction(@TempDir Path backup) throws IOException {
+
+        //setup
+        SegmentedLog log = new SegmentedLog(directory, 1024);
+        log.open();
+
+        for (int i = 1; i <= 6; i++) {
+
+            long id = log.appendMessage("{\"message\":\"picture " + i + "\"}", null, null);
+            log.appendImage(id, new byte[400], null);
+            log.appendReaction(id, "alice", "heart " + i);
+            log.appendEdit(id, "{\"message\":\"edited " + i + "\"}");
+        }
+
+        log.sync();
+        copyFiles(directory, backup);
+        log.compact();
+        log.close();
+
+        //the old segments are back, every compacted segment but the first is not renamed yet
+        List<Path> compactedSegments = listFiles(directory, ".log");
+        assertTrue(compactedSegments.size() > 1);
+
+        for (Path compactedSegment : compactedSegments.subList(1, compactedSegments.size())) {
+
+            Files.move(compactedSegment, directory.resolve(compactedSegment.getFileName().toString().replace(".log", ".compact")));
+        }
+
+        for (Path oldSegment : listFiles(backup, ".log")) {
+
+            Files.copy(oldSegment, directory.resolve(oldSegment.getFileName()));
+        }
+
+        //method call
+        SegmentedLog reopened = new SegmentedLog(directory, 1024);
+        reopened.open();
+
+        //assertions
+        for (long id = 1; id <= 6; id++) {
+
+            assertEquals("{\"message\":\"edited " + id + "\"}", reopened.read(id, true).message());
+            assertEquals(400, reopened.read(id, true).image().length);
+            assertEquals(List.of(new UserInteraction("alice", "heart " + id)), reopened.readReactions(id));
+        }
+
+        assertTrue(listFiles(directory, ".compact").isEmpty());
+        assertEquals(compactedSegments.stream().map(Path::getFileName).toList(),
+                     listFiles(directory, ".log").stream().map(Path::getFileName).toList());
+
+        reopened.close();
+    }
+
+    private static void copyFiles(final Path source, final Path target) throws IOException {
+
+        try (Stream<Path> files = Files.list(source)) {
+
+            for (Path file : files.toList()) {
+
+                Files.copy(file, target.resolve(file.getFileName()));
+            }
+        }
+    }
+
+    private static List<Path> listFiles(final Path directory, final String suffix) throws IOException {
+
+        try (Stream<Path> files = Files.list(directory)) {
+
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix)).sorted().toList();
+        }
+    }
+}
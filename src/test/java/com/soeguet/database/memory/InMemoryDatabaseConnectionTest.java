@@ -0,0 +1,73 @@
+package com.soeguet.database.memory;
+
+import com.soeguet.model.UserInteraction;
+import com.soeguet.model.dtos.DatabaseResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryDatabaseConnectionTest {
+
+    @Test
+    @DisplayName("Test if concurrent inserts get distinct ids and pages are read from the ids")
+    void testConcurrentInsertsAndPages() throws InterruptedException {
+
+        //setup
+        InMemoryDatabaseConnection databaseConnection = new InMemoryDatabaseConnection();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+        //method call
+        for (int i = 0; i < 40_000; i++) {
+
+            final int number = i;
+            executorService.execute(() -> databaseConnection.saveToDatabase("{\"message\":\"" + number + "\"}"));
+        }
+
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+
+        List<DatabaseResult> page = databaseConnection.getPageFromDatabase(40_000, 3, false);
+
+        //assertions
+        assertEquals(40_000, databaseConnection.getLastFromDatabase().id());
+        assertEquals(100, databaseConnection.getAllFromDatabase().size());
+        assertEquals(List.of(39_997L, 39_998L, 39_999L), page.stream().map(DatabaseResult::id).toList());
+        assertTrue(databaseConnection.getPageFromDatabase(1, 10, false).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test if edits, images and reactions change their message only")
+    void testUpdates() {
+
+        //setup
+        InMemoryDatabaseConnection databaseConnection = new InMemoryDatabaseConnection();
+        long pictureId = databaseConnection.saveMessageWithoutPictureToDatabase("{\"subclass\":\"image\"}");
+        long textId = databaseConnection.saveToDatabaseAndReturnEntry("{\"message\":\"Hello\"}").id();
+
+        //method call
+        databaseConnection.saveExtractedImageToDatabaseInImageTable(pictureId, new byte[]{1, 2}, new byte[]{1});
+        databaseConnection.replaceInDatabase(textId, "{\"message\":\"Hello again\"}");
+        boolean reacted = databaseConnection.saveReactionToDatabase(textId, "alice", "heart");
+        boolean missing = databaseConnection.saveReactionToDatabase(42, "alice", "heart");
+        Map<Long, List<UserInteraction>> reactions = databaseConnection.getReactionsFromDatabase(1, 100);
+
+        //assertions
+        assertArrayEquals(new byte[]{1, 2}, databaseConnection.getImageFromDatabase(pictureId));
+        assertNull(databaseConnection.getPageFromDatabase(textId, 1, false).get(0).image());
+        assertEquals("{\"message\":\"Hello again\"}", databaseConnection.getMessageFromDatabase(textId));
+        assertEquals(textId, databaseConnection.searchInDatabase("AGAIN", 10, 0).get(0).messageId());
+        assertEquals("Hello **again**", databaseConnection.searchInDatabase("AGAIN", 10, 0).get(0).snippet());
+        assertTrue(databaseConnection.searchInDatabase("image", 10, 0).isEmpty());
+        assertTrue(reacted);
+        assertFalse(missing);
+        assertEquals(Map.of(textId, List.of(new UserInteraction("alice", "heart"))), reactions);
+        assertThrows(RuntimeException.class, () -> databaseConnection.replaceInDatabase(42L, "{}"));
+    }
+}
@@ -0,0 +1,71 @@
+package com.soeguet.database.migration;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaMigratorTest {
+
+    @Test
+    @DisplayName("Test if an existing database is migrated once and its messages are backfilled in batches")
+    void testMigrateExistingDatabase() throws SQLException {
+
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:migrationdb", "sa", "");
+             Statement statement = connection.createStatement()
+        ) {
+
+            //setup
+            statement.executeUpdate("CREATE TABLE messages (id BIGSERIAL PRIMARY KEY, message VARCHAR(2255) NOT NULL);");
+            statement.executeUpdate("""
+                                      INSERT INTO messages (message) VALUES
+                                      ('{"subclass":"MessageModel","sender":"alice","messageType":0,"quotedMessage":{"sender":"bob"}}'),
+                                      ('not json'),
+                                      ('{"subclass":"PictureModel","sender":"bob","messageType":2}');
+                                    """);
+            SchemaMigrator schemaMigrator = new SchemaMigrator(2);
+
+            //method call
+            int firstRun = schemaMigrator.migrate(connection);
+            int secondRun = schemaMigrator.migrate(connection);
+
+            //assertions
+            assertEquals(schemaMigrator.getLatestVersion(), firstRun);
+            assertEquals(0, secondRun);
+
+            try (ResultSet resultSet = statement.executeQuery("""
+                                                                SELECT sender, message_type, subclass, payload IS NOT NULL, sent_at
+                                                                FROM messages ORDER BY id;
+                                                              """)) {
+
+                assertTrue(resultSet.next());
+                assertEquals("alice", resultSet.getString(1));
+                assertEquals(0, resultSet.getShort(2));
+                assertEquals("MessageModel", resultSet.getString(3));
+                assertTrue(resultSet.getBoolean(4));
+                assertNull(resultSet.getObject(5));
+
+                assertTrue(resultSet.next());
+                assertNull(resultSet.getString(1));
+                assertFalse(resultSet.getBoolean(4));
+
+                assertTrue(resultSet.next());
+                assertEquals("bob", resultSet.getString(1));
+                assertEquals(2, resultSet.getShort(2));
+                assertEquals("PictureModel", resultSet.getString(3));
+            }
+
+            try (ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM schema_version;")) {
+
+                assertTrue(resultSet.next());
+                assertEquals(schemaMigrator.getLatestVersion(), resultSet.getInt(1));
+            }
+        }
+    }
+}
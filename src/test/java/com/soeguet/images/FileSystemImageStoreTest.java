@@ -0,0 +1,63 @@
+package com.soeguet.images;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileSystemImageStoreTest {
+
+    @TempDir
+    Path imageDirectory;
+
+    @Test
+    @DisplayName("Test if identical images are stored once and read back unchanged")
+    void testImagesAreDeduplicated() throws IOException {
+
+        //setup
+        FileSystemImageStore imageStore = new FileSystemImageStore(imageDirectory);
+        byte[] screenshot = {1, 2, 3, 4, 5};
+
+        //method call
+        String firstHash = imageStore.put(screenshot);
+        String secondHash = imageStore.put(screenshot.clone());
+        ByteBuffer storedImage = imageStore.get(firstHash).orElseThrow();
+
+        //assertions
+        assertEquals(firstHash, secondHash);
+        assertEquals(1, imageStore.getStoredImages());
+        assertEquals(1, imageStore.getDeduplicatedImages());
+
+        byte[] readBack = new byte[storedImage.remaining()];
+        storedImage.get(readBack);
+        assertArrayEquals(screenshot, readBack);
+
+        try (Stream<Path> files = Files.walk(imageDirectory)) {
+
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    @DisplayName("Test if unknown and malformed keys are not resolved")
+    void testUnknownImages() {
+
+        //setup
+        FileSystemImageStore imageStore = new FileSystemImageStore(imageDirectory);
+
+        //method call & assertions
+        assertTrue(imageStore.get("0".repeat(64)).isEmpty());
+        assertTrue(imageStore.get("../../etc/passwd").isEmpty());
+        assertFalse(imageStore.contains(null));
+    }
+}
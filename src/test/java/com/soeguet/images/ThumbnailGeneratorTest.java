@@ -0,0 +1,97 @@
+package com.soeguet.images;
+
+import com.soeguet.model.dtos.Thumbnail;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThumbnailGeneratorTest {
+
+    @Test
+    @DisplayName("Test if a thumbnail fits into the bounding square and keeps the aspect ratio")
+    void testThumbnailIsBounded() throws IOException {
+
+        //setup
+        ThumbnailGenerator thumbnailGenerator = new ThumbnailGenerator(320);
+        byte[] screenshot = createPicture(1920, 1080);
+
+        //method call
+        Thumbnail thumbnail = thumbnailGenerator.create(screenshot).orElseThrow();
+
+        //assertions
+        BufferedImage decodedThumbnail = ImageIO.read(new ByteArrayInputStream(thumbnail.data()));
+        assertEquals(320, decodedThumbnail.getWidth());
+        assertEquals(180, decodedThumbnail.getHeight());
+        assertEquals(1920, thumbnail.originalDimensions().width());
+        assertEquals(1080, thumbnail.originalDimensions().height());
+    }
+
+    @Test
+    @DisplayName("Test if small and broken pictures get no thumbnail")
+    void testNoThumbnail() throws IOException {
+
+        //setup
+        ThumbnailGenerator thumbnailGenerator = new ThumbnailGenerator(320);
+
+        //method call & assertions
+        assertTrue(thumbnailGenerator.create(createPicture(100, 50)).isEmpty());
+        assertTrue(thumbnailGenerator.create(new byte[]{1, 2, 3}).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test if a picture whose header claims gigapixels is rejected without decoding it")
+    void testDecompressionBomb() {
+
+        //setup
+        ThumbnailGenerator thumbnailGenerator = new ThumbnailGenerator(320);
+        byte[] bomb = createPngHeader(60_000, 60_000);
+
+        //method call & assertions
+        assertTrue(bomb.length < 100);
+        assertTrue(thumbnailGenerator.create(bomb).isEmpty());
+    }
+
+    /**
+     A PNG of a signature, an IHDR chunk claiming the dimensions and an empty IEND chunk, without any pixel data.
+     */
+    private static byte[] createPngHeader(final int width, final int height) {
+
+        ByteBuffer header = ByteBuffer.allocate(13).putInt(width).putInt(height).put((byte) 8).put((byte) 2).put((byte) 0)
+                                      .put((byte) 0).put((byte) 0);
+
+        ByteBuffer png = ByteBuffer.allocate(8 + 25 + 12);
+        png.put(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+        putChunk(png, "IHDR", header.array());
+        putChunk(png, "IEND", new byte[0]);
+
+        return png.array();
+    }
+
+    private static void putChunk(final ByteBuffer png, final String type, final byte[] data) {
+
+        CRC32 crc = new CRC32();
+        crc.update(type.getBytes(StandardCharsets.US_ASCII));
+        crc.update(data);
+
+        png.putInt(data.length).put(type.getBytes(StandardCharsets.US_ASCII)).put(data).putInt((int) crc.getValue());
+    }
+
+    private static byte[] createPicture(final int width, final int height) throws IOException {
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", outputStream);
+
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,68 @@
+package com.soeguet.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+
+    @Test
+    @DisplayName("Test if counters, gauges and histograms are written in the Prometheus text format")
+    void testScrape() {
+
+        //setup
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        metricsRegistry.counter("test_messages_total", "Messages", "type", "text").add(3);
+        metricsRegistry.gauge("test_connections", "Connections", () -> 2);
+        LatencyHistogram histogram = metricsRegistry.histogram("test_seconds", "Durations", "stage", "decode");
+
+        //method call
+        metricsRegistry.counter("test_messages_total", "Messages", "type", "text").increment();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(80));
+        histogram.record(TimeUnit.SECONDS.toNanos(60));
+        String text = metricsRegistry.scrape();
+
+        //assertions
+        assertTrue(text.contains("# TYPE test_messages_total counter\ntest_messages_total{type=\"text\"} 4\n"));
+        assertTrue(text.contains("test_connections 2\n"));
+        assertTrue(text.contains("test_seconds_bucket{stage=\"decode\",le=\"5.0E-5\"} 0\n"));
+        assertTrue(text.contains("test_seconds_bucket{stage=\"decode\",le=\"1.0E-4\"} 1\n"));
+        assertTrue(text.contains("test_seconds_bucket{stage=\"decode\",le=\"+Inf\"} 2\n"));
+        assertTrue(text.contains("test_seconds_count{stage=\"decode\"} 2\n"));
+        assertEquals(1.0E-4, histogram.quantileSeconds(0.5));
+        assertEquals(Double.POSITIVE_INFINITY, histogram.quantileSeconds(0.99));
+        assertEquals(4.0, metricsRegistry.snapshot().get("test_messages_total{type=\"text\"}"));
+        assertThrows(IllegalArgumentException.class, () -> metricsRegistry.histogram("test_messages_total", "Messages"));
+    }
+
+    @Test
+    @DisplayName("Test if the HTTP endpoint serves the metrics")
+    void testHttpEndpoint() throws IOException, InterruptedException {
+
+        //setup
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        metricsRegistry.counter("test_joins_total", "Joins").increment();
+
+        try (MetricsHttpServer metricsHttpServer = new MetricsHttpServer(metricsRegistry, new InetSocketAddress("127.0.0.1", 0))) {
+
+            //method call
+            HttpResponse<String> response = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + metricsHttpServer.getPort() + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+
+            //assertions
+            assertEquals(200, response.statusCode());
+            assertTrue(response.headers().firstValue("Content-Type").orElseThrow().startsWith("text/plain; version=0.0.4"));
+            assertTrue(response.body().contains("test_joins_total 1\n"));
+        }
+    }
+}
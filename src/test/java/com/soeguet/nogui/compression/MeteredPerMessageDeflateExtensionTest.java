@@ -0,0 +1,62 @@
+package com.soeguet.nogui.compression;
+
+import com.soeguet.model.dtos.CompressionStatistics;
+import org.java_websocket.framing.BinaryFrame;
+import org.java_websocket.framing.TextFrame;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeteredPerMessageDeflateExtensionTest {
+
+    @Test
+    @DisplayName("Test if frames below the threshold are skipped and larger frames are compressed and counted")
+    void testThresholdAndCounters() {
+
+        //setup
+        MeteredPerMessageDeflateExtension extension = new MeteredPerMessageDeflateExtension(64);
+        MeteredPerMessageDeflateExtension connectionExtension = (MeteredPerMessageDeflateExtension) extension.copyInstance();
+        TextFrame typing = new TextFrame();
+        typing.setPayload(ByteBuffer.wrap("{\"type\":\"send\"}".getBytes(StandardCharsets.UTF_8)));
+        TextFrame message = new TextFrame();
+        message.setPayload(ByteBuffer.wrap("{\"subclass\":\"MessageModel\",\"sender\":\"alice\",\"time\":\"12:00\"}".repeat(20)
+                                                                                                                  .getBytes(StandardCharsets.UTF_8)));
+
+        //method call
+        connectionExtension.encodeFrame(typing);
+        connectionExtension.encodeFrame(message);
+        CompressionStatistics statistics = extension.getStatistics();
+
+        //assertions
+        assertFalse(typing.isRSV1());
+        assertTrue(message.isRSV1());
+        assertEquals(1, statistics.skippedFrames());
+        assertEquals(1, statistics.compressedFrames());
+        assertTrue(statistics.compressionRatio() < 0.2);
+        assertEquals(64, connectionExtension.getThreshold());
+    }
+
+    @Test
+    @DisplayName("Test if memory mapped payloads are compressed like heap payloads")
+    void testDirectPayload() {
+
+        //setup
+        MeteredPerMessageDeflateExtension extension = new MeteredPerMessageDeflateExtension(64);
+        byte[] picture = new byte[4096];
+        ByteBuffer directPayload = ByteBuffer.allocateDirect(picture.length).put(picture).flip();
+        BinaryFrame frame = new BinaryFrame();
+        frame.setPayload(directPayload);
+
+        //method call
+        extension.encodeFrame(frame);
+
+        //assertions
+        assertTrue(frame.isRSV1());
+        assertEquals(picture.length, extension.getStatistics().uncompressedBytes());
+        assertTrue(frame.getPayloadData().remaining() < picture.length);
+    }
+}
@@ -0,0 +1,148 @@
+package com.soeguet.nogui.outbound;
+
+import com.soeguet.codec.EncodedFrame;
+import com.soeguet.model.dtos.OutboundStatistics;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.WebSocketListener;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.framing.Framedata;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class OutboundQueueGuardTest {
+
+    @Test
+    @DisplayName("Test if typing frames are dropped and chat messages disconnect a slow consumer")
+    void testSlowConsumerWithDropTyping() {
+
+        //setup
+        OutboundQueueGuard outboundQueueGuard = new OutboundQueueGuard(10, 1024 * 1024, SlowConsumerPolicy.DROP_TYPING);
+        WebSocketImpl fastClient = openConnectionWithBacklog(0);
+        WebSocketImpl slowClient = openConnectionWithBacklog(6);
+        outboundQueueGuard.add(fastClient);
+        outboundQueueGuard.add(slowClient);
+
+        //method call
+        outboundQueueGuard.sendTyping(List.of(fastClient, slowClient), EncodedFrame.typing("typing".getBytes()));
+        fillBacklog(slowClient, 4);
+        outboundQueueGuard.sendMessage(List.of(fastClient, slowClient), EncodedFrame.message("{}".getBytes(), "{}"::getBytes));
+
+        //assertions
+        verify(fastClient, times(2)).sendFrame(any(Framedata.class));
+        verify(slowClient, never()).sendFrame(any(Framedata.class));
+        verify(slowClient).closeConnection(OutboundQueueGuard.SLOW_CONSUMER_CLOSE_CODE, OutboundQueueGuard.SLOW_CONSUMER_CLOSE_REASON);
+        verify(fastClient, never()).closeConnection(anyInt(), anyString());
+        assertEquals(1, outboundQueueGuard.getSlowConsumerDisconnects());
+    }
+
+    @Test
+    @DisplayName("Test if only the latest coalesced typing frame is delivered once the client caught up")
+    void testCoalescedTypingIsDeliveredLater() {
+
+        //setup
+        OutboundQueueGuard outboundQueueGuard = new OutboundQueueGuard(10, 1024 * 1024, SlowConsumerPolicy.COALESCE);
+        WebSocketImpl slowClient = openConnectionWithBacklog(6);
+        outboundQueueGuard.add(slowClient);
+
+        //method call
+        outboundQueueGuard.sendTyping(List.of(slowClient), EncodedFrame.typing("first".getBytes()));
+        outboundQueueGuard.sendTyping(List.of(slowClient), EncodedFrame.typing("second".getBytes()));
+        outboundQueueGuard.flushCoalesced();
+        verify(slowClient, never()).sendFrame(any(Framedata.class));
+
+        slowClient.outQueue.clear();
+        outboundQueueGuard.flushCoalesced();
+
+        //assertions
+        verify(slowClient, times(1)).sendFrame(any(Framedata.class));
+        assertEquals(1, outboundQueueGuard.getStatistics().get(0).coalescedFrames());
+        assertEquals(1, outboundQueueGuard.getStatistics().get(0).sentFrames());
+    }
+
+    @Test
+    @DisplayName("Test if the bytes of queued frames count towards the backlog until the frames are written")
+    void testQueuedBytesAreReleasedOnceWritten() {
+
+        //setup
+        OutboundQueueGuard outboundQueueGuard = new OutboundQueueGuard(10, 100, SlowConsumerPolicy.DISCONNECT);
+        WebSocketImpl client = openConnectionWithBacklog(0);
+        EncodedFrame message = EncodedFrame.message(new byte[40], () -> new byte[40]);
+        outboundQueueGuard.add(client);
+
+        //the library queues one buffer per frame
+        Mockito.doAnswer(invocation -> client.outQueue.add(ByteBuffer.allocate(48))).when(client).sendFrame(any(Framedata.class));
+
+        //method call
+        outboundQueueGuard.sendMessage(List.of(client), message);
+        outboundQueueGuard.sendMessage(List.of(client), message);
+        OutboundStatistics queued = outboundQueueGuard.getStatistics().get(0);
+
+        client.outQueue.poll();
+        OutboundStatistics written = outboundQueueGuard.getStatistics().get(0);
+
+        outboundQueueGuard.sendMessage(List.of(client), message);
+        outboundQueueGuard.sendMessage(List.of(client), message);
+
+        //assertions
+        assertEquals(2, queued.queuedFrames());
+        assertEquals(80, queued.queuedBytes());
+        assertEquals(1, written.queuedFrames());
+        assertEquals(40, written.queuedBytes());
+        verify(client, times(3)).sendFrame(any(Framedata.class));
+        verify(client).closeConnection(OutboundQueueGuard.SLOW_CONSUMER_CLOSE_CODE, OutboundQueueGuard.SLOW_CONSUMER_CLOSE_REASON);
+    }
+
+    @Test
+    @DisplayName("Test if frames for a removed connection are skipped and do not bring its counters back")
+    void testRemovedConnectionIsSkipped() {
+
+        //setup
+        OutboundQueueGuard outboundQueueGuard = new OutboundQueueGuard(10, 1024 * 1024, SlowConsumerPolicy.COALESCE);
+        WebSocketImpl client = openConnectionWithBacklog(0);
+        outboundQueueGuard.add(client);
+
+        //method call
+        outboundQueueGuard.remove(client);
+        outboundQueueGuard.sendMessage(List.of(client), EncodedFrame.message("{}".getBytes(), "{}"::getBytes));
+        outboundQueueGuard.sendTyping(List.of(client), EncodedFrame.typing("typing".getBytes()));
+        outboundQueueGuard.sendHistory(client, List.of(EncodedFrame.message("{}".getBytes(), "{}"::getBytes)));
+
+        //assertions
+        verify(client, never()).sendFrame(any(Framedata.class));
+        verify(client, never()).sendFrame(anyList());
+        assertTrue(outboundQueueGuard.getStatistics().isEmpty());
+    }
+
+    private static WebSocketImpl openConnectionWithBacklog(final int queuedFrames) {
+
+        WebSocketImpl webSocket = Mockito.spy(new WebSocketImpl(Mockito.mock(WebSocketListener.class), new Draft_6455()));
+        Mockito.doReturn(true).when(webSocket).isOpen();
+        Mockito.doNothing().when(webSocket).sendFrame(any(Framedata.class));
+        Mockito.doNothing().when(webSocket).closeConnection(anyInt(), anyString());
+        fillBacklog(webSocket, queuedFrames);
+
+        return webSocket;
+    }
+
+    private static void fillBacklog(final WebSocketImpl webSocket, final int frames) {
+
+        for (int i = 0; i < frames; i++) {
+
+            webSocket.outQueue.add(ByteBuffer.allocate(16));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.soeguet.nogui.pipeline;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessagePipelineTest {
+
+    @Test
+    @DisplayName("Test if messages are persisted and broadcast in submission order while decoding in parallel")
+    void testMessagesKeepTheirOrder() throws InterruptedException {
+
+        //setup
+        MessagePipeline messagePipeline = new MessagePipeline(4, 8);
+        List<Integer> persisted = new CopyOnWriteArrayList<>();
+        List<Integer> broadcast = new CopyOnWriteArrayList<>();
+
+        //method call
+        for (int i = 0; i < 200; i++) {
+
+            final int messageNumber = i;
+            messagePipeline.submitOrdered(() -> {
+
+                //uneven decode times, later messages may finish decoding first
+                sleepMillis(ThreadLocalRandom.current().nextInt(3));
+                return messageNumber;
+
+            }, decoded -> {
+
+                persisted.add(decoded);
+                return decoded;
+
+            }, broadcast::add);
+        }
+
+        messagePipeline.close();
+
+        //assertions
+        List<Integer> expected = IntStream.range(0, 200).boxed().toList();
+        assertEquals(expected, persisted);
+        assertEquals(expected, broadcast);
+        assertEquals(200, messagePipeline.getStatistics().persistedMessages());
+    }
+
+    @Test
+    @DisplayName("Test if a failing message is dropped without stopping the pipeline")
+    void testFailingMessageIsDropped() {
+
+        //setup
+        MessagePipeline messagePipeline = new MessagePipeline(2, 8);
+        List<String> broadcast = new CopyOnWriteArrayList<>();
+
+        //method call
+        messagePipeline.submitOrdered(() -> "first", decoded -> decoded, broadcast::add);
+        messagePipeline.<String, String>submitOrdered(() -> {throw new IllegalStateException("broken message");}, decoded -> decoded, broadcast::add);
+        messagePipeline.submitOrdered(() -> "third", decoded -> decoded, broadcast::add);
+        messagePipeline.close();
+
+        //assertions
+        assertEquals(List.of("first", "third"), broadcast);
+    }
+
+    @Test
+    @DisplayName("Test if work submitted after the close is dropped instead of failing the caller")
+    void testSubmitAfterCloseIsDropped() {
+
+        //setup
+        MessagePipeline messagePipeline = new MessagePipeline(2, 8);
+        List<String> broadcast = new CopyOnWriteArrayList<>();
+        messagePipeline.close();
+
+        //method call
+        assertDoesNotThrow(() -> {
+
+            messagePipeline.submitOrdered(() -> "late", decoded -> decoded, broadcast::add);
+            messagePipeline.submitBroadcast(() -> broadcast.add("late broadcast"));
+            messagePipeline.submitRequest(() -> broadcast.add("late request"));
+        });
+
+        //assertions
+        assertTrue(broadcast.isEmpty());
+    }
+
+    private static void sleepMillis(long millis) {
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.soeguet.nogui.presence;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.soeguet.codec.EncodedFrame;
+import com.soeguet.codec.WireFormat;
+import org.java_websocket.WebSocket;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PresenceRegistryTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    @DisplayName("Test if join, rename and leave are versioned deltas and the roster carries the version of the last one")
+    void testDeltasAndRoster() throws IOException {
+
+        //setup
+        PresenceRegistry presenceRegistry = new PresenceRegistry();
+        WebSocket alice = Mockito.mock(WebSocket.class);
+        WebSocket bob = Mockito.mock(WebSocket.class);
+
+        //method call
+        JsonNode aliceJoined = read(presenceRegistry.join(alice, "10.0.0.1", null));
+        JsonNode aliceRenamed = read(presenceRegistry.rename(alice, "alice").orElseThrow());
+        boolean unchangedName = presenceRegistry.rename(alice, "alice").isEmpty();
+        presenceRegistry.join(bob, "10.0.0.2", "bob");
+        JsonNode bobLeft = read(presenceRegistry.leave(bob).orElseThrow());
+        boolean unknownLeft = presenceRegistry.leave(bob).isEmpty();
+        JsonNode roster = read(presenceRegistry.roster());
+
+        //assertions
+        assertEquals("presence", aliceJoined.path("eventType").asText());
+        assertEquals("join", aliceJoined.path("change").asText());
+        assertEquals(1, aliceJoined.path("version").asLong());
+        assertEquals("10.0.0.1", aliceJoined.path("client").path("localIpAddress").asText());
+
+        assertEquals("rename", aliceRenamed.path("change").asText());
+        assertEquals("alice", aliceRenamed.path("client").path("clientName").asText());
+        assertTrue(aliceRenamed.path("previousName").isMissingNode());
+        assertTrue(unchangedName);
+
+        assertEquals("leave", bobLeft.path("change").asText());
+        assertEquals(4, bobLeft.path("version").asLong());
+        assertTrue(unknownLeft);
+
+        assertEquals("roster", roster.path("eventType").asText());
+        assertEquals(4, roster.path("version").asLong());
+        assertEquals(1, roster.path("clients").size());
+        assertEquals("alice", roster.path("clients").get(0).path("clientName").asText());
+        assertEquals("alice", presenceRegistry.getPresence().get(0).clientName());
+        assertNull(presenceRegistry.getClientName(bob));
+    }
+
+    @Test
+    @DisplayName("Test if two connections with the same address and without a name are told apart by their connection id")
+    void testConnectionIds() throws IOException {
+
+        //setup
+        PresenceRegistry presenceRegistry = new PresenceRegistry();
+        WebSocket first = Mockito.mock(WebSocket.class);
+        WebSocket second = Mockito.mock(WebSocket.class);
+
+        //method call
+        JsonNode firstJoined = read(presenceRegistry.join(first, "10.0.0.1", null));
+        JsonNode secondJoined = read(presenceRegistry.join(second, "10.0.0.1", null));
+        JsonNode secondRenamed = read(presenceRegistry.rename(second, "bob").orElseThrow());
+        JsonNode firstLeft = read(presenceRegistry.leave(first).orElseThrow());
+        JsonNode roster = read(presenceRegistry.roster());
+
+        //assertions
+        long firstId = firstJoined.path("client").path("connectionId").asLong();
+        long secondId = secondJoined.path("client").path("connectionId").asLong();
+
+        assertNotEquals(firstId, secondId);
+        assertTrue(firstJoined.path("client").path("clientName").isNull());
+        assertEquals(secondId, secondRenamed.path("client").path("connectionId").asLong());
+        assertEquals(firstId, firstLeft.path("client").path("connectionId").asLong());
+
+        assertEquals(1, roster.path("clients").size());
+        assertEquals(secondId, roster.path("clients").get(0).path("connectionId").asLong());
+        assertEquals("bob", roster.path("clients").get(0).path("clientName").asText());
+        assertEquals(secondId, presenceRegistry.getPresence().get(0).connectionId());
+    }
+
+    private JsonNode read(final EncodedFrame frame) throws IOException {
+
+        final ByteBuffer payload = frame.payload(WireFormat.JSON).duplicate();
+        final byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+
+        return mapper.readTree(bytes);
+    }
+}
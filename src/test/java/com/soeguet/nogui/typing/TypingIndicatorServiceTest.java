@@ -0,0 +1,95 @@
+package com.soeguet.nogui.typing;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.soeguet.codec.EncodedFrame;
+import com.soeguet.codec.WireFormat;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TypingIndicatorServiceTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    @DisplayName("Test if repeated indicators are coalesced into one event per flush and only changes are sent")
+    void testCoalescedDelta() throws IOException {
+
+        //setup
+        TypingIndicatorService typingIndicatorService = new TypingIndicatorService(5_000);
+
+        //method call
+        for (int i = 0; i < 10; i++) {
+
+            typingIndicatorService.record(indicator("typing", "alice"), null);
+        }
+
+        typingIndicatorService.record(indicator("typing", null), "bob");
+        Optional<EncodedFrame> started = typingIndicatorService.flush(System.nanoTime());
+
+        typingIndicatorService.record(indicator("typing", "alice"), null);
+        Optional<EncodedFrame> unchanged = typingIndicatorService.flush(System.nanoTime());
+
+        typingIndicatorService.record(indicator("stopped", "alice"), null);
+        Optional<EncodedFrame> stopped = typingIndicatorService.flush(System.nanoTime());
+
+        //assertions
+        JsonNode startedEvent = read(started.orElseThrow());
+        assertEquals("typing", startedEvent.path("eventType").asText());
+        assertEquals("[\"alice\",\"bob\"]", startedEvent.path("typing").toString());
+        assertEquals(0, startedEvent.path("stopped").size());
+
+        assertTrue(unchanged.isEmpty());
+
+        JsonNode stoppedEvent = read(stopped.orElseThrow());
+        assertEquals(0, stoppedEvent.path("typing").size());
+        assertEquals("[\"alice\"]", stoppedEvent.path("stopped").toString());
+        assertEquals("[\"bob\"]", read(typingIndicatorService.currentTypingEvent().orElseThrow()).path("typing").toString());
+    }
+
+    @Test
+    @DisplayName("Test if a user stops typing after the timeout and an idle service sends nothing")
+    void testTimeoutAndIdle() throws IOException {
+
+        //setup
+        TypingIndicatorService typingIndicatorService = new TypingIndicatorService(100);
+        typingIndicatorService.record(indicator("typing", "alice"), null);
+        typingIndicatorService.flush(System.nanoTime());
+
+        //method call
+        Optional<EncodedFrame> expired = typingIndicatorService.flush(System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+        boolean activeAfterwards = typingIndicatorService.isActive();
+
+        //assertions
+        assertEquals("[\"alice\"]", read(expired.orElseThrow()).path("stopped").toString());
+        assertFalse(activeAfterwards);
+        assertTrue(typingIndicatorService.flush(System.nanoTime()).isEmpty());
+        assertTrue(typingIndicatorService.record("not json".getBytes(StandardCharsets.UTF_8), null).isEmpty());
+    }
+
+    private static byte[] indicator(final String type, final String sender) {
+
+        final String senderField = sender == null ? "" : ",\"sender\":\"" + sender + "\"";
+
+        return ("{\"type\":\"" + type + "\"" + senderField + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private JsonNode read(final EncodedFrame frame) throws IOException {
+
+        final ByteBuffer payload = frame.payload(WireFormat.JSON).duplicate();
+        final byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+
+        return mapper.readTree(bytes);
+    }
+}